@@ -0,0 +1,100 @@
+package stacs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.NewRating;
+import stacs.GameService.GameService;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * A GameRepo filled with catalogueSize games and as many users, shared by every benchmark
+ * thread. Each game has two of {@link #GENRES}, and the first {@link #RATED_USERS} users
+ * have rated {@link #RATINGS_PER_USER} games each. The 10M catalogue needs a large heap,
+ * e.g. {@code -jvmArgsAppend -Xmx24g}.
+ */
+@State(Scope.Benchmark)
+public class Catalogue {
+    static final String[] GENRES = {
+            "Action", "Adventure", "RPG", "Strategy", "Puzzle", "Racing", "Sports", "Shooter",
+            "Simulation", "Platformer", "Horror", "Fighting", "Survival", "Sandbox", "Stealth",
+            "Rhythm", "Roguelike", "Relaxing", "Party", "Educational"
+    };
+    static final int RATED_USERS = 100_000;
+    static final int RATINGS_PER_USER = 20;
+    // Games, users and ratings are added this many at a time while setting up
+    private static final int SETUP_BATCH_SIZE = 10_000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogueSize;
+
+    @Param({"COMPACT"})
+    public GameRepoProperties.RatingStoreType ratingStore;
+
+    GameRepo gameRepo;
+    GameService gameService;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setRatingStore(ratingStore);
+        gameRepo = new GameRepo(properties);
+        gameService = new GameService(gameRepo);
+
+        List<Games> games = new ArrayList<>(SETUP_BATCH_SIZE);
+        List<Users> users = new ArrayList<>(SETUP_BATCH_SIZE);
+        for (int id = 1; id <= catalogueSize; id++) {
+            games.add(game(id));
+            users.add(new Users(id, "User " + id));
+            if (games.size() == SETUP_BATCH_SIZE || id == catalogueSize) {
+                gameRepo.addGames(games);
+                gameRepo.addUsers(users);
+                games = new ArrayList<>(SETUP_BATCH_SIZE);
+                users = new ArrayList<>(SETUP_BATCH_SIZE);
+            }
+        }
+
+        // The same seed gives every run the same ratings
+        SplittableRandom random = new SplittableRandom(42);
+        List<NewRating> ratings = new ArrayList<>(SETUP_BATCH_SIZE);
+        int ratedUsers = Math.min(RATED_USERS, catalogueSize);
+        for (int userId = 1; userId <= ratedUsers; userId++) {
+            for (int r = 0; r < RATINGS_PER_USER; r++) {
+                ratings.add(new NewRating(userId, randomId(random), random.nextInt(5) + 1));
+            }
+            if (ratings.size() >= SETUP_BATCH_SIZE || userId == ratedUsers) {
+                gameRepo.addRatings(ratings);
+                ratings = new ArrayList<>(SETUP_BATCH_SIZE);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        gameRepo.close();
+    }
+
+    // Builds the game with the given ID, with two genres picked from it
+    static Games game(int id) {
+        ArrayList<String> genres = new ArrayList<>(2);
+        genres.add(GENRES[id % GENRES.length]);
+        genres.add(GENRES[(id / GENRES.length) % GENRES.length]);
+        return new Games(id, "Game " + id, genres, null, "PC");
+    }
+
+    // Picks the ID of a game or user that is in the catalogue
+    int randomId(SplittableRandom random) {
+        return random.nextInt(catalogueSize) + 1;
+    }
+}
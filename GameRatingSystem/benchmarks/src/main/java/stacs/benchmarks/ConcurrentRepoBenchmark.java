@@ -0,0 +1,62 @@
+package stacs.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.RatingSummary;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * The throughput of GameRepo under a mix of readers and raters running at the same time,
+ * as request threads use it. Each group runs six readers against two raters; {@code -tg}
+ * changes the mix, e.g. {@code -tg 4,4}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentRepoBenchmark {
+
+    /**
+     * The random source of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(6)
+    public RatingSummary read(Catalogue catalogue, ThreadRandom thread) {
+        GameRepo gameRepo = catalogue.gameRepo;
+        Games game = gameRepo.findGameById(catalogue.randomId(thread.random));
+        gameRepo.findUserById(catalogue.randomId(thread.random));
+        return gameRepo.getRatingSummary(game.getGameId());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public Users rate(Catalogue catalogue, ThreadRandom thread) {
+        GameRepo gameRepo = catalogue.gameRepo;
+        Users user = gameRepo.findUserById(catalogue.randomId(thread.random));
+        gameRepo.addRating(user, gameRepo.findGameById(catalogue.randomId(thread.random)), thread.random.nextInt(5) + 1);
+        return user;
+    }
+}
@@ -0,0 +1,129 @@
+package stacs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import stacs.GameRepo.GameRepo;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * The time taken by single GameRepo and GameService calls against a filled catalogue.
+ * Runs single-threaded by default; {@code -t} runs the same calls from more threads at once,
+ * and {@code -prof gc} adds the allocation rate and bytes allocated per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameRepoBenchmark {
+
+    /**
+     * The random source of one benchmark thread. IDs are drawn inside each call rather than
+     * in a per-invocation setup, whose own overhead would swamp calls this short.
+     */
+    @State(Scope.Thread)
+    public static class Picks {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int id(Catalogue catalogue) {
+            return catalogue.randomId(random);
+        }
+
+        // Picks one of the users who have ratings
+        int ratedUserId(Catalogue catalogue) {
+            return random.nextInt(Math.min(Catalogue.RATED_USERS, catalogue.catalogueSize)) + 1;
+        }
+    }
+
+    /**
+     * Hands out IDs past the end of the catalogue for new games.
+     */
+    @State(Scope.Benchmark)
+    public static class NewGameIds {
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void start(Catalogue catalogue) {
+            nextId.set(catalogue.catalogueSize + 1);
+        }
+
+        int next() {
+            return nextId.getAndIncrement();
+        }
+    }
+
+    @Benchmark
+    public Games addGame(Catalogue catalogue, NewGameIds ids) {
+        Games game = Catalogue.game(ids.next());
+        catalogue.gameRepo.addGame(game);
+        return game;
+    }
+
+    @Benchmark
+    public boolean isGameInListById(Catalogue catalogue, Picks picks) {
+        return catalogue.gameRepo.isGameInList(new Games(picks.id(catalogue), null, new ArrayList<>(), null, "PC"));
+    }
+
+    @Benchmark
+    public boolean isGameInListByTitle(Catalogue catalogue, Picks picks) {
+        // A new ID with a taken title, so the title index answers
+        return catalogue.gameRepo.isGameInList(new Games(0, "GAME " + picks.id(catalogue), new ArrayList<>(), null, "PC"));
+    }
+
+    @Benchmark
+    public Games findGameById(Catalogue catalogue, Picks picks) {
+        return catalogue.gameRepo.findGameById(picks.id(catalogue));
+    }
+
+    @Benchmark
+    public Users findUserById(Catalogue catalogue, Picks picks) {
+        return catalogue.gameRepo.findUserById(picks.id(catalogue));
+    }
+
+    @Benchmark
+    public Users addRating(Catalogue catalogue, Picks picks) {
+        GameRepo gameRepo = catalogue.gameRepo;
+        Users user = gameRepo.findUserById(picks.id(catalogue));
+        int gameId = picks.id(catalogue);
+        gameRepo.addRating(user, gameRepo.findGameById(gameId), gameId % 5 + 1);
+        return user;
+    }
+
+    @Benchmark
+    public List<Games> listGamesByGenre(Catalogue catalogue, Picks picks) {
+        // The first page of one genre, as GET /api/games?genre= asks for it
+        String genre = Catalogue.GENRES[picks.id(catalogue) % Catalogue.GENRES.length];
+        return catalogue.gameRepo.listGames(List.of(genre), 0, 101);
+    }
+
+    @Benchmark
+    public List<Games> listGamesByTwoGenres(Catalogue catalogue, Picks picks) {
+        int first = picks.id(catalogue) % Catalogue.GENRES.length;
+        return catalogue.gameRepo.listGames(List.of(Catalogue.GENRES[first],
+                Catalogue.GENRES[(first + 1) % Catalogue.GENRES.length]), 0, 101);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> listRatingsByUser(Catalogue catalogue, Picks picks) {
+        // Through the controller, so serializing the title map, or finding it cached, is measured too
+        return catalogue.gameService.listRatingsByUser(String.valueOf(picks.ratedUserId(catalogue)), null);
+    }
+}
@@ -0,0 +1,108 @@
+package stacs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.SimilarGame;
+import stacs.GameRepo.SimilarGamesIndex;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * Measures how many of the true most similar games SimilarGamesIndex finds, and how fast,
+ * for several signature shapes. The truth is the same score taken over every game, as
+ * {@link SimilarGamesIndex#scanSimilarGames} does. Games and users fall into taste clusters,
+ * so the raters of games in the same cluster overlap.
+ * Recall is not a timing JMH can take, so this is a plain main in the benchmark jar, e.g.
+ * {@code java -Xmx4g -cp target/benchmarks.jar stacs.benchmarks.SimilarGamesRecallBenchmark [games] [users] [ratingsPerUser]}
+ */
+public class SimilarGamesRecallBenchmark {
+    private static final int GENRES = 20;
+    private static final int CLUSTERS = 50;
+    private static final int QUERIES = 200;
+    private static final int N = 10;
+    // {rater bands, rater rows}; the genre signature keeps its default shape
+    private static final int[][] SHAPES = {{8, 8}, {16, 4}, {32, 2}, {24, 3}, {64, 1}};
+
+    public static void main(String[] args) {
+        int gameCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int userCount = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Random random = new Random(42);
+        GameRepo gameRepo = new GameRepo();
+        List<Games> games = new ArrayList<>(gameCount);
+        for (int g = 1; g <= gameCount; g++) {
+            ArrayList<String> genres = new ArrayList<>();
+            for (int k = random.nextInt(3); k >= 0; k--) {
+                genres.add("Genre " + random.nextInt(GENRES));
+            }
+            Games game = new Games(g, "Game " + g, genres, null, "PC");
+            games.add(game);
+        }
+        gameRepo.addGames(games);
+        for (int u = 1; u <= userCount; u++) {
+            Users user = new Users(u, "User " + u);
+            gameRepo.addUser(user);
+            // Most ratings go to games of the user's cluster; game g is in cluster g % CLUSTERS
+            int cluster = random.nextInt(CLUSTERS);
+            for (int r = 0; r < ratingsPerUser; r++) {
+                int gameIndex = random.nextInt(gameCount / CLUSTERS) * CLUSTERS + cluster;
+                if (random.nextInt(5) == 0) {
+                    gameIndex = random.nextInt(gameCount);
+                }
+                gameRepo.addRating(user, games.get(Math.min(gameIndex, gameCount - 1)), random.nextInt(5) + 1);
+            }
+        }
+        System.out.printf("%,d games, %,d users x %,d ratings, top %d of %d queries%n",
+                gameCount, userCount, ratingsPerUser, N, QUERIES);
+
+        int[] queries = random.ints(QUERIES, 1, gameCount + 1).toArray();
+        for (int[] shape : SHAPES) {
+            SimilarGamesIndex index = new SimilarGamesIndex(gameRepo, shape[0], shape[1], 8, 2);
+            long buildStart = System.nanoTime();
+            games.forEach(index::addGame);
+            index.buildRaters();
+            long buildTime = System.nanoTime() - buildStart;
+
+            long[] annTimes = new long[QUERIES];
+            long[] scanTimes = new long[QUERIES];
+            double recall = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                long start = System.nanoTime();
+                List<SimilarGame> found = index.similarGames(queries[q], N);
+                annTimes[q] = System.nanoTime() - start;
+                start = System.nanoTime();
+                List<SimilarGame> truth = index.scanSimilarGames(queries[q], N);
+                scanTimes[q] = System.nanoTime() - start;
+                recall += recall(found, truth);
+            }
+            Arrays.sort(annTimes);
+            Arrays.sort(scanTimes);
+            System.out.printf("%2d bands x %d rows  build %6.0f ms  recall@%d %.3f  "
+                            + "lsh p50 %7.3f ms  p99 %7.3f ms  scan p50 %7.3f ms  p99 %7.3f ms%n",
+                    shape[0], shape[1], buildTime / 1e6, N, recall / QUERIES,
+                    annTimes[QUERIES / 2] / 1e6, annTimes[QUERIES * 99 / 100] / 1e6,
+                    scanTimes[QUERIES / 2] / 1e6, scanTimes[QUERIES * 99 / 100] / 1e6);
+        }
+    }
+
+    // The share of the true top games that were found. Both lists use the same score,..
+    // ..so any game found scoring at least the last true game is one of the top games
+    private static double recall(List<SimilarGame> found, List<SimilarGame> truth) {
+        if (truth.isEmpty()) {
+            return 1;
+        }
+        double cutOff = truth.get(truth.size() - 1).getScore();
+        int hits = 0;
+        for (SimilarGame game : found) {
+            if (game.getScore() >= cutOff) {
+                hits++;
+            }
+        }
+        return (double) Math.min(hits, truth.size()) / truth.size();
+    }
+}
@@ -0,0 +1,146 @@
+package stacs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.SearchHit;
+import stacs.Games.Games;
+
+/**
+ * The latency distribution of GameRepo.searchGames over a catalogue of synthetic titles.
+ * Sampled rather than averaged, so the report has the p50, p99 and p99.9 of single
+ * searches. Titles are two to five words drawn from a Zipf distribution, so a few words
+ * are in a large part of the catalogue, as "the" and "of" are in real titles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TitleSearchBenchmark {
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ra", "ne", "to", "shi", "va", "dor", "gen",
+            "ark", "zel", "mon", "tri", "bel", "qua", "fin", "sol", "ur", "ix"
+    };
+    private static final int VOCABULARY_SIZE = 20_000;
+    // Every QUERY_SAMPLE-th title is kept to build queries from
+    private static final int QUERY_SAMPLE = 1000;
+    private static final int SETUP_BATCH_SIZE = 10_000;
+
+    /**
+     * A GameRepo with catalogueSize synthetic titles, and the titles queries are built from.
+     */
+    @State(Scope.Benchmark)
+    public static class Titles {
+        @Param({"1000000"})
+        public int catalogueSize;
+
+        GameRepo gameRepo;
+        List<String[]> sampledTitles;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            // The same seed gives every run the same titles
+            SplittableRandom random = new SplittableRandom(7);
+            String[] words = vocabulary(random);
+            double[] cumulative = new double[words.length];
+            double total = 0;
+            for (int w = 0; w < words.length; w++) {
+                total += 1.0 / (w + 1);
+                cumulative[w] = total;
+            }
+
+            gameRepo = new GameRepo();
+            sampledTitles = new ArrayList<>(catalogueSize / QUERY_SAMPLE + 1);
+            List<Games> games = new ArrayList<>(SETUP_BATCH_SIZE);
+            for (int id = 1; id <= catalogueSize; id++) {
+                String[] title = new String[2 + random.nextInt(4)];
+                for (int t = 0; t < title.length; t++) {
+                    int w = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                    title[t] = words[Math.min(w < 0 ? -w - 1 : w, words.length - 1)];
+                }
+                games.add(new Games(id, String.join(" ", title), new ArrayList<>(List.of("Action")), null, "PC"));
+                if (id % QUERY_SAMPLE == 0) {
+                    sampledTitles.add(title);
+                }
+                if (games.size() == SETUP_BATCH_SIZE || id == catalogueSize) {
+                    gameRepo.addGames(games);
+                    games = new ArrayList<>(SETUP_BATCH_SIZE);
+                }
+            }
+        }
+
+        private static String[] vocabulary(SplittableRandom random) {
+            Set<String> words = new HashSet<>();
+            List<String> ordered = new ArrayList<>(VOCABULARY_SIZE);
+            while (ordered.size() < VOCABULARY_SIZE) {
+                StringBuilder word = new StringBuilder();
+                for (int s = 2 + random.nextInt(3); s > 0; s--) {
+                    word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+                }
+                if (words.add(word.toString())) {
+                    ordered.add(word.toString());
+                }
+            }
+            return ordered.toArray(new String[0]);
+        }
+
+        // A title with at least two words, as the queries use two
+        String[] randomTitle(SplittableRandom random) {
+            return sampledTitles.get(random.nextInt(sampledTitles.size()));
+        }
+    }
+
+    /**
+     * The random source of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Picks {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    // The first two words of a title
+    @Benchmark
+    public List<SearchHit> searchWords(Titles titles, Picks picks) {
+        String[] title = titles.randomTitle(picks.random);
+        return titles.gameRepo.searchGames(title[0] + " " + title[1], 10);
+    }
+
+    // The first word and the start of the second, as while typing
+    @Benchmark
+    public List<SearchHit> searchPrefix(Titles titles, Picks picks) {
+        String[] title = titles.randomTitle(picks.random);
+        return titles.gameRepo.searchGames(title[0] + " " + title[1].substring(0, 3), 10);
+    }
+
+    // The first word and the second with two neighbouring characters swapped
+    @Benchmark
+    public List<SearchHit> searchTypo(Titles titles, Picks picks) {
+        String[] title = titles.randomTitle(picks.random);
+        char[] word = title[1].toCharArray();
+        int at = 1 + picks.random.nextInt(word.length - 2);
+        char swapped = word[at];
+        word[at] = word[at + 1];
+        word[at + 1] = swapped;
+        return titles.gameRepo.searchGames(title[0] + " " + new String(word), 10);
+    }
+}
@@ -0,0 +1,107 @@
+package stacs.GameRepo;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A growable array that can only be appended to, used by GameRepo to hold games
+ * and users in insertion order.
+ *
+ * <p>Reads never lock and are safe while another thread appends, but appends must be
+ * serialized by the caller. A new element is written before the size is published,
+ * and a grown array is published before the size, so a reader that reads the size
+ * first always finds that many elements in the array it reads next.
+ *
+ * @param <T> the type of the elements
+ */
+public class AppendOnlyArray<T> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile Object[] elements = new Object[INITIAL_CAPACITY];
+    private volatile int size;
+    private final List<T> view = new View();
+
+    /**
+     * Appends an element to the end of the array.
+     * Callers must not call this from two threads at once.
+     *
+     * @param element the element to append
+     */
+    public void add(T element) {
+        Object[] current = elements;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            elements = current;
+        }
+        current[size] = element;
+        size = size + 1;
+    }
+
+    /**
+     * Returns the element at the given position.
+     *
+     * @param index the position of the element
+     * @return the element at that position
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        int currentSize = size;
+        if (index < 0 || index >= currentSize) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (T) elements[index];
+    }
+
+    /**
+     * Returns the number of elements appended so far.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a read-only view of the elements that grows as elements are appended.
+     * Iterating it while another thread appends never throws; the iteration also
+     * visits the elements appended before it reaches the end.
+     *
+     * @return an unmodifiable, live list of the elements in insertion order
+     */
+    public List<T> asList() {
+        return view;
+    }
+
+    /**
+     * Copies the elements appended so far into a new ArrayList.
+     *
+     * @return a snapshot of the elements in insertion order
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<T> toArrayList() {
+        // Read the size before the array, as explained above
+        int currentSize = size;
+        Object[] current = elements;
+        ArrayList<T> snapshot = new ArrayList<>(currentSize);
+        for (int i = 0; i < currentSize; i++) {
+            snapshot.add((T) current[i]);
+        }
+        return snapshot;
+    }
+
+    // Reads through to the array; AbstractList rejects every change
+    private final class View extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            return AppendOnlyArray.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return AppendOnlyArray.this.size();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package stacs.GameRepo;
+
+/**
+ * What happened to one item of a batch passed to GameRepo.
+ */
+public enum BatchOutcome {
+    // The item was stored
+    ADDED,
+    // A game or user with the same ID (or a game with the same title) already exists
+    DUPLICATE,
+    // The item was null, had an ID that is not positive, or had a rating the store cannot hold
+    INVALID,
+    // The user or game a rating refers to does not exist
+    NOT_FOUND
+}
@@ -0,0 +1,201 @@
+package stacs.GameRepo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * A rating store that keeps each user's ratings as two packed primitive arrays:
+ * the IDs of the rated games in ascending order and one byte per rating.
+ * A rating costs five bytes instead of a map entry plus a boxed Integer, and the
+ * only object per user is the record holding the two arrays.
+ *
+ * <p>Ratings must fit in a byte. Maps of Games and Users objects are only built on
+ * request, by resolving the stored IDs, so ratings for games or users that were
+ * never added to the repository are left out of them.
+ */
+public class CompactRatingStore implements RatingStore {
+    private final IntFunction<Users> userResolver;
+    private final IntFunction<Games> gameResolver;
+    private final IntObjectHashMap<UserRatings> ratingsByUser = new IntObjectHashMap<>();
+    // Guards adding users to ratingsByUser, which only allows one writer at a time
+    private final ReentrantLock newUserLock = new ReentrantLock();
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates an empty store.
+     *
+     * @param userResolver finds a user by ID, returning null if there is none
+     * @param gameResolver finds a game by ID, returning null if there is none
+     */
+    public CompactRatingStore(IntFunction<Users> userResolver, IntFunction<Games> gameResolver) {
+        this.userResolver = userResolver;
+        this.gameResolver = gameResolver;
+    }
+
+    @Override
+    public boolean accepts(int rating) {
+        return rating >= Byte.MIN_VALUE && rating <= Byte.MAX_VALUE;
+    }
+
+    @Override
+    public int put(Users user, Games game, int rating) {
+        if (!accepts(rating)) {
+            throw new IllegalArgumentException("A rating must fit in a byte to be stored compactly");
+        }
+        int previousRating = ratingsFor(user.getUserId()).put(game.getGameId(), (byte) rating);
+        if (previousRating == NO_RATING) {
+            size.increment();
+        }
+        return previousRating;
+    }
+
+    @Override
+    public Map<Games, Integer> getRatings(Users user) {
+        UserRatings userRatings = ratingsByUser.get(user.getUserId());
+        if (userRatings == null) {
+            return new HashMap<>();
+        }
+        return resolveGames(userRatings.current);
+    }
+
+    @Override
+    public Map<Users, Map<Games, Integer>> asMap() {
+        // Built by walking every user the repository knows about
+        Map<Users, Map<Games, Integer>> ratings = new LinkedHashMap<>();
+        ratingsByUser.forEach((userId, userRatings) -> {
+            Users user = userResolver.apply(userId);
+            if (user != null) {
+                ratings.put(user, resolveGames(userRatings.current));
+            }
+        });
+        return ratings;
+    }
+
+    @Override
+    public long size() {
+        return size.sum();
+    }
+
+    @Override
+    public void forEachRating(RatingVisitor visitor) {
+        ratingsByUser.forEach((userId, userRatings) -> {
+            Packed packed = userRatings.current;
+            for (int i = 0; i < packed.size; i++) {
+                visitor.visit(userId, packed.gameIds[i], packed.ratings[i]);
+            }
+        });
+    }
+
+    @Override
+    public int[] userIds() {
+        int[] userIds = new int[ratingsByUser.size()];
+        int[] count = new int[1];
+        ratingsByUser.forEach((userId, userRatings) -> {
+            // A user added since the array was sized is left for the next call
+            if (count[0] < userIds.length) {
+                userIds[count[0]++] = userId;
+            }
+        });
+        return Arrays.copyOf(userIds, count[0]);
+    }
+
+    @Override
+    public void forEachRatingOfUser(int userId, RatingVisitor visitor) {
+        UserRatings userRatings = ratingsByUser.get(userId);
+        if (userRatings != null) {
+            Packed packed = userRatings.current;
+            for (int i = 0; i < packed.size; i++) {
+                visitor.visit(userId, packed.gameIds[i], packed.ratings[i]);
+            }
+        }
+    }
+
+    private Map<Games, Integer> resolveGames(Packed packed) {
+        Map<Games, Integer> ratings = new LinkedHashMap<>();
+        for (int i = 0; i < packed.size; i++) {
+            Games game = gameResolver.apply(packed.gameIds[i]);
+            if (game != null) {
+                ratings.put(game, (int) packed.ratings[i]);
+            }
+        }
+        return ratings;
+    }
+
+    // Returns the ratings record of a user, creating it on their first rating
+    private UserRatings ratingsFor(int userId) {
+        UserRatings userRatings = ratingsByUser.get(userId);
+        if (userRatings == null) {
+            newUserLock.lock();
+            try {
+                userRatings = ratingsByUser.get(userId);
+                if (userRatings == null) {
+                    userRatings = new UserRatings();
+                    ratingsByUser.put(userId, userRatings);
+                }
+            } finally {
+                newUserLock.unlock();
+            }
+        }
+        return userRatings;
+    }
+
+    // The ratings of one user. Writes are serialized by GameRepo's rating lock;..
+    // ..readers take the current Packed and never see it change size under them.
+    private static class UserRatings {
+        private volatile Packed current = new Packed(new int[2], new byte[2], 0);
+
+        int put(int gameId, byte rating) {
+            Packed packed = current;
+            int position = Arrays.binarySearch(packed.gameIds, 0, packed.size, gameId);
+            if (position >= 0) {
+                int previousRating = packed.ratings[position];
+                packed.ratings[position] = rating;
+                // Republish so the new rating is visible to readers
+                current = new Packed(packed.gameIds, packed.ratings, packed.size);
+                return previousRating;
+            }
+            position = -position - 1;
+            int[] gameIds = packed.gameIds;
+            byte[] ratings = packed.ratings;
+            if (position == packed.size && packed.size < gameIds.length) {
+                // Appending past the published size cannot disturb readers
+                gameIds[position] = gameId;
+                ratings[position] = rating;
+            } else {
+                // Otherwise build new arrays, so no reader ever sees entries shift
+                int capacity = packed.size < gameIds.length ? gameIds.length : gameIds.length * 2;
+                gameIds = new int[capacity];
+                ratings = new byte[capacity];
+                System.arraycopy(packed.gameIds, 0, gameIds, 0, position);
+                System.arraycopy(packed.ratings, 0, ratings, 0, position);
+                gameIds[position] = gameId;
+                ratings[position] = rating;
+                System.arraycopy(packed.gameIds, position, gameIds, position + 1, packed.size - position);
+                System.arraycopy(packed.ratings, position, ratings, position + 1, packed.size - position);
+            }
+            current = new Packed(gameIds, ratings, packed.size + 1);
+            return NO_RATING;
+        }
+    }
+
+    // The first size entries of two parallel arrays, sorted by game ID
+    private static class Packed {
+        private final int[] gameIds;
+        private final byte[] ratings;
+        private final int size;
+
+        Packed(int[] gameIds, byte[] ratings, int size) {
+            this.gameIds = gameIds;
+            this.ratings = ratings;
+            this.size = size;
+        }
+    }
+}
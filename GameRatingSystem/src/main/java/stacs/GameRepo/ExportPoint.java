@@ -0,0 +1,103 @@
+package stacs.GameRepo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A moment the ratings are exported as of, so every page of an export, however long it runs
+ * and however many requests it takes, reads the ratings as they were when it was opened.
+ *
+ * <p>Nothing is copied when a point is opened. Instead, the first time a user's ratings change
+ * after it, GameRepo saves the ratings the change replaces here, unless the export has already
+ * moved past the user. An export reads a saved copy if there is one and the live ratings
+ * otherwise, so a point only holds the users changed since it was opened and not yet exported.
+ * A point no export has read from for the keep-alive expires, and GameRepo forgets it.
+ */
+public final class ExportPoint {
+    // Readers at or above this value hold the point open; CLOSED once it has expired
+    private static final int CLOSED = -1;
+
+    private final long id;
+    // User ID -> the user's ratings as of the point, packed as copyRatingsOfUser packs them;..
+    // ..saved and read under the user's rating lock
+    private final ConcurrentHashMap<Integer, long[]> saved = new ConcurrentHashMap<>();
+    // The export has been asked for the users after this ID, so it never reads those before it again
+    private volatile int exportedThrough;
+    // The exports reading from the point now, and when the last of them finished
+    private final AtomicInteger readers = new AtomicInteger();
+    private volatile long idleSince = System.nanoTime();
+
+    ExportPoint(long id, int afterUserId) {
+        this.id = id;
+        this.exportedThrough = afterUserId;
+    }
+
+    /**
+     * Returns the ID an export passes to resume from this point.
+     *
+     * @return the ID of the point
+     */
+    public long getId() {
+        return id;
+    }
+
+    // Whether a change to the user's ratings must save them first; the caller holds the user's rating lock
+    boolean needsCopy(int userId) {
+        return userId > exportedThrough && !saved.containsKey(userId);
+    }
+
+    void save(int userId, long[] ratings) {
+        saved.put(userId, ratings);
+    }
+
+    // The user's ratings as of the point, or null if they have not changed since
+    long[] savedRatingsOf(int userId) {
+        return saved.get(userId);
+    }
+
+    // Moves the export on to the users after the given ID, dropping the copies it no longer needs;..
+    // ..false if it has already moved past that ID
+    synchronized boolean moveTo(int afterUserId) {
+        if (afterUserId < exportedThrough) {
+            return false;
+        }
+        exportedThrough = afterUserId;
+        saved.keySet().removeIf(userId -> userId <= afterUserId);
+        return true;
+    }
+
+    // Registers an export reading from the point; false if it has expired
+    boolean acquire() {
+        int current;
+        do {
+            current = readers.get();
+            if (current == CLOSED) {
+                return false;
+            }
+        } while (!readers.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    void release() {
+        idleSince = System.nanoTime();
+        readers.decrementAndGet();
+    }
+
+    // Closes the point if no export has read from it for the keep-alive; true if it is closed
+    boolean expire(long now, long keepAliveNanos) {
+        if (readers.get() == CLOSED) {
+            return true;
+        }
+        return now - idleSince >= keepAliveNanos && readers.compareAndSet(0, CLOSED);
+    }
+
+    // Releases the point once its export has been read to the end, closing it unless..
+    // ..another export is still reading from it
+    void finish() {
+        if (readers.compareAndSet(1, CLOSED)) {
+            saved.clear();
+        } else {
+            release();
+        }
+    }
+}
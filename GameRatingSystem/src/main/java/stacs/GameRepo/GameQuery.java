@@ -0,0 +1,89 @@
+package stacs.GameRepo;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A query for the games matching every one of the given filters, in the given order.
+ * A filter left null matches every game. Answered by {@link GameRepo#queryGames}.
+ */
+public class GameQuery {
+    /**
+     * The orders the games of a query can be returned in.
+     */
+    public enum Sort {
+        // Ascending game ID
+        ID,
+        // Latest release date first, then ascending game ID; games without a date last
+        NEWEST,
+        // Earliest release date first, then ascending game ID; games without a date last
+        OLDEST,
+        // Highest leaderboard score first, then ascending game ID; unrated games last
+        RATING
+    }
+
+    private List<String> genres;
+    private String platform;
+    private LocalDate releasedFrom;
+    private LocalDate releasedTo;
+    private Sort sort = Sort.ID;
+    private int limit = 100;
+
+    // The genres a game must all have, ignoring case
+    public List<String> getGenres() {
+        return genres;
+    }
+
+    public void setGenres(List<String> genres) {
+        this.genres = genres;
+    }
+
+    // The platform a game must be on, ignoring case
+    public String getPlatform() {
+        return platform;
+    }
+
+    public void setPlatform(String platform) {
+        this.platform = platform;
+    }
+
+    // The earliest release date a game may have, inclusive
+    public LocalDate getReleasedFrom() {
+        return releasedFrom;
+    }
+
+    public void setReleasedFrom(LocalDate releasedFrom) {
+        this.releasedFrom = releasedFrom;
+    }
+
+    // The latest release date a game may have, inclusive
+    public LocalDate getReleasedTo() {
+        return releasedTo;
+    }
+
+    public void setReleasedTo(LocalDate releasedTo) {
+        this.releasedTo = releasedTo;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public void setSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    // The maximum number of games to return
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    // Whether the query has a release date range; games without a date never match one
+    boolean hasReleaseDateRange() {
+        return releasedFrom != null || releasedTo != null;
+    }
+}
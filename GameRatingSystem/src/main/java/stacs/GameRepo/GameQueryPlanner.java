@@ -0,0 +1,371 @@
+package stacs.GameRepo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntPredicate;
+
+import stacs.Games.Games;
+
+/**
+ * Answers a GameQuery by walking one index, the access path, and checking the other
+ * filters against each game it yields, instead of scanning every game.
+ *
+ * <p>Each filter has an index whose size for the query is known up front: the posting
+ * list of each genre and of the platform, an estimate from the release date histogram,
+ * and every game for no filter at all. The path is picked by the number of games it is
+ * expected to read. A path that yields games in the requested order, such as the release
+ * date index for the newest games or the leaderboard for the best rated, stops once the
+ * page is full, so it reads about limit / matches of its games, where matches is the
+ * smallest filter. Any other path reads all of its games and keeps the best limit of them.
+ *
+ * <p>Queries never lock and are safe while another thread adds games or ratings.
+ */
+public class GameQueryPlanner {
+    /**
+     * The index a query walks.
+     */
+    public enum AccessPath {
+        // Every game, in ascending ID order
+        ID_ORDER,
+        // The posting list of one genre, in ascending ID order
+        GENRE,
+        // The posting list of the platform, in ascending ID order
+        PLATFORM,
+        // The release date range, in date order
+        RELEASE_DATE,
+        // The leaderboard, overall or of one genre, best rated first
+        RATING
+    }
+
+    /**
+     * The access path picked for a query and what it is expected to cost.
+     */
+    public static final class Plan {
+        private final AccessPath accessPath;
+        private final String genre;
+        private final long rows;
+        private final double cost;
+        private final boolean ordered;
+
+        Plan(AccessPath accessPath, String genre, long rows, double cost, boolean ordered) {
+            this.accessPath = accessPath;
+            this.genre = genre;
+            this.rows = rows;
+            this.cost = cost;
+            this.ordered = ordered;
+        }
+
+        public AccessPath getAccessPath() {
+            return accessPath;
+        }
+
+        // The genre walked by the GENRE and RATING paths; null for the overall leaderboard or another path
+        public String getGenre() {
+            return genre;
+        }
+
+        // The number of games the path yields
+        public long getRows() {
+            return rows;
+        }
+
+        // The number of games the path is expected to read
+        public double getCost() {
+            return cost;
+        }
+
+        // Whether the path yields games in the requested order, so it can stop early
+        public boolean isOrdered() {
+            return ordered;
+        }
+    }
+
+    private final IntObjectHashMap<Games> gamesById;
+    private final ConcurrentSkipListMap<Integer, Games> gamesInIdOrder;
+    private final GenreIndex genreIndex;
+    private final PlatformIndex platformIndex;
+    private final ReleaseDateIndex releaseDateIndex;
+    private final Leaderboard leaderboard;
+    private final IntObjectHashMap<GameRatingStats> statsByGame;
+
+    GameQueryPlanner(IntObjectHashMap<Games> gamesById, ConcurrentSkipListMap<Integer, Games> gamesInIdOrder,
+                     GenreIndex genreIndex, PlatformIndex platformIndex, ReleaseDateIndex releaseDateIndex,
+                     Leaderboard leaderboard, IntObjectHashMap<GameRatingStats> statsByGame) {
+        this.gamesById = gamesById;
+        this.gamesInIdOrder = gamesInIdOrder;
+        this.genreIndex = genreIndex;
+        this.platformIndex = platformIndex;
+        this.releaseDateIndex = releaseDateIndex;
+        this.leaderboard = leaderboard;
+        this.statsByGame = statsByGame;
+    }
+
+    /**
+     * Picks the access path expected to read the fewest games.
+     *
+     * @param query a valid query
+     * @return the plan to execute it with
+     */
+    public Plan plan(GameQuery query) {
+        long allGames = gamesById.size();
+        GameQuery.Sort sort = query.getSort();
+        // The most selective genre, whose posting list is the shortest
+        String genre = null;
+        long genreRows = allGames;
+        if (query.getGenres() != null) {
+            for (String candidate : query.getGenres()) {
+                long rows = genreIndex.gameIds(candidate).size;
+                if (genre == null || rows < genreRows) {
+                    genre = candidate;
+                    genreRows = rows;
+                }
+            }
+        }
+        long platformRows = query.getPlatform() == null ? allGames : platformIndex.gameIds(query.getPlatform()).size;
+        long dateRows = query.hasReleaseDateRange()
+                ? releaseDateIndex.estimateGames(query.getReleasedFrom(), query.getReleasedTo()) : allGames;
+        // At most as many games match as the most selective filter
+        long matches = Math.min(Math.min(genreRows, platformRows), dateRows);
+
+        List<Plan> plans = new ArrayList<>();
+        if (sort == GameQuery.Sort.RATING) {
+            plans.add(plan(AccessPath.RATING, genre, genreRows, true, matches, query));
+        }
+        if (query.hasReleaseDateRange() || sort == GameQuery.Sort.NEWEST || sort == GameQuery.Sort.OLDEST) {
+            boolean ordered = sort == GameQuery.Sort.NEWEST || sort == GameQuery.Sort.OLDEST;
+            plans.add(plan(AccessPath.RELEASE_DATE, null, dateRows, ordered, matches, query));
+        }
+        if (query.getPlatform() != null) {
+            plans.add(plan(AccessPath.PLATFORM, null, platformRows, sort == GameQuery.Sort.ID, matches, query));
+        }
+        if (genre != null) {
+            plans.add(plan(AccessPath.GENRE, genre, genreRows, sort == GameQuery.Sort.ID, matches, query));
+        }
+        plans.add(plan(AccessPath.ID_ORDER, null, allGames, sort == GameQuery.Sort.ID, matches, query));
+
+        // The cheapest path; on a tie the earlier, more specific one
+        Plan best = plans.get(0);
+        for (Plan plan : plans) {
+            if (plan.cost < best.cost) {
+                best = plan;
+            }
+        }
+        return best;
+    }
+
+    private static Plan plan(AccessPath accessPath, String genre, long rows, boolean ordered, long matches,
+                             GameQuery query) {
+        double cost = rows;
+        if (ordered && matches > query.getLimit()) {
+            // Only the games up to the limit-th match are read
+            cost = rows * (double) query.getLimit() / matches;
+        }
+        return new Plan(accessPath, genre, rows, cost, ordered);
+    }
+
+    /**
+     * Executes a query along a plan made for it.
+     *
+     * @param query a valid query
+     * @param plan  the plan picked for the query
+     * @return up to limit matching games, in the requested order
+     */
+    public List<Games> execute(GameQuery query, Plan plan) {
+        return execute(query, plan, false);
+    }
+
+    private List<Games> execute(GameQuery query, Plan plan, boolean unratedOnly) {
+        Filter filter = new Filter(query, plan, unratedOnly);
+        int limit = query.getLimit();
+        if (plan.ordered) {
+            List<Games> games = new ArrayList<>(Math.min(limit, 64));
+            walk(query, plan, gameId -> {
+                Games game = filter.match(gameId);
+                if (game != null) {
+                    games.add(game);
+                }
+                return games.size() < limit;
+            });
+            if (plan.accessPath == AccessPath.RATING && games.size() < limit) {
+                games.addAll(unratedGames(query, limit - games.size()));
+            }
+            return games;
+        }
+
+        // Keep the best limit games, with the worst of them at the head
+        Comparator<Candidate> order = order(query.getSort());
+        PriorityQueue<Candidate> best = new PriorityQueue<>(order.reversed());
+        walk(query, plan, gameId -> {
+            Games game = filter.match(gameId);
+            if (game != null) {
+                best.add(new Candidate(game, score(gameId)));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            return true;
+        });
+        List<Candidate> candidates = new ArrayList<>(best);
+        candidates.sort(order);
+        List<Games> games = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            games.add(candidate.game);
+        }
+        return games;
+    }
+
+    // Visits the IDs the plan's path yields, in its order, until the visitor returns false
+    private void walk(GameQuery query, Plan plan, IntPredicate visitor) {
+        switch (plan.accessPath) {
+            case ID_ORDER:
+                for (int gameId : gamesInIdOrder.keySet()) {
+                    if (!visitor.test(gameId)) {
+                        return;
+                    }
+                }
+                break;
+            case GENRE:
+                walk(genreIndex.gameIds(plan.genre), visitor);
+                break;
+            case PLATFORM:
+                walk(platformIndex.gameIds(query.getPlatform()), visitor);
+                break;
+            case RELEASE_DATE:
+                boolean newestFirst = query.getSort() == GameQuery.Sort.NEWEST;
+                // Without a range every game is walked, those without a date last
+                if (releaseDateIndex.forEachGameId(query.getReleasedFrom(), query.getReleasedTo(), newestFirst, visitor)
+                        && !query.hasReleaseDateRange()) {
+                    releaseDateIndex.forEachUndatedGameId(visitor);
+                }
+                break;
+            case RATING:
+                // A game re-rated ahead of the walk is met again; visit it only the first time
+                Set<Integer> visited = new HashSet<>();
+                for (Leaderboard.Entry entry : leaderboard.ranking(plan.genre)) {
+                    if (visited.add(entry.getGameId()) && !visitor.test(entry.getGameId())) {
+                        return;
+                    }
+                }
+                break;
+        }
+    }
+
+    private static void walk(PostingList.Postings postings, IntPredicate visitor) {
+        for (int i = 0; i < postings.size; i++) {
+            if (!visitor.test(postings.ids[i])) {
+                return;
+            }
+        }
+    }
+
+    // The matching games that have not been rated, in ascending ID order, which follow..
+    // ..the rated ones when a page walked from the leaderboard is not full
+    private List<Games> unratedGames(GameQuery query, int limit) {
+        GameQuery byId = new GameQuery();
+        byId.setGenres(query.getGenres());
+        byId.setPlatform(query.getPlatform());
+        byId.setReleasedFrom(query.getReleasedFrom());
+        byId.setReleasedTo(query.getReleasedTo());
+        byId.setSort(GameQuery.Sort.ID);
+        byId.setLimit(limit);
+        return execute(byId, plan(byId), true);
+    }
+
+    // The leaderboard score of a game; NaN if it has not been rated
+    private double score(int gameId) {
+        GameRatingStats stats = statsByGame.get(gameId);
+        Leaderboard.Entry entry = stats == null ? null : stats.rankEntry();
+        return entry == null ? Double.NaN : entry.getScore();
+    }
+
+    // The requested order, with ascending ID breaking ties so it is total
+    private static Comparator<Candidate> order(GameQuery.Sort sort) {
+        Comparator<Candidate> byId = Comparator.comparingInt(candidate -> candidate.game.getGameId());
+        switch (sort) {
+            case NEWEST:
+                return Comparator.comparing((Candidate candidate) -> candidate.game.getReleaseDate(),
+                        Comparator.nullsLast(Comparator.<LocalDate>reverseOrder())).thenComparing(byId);
+            case OLDEST:
+                return Comparator.comparing((Candidate candidate) -> candidate.game.getReleaseDate(),
+                        Comparator.nullsLast(Comparator.<LocalDate>naturalOrder())).thenComparing(byId);
+            case RATING:
+                // Unrated games, scored NaN, go last
+                return Comparator.comparing((Candidate candidate) -> Double.isNaN(candidate.score))
+                        .thenComparing(Comparator.comparingDouble((Candidate candidate) -> candidate.score).reversed())
+                        .thenComparing(byId);
+            default:
+                return byId;
+        }
+    }
+
+    // A matching game and its leaderboard score, while it is being ranked
+    private static final class Candidate {
+        private final Games game;
+        private final double score;
+
+        Candidate(Games game, double score) {
+            this.game = game;
+            this.score = score;
+        }
+    }
+
+    // The filters of a query other than the one the plan's path already applies
+    private final class Filter {
+        private final List<PostingList.Postings> genreLists = new ArrayList<>();
+        private final PostingList.Postings platformList;
+        private final LocalDate releasedFrom;
+        private final LocalDate releasedTo;
+        private final boolean checkDates;
+        private final boolean unratedOnly;
+
+        Filter(GameQuery query, Plan plan, boolean unratedOnly) {
+            if (query.getGenres() != null) {
+                for (String genre : query.getGenres()) {
+                    if (!genre.equals(plan.genre)) {
+                        genreLists.add(genreIndex.gameIds(genre));
+                    }
+                }
+            }
+            platformList = query.getPlatform() == null || plan.accessPath == AccessPath.PLATFORM
+                    ? null : platformIndex.gameIds(query.getPlatform());
+            releasedFrom = query.getReleasedFrom();
+            releasedTo = query.getReleasedTo();
+            checkDates = query.hasReleaseDateRange() && plan.accessPath != AccessPath.RELEASE_DATE;
+            this.unratedOnly = unratedOnly;
+        }
+
+        // The game if it matches; null if it does not or was only rated, never added
+        Games match(int gameId) {
+            Games game = gamesById.get(gameId);
+            if (game == null) {
+                return null;
+            }
+            for (PostingList.Postings genreList : genreLists) {
+                if (!genreList.contains(gameId)) {
+                    return null;
+                }
+            }
+            if (platformList != null && !platformList.contains(gameId)) {
+                return null;
+            }
+            if (checkDates) {
+                LocalDate releaseDate = game.getReleaseDate();
+                if (releaseDate == null
+                        || releasedFrom != null && releaseDate.isBefore(releasedFrom)
+                        || releasedTo != null && releaseDate.isAfter(releasedTo)) {
+                    return null;
+                }
+            }
+            if (unratedOnly && !Double.isNaN(score(gameId))) {
+                return null;
+            }
+            return game;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package stacs.GameRepo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The reverse side of the ratings: every user who rated one game, with their rating,
+ * ordered by user ID so it can be paged through with a user-ID cursor.
+ *
+ * <p>Entries are kept in sorted chunks of at most {@value #CHUNK_CAPACITY} primitive
+ * pairs, so inserting a new rater only shifts one small chunk, and no rating is boxed.
+ * Writers take a write lock; pages are read under an optimistic read, falling back to
+ * a read lock if a write raced with the copy.
+ */
+public class GameRaters {
+    // Returned by put() when the user had not rated the game before
+    public static final int NO_RATING = Integer.MIN_VALUE;
+    private static final int CHUNK_CAPACITY = 256;
+    private static final int INITIAL_CHUNK_CAPACITY = 4;
+
+    private final StampedLock lock = new StampedLock();
+    private Chunk[] chunks = {new Chunk(INITIAL_CHUNK_CAPACITY)};
+    private int chunkCount = 1;
+    private int size;
+
+    /**
+     * Stores a user's rating of the game, replacing their previous rating.
+     *
+     * @param userId the ID of the user
+     * @param rating the rating value
+     * @return the previous rating, or {@link #NO_RATING} if the user had not rated the game
+     */
+    public int put(int userId, int rating) {
+        long stamp = lock.writeLock();
+        try {
+            int chunkIndex = findChunk(userId);
+            Chunk chunk = chunks[chunkIndex];
+            int position = chunk.indexOf(userId);
+            if (position >= 0) {
+                int previous = chunk.ratings[position];
+                chunk.ratings[position] = rating;
+                return previous;
+            }
+            if (chunk.size == CHUNK_CAPACITY) {
+                // Split the full chunk in two and insert into whichever half covers the user
+                Chunk upper = chunk.splitUpperHalf();
+                insertChunk(chunkIndex + 1, upper);
+                if (userId > upper.userIds[0]) {
+                    chunk = upper;
+                }
+                position = chunk.indexOf(userId);
+            }
+            chunk.insert(-position - 1, userId, rating);
+            size++;
+            return NO_RATING;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns a page of raters with user IDs greater than the cursor.
+     *
+     * @param afterUserId only return users with a greater ID; 0 to start from the beginning
+     * @param limit       the maximum number of raters to return
+     * @return up to limit ratings in ascending user ID order
+     */
+    public List<UserRating> page(int afterUserId, int limit) {
+        long stamp = lock.tryOptimisticRead();
+        List<UserRating> page = copyPage(afterUserId, limit);
+        if (page == null || !lock.validate(stamp)) {
+            // A write raced with the copy, so take it again under the read lock
+            stamp = lock.readLock();
+            try {
+                page = copyPage(afterUserId, limit);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Returns the number of users who rated the game.
+     *
+     * @return the number of raters
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int currentSize = size;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                currentSize = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return currentSize;
+    }
+
+    // Copies a page; returns null if it ran into a torn state during an optimistic read
+    private List<UserRating> copyPage(int afterUserId, int limit) {
+        List<UserRating> page = new ArrayList<>(Math.min(limit, CHUNK_CAPACITY));
+        try {
+            int count = chunkCount;
+            Chunk[] current = chunks;
+            for (int c = findChunk(afterUserId); c < count && page.size() < limit; c++) {
+                Chunk chunk = current[c];
+                int chunkSize = chunk.size;
+                int position = chunk.indexOf(afterUserId);
+                int from = position >= 0 ? position + 1 : -position - 1;
+                for (int i = from; i < chunkSize && page.size() < limit; i++) {
+                    page.add(new UserRating(chunk.userIds[i], chunk.ratings[i]));
+                }
+            }
+        } catch (RuntimeException tornRead) {
+            return null;
+        }
+        return page;
+    }
+
+    // Returns the last chunk whose first user ID is not greater than the given ID
+    private int findChunk(int userId) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            Chunk chunk = chunks[middle];
+            if (chunk.size > 0 && chunk.userIds[0] <= userId) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void insertChunk(int index, Chunk chunk) {
+        if (chunkCount == chunks.length) {
+            Chunk[] grown = new Chunk[chunks.length * 2];
+            System.arraycopy(chunks, 0, grown, 0, chunkCount);
+            chunks = grown;
+        }
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        chunks[index] = chunk;
+        chunkCount++;
+    }
+
+    // A sorted run of user IDs with their ratings.
+    // Chunks start small, since most games only have a few raters.
+    private static class Chunk {
+        private int[] userIds;
+        private int[] ratings;
+        private int size;
+
+        Chunk(int capacity) {
+            userIds = new int[capacity];
+            ratings = new int[capacity];
+        }
+
+        // Same result as Arrays.binarySearch: the position, or -(insertion point) - 1
+        int indexOf(int userId) {
+            return Arrays.binarySearch(userIds, 0, size, userId);
+        }
+
+        void insert(int position, int userId, int rating) {
+            if (size == userIds.length) {
+                userIds = Arrays.copyOf(userIds, Math.min(size * 2, CHUNK_CAPACITY));
+                ratings = Arrays.copyOf(ratings, userIds.length);
+            }
+            System.arraycopy(userIds, position, userIds, position + 1, size - position);
+            System.arraycopy(ratings, position, ratings, position + 1, size - position);
+            userIds[position] = userId;
+            ratings[position] = rating;
+            size++;
+        }
+
+        // Moves the upper half of the entries into a new chunk
+        Chunk splitUpperHalf() {
+            Chunk upper = new Chunk(CHUNK_CAPACITY);
+            int half = size / 2;
+            upper.size = size - half;
+            System.arraycopy(userIds, half, upper.userIds, 0, upper.size);
+            System.arraycopy(ratings, half, upper.ratings, 0, upper.size);
+            size = half;
+            return upper;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package stacs.GameRepo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Running rating aggregates for a single game: the number of ratings, their sum,
+ * their sum of squares and how many times each rating value was given.
+ * GameRepo updates it in O(1) whenever a rating of the game is added or replaced,
+ * so the mean, variance and distribution never need a scan of the ratings.
+ * Each update also repositions the game on the leaderboard.
+ *
+ * <p>Updates take a write lock; summaries use an optimistic read and only fall
+ * back to a read lock if an update happened while they were copying.
+ */
+public class GameRatingStats {
+    private final int gameId;
+    // Case-folded genres of the game, for the per-genre leaderboards
+    private List<String> genres;
+    private final Leaderboard leaderboard;
+    private final StampedLock lock = new StampedLock();
+    private long count;
+    private long sum;
+    private long sumOfSquares;
+    // Distinct rating values in ascending order, with how often each was given
+    private int[] ratingValues = new int[0];
+    private long[] ratingCounts = new long[0];
+    // The game's current leaderboard entry; null until it is rated.
+    // Volatile so it can be read without the lock
+    private volatile Leaderboard.Entry rankEntry;
+
+    /**
+     * Creates empty aggregates for a game.
+     *
+     * @param gameId      the ID of the game
+     * @param genres      the case-folded genres of the game
+     * @param leaderboard the leaderboard to keep the game's position on
+     */
+    public GameRatingStats(int gameId, List<String> genres, Leaderboard leaderboard) {
+        this.gameId = gameId;
+        this.genres = genres;
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * Records a rating, replacing the user's previous rating of the game if there was one.
+     *
+     * @param previousRating the rating it replaces, or RatingStore.NO_RATING for a new rating
+     * @param rating         the new rating value
+     */
+    public void update(int previousRating, int rating) {
+        long stamp = lock.writeLock();
+        try {
+            if (previousRating != RatingStore.NO_RATING) {
+                record(previousRating, -1);
+            }
+            record(rating, 1);
+            // Repositioning under the write lock keeps updates to this game in order
+            rankEntry = leaderboard.reposition(rankEntry, gameId, genres, count, sum);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the genres of the game, moving it to the matching per-genre leaderboards.
+     * Used when a game that already has ratings is added to the repository.
+     *
+     * @param genres the case-folded genres of the game
+     */
+    public void setGenres(List<String> genres) {
+        long stamp = lock.writeLock();
+        try {
+            // Take the game off the old genre rankings, then rank it under the new ones
+            leaderboard.reposition(rankEntry, gameId, this.genres, 0, 0);
+            this.genres = genres;
+            rankEntry = leaderboard.reposition(null, gameId, genres, count, sum);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The game's current leaderboard entry; null while it has no ratings
+    Leaderboard.Entry rankEntry() {
+        return rankEntry;
+    }
+
+    /**
+     * Takes a consistent snapshot of the aggregates.
+     *
+     * @return the summary of the ratings recorded so far
+     */
+    public RatingSummary summarize() {
+        long stamp = lock.tryOptimisticRead();
+        RatingSummary summary = copy();
+        if (!lock.validate(stamp)) {
+            // An update raced with the copy, so take it again under the read lock
+            stamp = lock.readLock();
+            try {
+                summary = copy();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return summary;
+    }
+
+    // Adds (delta = 1) or removes (delta = -1) one rating of the given value
+    private void record(int rating, int delta) {
+        count += delta;
+        sum += (long) delta * rating;
+        sumOfSquares += (long) delta * rating * rating;
+        int position = Arrays.binarySearch(ratingValues, rating);
+        if (position < 0) {
+            // First time this value is seen: insert it in order
+            position = -position - 1;
+            int[] values = new int[ratingValues.length + 1];
+            long[] counts = new long[ratingCounts.length + 1];
+            System.arraycopy(ratingValues, 0, values, 0, position);
+            System.arraycopy(ratingCounts, 0, counts, 0, position);
+            values[position] = rating;
+            System.arraycopy(ratingValues, position, values, position + 1, ratingValues.length - position);
+            System.arraycopy(ratingCounts, position, counts, position + 1, ratingCounts.length - position);
+            ratingValues = values;
+            ratingCounts = counts;
+        }
+        ratingCounts[position] += delta;
+    }
+
+    // Copies the fields into a summary; may see a torn state, which the caller validates
+    private RatingSummary copy() {
+        int[] values = ratingValues;
+        long[] counts = ratingCounts;
+        int length = Math.min(values.length, counts.length);
+        return new RatingSummary(gameId, count, sum, sumOfSquares,
+                Arrays.copyOf(values, length), Arrays.copyOf(counts, length));
+    }
+}
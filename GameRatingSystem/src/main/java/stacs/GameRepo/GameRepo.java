@@ -1,28 +1,432 @@
 package stacs.GameRepo;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import stacs.Games.Games;
 import stacs.Users.Users;
 
+/**
+ * GameRepo stores the games, users and ratings, and is shared by every request thread.
+ *
+ * <p>Reads never lock. Adding games and users and renaming users are serialized on a
+ * single catalogue lock, so the duplicate check and the insert happen atomically.
+ * Ratings are written under one of a fixed set of locks chosen by user ID, so ratings
+ * by different users can be written in parallel.
+ *
+ * <p>The user -> (game -> rating) side of the ratings is kept in a pluggable RatingStore,
+ * chosen by the {@code gamerepo.rating-store} property. A store that outlives the process,
+ * such as the memory-mapped one, is replayed into the per-game indexes when the repository starts.
+ *
+ * <p>With {@code gamerepo.wal-enabled} set, every change is also appended to a WriteAheadLog
+ * while its lock is held, and the method returns once the record has reached the configured
+ * durability. The wait happens after the lock is released, so concurrent changes share a flush.
+ *
+ * <p>With {@code gamerepo.snapshot-enabled} set, a background thread also writes a snapshot
+ * every {@code gamerepo.snapshot-interval}. On startup the newest snapshot is loaded and only
+ * the part of the log written after it is replayed. Each snapshot starts a new segment of
+ * the log and deletes the segments older than the oldest snapshot kept.
+ *
+ * <p>With {@code gamerepo.recommendations-enabled} set, an ItemSimilarityIndex of the most
+ * similar games of each game is rebuilt in the background every
+ * {@code gamerepo.recommendation-rebuild-interval}, starting one refresh interval after
+ * startup, and refreshed for newly rated games every
+ * {@code gamerepo.recommendation-refresh-interval}.
+ *
+ * <p>With {@code gamerepo.similar-games-enabled} set, a SimilarGamesIndex of the genres and
+ * raters of each game is built in parallel once the repository has loaded, and kept up to
+ * date by addGame and addRating.
+ *
+ * <p>Each public operation is timed in GameRepoMetrics, and the number of games, users and
+ * ratings, the size of each index and the threads waiting on each lock are reported as gauges.
+ */
 @Repository
 public class GameRepo {
-    private ArrayList<Games> listOfGames = new ArrayList<>();
-    private ArrayList<Users> listOfUsers = new ArrayList<>();
-    private Map<Users, Map<Games, Integer>> userGameRatings = new HashMap<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(GameRepo.class);
+    // Number of rating locks; a power of two so a lock can be picked with a mask
+    private static final int RATING_LOCK_STRIPES = 64;
 
+    private AppendOnlyArray<Games> listOfGames = new AppendOnlyArray<>();
+    private AppendOnlyArray<Users> listOfUsers = new AppendOnlyArray<>();
+    private final RatingStore ratingStore;
+    // ID indexes kept alongside the lists so lookups and duplicate checks are O(1)
+    private IntObjectHashMap<Games> gamesById = new IntObjectHashMap<>();
+    private IntObjectHashMap<Users> usersById = new IntObjectHashMap<>();
+    // The same games and users ordered by ID, so pages can start anywhere in O(log n)
+    private ConcurrentSkipListMap<Integer, Games> gamesInIdOrder = new ConcurrentSkipListMap<>();
+    private ConcurrentSkipListMap<Integer, Users> usersInIdOrder = new ConcurrentSkipListMap<>();
+    // Case-folded title index used for the title-uniqueness check
+    private Map<String, Games> gamesByTitle = new ConcurrentHashMap<>();
+    // Genre -> game ID posting lists used by listGamesByGenre and queryGames
+    private GenreIndex genreIndex = new GenreIndex();
+    // Platform -> game ID posting lists and release date -> game IDs, used by queryGames
+    private PlatformIndex platformIndex = new PlatformIndex();
+    private ReleaseDateIndex releaseDateIndex = new ReleaseDateIndex();
+    // Title term -> game ID posting lists used by searchGames
+    private TitleSearchIndex titleIndex = new TitleSearchIndex();
+    // Per-game rating aggregates, kept up to date by addRating
+    private IntObjectHashMap<GameRatingStats> statsByGame = new IntObjectHashMap<>();
+    // Game -> (user ID -> rating), the reverse of userGameRatings
+    private IntObjectHashMap<GameRaters> ratersByGame = new IntObjectHashMap<>();
+    // User ID -> a counter bumped whenever what getRatingsOfUser returns for the user may change
+    private IntObjectHashMap<AtomicLong> ratingsVersions = new IntObjectHashMap<>();
+    // The IDs of the users with at least one rating, in ascending order, for listRatedUserIds
+    private ConcurrentSkipListSet<Integer> ratedUserIds = new ConcurrentSkipListSet<>();
+    // The open ratings export points by ID, how the next one is numbered and how long an..
+    // ..idle one is kept
+    private final Map<Long, ExportPoint> exportPoints = new ConcurrentHashMap<>();
+    private final AtomicLong nextExportPointId = new AtomicLong(System.currentTimeMillis());
+    private final long exportPointKeepAliveNanos;
+    // Bumped whenever a user is added or renamed, and whenever a game is added, in total..
+    // ..and for each of its case-folded genres; only written under the catalogue lock
+    private volatile long usersVersion;
+    private volatile long gamesVersion;
+    private Map<String, AtomicLong> genreVersions = new ConcurrentHashMap<>();
+    // Rated games ordered by Bayesian-weighted average, updated with the aggregates
+    private Leaderboard leaderboard = new Leaderboard();
+    // Picks the index a queryGames call walks
+    private final GameQueryPlanner queryPlanner = new GameQueryPlanner(gamesById, gamesInIdOrder,
+            genreIndex, platformIndex, releaseDateIndex, leaderboard, statsByGame);
+    // Log of every change, replayed on startup; null when the log is disabled
+    private final WriteAheadLog writeAheadLog;
+    // Snapshots of the games, users and ratings, and the thread taking them; null when disabled
+    private final SnapshotStore snapshotStore;
+    private final ScheduledExecutorService snapshotScheduler;
+    // Only one snapshot is written at a time
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    // Similar games used for recommendations, the thread keeping them current and..
+    // ..the pool a rebuild is spread over; null when disabled
+    private final ItemSimilarityIndex similarityIndex;
+    private final ScheduledExecutorService similarityScheduler;
+    private final ForkJoinPool similarityPool;
+    // Genre and rater signatures used to find similar games; null when disabled
+    private final SimilarGamesIndex similarGamesIndex;
 
-    // A getter for the listOfGames arrayList
-    public ArrayList<Games> getGames() {
-        return listOfGames;
+    // Guards every change to the games, users and their indexes. These are ReentrantLocks..
+    // ..rather than monitors because the write-ahead log and the mapped store can block..
+    // ..while they are held, which would pin a virtual thread to its carrier inside synchronized
+    private final ReentrantLock catalogueLock = new ReentrantLock();
+    // Guards rating writes, picked by user ID
+    private final ReentrantLock[] ratingLocks = new ReentrantLock[RATING_LOCK_STRIPES];
+
+    private final GameRepoMetrics metrics;
+
+    // Creates a repository with the default settings
+    public GameRepo() {
+        this(new GameRepoProperties());
     }
 
-    // A getter for the listOfUsers arrayList
-    public ArrayList<Users> getUsers() {
-        return listOfUsers;
+    // Creates a repository configured by the given settings, without metrics
+    public GameRepo(GameRepoProperties properties) {
+        // A composite registry with nothing added to it hands out meters that do nothing
+        this(properties, new CompositeMeterRegistry());
+    }
+
+    /**
+     * Creates a repository configured by the given settings, reporting to the given registry.
+     *
+     * @param properties    the gamerepo.* settings from application.properties
+     * @param meterRegistry the registry to register the timers and gauges in
+     * @throws IllegalStateException if the mapped rating store is chosen without the write-ahead log
+     */
+    @Autowired
+    public GameRepo(GameRepoProperties properties, MeterRegistry meterRegistry) {
+        metrics = new GameRepoMetrics(meterRegistry);
+        exportPointKeepAliveNanos = properties.getExportPointKeepAlive().toNanos();
+        for (int i = 0; i < ratingLocks.length; i++) {
+            ratingLocks[i] = new ReentrantLock();
+        }
+        if (properties.getRatingStore() == GameRepoProperties.RatingStoreType.MAPPED && !properties.isWalEnabled()) {
+            // The mapped file is only consistent on disk after a clean close; the log rebuilds it after a crash
+            throw new IllegalStateException("The mapped rating store requires gamerepo.wal-enabled=true");
+        }
+        ratingStore = switch (properties.getRatingStore()) {
+            case MAP -> new MapRatingStore();
+            // The stores resolve IDs through the indexes directly, so their lookups are not timed
+            case COMPACT -> new CompactRatingStore(usersById::get, gamesById::get);
+            case MAPPED -> new MappedRatingStore(Path.of(properties.getDataDirectory(), "ratings.bin"),
+                    usersById::get, gamesById::get);
+        };
+        // Created before anything is replayed, although it only tracks changes once it is first built
+        similarityIndex = properties.isRecommendationsEnabled()
+                ? new ItemSimilarityIndex(this, properties.getRecommendationNeighbours(),
+                        properties.getRecommendationRefreshMaxRaters())
+                : null;
+        similarGamesIndex = properties.isSimilarGamesEnabled() ? new SimilarGamesIndex(this) : null;
+        // Rebuild the reverse index and aggregates of any ratings the store already holds
+        ratingStore.forEachRating((userId, gameId, rating) -> {
+            ratedUserIds.add(userId);
+            ratersFor(gameId).put(userId, rating);
+            statsFor(gameId).update(RatingStore.NO_RATING, rating);
+        });
+        Replayer replayer = new Replayer();
+        long replayFromLsn = 0;
+        // A store closed cleanly already holds the ratings logged before this; the games..
+        // ..and users are only in the log and the snapshots, so they are still replayed
+        long ratingsFromLsn = ratingStore.walLsn();
+        if (properties.isSnapshotEnabled()) {
+            snapshotStore = new SnapshotStore(Path.of(properties.getDataDirectory(), "snapshots"));
+            SnapshotStore.Snapshot snapshot = snapshotStore.loadLatest();
+            if (snapshot != null) {
+                restore(snapshot, replayer, snapshot.getWalLsn() > ratingsFromLsn);
+                replayFromLsn = snapshot.getWalLsn();
+                snapshot.close();
+            }
+        } else {
+            snapshotStore = null;
+        }
+        if (properties.isWalEnabled()) {
+            WriteAheadLog log = new WriteAheadLog(Path.of(properties.getDataDirectory(), "gamerepo.wal"),
+                    properties.getWalDurability(), properties.getWalFlushInterval(),
+                    properties.getWalGroupCommitBytes());
+            // Replay before the field is set, so the replayed changes are not logged again
+            log.replay(replayer, replayFromLsn, ratingsFromLsn);
+            log.start();
+            writeAheadLog = log;
+        } else {
+            writeAheadLog = null;
+        }
+        if (similarGamesIndex != null) {
+            // Everything is loaded, so the raters are read once, in parallel, rather than one rating at a time
+            similarGamesIndex.buildRaters();
+        }
+        if (snapshotStore != null) {
+            // The snapshot thread spends its time writing files, so it can be virtual;..
+            // ..the log's flusher stays a platform thread, as its fsync calls would hold a carrier anyway
+            ThreadFactory threadFactory = properties.isVirtualThreads()
+                    ? Thread.ofVirtual().name("gamerepo-snapshotter").factory()
+                    : Thread.ofPlatform().name("gamerepo-snapshotter").daemon().factory();
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            long interval = properties.getSnapshotInterval().toMillis();
+            snapshotScheduler.scheduleWithFixedDelay(this::takeScheduledSnapshot,
+                    interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            snapshotScheduler = null;
+        }
+        if (similarityIndex != null) {
+            // Rebuilds are CPU bound, so they get their own pool of platform threads rather..
+            // ..than the common pool the request threads may use, leaving a core for requests
+            similarityPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+            similarityScheduler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("gamerepo-similarity").daemon().factory());
+            // One thread, so a refresh never runs during a rebuild. The first rebuild waits a..
+            // ..refresh interval, so it does not compete with startup; refreshes do nothing until then
+            long rebuildInterval = properties.getRecommendationRebuildInterval().toMillis();
+            long refreshInterval = properties.getRecommendationRefreshInterval().toMillis();
+            similarityScheduler.scheduleWithFixedDelay(this::rebuildScheduledSimilarities,
+                    refreshInterval, rebuildInterval, TimeUnit.MILLISECONDS);
+            similarityScheduler.scheduleWithFixedDelay(this::refreshScheduledSimilarities,
+                    refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        } else {
+            similarityPool = null;
+            similarityScheduler = null;
+        }
+        registerGauges(meterRegistry);
+    }
+
+    // Reports the sizes and lock queues; the gauges are read when the metrics are scraped
+    private void registerGauges(MeterRegistry meterRegistry) {
+        Gauge.builder("gamerepo.games", this, repo -> repo.listOfGames.size())
+                .description("Number of games").register(meterRegistry);
+        Gauge.builder("gamerepo.users", this, repo -> repo.listOfUsers.size())
+                .description("Number of users").register(meterRegistry);
+        Gauge.builder("gamerepo.ratings", this, repo -> repo.ratingStore.size())
+                .description("Number of ratings").register(meterRegistry);
+        if (ratingStore instanceof MappedRatingStore mappedStore) {
+            Gauge.builder("gamerepo.ratings.dead.bytes", mappedStore, MappedRatingStore::deadBytes)
+                    .description("Bytes of the rating file taken by outgrown blocks and padding")
+                    .baseUnit("bytes").register(meterRegistry);
+        }
+        indexGauge(meterRegistry, "gamesById", repo -> repo.gamesById.size());
+        indexGauge(meterRegistry, "usersById", repo -> repo.usersById.size());
+        indexGauge(meterRegistry, "gamesByTitle", repo -> repo.gamesByTitle.size());
+        indexGauge(meterRegistry, "genres", repo -> repo.genreIndex.size());
+        indexGauge(meterRegistry, "platforms", repo -> repo.platformIndex.size());
+        indexGauge(meterRegistry, "releaseDates", repo -> repo.releaseDateIndex.size());
+        indexGauge(meterRegistry, "titleTerms", repo -> repo.titleIndex.size());
+        indexGauge(meterRegistry, "ratersByGame", repo -> repo.ratersByGame.size());
+        indexGauge(meterRegistry, "statsByGame", repo -> repo.statsByGame.size());
+        Gauge.builder("gamerepo.lock.waiting", this, repo -> repo.catalogueLock.getQueueLength())
+                .description("Threads waiting for a GameRepo lock")
+                .tag("lock", "catalogue").register(meterRegistry);
+        Gauge.builder("gamerepo.lock.waiting", this, repo -> {
+            int waiting = 0;
+            for (ReentrantLock ratingLock : repo.ratingLocks) {
+                waiting += ratingLock.getQueueLength();
+            }
+            return waiting;
+        }).description("Threads waiting for a GameRepo lock")
+                .tag("lock", "rating").register(meterRegistry);
+    }
+
+    private void indexGauge(MeterRegistry meterRegistry, String index, ToDoubleFunction<GameRepo> size) {
+        Gauge.builder("gamerepo.index.size", this, size)
+                .description("Number of keys in a GameRepo index")
+                .tag("index", index).register(meterRegistry);
+    }
+
+    // Loads a snapshot: the catalogue by a single writer, the ratings by every core unless..
+    // ..the rating store is already further on than the snapshot
+    private void restore(SnapshotStore.Snapshot snapshot, Replayer replayer, boolean ratings) {
+        for (Games game : snapshot.getGames()) {
+            addGame(game);
+        }
+        for (Users user : snapshot.getUsers()) {
+            addUser(user);
+        }
+        if (ratings) {
+            // addRating is safe to call from many threads, so the blocks are applied in parallel
+            snapshot.forEachRating(replayer::addRating);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the games, users and ratings without stopping writers.
+     *
+     * @return the path of the snapshot written
+     */
+    public Path takeSnapshot() {
+        if (snapshotStore == null) {
+            throw new IllegalStateException("Snapshots are not enabled");
+        }
+        long start = System.nanoTime();
+        snapshotLock.lock();
+        try {
+            long walLsn = writeAheadLog == null ? 0 : writeAheadLog.appendedLsn();
+            // Games, users and renames are logged just before they are applied under the..
+            // ..catalogue lock, so passing through it means every one logged before walLsn is applied
+            catalogueLock.lock();
+            catalogueLock.unlock();
+            Path snapshot = snapshotStore.write(walLsn, ratingStore, this::getUsers, this::getGames);
+            if (writeAheadLog != null) {
+                // The snapshot is on disk, so the log is only needed from the oldest one kept
+                writeAheadLog.rotate();
+                writeAheadLog.deleteSegmentsBefore(snapshotStore.oldestWalLsn());
+            }
+            GameRepoMetrics.record(metrics.takeSnapshot, start);
+            return snapshot;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Runs on the snapshot thread; a failure is logged so the next snapshot is still taken
+    private void takeScheduledSnapshot() {
+        try {
+            takeSnapshot();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not take a snapshot", e);
+        }
+    }
+
+    /**
+     * Recomputes the similar games of every rated game, which recommendations are made from.
+     *
+     * @throws IllegalStateException if recommendations are not enabled
+     */
+    public void rebuildSimilarities() {
+        if (similarityIndex == null) {
+            throw new IllegalStateException("Recommendations are not enabled");
+        }
+        long start = System.nanoTime();
+        similarityIndex.rebuild(similarityPool);
+        GameRepoMetrics.record(metrics.rebuildSimilarities, start);
+    }
+
+    /**
+     * Recomputes the similar games of the games rated since the last rebuild or refresh.
+     *
+     * @return the number of games recomputed
+     * @throws IllegalStateException if recommendations are not enabled
+     */
+    public int refreshSimilarities() {
+        if (similarityIndex == null) {
+            throw new IllegalStateException("Recommendations are not enabled");
+        }
+        return similarityIndex.refresh();
+    }
+
+    // Run on the similarity thread; a failure is logged so the next run still happens
+    private void rebuildScheduledSimilarities() {
+        try {
+            rebuildSimilarities();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not rebuild the game similarities", e);
+        }
+    }
+
+    private void refreshScheduledSimilarities() {
+        try {
+            refreshSimilarities();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not refresh the game similarities", e);
+        }
+    }
+
+    /**
+     * Flushes the write-ahead log and releases the files held by the repository.
+     * Called by Spring on shutdown.
+     */
+    @PreDestroy
+    public void close() {
+        if (similarityScheduler != null) {
+            similarityScheduler.shutdownNow();
+            similarityPool.shutdownNow();
+        }
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            try {
+                snapshotScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+            // A rating is put in the store before it is logged, so the store holds every one..
+            // ..the log was closed with
+            ratingStore.close(writeAheadLog.appendedLsn());
+        } else {
+            ratingStore.close();
+        }
+    }
+
+    // A getter that returns the live list of games, in the order they were added;..
+    // ..it is read-only, as every game must also go into the indexes
+    public List<Games> getGames() {
+        return listOfGames.asList();
+    }
+
+    // A getter that returns the live list of users, in the order they were added;..
+    // ..it is read-only, as every user must also go into the indexes
+    public List<Users> getUsers() {
+        return listOfUsers.asList();
     }
 
     // A method to add a game to the games ArrayList
@@ -31,25 +435,186 @@ public class GameRepo {
             throw new IllegalArgumentException("A Game object is required");
         }
 
-        if (newGame.getGameId() > 0 && !isGameInList(newGame)) {
-            listOfGames.add(newGame);
+        if (newGame.getGameId() <= 0) {
+            return;
         }
+        long start = System.nanoTime();
+        long lsn = 0;
+        // Check and insert under the lock so two threads cannot add the same game
+        catalogueLock.lock();
+        try {
+            if (!isGameIndexed(newGame)) {
+                // Log before publishing, so anything done with the game is logged after it
+                if (writeAheadLog != null) {
+                    lsn = writeAheadLog.appendAddGame(newGame);
+                }
+                gamesById.put(newGame.getGameId(), newGame);
+                if (newGame.getTitle() != null) {
+                    gamesByTitle.put(foldCase(newGame.getTitle()), newGame);
+                    titleIndex.addTitle(newGame.getGameId(), newGame.getTitle());
+                }
+                genreIndex.addGame(newGame.getGameId(), newGame.getGenres());
+                platformIndex.addGame(newGame.getGameId(), newGame.getPlatform());
+                releaseDateIndex.addGame(newGame.getGameId(), newGame.getReleaseDate());
+                if (similarGamesIndex != null) {
+                    similarGamesIndex.addGame(newGame);
+                }
+                // The game may already have ratings, from before it was added or from a reopened store
+                statsFor(newGame.getGameId()).setGenres(foldCase(newGame.getGenres()));
+                ratersFor(newGame.getGameId());
+                touchRatersOf(newGame.getGameId());
+                // Publish to the list last, so a game seen in the list is already indexed
+                gamesInIdOrder.put(newGame.getGameId(), newGame);
+                listOfGames.add(newGame);
+                touchGenresOf(newGame);
+            }
+        } finally {
+            catalogueLock.unlock();
+        }
+        awaitDurable(lsn);
+        GameRepoMetrics.record(metrics.addGame, start);
+    }
+
+    /**
+     * Adds a batch of games. The catalogue lock is taken once for the whole batch, the
+     * genre index is updated once per genre and, with the write-ahead log enabled, the
+     * batch waits for durability once.
+     *
+     * @param newGames the games to add
+     * @return the outcome for each game, in the same order
+     */
+    public List<BatchOutcome> addGames(List<Games> newGames) {
+        if (newGames == null) {
+            throw new IllegalArgumentException("A Games List is required");
+        }
+        long start = System.nanoTime();
+        BatchOutcome[] outcomes = new BatchOutcome[newGames.size()];
+        long lsn = 0;
+        catalogueLock.lock();
+        try {
+            List<Games> added = new ArrayList<>();
+            for (int i = 0; i < outcomes.length; i++) {
+                Games newGame = newGames.get(i);
+                if (newGame == null || newGame.getGameId() <= 0) {
+                    outcomes[i] = BatchOutcome.INVALID;
+                } else if (isGameIndexed(newGame)) {
+                    // Also catches a game repeated within the batch, as the ID index is updated below
+                    outcomes[i] = BatchOutcome.DUPLICATE;
+                } else {
+                    if (writeAheadLog != null) {
+                        lsn = writeAheadLog.appendAddGame(newGame);
+                    }
+                    gamesById.put(newGame.getGameId(), newGame);
+                    if (newGame.getTitle() != null) {
+                        gamesByTitle.put(foldCase(newGame.getTitle()), newGame);
+                        titleIndex.addTitle(newGame.getGameId(), newGame.getTitle());
+                    }
+                    statsFor(newGame.getGameId()).setGenres(foldCase(newGame.getGenres()));
+                    ratersFor(newGame.getGameId());
+                    touchRatersOf(newGame.getGameId());
+                    if (similarGamesIndex != null) {
+                        similarGamesIndex.addGame(newGame);
+                    }
+                    added.add(newGame);
+                    outcomes[i] = BatchOutcome.ADDED;
+                }
+            }
+            genreIndex.addGames(added);
+            platformIndex.addGames(added);
+            releaseDateIndex.addGames(added);
+            // Publish to the list last, so a game seen in the list is already indexed
+            for (Games game : added) {
+                gamesInIdOrder.put(game.getGameId(), game);
+                listOfGames.add(game);
+                touchGenresOf(game);
+            }
+        } finally {
+            catalogueLock.unlock();
+        }
+        awaitDurable(lsn);
+        GameRepoMetrics.record(metrics.addGames, start);
+        return Arrays.asList(outcomes);
     }
 
     // A method to check if a game is already in..
     // ..the listOfGames ArrayList
     public boolean isGameInList(Games game) {
-        boolean isInGameList = false;
+        long start = System.nanoTime();
+        boolean found = isGameIndexed(game);
+        GameRepoMetrics.record(metrics.isGameInList, start);
+        return found;
+    }
+
+    // Checks the indexes for a game with the same ID or title; also used under the catalogue lock
+    private boolean isGameIndexed(Games game) {
+        // Check the ID index first
+        if (gamesById.containsKey(game.getGameId())) {
+            return true;
+        }
+        // Check if the game title is similar, ignoring case
         String gameTitle = game.getTitle();
-        for (Games gameInList : listOfGames) {
-            String existingGameTitle = gameInList.getTitle();
-            // Check if ID or game title are similar
-            if (gameInList.getGameId() == game.getGameId() || 
-                existingGameTitle.equalsIgnoreCase(gameTitle)) {
-                isInGameList = true;
+        return gameTitle != null && gamesByTitle.containsKey(foldCase(gameTitle));
+    }
+
+    /**
+     * Finds a game by its title, ignoring case.
+     *
+     * @param title the title of the game
+     * @return the Games object if found; otherwise, returns null
+     */
+    public Games findGameByTitle(String title) {
+        if (title == null) {
+            throw new IllegalArgumentException("A title is required");
+        }
+        long start = System.nanoTime();
+        Games game = gamesByTitle.get(foldCase(title));
+        GameRepoMetrics.record(metrics.findGameByTitle, start);
+        return game;
+    }
+
+    /**
+     * Searches the titles of the games for words, matching the last word as a prefix and
+     * tolerating a typo in longer words, and ranks the matches with BM25.
+     *
+     * @param query the words to search for
+     * @param n     the maximum number of games to return
+     * @return up to n matching games, best first
+     */
+    public List<SearchHit> searchGames(String query, int n) {
+        if (query == null) {
+            throw new IllegalArgumentException("A query is required");
+        }
+        if (n <= 0) {
+            throw new IllegalArgumentException("The number of games must be positive");
+        }
+        long start = System.nanoTime();
+        List<SearchHit> hits = new ArrayList<>();
+        for (TitleSearchIndex.Match match : titleIndex.search(query, n)) {
+            hits.add(new SearchHit(gamesById.get(match.getGameId()), match.getScore()));
+        }
+        GameRepoMetrics.record(metrics.searchGames, start);
+        return hits;
+    }
+
+    // A method that folds a string to a locale-independent..
+    // ..case so that it can be used as an index key.
+    // Upper-casing first matches equalsIgnoreCase for characters..
+    // ..such as the German sharp s and the Turkish dotless i.
+    static String foldCase(String value) {
+        return value.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    // A method that folds every non-null string in a list
+    static List<String> foldCase(List<String> values) {
+        List<String> folded = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !folded.contains(foldCase(value))) {
+                    folded.add(foldCase(value));
+                }
             }
         }
-        return isInGameList;
+        return folded;
     }
 
     // A method to list all the games in the game list whose genre..
@@ -58,27 +623,120 @@ public class GameRepo {
         if(genresList == null) {
             throw new IllegalArgumentException("A String ArrayList is required");
         }
+        long start = System.nanoTime();
 
-        ArrayList<Games> gamesMatchingGenres = new ArrayList<>();
-        ArrayList<String> lowerCaseGenreList = convertListToLowerCase(genresList);
-        for (Games game : listOfGames) {
-            ArrayList<String> gameGenreList = game.getGenres();
-            ArrayList<String> lowerCaseGameGenres = convertListToLowerCase(gameGenreList);
-            if (lowerCaseGameGenres.containsAll(lowerCaseGenreList)) {
-                gamesMatchingGenres.add(game);
-            }
+        // Every game matches an empty genre list
+        if (genresList.isEmpty()) {
+            ArrayList<Games> allGames = listOfGames.toArrayList();
+            GameRepoMetrics.record(metrics.listGamesByGenre, start);
+            return allGames;
+        }
+
+        // Intersect the genre posting lists, then resolve the IDs to games
+        int[] matchingGameIds = genreIndex.findGameIds(genresList);
+        ArrayList<Games> gamesMatchingGenres = new ArrayList<>(matchingGameIds.length);
+        for (int gameId : matchingGameIds) {
+            gamesMatchingGenres.add(gamesById.get(gameId));
         }
+        GameRepoMetrics.record(metrics.listGamesByGenre, start);
         return gamesMatchingGenres;
     }
 
-    // A method that converts all the elements in a string ArrayList..
-    // ..to lower case strings.
-    public ArrayList<String> convertListToLowerCase(ArrayList<String> stringList) {
-        ArrayList<String> lowerCaseStringList = new ArrayList<>();
-        for (String item : stringList) {
-            lowerCaseStringList.add(item.toLowerCase());
+    /**
+     * Lists one page of games in ascending ID order, optionally only those that have
+     * every one of the given genres. The cost is proportional to the page size, not to
+     * the number of games, unless few of the games after the cursor match the genres.
+     *
+     * @param genres      the genres to match, ignoring case; null or empty for every game
+     * @param afterGameId only list games with a greater ID; 0 to start from the first
+     * @param limit       the maximum number of games to return
+     * @return up to limit games
+     */
+    public List<Games> listGames(List<String> genres, int afterGameId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        long start = System.nanoTime();
+        List<Games> page = new ArrayList<>();
+        if (genres == null || genres.isEmpty()) {
+            for (Games game : gamesInIdOrder.tailMap(afterGameId, false).values()) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(game);
+            }
+        } else {
+            for (int gameId : genreIndex.findGameIds(genres, afterGameId, limit)) {
+                page.add(gamesById.get(gameId));
+            }
+        }
+        GameRepoMetrics.record(metrics.listGames, start);
+        return page;
+    }
+
+    /**
+     * Finds the cursor of the page of games after the one {@link #listGames} returns for
+     * the same arguments: the ID of its last game, if another game follows. Only game IDs
+     * are read, so a page can be sent with its cursor before its games are read.
+     *
+     * @param genres      the genres to match, ignoring case; null or empty for every game
+     * @param afterGameId the cursor the page starts after
+     * @param limit       the size of the page
+     * @return the ID of the page's last game, or empty if the page is the last one
+     */
+    public OptionalInt findNextGamesCursor(List<String> genres, int afterGameId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        if (genres == null || genres.isEmpty()) {
+            return nextCursor(gamesInIdOrder.tailMap(afterGameId, false).keySet().iterator(), limit);
+        }
+        // One more than the limit, to tell whether more games follow
+        int[] gameIds = genreIndex.findGameIds(genres, afterGameId, (int) Math.min(limit + 1L, Integer.MAX_VALUE));
+        return gameIds.length > limit ? OptionalInt.of(gameIds[limit - 1]) : OptionalInt.empty();
+    }
+
+    /**
+     * Lists the games matching every filter of a query, in the order it asks for.
+     * Rather than scanning every game, the query walks the index a GameQueryPlanner expects
+     * to read the fewest games from, and checks the other filters against each of them.
+     *
+     * @param query the filters, order and limit
+     * @return up to limit matching games
+     */
+    public List<Games> queryGames(GameQuery query) {
+        checkQuery(query);
+        long start = System.nanoTime();
+        List<Games> games = queryPlanner.execute(query, queryPlanner.plan(query));
+        GameRepoMetrics.record(metrics.queryGames, start);
+        return games;
+    }
+
+    /**
+     * Shows the plan queryGames would execute a query with, without executing it.
+     *
+     * @param query the filters, order and limit
+     * @return the index the query would walk and its expected cost
+     */
+    public GameQueryPlanner.Plan explainQuery(GameQuery query) {
+        checkQuery(query);
+        return queryPlanner.plan(query);
+    }
+
+    private static void checkQuery(GameQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("A GameQuery object is required");
+        }
+        if (query.getSort() == null) {
+            throw new IllegalArgumentException("A sort order is required");
+        }
+        if (query.getLimit() <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        if (query.getReleasedFrom() != null && query.getReleasedTo() != null
+                && query.getReleasedFrom().isAfter(query.getReleasedTo())) {
+            throw new IllegalArgumentException("The release date range is empty");
         }
-        return lowerCaseStringList;
     }
 
     // A method that adds a user to the Users ArrayList
@@ -87,22 +745,128 @@ public class GameRepo {
             throw new IllegalArgumentException("A User object is required");
         }
 
-        if (newUser.getUserId() > 0 && !isUserInList(newUser)) {
-            listOfUsers.add(newUser);
+        if (newUser.getUserId() <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        long lsn = 0;
+        // Check and insert under the lock so two threads cannot add the same user
+        catalogueLock.lock();
+        try {
+            if (!isUserInList(newUser)) {
+                if (writeAheadLog != null) {
+                    lsn = writeAheadLog.appendAddUser(newUser);
+                }
+                usersById.put(newUser.getUserId(), newUser);
+                // Publish to the list last, so a user seen in the list is already indexed
+                usersInIdOrder.put(newUser.getUserId(), newUser);
+                listOfUsers.add(newUser);
+                usersVersion++;
+            }
+        } finally {
+            catalogueLock.unlock();
+        }
+        awaitDurable(lsn);
+        GameRepoMetrics.record(metrics.addUser, start);
+    }
+
+    /**
+     * Adds a batch of users, taking the catalogue lock once for the whole batch.
+     *
+     * @param newUsers the users to add
+     * @return the outcome for each user, in the same order
+     */
+    public List<BatchOutcome> addUsers(List<Users> newUsers) {
+        if (newUsers == null) {
+            throw new IllegalArgumentException("A Users List is required");
+        }
+        long start = System.nanoTime();
+        BatchOutcome[] outcomes = new BatchOutcome[newUsers.size()];
+        long lsn = 0;
+        catalogueLock.lock();
+        try {
+            for (int i = 0; i < outcomes.length; i++) {
+                Users newUser = newUsers.get(i);
+                if (newUser == null || newUser.getUserId() <= 0) {
+                    outcomes[i] = BatchOutcome.INVALID;
+                } else if (isUserInList(newUser)) {
+                    outcomes[i] = BatchOutcome.DUPLICATE;
+                } else {
+                    if (writeAheadLog != null) {
+                        lsn = writeAheadLog.appendAddUser(newUser);
+                    }
+                    usersById.put(newUser.getUserId(), newUser);
+                    usersInIdOrder.put(newUser.getUserId(), newUser);
+                    listOfUsers.add(newUser);
+                    usersVersion++;
+                    outcomes[i] = BatchOutcome.ADDED;
+                }
+            }
+        } finally {
+            catalogueLock.unlock();
+        }
+        awaitDurable(lsn);
+        GameRepoMetrics.record(metrics.addUsers, start);
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * Lists one page of users in ascending ID order.
+     * The cost is proportional to the page size, not to the number of users.
+     *
+     * @param afterUserId only list users with a greater ID; 0 to start from the first
+     * @param limit       the maximum number of users to return
+     * @return up to limit users
+     */
+    public List<Users> listUsers(int afterUserId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        long start = System.nanoTime();
+        List<Users> page = new ArrayList<>();
+        for (Users user : usersInIdOrder.tailMap(afterUserId, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(user);
+        }
+        GameRepoMetrics.record(metrics.listUsers, start);
+        return page;
+    }
+
+    /**
+     * Finds the cursor of the page of users after the one {@link #listUsers} returns for
+     * the same arguments: the ID of its last user, if another user follows. Only user IDs
+     * are read, so a page can be sent with its cursor before its users are read.
+     *
+     * @param afterUserId the cursor the page starts after
+     * @param limit       the size of the page
+     * @return the ID of the page's last user, or empty if the page is the last one
+     */
+    public OptionalInt findNextUsersCursor(int afterUserId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        return nextCursor(usersInIdOrder.tailMap(afterUserId, false).keySet().iterator(), limit);
+    }
+
+    // The limit-th of the ascending IDs, if there is another one after it
+    private static OptionalInt nextCursor(Iterator<Integer> ids, int limit) {
+        int last = 0;
+        for (int i = 0; i < limit; i++) {
+            if (!ids.hasNext()) {
+                return OptionalInt.empty();
+            }
+            last = ids.next();
         }
+        return ids.hasNext() ? OptionalInt.of(last) : OptionalInt.empty();
     }
 
     // A method to check if a User is in the listOfUsers..
     // ..ArrayList
     public boolean isUserInList(Users user) {
-        boolean isInUserList = false;
-        for (Users userInList : listOfUsers) {
-            // Check if ID are similar
-            if (userInList.getUserId() == user.getUserId()) {
-                    isInUserList = true;
-            }
-        }
-        return isInUserList;
+        // Check if the ID is already indexed
+        return usersById.containsKey(user.getUserId());
     }
 
     /**
@@ -112,18 +876,11 @@ public class GameRepo {
      * @return the Users object if found; otherwise, returns null
      */
     public Users findUserById(int userId) {
-        // Retrieve the list of users from the repository
-        ArrayList<Users> listOfUsers = getUsers();
-        // Iterate over each user in the list
-        for (Users user : listOfUsers) {
-            // Check if the current user's ID matches the provided userId
-            if (user.getUserId() == userId) {
-                // Return the user if found
-                return user;
-            }
-        }
-        // Return null if no matching user is found
-        return null;
+        long start = System.nanoTime();
+        // Look the user up in the ID index; null if no matching user is found
+        Users user = usersById.get(userId);
+        GameRepoMetrics.record(metrics.findUserById, start);
+        return user;
     }
 
     /**
@@ -133,17 +890,25 @@ public class GameRepo {
      * @param newName the new name to set for the user
      */
     public void updateUserName(int userId, String newName) {
-        // Iterate over each user in the listOfUsers
-        // (Assuming listOfUsers is a class field accessible within this context)
-        for (Users user : listOfUsers) {
-            // Check if the user's ID matches the given userId
-            if (user.getUserId() == userId) {
+        long start = System.nanoTime();
+        long lsn = 0;
+        catalogueLock.lock();
+        try {
+            // Find the user through the ID index
+            Users user = usersById.get(userId);
+            if (user != null) {
+                if (writeAheadLog != null) {
+                    lsn = writeAheadLog.appendUpdateUserName(userId, newName);
+                }
                 // Set the new name for the user
                 user.setName(newName);
-                // Exit the method after updating
-                return;
+                usersVersion++;
             }
+        } finally {
+            catalogueLock.unlock();
         }
+        awaitDurable(lsn);
+        GameRepoMetrics.record(metrics.updateUserName, start);
     }
 
     /**
@@ -153,18 +918,11 @@ public class GameRepo {
      * @return the Games object if found; otherwise, returns null
      */
     public Games findGameById(int gameId) {
-        // Retrieve the list of games from the repository
-        ArrayList<Games> listOfGames = getGames();
-        // Iterate over each game in the list
-        for (Games game : listOfGames) {
-            // Check if the current game's ID matches the provided gameId
-            if (game.getGameId() == gameId) {
-                // Return the game if found
-                return game;
-            }
-        }
-        // Return null if no matching game is found
-        return null;
+        long start = System.nanoTime();
+        // Look the game up in the ID index; null if no matching game is found
+        Games game = gamesById.get(gameId);
+        GameRepoMetrics.record(metrics.findGameById, start);
+        return game;
     }
 
     /**
@@ -175,10 +933,562 @@ public class GameRepo {
      * @param rating the rating value
      */
     public void addRating(Users user, Games game, int rating) {
-        // Ensure that the user has an existing ratings map; if not, create one
-        userGameRatings.putIfAbsent(user, new HashMap<>());
-        // Store the rating for the game in the user's ratings map
-        userGameRatings.get(user).put(game, rating);
+        if (user == null || game == null) {
+            throw new IllegalArgumentException("A User and a Game are required");
+        }
+        long start = System.nanoTime();
+        long lsn;
+        ReentrantLock ratingLock = ratingLockFor(user.getUserId());
+        ratingLock.lock();
+        try {
+            lsn = applyRating(user, game, rating);
+        } finally {
+            ratingLock.unlock();
+        }
+        awaitDurable(lsn);
+        GameRepoMetrics.record(metrics.addRating, start);
+    }
+
+    /**
+     * Adds a batch of ratings of existing users and games. The ratings are grouped by
+     * rating lock so each lock is taken once per batch, and the batch waits for
+     * durability once. Ratings by the same user are applied in the order given.
+     *
+     * @param newRatings the ratings to add
+     * @return the outcome for each rating, in the same order
+     */
+    public List<BatchOutcome> addRatings(List<NewRating> newRatings) {
+        if (newRatings == null) {
+            throw new IllegalArgumentException("A NewRating List is required");
+        }
+        long start = System.nanoTime();
+        BatchOutcome[] outcomes = new BatchOutcome[newRatings.size()];
+        Users[] users = new Users[outcomes.length];
+        Games[] games = new Games[outcomes.length];
+        List<Integer> resolved = new ArrayList<>(outcomes.length);
+        for (int i = 0; i < outcomes.length; i++) {
+            NewRating newRating = newRatings.get(i);
+            if (newRating == null) {
+                outcomes[i] = BatchOutcome.INVALID;
+                continue;
+            }
+            users[i] = usersById.get(newRating.getUserId());
+            games[i] = gamesById.get(newRating.getGameId());
+            if (users[i] == null || games[i] == null) {
+                outcomes[i] = BatchOutcome.NOT_FOUND;
+            } else {
+                resolved.add(i);
+            }
+        }
+        // A stable sort, so each user's ratings keep their order within a lock
+        resolved.sort(Comparator.comparingInt(i -> ratingLockIndex(users[i].getUserId())));
+        long lsn = 0;
+        int next = 0;
+        while (next < resolved.size()) {
+            int lockIndex = ratingLockIndex(users[resolved.get(next)].getUserId());
+            ratingLocks[lockIndex].lock();
+            try {
+                for (; next < resolved.size() && ratingLockIndex(users[resolved.get(next)].getUserId()) == lockIndex; next++) {
+                    int i = resolved.get(next);
+                    try {
+                        lsn = Math.max(lsn, applyRating(users[i], games[i], newRatings.get(i).getRating()));
+                        outcomes[i] = BatchOutcome.ADDED;
+                    } catch (IllegalArgumentException e) {
+                        // The rating store could not hold this rating
+                        outcomes[i] = BatchOutcome.INVALID;
+                    }
+                }
+            } finally {
+                ratingLocks[lockIndex].unlock();
+            }
+        }
+        awaitDurable(lsn);
+        GameRepoMetrics.record(metrics.addRatings, start);
+        return Arrays.asList(outcomes);
+    }
+
+    // Stores a rating and updates the indexes; the caller holds the user's rating lock.
+    // Returns the LSN of the logged rating, or 0 if nothing was logged.
+    private long applyRating(Users user, Games game, int rating) {
+        if (!exportPoints.isEmpty()) {
+            saveForExportPoints(user.getUserId());
+        }
+        // Store the rating for the game in the user's ratings
+        int previousRating = ratingStore.put(user, game, rating);
+        long lsn = 0;
+        // Log once the store has accepted the rating, so a rejected rating is never replayed
+        if (writeAheadLog != null) {
+            lsn = writeAheadLog.appendAddRating(user.getUserId(), game.getGameId(), rating);
+        }
+        // Keep the reverse index and the game's aggregates in step with the forward map
+        if (previousRating == RatingStore.NO_RATING) {
+            ratedUserIds.add(user.getUserId());
+        }
+        ratersFor(game.getGameId()).put(user.getUserId(), rating);
+        statsFor(game.getGameId()).update(previousRating, rating);
+        if (similarityIndex != null) {
+            similarityIndex.markChanged(game.getGameId());
+        }
+        if (similarGamesIndex != null) {
+            similarGamesIndex.addRater(game.getGameId(), user.getUserId());
+        }
+        // Last, so a reader that sees the new version also sees the rating
+        ratingsVersionFor(user.getUserId()).incrementAndGet();
+        return lsn;
+    }
+
+    // Saves a user's ratings for each open export point that has not read them yet, before..
+    // ..they first change; the caller holds the user's rating lock. Drops expired points too
+    private void saveForExportPoints(int userId) {
+        long now = System.nanoTime();
+        long[] ratings = null;
+        for (ExportPoint point : exportPoints.values()) {
+            if (point.expire(now, exportPointKeepAliveNanos)) {
+                exportPoints.remove(point.getId(), point);
+            } else if (point.needsCopy(userId)) {
+                if (ratings == null) {
+                    ratings = copyRatingsOfUser(userId);
+                }
+                point.save(userId, ratings);
+            }
+        }
+    }
+
+    // Bumps the games version and that of each genre of a newly listed game; the caller..
+    // ..holds the catalogue lock
+    private void touchGenresOf(Games game) {
+        gamesVersion++;
+        for (String genre : foldCase(game.getGenres())) {
+            genreVersions.computeIfAbsent(genre, key -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    // Bumps the ratings version of every user who rated a game before it was added,..
+    // ..as their ratings now resolve to it; the caller holds the catalogue lock
+    private void touchRatersOf(int gameId) {
+        GameRaters raters = ratersByGame.get(gameId);
+        int afterUserId = 0;
+        List<UserRating> page;
+        do {
+            page = raters.page(afterUserId, 256);
+            for (UserRating rater : page) {
+                ratingsVersionFor(rater.getUserId()).incrementAndGet();
+                afterUserId = rater.getUserId();
+            }
+        } while (!page.isEmpty());
+    }
+
+    // Returns the ratings version of a user, creating it on their first rating
+    private AtomicLong ratingsVersionFor(int userId) {
+        AtomicLong version = ratingsVersions.get(userId);
+        if (version == null) {
+            catalogueLock.lock();
+            try {
+                version = ratingsVersions.get(userId);
+                if (version == null) {
+                    version = new AtomicLong();
+                    ratingsVersions.put(userId, version);
+                }
+            } finally {
+                catalogueLock.unlock();
+            }
+        }
+        return version;
+    }
+
+    // Waits for a logged change to reach the configured durability; 0 means nothing was logged
+    private void awaitDurable(long lsn) {
+        if (lsn != 0) {
+            writeAheadLog.awaitDurable(lsn);
+        }
+    }
+
+    // Returns the raters of a game, creating them for a game..
+    // ..that was rated without being added to the repository
+    private GameRaters ratersFor(int gameId) {
+        GameRaters raters = ratersByGame.get(gameId);
+        if (raters == null) {
+            catalogueLock.lock();
+            try {
+                raters = ratersByGame.get(gameId);
+                if (raters == null) {
+                    raters = new GameRaters();
+                    ratersByGame.put(gameId, raters);
+                }
+            } finally {
+                catalogueLock.unlock();
+            }
+        }
+        return raters;
+    }
+
+    // Returns the aggregates of a game, creating them for a game..
+    // ..that was rated without being added to the repository
+    private GameRatingStats statsFor(int gameId) {
+        GameRatingStats stats = statsByGame.get(gameId);
+        if (stats == null) {
+            catalogueLock.lock();
+            try {
+                stats = statsByGame.get(gameId);
+                if (stats == null) {
+                    stats = new GameRatingStats(gameId, List.of(), leaderboard);
+                    statsByGame.put(gameId, stats);
+                }
+            } finally {
+                catalogueLock.unlock();
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the rating count, mean, variance and distribution of a game.
+     * The aggregates are maintained by addRating, so this does not scan any ratings.
+     *
+     * @param gameId the unique identifier of the game
+     * @return the summary of the game's ratings; empty if it has none
+     */
+    public RatingSummary getRatingSummary(int gameId) {
+        long start = System.nanoTime();
+        GameRatingStats stats = statsByGame.get(gameId);
+        RatingSummary summary = stats == null
+                ? new RatingSummary(gameId, 0, 0, 0, new int[0], new long[0])
+                : stats.summarize();
+        GameRepoMetrics.record(metrics.getRatingSummary, start);
+        return summary;
+    }
+
+    /**
+     * Lists the users who rated a game, in ascending user ID order.
+     * The cost is proportional to the page size, not to the number of users or ratings.
+     *
+     * @param gameId      the unique identifier of the game
+     * @param afterUserId only list users with a greater ID; 0 to start from the first
+     * @param limit       the maximum number of ratings to return
+     * @return up to limit user ratings of the game
+     */
+    public List<UserRating> listRatingsByGame(int gameId, int afterUserId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        long start = System.nanoTime();
+        GameRaters raters = ratersByGame.get(gameId);
+        List<UserRating> page = raters == null ? new ArrayList<>() : raters.page(afterUserId, limit);
+        GameRepoMetrics.record(metrics.listRatingsByGame, start);
+        return page;
+    }
+
+    /**
+     * Lists the IDs of every user with at least one rating, in ascending order, as of now.
+     * This copies every ID; walk them a page at a time with
+     * {@link #listRatedUserIds(int, int)} where that is too many.
+     *
+     * @param afterUserId only list users with a greater ID; 0 to start from the first
+     * @return the sorted user IDs
+     */
+    public int[] listRatedUserIds(int afterUserId) {
+        return listRatedUserIds(afterUserId, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lists up to a limit of the IDs of the users with at least one rating, in ascending order,
+     * read from an ordered index so a page costs the same wherever it starts. Together with
+     * {@link #exportRatingsOfUser} this walks every rating without holding a lock for longer
+     * than it takes to copy one user's ratings.
+     *
+     * @param afterUserId only list users with a greater ID; 0 to start from the first
+     * @param limit       the maximum number of user IDs to return
+     * @return the sorted user IDs
+     */
+    public int[] listRatedUserIds(int afterUserId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        int[] userIds = new int[Math.min(limit, 1024)];
+        int count = 0;
+        for (int userId : ratedUserIds.tailSet(afterUserId, false)) {
+            if (count == limit) {
+                break;
+            }
+            if (count == userIds.length) {
+                userIds = Arrays.copyOf(userIds, (int) Math.min((long) count * 2, limit));
+            }
+            userIds[count++] = userId;
+        }
+        return Arrays.copyOf(userIds, count);
+    }
+
+    /**
+     * Finds the cursor of the page of rated users after the one {@link #listRatedUserIds(int, int)}
+     * returns for the same arguments: the ID of its last user, if another rated user follows.
+     * The IDs are walked rather than copied, so this needs no memory however large the limit.
+     *
+     * @param afterUserId the cursor the page starts after
+     * @param limit       the size of the page
+     * @return the ID of the page's last user, or empty if the page is the last one
+     */
+    public OptionalInt findNextRatedUsersCursor(int afterUserId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        return nextCursor(ratedUserIds.tailSet(afterUserId, false).iterator(), limit);
+    }
+
+    /**
+     * Opens a point the ratings are exported as of, for an export of the users after the
+     * given ID. See {@link ExportPoint} for how it keeps what it needs.
+     *
+     * @param afterUserId the ID the export starts after
+     * @return the new point
+     */
+    public ExportPoint openExportPoint(int afterUserId) {
+        ExportPoint point = new ExportPoint(nextExportPointId.incrementAndGet(), afterUserId);
+        exportPoints.put(point.getId(), point);
+        return point;
+    }
+
+    /**
+     * Finds an open export point to continue an export from, and moves the export on to
+     * the users after the given ID, so the copies of the users before it can be dropped.
+     *
+     * @param pointId     the ID of the point
+     * @param afterUserId the ID the export continues after
+     * @return the point, or null if it has expired or its export is already past that ID
+     */
+    public ExportPoint resumeExportPoint(long pointId, int afterUserId) {
+        ExportPoint point = exportPoints.get(pointId);
+        if (point == null) {
+            return null;
+        }
+        if (point.expire(System.nanoTime(), exportPointKeepAliveNanos)) {
+            exportPoints.remove(pointId, point);
+            return null;
+        }
+        return point.moveTo(afterUserId) ? point : null;
+    }
+
+    /**
+     * Starts reading from an export point, so it does not expire while it is read.
+     * Every call that returns true must be followed by {@link #endExport}.
+     *
+     * @param point the point to read from
+     * @return false if the point expired before it was read from
+     */
+    public boolean beginExport(ExportPoint point) {
+        return point.acquire();
+    }
+
+    /**
+     * Stops reading from an export point. Once the export has reached its last user the
+     * point is closed, unless another export is still reading from it; otherwise it is
+     * kept for the keep-alive, so the export can be continued or retried.
+     *
+     * @param point    the point read from
+     * @param finished whether the export reached its last user
+     */
+    public void endExport(ExportPoint point, boolean finished) {
+        if (finished) {
+            point.finish();
+            if (point.expire(System.nanoTime(), exportPointKeepAliveNanos)) {
+                exportPoints.remove(point.getId(), point);
+            }
+        } else {
+            point.release();
+        }
+    }
+
+    /**
+     * Calls the visitor for every rating one user had when the export point was opened,
+     * in ascending game ID order. Ratings added or changed since are not seen, and a user
+     * whose first rating came later has none.
+     *
+     * @param point   the point to export the ratings as of
+     * @param userId  the ID of the user
+     * @param visitor called with the user ID, game ID and rating of each rating
+     */
+    public void exportRatingsOfUser(ExportPoint point, int userId, RatingStore.RatingVisitor visitor) {
+        long start = System.nanoTime();
+        long[] copy;
+        // Under the lock, so no change can land between finding no saved copy and copying
+        ReentrantLock ratingLock = ratingLockFor(userId);
+        ratingLock.lock();
+        try {
+            copy = point.savedRatingsOf(userId);
+            if (copy == null) {
+                copy = copyRatingsOfUser(userId);
+            }
+        } finally {
+            ratingLock.unlock();
+        }
+        GameRepoMetrics.record(metrics.exportRatingsOfUser, start);
+        for (long rating : copy) {
+            visitor.visit(userId, (int) (rating >> 32), (int) rating);
+        }
+    }
+
+    /**
+     * Calls the visitor for every rating of one user, in ascending game ID order.
+     * The ratings are copied under the user's rating lock, so they are all as of the
+     * same moment, and the visitor runs after the lock is released.
+     *
+     * @param userId  the ID of the user
+     * @param visitor called with the user ID, game ID and rating of each rating
+     */
+    public void exportRatingsOfUser(int userId, RatingStore.RatingVisitor visitor) {
+        long start = System.nanoTime();
+        long[] copy = copyRatingsOfUser(userId);
+        // Only the copy is timed; the visitor writes to the client at its own pace
+        GameRepoMetrics.record(metrics.exportRatingsOfUser, start);
+        for (long rating : copy) {
+            visitor.visit(userId, (int) (rating >> 32), (int) rating);
+        }
+    }
+
+    // Copies a user's ratings under their rating lock, with the game ID in the high half..
+    // ..and the rating in the low half of each long, sorted so they are in game order
+    long[] copyRatingsOfUser(int userId) {
+        long[][] copy = {new long[16]};
+        int[] count = new int[1];
+        ReentrantLock ratingLock = ratingLockFor(userId);
+        ratingLock.lock();
+        try {
+            ratingStore.forEachRatingOfUser(userId, (ratedBy, gameId, rating) -> {
+                if (count[0] == copy[0].length) {
+                    copy[0] = Arrays.copyOf(copy[0], count[0] * 2);
+                }
+                copy[0][count[0]++] = (long) gameId << 32 | (rating & 0xFFFFFFFFL);
+            });
+        } finally {
+            ratingLock.unlock();
+        }
+        long[] ratings = Arrays.copyOf(copy[0], count[0]);
+        Arrays.sort(ratings);
+        return ratings;
+    }
+
+    // The raters of a game, or null if it has none
+    GameRaters ratersOf(int gameId) {
+        return ratersByGame.get(gameId);
+    }
+
+    /**
+     * Recommends games a user has not rated, scored by item-based collaborative filtering:
+     * each game is predicted from the user's ratings of the games most similar to it.
+     *
+     * @param userId the ID of the user
+     * @param n      the maximum number of games to return
+     * @return up to n recommendations, best first, or null if the similarities are not built yet
+     * @throws IllegalStateException if recommendations are not enabled
+     */
+    public List<Recommendation> recommendGames(int userId, int n) {
+        if (similarityIndex == null) {
+            throw new IllegalStateException("Recommendations are not enabled");
+        }
+        if (n <= 0) {
+            throw new IllegalArgumentException("The number of games must be positive");
+        }
+        if (!similarityIndex.isBuilt()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (double[] scored : similarityIndex.score(copyRatingsOfUser(userId), n)) {
+            Games game = gamesById.get((int) scored[0]);
+            // Games that were rated without being added have nothing to show
+            if (game != null) {
+                recommendations.add(new Recommendation(game, scored[1], (int) scored[2]));
+            }
+        }
+        GameRepoMetrics.record(metrics.recommendGames, start);
+        return recommendations;
+    }
+
+    /**
+     * Finds the games most similar to a game by their genres and raters. Only games that
+     * share a locality-sensitive hash bucket with it are compared, so a few similar games
+     * may be missed in exchange for not scanning the catalogue.
+     *
+     * @param gameId the ID of the game
+     * @param n      the maximum number of games to return
+     * @return up to n similar games, most similar first; null if the game does not exist
+     * @throws IllegalStateException if similar games are not enabled
+     */
+    public List<SimilarGame> findSimilarGames(int gameId, int n) {
+        if (similarGamesIndex == null) {
+            throw new IllegalStateException("Similar games are not enabled");
+        }
+        if (n <= 0) {
+            throw new IllegalArgumentException("The number of games must be positive");
+        }
+        long start = System.nanoTime();
+        List<SimilarGame> similarGames = similarGamesIndex.similarGames(gameId, n);
+        GameRepoMetrics.record(metrics.findSimilarGames, start);
+        return similarGames;
+    }
+
+    /**
+     * Lists the highest rated games by Bayesian-weighted average rating.
+     *
+     * @param n          the maximum number of games to return
+     * @param genre      only include games in this genre, ignoring case; null for every genre
+     * @param minRatings only include games with at least this many ratings
+     * @return up to n ranked games, best first
+     */
+    public List<RankedGame> listTopGames(int n, String genre, long minRatings) {
+        long start = System.nanoTime();
+        List<RankedGame> rankedGames = new ArrayList<>();
+        // Games that were rated without being added have nothing to show, so they are..
+        // ..skipped while walking the ranking rather than after it is cut to n
+        for (Leaderboard.Entry entry : leaderboard.top(n, genre, minRatings, gamesById::containsKey)) {
+            rankedGames.add(new RankedGame(gamesById.get(entry.getGameId()), entry));
+        }
+        GameRepoMetrics.record(metrics.listTopGames, start);
+        return rankedGames;
+    }
+
+    // Applies a snapshot and the records of the write-ahead log while the repository starts
+    private class Replayer implements WriteAheadLog.RecordHandler {
+        // Stand-ins for users and games that were rated without being added,..
+        // ..shared by the snapshot and the log so both use the same objects
+        private final Map<Integer, Users> unknownUsers = new ConcurrentHashMap<>();
+        private final Map<Integer, Games> unknownGames = new ConcurrentHashMap<>();
+
+        @Override
+        public void addGame(Games game) {
+            GameRepo.this.addGame(game);
+        }
+
+        @Override
+        public void addUser(Users user) {
+            GameRepo.this.addUser(user);
+        }
+
+        @Override
+        public void updateUserName(int userId, String newName) {
+            GameRepo.this.updateUserName(userId, newName);
+        }
+
+        @Override
+        public void addRating(int userId, int gameId, int rating) {
+            Users user = findUserById(userId);
+            if (user == null) {
+                user = unknownUsers.computeIfAbsent(userId, id -> new Users(id, null));
+            }
+            Games game = findGameById(gameId);
+            if (game == null) {
+                game = unknownGames.computeIfAbsent(gameId, id -> new Games(id, null, new ArrayList<>(), null, null));
+            }
+            GameRepo.this.addRating(user, game, rating);
+        }
+    }
+
+    // Picks the lock that guards the ratings of a user
+    private ReentrantLock ratingLockFor(int userId) {
+        return ratingLocks[ratingLockIndex(userId)];
+    }
+
+    private static int ratingLockIndex(int userId) {
+        return (userId * 0x9E3779B9 >>> 16) & (RATING_LOCK_STRIPES - 1);
     }
 
     /**
@@ -187,9 +1497,82 @@ public class GameRepo {
      * @return a map where the key is a user and the value is another map of games and their corresponding ratings
      */
     public Map<Users, Map<Games, Integer>> getUserGameRatings() {
-        return userGameRatings;
+        return ratingStore.asMap();
+    }
+
+    /**
+     * Returns the ratings given by a single user.
+     *
+     * @param user the user whose ratings to return
+     * @return a map of games to the user's rating of them; empty if the user has no ratings
+     */
+    public Map<Games, Integer> getRatingsOfUser(Users user) {
+        if (user == null) {
+            throw new IllegalArgumentException("A User object is required");
+        }
+        long start = System.nanoTime();
+        Map<Games, Integer> ratings = ratingStore.getRatings(user);
+        GameRepoMetrics.record(metrics.getRatingsOfUser, start);
+        return ratings;
     }
 
+    /**
+     * Returns whether a rating value can be stored by the configured rating store, which
+     * for the compact and mapped stores means it fits in a byte. addRating throws
+     * IllegalArgumentException, and addRatings answers INVALID, for a value that cannot.
+     *
+     * @param rating the rating value
+     * @return true if the rating can be stored
+     */
+    public boolean acceptsRating(int rating) {
+        return ratingStore.accepts(rating);
+    }
+
+    /**
+     * Returns a number that changes whenever getRatingsOfUser may return something else
+     * for the user: when they rate a game, or when a game they rated before it was added
+     * is added. It only ever grows, so a copy of the ratings stored with the version read
+     * before it was taken is current for as long as the version stays the same.
+     *
+     * @param userId the ID of the user
+     * @return the version of the user's ratings; 0 if they have never rated a game
+     */
+    public long getRatingsVersion(int userId) {
+        AtomicLong version = ratingsVersions.get(userId);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * Returns a number that changes whenever listUsers may return something else: when a
+     * user is added or renamed. It only ever grows, and is counted from 0 in each process.
+     *
+     * @return the version of the users
+     */
+    public long getUsersVersion() {
+        return usersVersion;
+    }
 
+    /**
+     * Returns a number that changes whenever listGames may return something else for the
+     * given genres: when a game is added that has all of them, or any game if none are
+     * given. It only ever grows, and is counted from 0 in each process.
+     *
+     * @param genres the genres, ignoring case; null or empty for every game
+     * @return the version of the games with those genres
+     */
+    public long getGamesVersion(List<String> genres) {
+        if (genres == null || genres.isEmpty()) {
+            return gamesVersion;
+        }
+        // A game with every genre bumps each of their versions, so the sum grows with it
+        long version = 0;
+        for (String genre : foldCase(genres)) {
+            AtomicLong genreVersion = genreVersions.get(genre);
+            if (genreVersion != null) {
+                version += genreVersion.get();
+            }
+        }
+        return version;
+    }
 
 }
@@ -0,0 +1,179 @@
+package stacs.GameRepo;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for GameRepo, bound from the {@code gamerepo.*} entries of application.properties.
+ */
+@ConfigurationProperties(prefix = "gamerepo")
+public class GameRepoProperties {
+
+    /**
+     * The layouts a GameRepo can keep its ratings in.
+     */
+    public enum RatingStoreType {
+        // Nested maps of Users -> (Games -> Integer), see MapRatingStore
+        MAP,
+        // Packed primitive arrays per user, see CompactRatingStore
+        COMPACT,
+        // Off-heap blocks in a memory-mapped file, see MappedRatingStore; needs the write-ahead log
+        MAPPED
+    }
+
+    private RatingStoreType ratingStore = RatingStoreType.MAP;
+    // Where the files of the on-disk stores are kept
+    private String dataDirectory = "data";
+    // Whether changes are kept in a write-ahead log, and how durable they are on return
+    private boolean walEnabled = false;
+    private WriteAheadLog.Durability walDurability = WriteAheadLog.Durability.FSYNCED;
+    // Group commit: write the log every interval, or sooner once this many bytes are waiting
+    private Duration walFlushInterval = Duration.ofMillis(2);
+    private int walGroupCommitBytes = 256 * 1024;
+    // Whether snapshots are written in the background, and how long to wait between them
+    private boolean snapshotEnabled = false;
+    private Duration snapshotInterval = Duration.ofMinutes(10);
+    // Whether background tasks run on virtual threads, following spring.threads.virtual.enabled
+    private boolean virtualThreads = false;
+    // Whether game-to-game similarities are kept for recommendations, how many neighbours..
+    // ..each game keeps, how often they are rebuilt in full and refreshed for newly rated games,..
+    // ..and how many raters a game may have before a refresh leaves it to the next rebuild
+    private boolean recommendationsEnabled = false;
+    private int recommendationNeighbours = 20;
+    private Duration recommendationRebuildInterval = Duration.ofHours(1);
+    private Duration recommendationRefreshInterval = Duration.ofSeconds(10);
+    private int recommendationRefreshMaxRaters = 10_000;
+    // Whether genre and rater signatures are kept to find similar games
+    private boolean similarGamesEnabled = false;
+    // How long a ratings export point is kept once no export is reading from it
+    private Duration exportPointKeepAlive = Duration.ofMinutes(5);
+
+    public RatingStoreType getRatingStore() {
+        return ratingStore;
+    }
+
+    public void setRatingStore(RatingStoreType ratingStore) {
+        this.ratingStore = ratingStore;
+    }
+
+    public String getDataDirectory() {
+        return dataDirectory;
+    }
+
+    public void setDataDirectory(String dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    public boolean isWalEnabled() {
+        return walEnabled;
+    }
+
+    public void setWalEnabled(boolean walEnabled) {
+        this.walEnabled = walEnabled;
+    }
+
+    public WriteAheadLog.Durability getWalDurability() {
+        return walDurability;
+    }
+
+    public void setWalDurability(WriteAheadLog.Durability walDurability) {
+        this.walDurability = walDurability;
+    }
+
+    public Duration getWalFlushInterval() {
+        return walFlushInterval;
+    }
+
+    public void setWalFlushInterval(Duration walFlushInterval) {
+        this.walFlushInterval = walFlushInterval;
+    }
+
+    public int getWalGroupCommitBytes() {
+        return walGroupCommitBytes;
+    }
+
+    public void setWalGroupCommitBytes(int walGroupCommitBytes) {
+        this.walGroupCommitBytes = walGroupCommitBytes;
+    }
+
+    public boolean isSnapshotEnabled() {
+        return snapshotEnabled;
+    }
+
+    public void setSnapshotEnabled(boolean snapshotEnabled) {
+        this.snapshotEnabled = snapshotEnabled;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public boolean isRecommendationsEnabled() {
+        return recommendationsEnabled;
+    }
+
+    public void setRecommendationsEnabled(boolean recommendationsEnabled) {
+        this.recommendationsEnabled = recommendationsEnabled;
+    }
+
+    public int getRecommendationNeighbours() {
+        return recommendationNeighbours;
+    }
+
+    public void setRecommendationNeighbours(int recommendationNeighbours) {
+        this.recommendationNeighbours = recommendationNeighbours;
+    }
+
+    public Duration getRecommendationRebuildInterval() {
+        return recommendationRebuildInterval;
+    }
+
+    public void setRecommendationRebuildInterval(Duration recommendationRebuildInterval) {
+        this.recommendationRebuildInterval = recommendationRebuildInterval;
+    }
+
+    public Duration getRecommendationRefreshInterval() {
+        return recommendationRefreshInterval;
+    }
+
+    public void setRecommendationRefreshInterval(Duration recommendationRefreshInterval) {
+        this.recommendationRefreshInterval = recommendationRefreshInterval;
+    }
+
+    public int getRecommendationRefreshMaxRaters() {
+        return recommendationRefreshMaxRaters;
+    }
+
+    public void setRecommendationRefreshMaxRaters(int recommendationRefreshMaxRaters) {
+        this.recommendationRefreshMaxRaters = recommendationRefreshMaxRaters;
+    }
+
+    public boolean isSimilarGamesEnabled() {
+        return similarGamesEnabled;
+    }
+
+    public void setSimilarGamesEnabled(boolean similarGamesEnabled) {
+        this.similarGamesEnabled = similarGamesEnabled;
+    }
+
+    public Duration getExportPointKeepAlive() {
+        return exportPointKeepAlive;
+    }
+
+    public void setExportPointKeepAlive(Duration exportPointKeepAlive) {
+        this.exportPointKeepAlive = exportPointKeepAlive;
+    }
+}
@@ -0,0 +1,148 @@
+package stacs.GameRepo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import stacs.Games.Games;
+
+/**
+ * An inverted index from genre to the IDs of the games in that genre.
+ * Each genre keeps a posting list of game IDs in ascending order, so a query
+ * for several genres is answered by intersecting the posting lists.
+ *
+ * <p>Queries never lock and are safe while another thread adds games, but
+ * {@link #addGame} and {@link #addGames} must be serialized by the caller.
+ */
+public class GenreIndex {
+    // Posting lists keyed by case-folded genre name
+    private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a game to the posting list of each of its genres.
+     *
+     * @param gameId the ID of the game
+     * @param genres the genres of the game; may be null
+     */
+    public void addGame(int gameId, List<String> genres) {
+        if (genres == null) {
+            return;
+        }
+        for (String genre : genres) {
+            if (genre != null) {
+                postings.computeIfAbsent(GameRepo.foldCase(genre), key -> new PostingList()).add(gameId);
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of games, publishing each genre's posting list once for the whole
+     * batch instead of once per game.
+     *
+     * @param games the games to add; their genres may be null
+     */
+    public void addGames(List<Games> games) {
+        // Collect the new IDs of each genre, then merge them in one go
+        Map<String, PostingList.IdBuffer> idsByGenre = new HashMap<>();
+        for (Games game : games) {
+            if (game.getGenres() == null) {
+                continue;
+            }
+            for (String genre : game.getGenres()) {
+                if (genre != null) {
+                    idsByGenre.computeIfAbsent(GameRepo.foldCase(genre), key -> new PostingList.IdBuffer()).add(game.getGameId());
+                }
+            }
+        }
+        idsByGenre.forEach((genre, ids) -> postings.computeIfAbsent(genre, key -> new PostingList())
+                .addAll(ids.sorted()));
+    }
+
+    /**
+     * Finds the IDs of the games that have every one of the given genres.
+     *
+     * @param genres the genres to match, ignoring case; must not be empty
+     * @return the matching game IDs in ascending order
+     */
+    public int[] findGameIds(List<String> genres) {
+        PostingList.Postings[] lists = snapshot(genres);
+        if (lists == null) {
+            return new int[0];
+        }
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int resultSize = result.length;
+        for (int i = 1; i < lists.length && resultSize > 0; i++) {
+            resultSize = lists[i].retainAll(result, resultSize);
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    /**
+     * Finds one page of the IDs of the games that have every one of the given genres.
+     * The shortest posting list is walked from the cursor and each candidate is looked
+     * up in the others, stopping as soon as the page is full.
+     *
+     * @param genres      the genres to match, ignoring case; must not be empty
+     * @param afterGameId only return IDs greater than this
+     * @param limit       the maximum number of IDs to return
+     * @return up to limit matching game IDs in ascending order
+     */
+    public int[] findGameIds(List<String> genres, int afterGameId, int limit) {
+        PostingList.Postings[] lists = snapshot(genres);
+        if (lists == null) {
+            return new int[0];
+        }
+        PostingList.Postings shortest = lists[0];
+        int[] page = new int[Math.min(limit, shortest.size)];
+        int pageSize = 0;
+        // Where the search in each of the other lists resumes; candidates only grow
+        int[] from = new int[lists.length];
+        int start = Arrays.binarySearch(shortest.ids, 0, shortest.size, afterGameId);
+        start = start >= 0 ? start + 1 : -start - 1;
+        for (int i = start; i < shortest.size && pageSize < page.length; i++) {
+            int candidate = shortest.ids[i];
+            boolean inEveryList = true;
+            for (int j = 1; j < lists.length && inEveryList; j++) {
+                int position = Arrays.binarySearch(lists[j].ids, from[j], lists[j].size, candidate);
+                inEveryList = position >= 0;
+                from[j] = inEveryList ? position + 1 : -position - 1;
+            }
+            if (inEveryList) {
+                page[pageSize++] = candidate;
+            }
+        }
+        return Arrays.copyOf(page, pageSize);
+    }
+
+    // Takes a snapshot of the posting list of every genre, shortest first;..
+    // ..null if a genre has no games, as then nothing can match
+    private PostingList.Postings[] snapshot(List<String> genres) {
+        PostingList.Postings[] lists = new PostingList.Postings[genres.size()];
+        for (int i = 0; i < lists.length; i++) {
+            PostingList postingList = postings.get(GameRepo.foldCase(genres.get(i)));
+            if (postingList == null) {
+                return null;
+            }
+            lists[i] = postingList.current();
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        return lists;
+    }
+
+    // The IDs of the games in one genre, ignoring case; empty if no game has it
+    PostingList.Postings gameIds(String genre) {
+        PostingList postingList = postings.get(GameRepo.foldCase(genre));
+        return postingList == null ? PostingList.Postings.EMPTY : postingList.current();
+    }
+
+    /**
+     * Returns the number of distinct genres in the index.
+     *
+     * @return the number of posting lists
+     */
+    public int size() {
+        return postings.size();
+    }
+}
@@ -0,0 +1,117 @@
+package stacs.GameRepo;
+
+/**
+ * A hash map from primitive int keys to primitive long values, with linear probing.
+ * Entries can be added and replaced but not removed. Not thread-safe: callers guard it.
+ */
+public class IntLongHashMap {
+    // 0 marks an empty slot, so a value stored under key 0 is kept on the side
+    private static final int EMPTY_KEY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private int size;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    /**
+     * Returns the value stored under the given key.
+     *
+     * @param key          the key to look up
+     * @param missingValue the value to return if the key is not present
+     * @return the stored value, or missingValue
+     */
+    public long get(int key, long missingValue) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int slot = findSlot(keys, key);
+        return keys[slot] == key ? values[slot] : missingValue;
+    }
+
+    /**
+     * Stores a value under the given key, replacing any previous value.
+     *
+     * @param key   the key to store the value under
+     * @param value the value to store
+     */
+    public void put(int key, long value) {
+        if (key == EMPTY_KEY) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int slot = findSlot(keys, key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return the number of keys stored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the action for every entry, in no particular order.
+     *
+     * @param action the action to call with each key and value
+     */
+    public void forEach(EntryConsumer action) {
+        if (hasZeroKey) {
+            action.accept(EMPTY_KEY, zeroValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY_KEY) {
+                action.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * An action taking an int key and its long value.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+    // Returns the slot holding the key, or the empty slot where it would be inserted
+    private static int findSlot(int[] table, int key) {
+        int mask = table.length - 1;
+        int h = key * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (table[slot] != EMPTY_KEY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[newCapacity];
+        values = new long[newCapacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
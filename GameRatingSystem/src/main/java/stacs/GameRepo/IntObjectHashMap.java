@@ -0,0 +1,183 @@
+package stacs.GameRepo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A hash map keyed by primitive ints, used by GameRepo to index games and users by ID.
+ * Keys are stored in an int array with linear probing, so looking up an ID never boxes it.
+ * Entries can be added and replaced but not removed.
+ *
+ * <p>Reads never lock and are safe while another thread writes, but writes must be
+ * serialized by the caller: each slot is published with a release store and the
+ * table is swapped in whole when it grows, so a reader always sees a consistent table.
+ *
+ * @param <V> the type of the values stored in the map
+ */
+public class IntObjectHashMap<V> {
+    // 0 marks an empty slot, so a value stored under key 0 is kept on the side
+    private static final int EMPTY_KEY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private volatile int size;
+    private volatile Object zeroValue;
+
+    /**
+     * Returns the value stored under the given key.
+     *
+     * @param key the key to look up
+     * @return the value if present; otherwise, returns null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == EMPTY_KEY) {
+            return (V) zeroValue;
+        }
+        Table current = table;
+        int mask = current.keys.length - 1;
+        int slot = hash(key) & mask;
+        // Probe until the key or an empty slot is found
+        while (true) {
+            int slotKey = (int) KEYS.getAcquire(current.keys, slot);
+            if (slotKey == key) {
+                return (V) VALUES.getAcquire(current.values, slot);
+            }
+            if (slotKey == EMPTY_KEY) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Checks whether a value is stored under the given key.
+     *
+     * @param key the key to look up
+     * @return true if the key is present
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Stores a value under the given key, replacing any previous value.
+     * Callers must not call this from two threads at once.
+     *
+     * @param key   the key to store the value under
+     * @param value the value to store; must not be null
+     * @return the previous value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("A value is required");
+        }
+        if (key == EMPTY_KEY) {
+            V previous = (V) zeroValue;
+            zeroValue = value;
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+        Table current = table;
+        int slot = findSlot(current.keys, key);
+        if (current.keys[slot] == key) {
+            V previous = (V) current.values[slot];
+            VALUES.setRelease(current.values, slot, value);
+            return previous;
+        }
+        // Write the value before the key so a reader that finds the key also sees the value
+        current.values[slot] = value;
+        KEYS.setRelease(current.keys, slot, key);
+        size++;
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > current.keys.length) {
+            table = current.resize(current.keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return the number of keys stored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the action for every entry, in no particular order.
+     * Entries added while this runs may or may not be visited.
+     *
+     * @param action the action to call with each key and value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        Object zero = zeroValue;
+        if (zero != null) {
+            action.accept(EMPTY_KEY, (V) zero);
+        }
+        Table current = table;
+        for (int slot = 0; slot < current.keys.length; slot++) {
+            int key = (int) KEYS.getAcquire(current.keys, slot);
+            if (key != EMPTY_KEY) {
+                action.accept(key, (V) VALUES.getAcquire(current.values, slot));
+            }
+        }
+    }
+
+    /**
+     * An action taking an int key and its value.
+     *
+     * @param <V> the type of the values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    // Returns the slot holding the key, or the empty slot where it would be inserted
+    private static int findSlot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Spreads sequential IDs across the table (Fibonacci hashing)
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // The key and value arrays, replaced together when the map grows
+    private static final class Table {
+        private final int[] keys;
+        private final Object[] values;
+
+        private Table(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+        }
+
+        // Copies every entry into a new table; the old one is left untouched for readers
+        private Table resize(int newCapacity) {
+            Table resized = new Table(newCapacity);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY_KEY) {
+                    int slot = findSlot(resized.keys, keys[i]);
+                    resized.keys[slot] = keys[i];
+                    resized.values[slot] = values[i];
+                }
+            }
+            return resized;
+        }
+    }
+}
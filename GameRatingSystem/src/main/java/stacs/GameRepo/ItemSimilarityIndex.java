@@ -0,0 +1,507 @@
+package stacs.GameRepo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The most similar games of every rated game, by adjusted cosine similarity of their
+ * ratings: each rating is centred on its user's mean rating, and two games are compared
+ * over the users who rated both. Only the top {@code neighbourCount} games with a positive
+ * similarity are kept per game, as a pair of primitive arrays.
+ *
+ * <p>{@link #rebuild} recomputes every game from a copy of the ratings, split across the
+ * cores of a fork-join pool. Between rebuilds, GameRepo reports each rated game to
+ * {@link #markChanged}, and {@link #refresh} recomputes just those games against the
+ * norms of the last rebuild; shifts in user means and the norms of other games are only
+ * picked up by the next rebuild. A refresh reads every rating of each rater of a game, so
+ * games with more than {@code maxRefreshRaters} raters are left to the next rebuild.
+ * Rebuilds and refreshes run one at a time; lookups never lock.
+ */
+public class ItemSimilarityIndex {
+    // A pair of games needs this many common raters before its similarity is trusted
+    static final int MIN_CO_RATERS = 2;
+    // Raters of a changed game are paged through this many at a time
+    private static final int RATER_PAGE_SIZE = 1024;
+
+    private final GameRepo gameRepo;
+    private final int neighbourCount;
+    private final int maxRefreshRaters;
+    // Game ID -> its most similar games; written only under buildLock
+    private volatile IntObjectHashMap<Neighbours> neighboursByGame = new IntObjectHashMap<>();
+    // Game ID -> the norm of its centred ratings, as double bits; used by refresh
+    private IntLongHashMap norms = new IntLongHashMap();
+    // Games rated since the last rebuild or refresh started
+    private final Set<Integer> changedGames = ConcurrentHashMap.newKeySet();
+    // Changes are only tracked once the first rebuild has started, as it reads every rating
+    private volatile boolean tracking;
+    private volatile boolean built;
+    private final ReentrantLock buildLock = new ReentrantLock();
+
+    /**
+     * Creates an empty index over the ratings of a repository, refreshing games with any
+     * number of raters.
+     *
+     * @param gameRepo       the repository to read the ratings from
+     * @param neighbourCount the number of similar games to keep per game
+     */
+    public ItemSimilarityIndex(GameRepo gameRepo, int neighbourCount) {
+        this(gameRepo, neighbourCount, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates an empty index over the ratings of a repository.
+     *
+     * @param gameRepo         the repository to read the ratings from
+     * @param neighbourCount   the number of similar games to keep per game
+     * @param maxRefreshRaters the most raters a game may have to be refreshed rather than..
+     *                         ..left to the next rebuild
+     */
+    public ItemSimilarityIndex(GameRepo gameRepo, int neighbourCount, int maxRefreshRaters) {
+        if (neighbourCount <= 0 || maxRefreshRaters <= 0) {
+            throw new IllegalArgumentException("The neighbour count and refresh rater limit must be positive");
+        }
+        this.gameRepo = gameRepo;
+        this.neighbourCount = neighbourCount;
+        this.maxRefreshRaters = maxRefreshRaters;
+    }
+
+    /**
+     * Records that a game has been rated, so the next refresh recomputes it.
+     *
+     * @param gameId the ID of the rated game
+     */
+    public void markChanged(int gameId) {
+        if (tracking) {
+            changedGames.add(gameId);
+        }
+    }
+
+    /**
+     * Returns whether a rebuild has finished, so the index can be used.
+     *
+     * @return true once the first rebuild is done
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Returns the most similar games of a game, most similar first.
+     *
+     * @param gameId the ID of the game
+     * @return the game's neighbours; empty if it has none or has not been indexed
+     */
+    public Neighbours neighbours(int gameId) {
+        Neighbours neighbours = neighboursByGame.get(gameId);
+        return neighbours == null ? Neighbours.EMPTY : neighbours;
+    }
+
+    /**
+     * Recomputes the neighbours of every rated game from a copy of the ratings.
+     *
+     * @param pool the pool to spread the work over
+     */
+    public void rebuild(ForkJoinPool pool) {
+        buildLock.lock();
+        try {
+            // Anything rated from here on is refreshed after this rebuild, even if the copy sees it
+            tracking = true;
+            changedGames.clear();
+            Ratings ratings = copyRatings(pool);
+            Neighbours[] computed = new Neighbours[ratings.gameIds.length];
+            int leaves = pool.getParallelism() * 4;
+            pool.invoke(new RangeTask(0, computed.length, Math.max(1, computed.length / leaves),
+                    (from, to) -> computeRange(ratings, from, to, computed)));
+
+            IntObjectHashMap<Neighbours> rebuilt = new IntObjectHashMap<>();
+            IntLongHashMap rebuiltNorms = new IntLongHashMap();
+            for (int i = 0; i < computed.length; i++) {
+                rebuiltNorms.put(ratings.gameIds[i], Double.doubleToLongBits(ratings.norms[i]));
+                if (computed[i].size() > 0) {
+                    rebuilt.put(ratings.gameIds[i], computed[i]);
+                }
+            }
+            norms = rebuiltNorms;
+            neighboursByGame = rebuilt;
+            built = true;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    /**
+     * Recomputes the neighbours of the games rated since the last rebuild or refresh,
+     * and updates those games in the neighbours of the games they are similar to. Games
+     * with more raters than the refresh limit keep their neighbours until the next rebuild.
+     *
+     * @return the number of games recomputed
+     */
+    public int refresh() {
+        buildLock.lock();
+        try {
+            if (!built) {
+                return 0;
+            }
+            Integer[] changed = changedGames.toArray(new Integer[0]);
+            changedGames.removeAll(Arrays.asList(changed));
+            int refreshed = 0;
+            for (int gameId : changed) {
+                if (refreshGame(gameId)) {
+                    refreshed++;
+                }
+            }
+            return refreshed;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    // A copy of the ratings indexed by position: users in ascending ID order,..
+    // ..games as positions in the sorted array of rated game IDs
+    private static final class Ratings {
+        int[] gameIds;
+        // For each user, the positions of the games they rated and their centred ratings
+        int[][] userGames;
+        float[][] userValues;
+        // For each game, the positions of its raters and their centred ratings
+        int[][] gameUsers;
+        float[][] gameValues;
+        double[] norms;
+    }
+
+    private Ratings copyRatings(ForkJoinPool pool) {
+        int[] userIds = gameRepo.listRatedUserIds(0);
+        long[][] packed = new long[userIds.length][];
+        // Each copy holds one user's rating lock briefly, so users are copied in parallel
+        pool.invoke(new RangeTask(0, userIds.length, 256,
+                (from, to) -> {
+                    for (int u = from; u < to; u++) {
+                        packed[u] = gameRepo.copyRatingsOfUser(userIds[u]);
+                    }
+                }));
+
+        Ratings ratings = new Ratings();
+        int total = 0;
+        for (long[] userRatings : packed) {
+            total += userRatings.length;
+        }
+        int[] allGameIds = new int[total];
+        int next = 0;
+        for (long[] userRatings : packed) {
+            for (long rating : userRatings) {
+                allGameIds[next++] = (int) (rating >> 32);
+            }
+        }
+        ratings.gameIds = Arrays.stream(allGameIds).sorted().distinct().toArray();
+
+        int[] raterCounts = new int[ratings.gameIds.length];
+        ratings.userGames = new int[packed.length][];
+        ratings.userValues = new float[packed.length][];
+        for (int u = 0; u < packed.length; u++) {
+            long[] userRatings = packed[u];
+            double mean = mean(userRatings);
+            int[] games = new int[userRatings.length];
+            float[] values = new float[userRatings.length];
+            for (int k = 0; k < userRatings.length; k++) {
+                games[k] = Arrays.binarySearch(ratings.gameIds, (int) (userRatings[k] >> 32));
+                values[k] = (float) ((int) userRatings[k] - mean);
+                raterCounts[games[k]]++;
+            }
+            ratings.userGames[u] = games;
+            ratings.userValues[u] = values;
+            packed[u] = null;
+        }
+
+        ratings.gameUsers = new int[raterCounts.length][];
+        ratings.gameValues = new float[raterCounts.length][];
+        for (int i = 0; i < raterCounts.length; i++) {
+            ratings.gameUsers[i] = new int[raterCounts[i]];
+            ratings.gameValues[i] = new float[raterCounts[i]];
+            raterCounts[i] = 0;
+        }
+        ratings.norms = new double[raterCounts.length];
+        for (int u = 0; u < ratings.userGames.length; u++) {
+            for (int k = 0; k < ratings.userGames[u].length; k++) {
+                int i = ratings.userGames[u][k];
+                float value = ratings.userValues[u][k];
+                ratings.gameUsers[i][raterCounts[i]] = u;
+                ratings.gameValues[i][raterCounts[i]++] = value;
+                ratings.norms[i] += (double) value * value;
+            }
+        }
+        for (int i = 0; i < ratings.norms.length; i++) {
+            ratings.norms[i] = Math.sqrt(ratings.norms[i]);
+        }
+        return ratings;
+    }
+
+    // Computes the neighbours of a range of games, with one set of accumulators for the whole range
+    private void computeRange(Ratings ratings, int from, int to, Neighbours[] computed) {
+        double[] dots = new double[ratings.gameIds.length];
+        int[] coRaters = new int[ratings.gameIds.length];
+        int[] touched = new int[ratings.gameIds.length];
+        for (int i = from; i < to; i++) {
+            int touchedCount = 0;
+            int[] raters = ratings.gameUsers[i];
+            float[] values = ratings.gameValues[i];
+            for (int r = 0; r < raters.length; r++) {
+                int[] games = ratings.userGames[raters[r]];
+                float[] userValues = ratings.userValues[raters[r]];
+                for (int k = 0; k < games.length; k++) {
+                    int j = games[k];
+                    if (j == i) {
+                        continue;
+                    }
+                    if (coRaters[j] == 0) {
+                        touched[touchedCount++] = j;
+                    }
+                    dots[j] += (double) values[r] * userValues[k];
+                    coRaters[j]++;
+                }
+            }
+            TopNeighbours top = new TopNeighbours(neighbourCount);
+            for (int t = 0; t < touchedCount; t++) {
+                int j = touched[t];
+                if (coRaters[j] >= MIN_CO_RATERS) {
+                    top.offer(ratings.gameIds[j], similarity(dots[j], ratings.norms[i], ratings.norms[j]));
+                }
+                dots[j] = 0;
+                coRaters[j] = 0;
+            }
+            computed[i] = top.toNeighbours();
+        }
+    }
+
+    // Recomputes one game from the live ratings of its raters; false if it has none or too many
+    private boolean refreshGame(int gameId) {
+        GameRaters raters = gameRepo.ratersOf(gameId);
+        if (raters == null || raters.size() > maxRefreshRaters) {
+            return false;
+        }
+        // Other game ID -> {dot product, common raters}
+        Map<Integer, double[]> sums = new HashMap<>();
+        double normSquared = 0;
+        int after = 0;
+        List<UserRating> page;
+        do {
+            page = raters.page(after, RATER_PAGE_SIZE);
+            for (UserRating rater : page) {
+                long[] userRatings = gameRepo.copyRatingsOfUser(rater.getUserId());
+                double mean = mean(userRatings);
+                double value = rater.getRating() - mean;
+                normSquared += value * value;
+                for (long rating : userRatings) {
+                    int otherGameId = (int) (rating >> 32);
+                    if (otherGameId != gameId) {
+                        double[] sum = sums.computeIfAbsent(otherGameId, id -> new double[2]);
+                        sum[0] += value * ((int) rating - mean);
+                        sum[1]++;
+                    }
+                }
+                after = rater.getUserId();
+            }
+        } while (page.size() == RATER_PAGE_SIZE);
+
+        double norm = Math.sqrt(normSquared);
+        norms.put(gameId, Double.doubleToLongBits(norm));
+        TopNeighbours top = new TopNeighbours(neighbourCount);
+        for (Map.Entry<Integer, double[]> entry : sums.entrySet()) {
+            int otherGameId = entry.getKey();
+            long otherNorm = norms.get(otherGameId, -1);
+            float similarity = entry.getValue()[1] >= MIN_CO_RATERS && otherNorm != -1
+                    ? similarity(entry.getValue()[0], norm, Double.longBitsToDouble(otherNorm))
+                    : 0;
+            top.offer(otherGameId, similarity);
+            // Similarity is symmetric, so the other game's neighbours change too
+            Neighbours others = neighbours(otherGameId);
+            Neighbours updated = others.with(gameId, similarity, neighbourCount);
+            if (updated != others) {
+                neighboursByGame.put(otherGameId, updated);
+            }
+        }
+        neighboursByGame.put(gameId, top.toNeighbours());
+        return true;
+    }
+
+    private static float similarity(double dot, double norm, double otherNorm) {
+        return norm == 0 || otherNorm == 0 ? 0 : (float) (dot / (norm * otherNorm));
+    }
+
+    // The mean of ratings packed as game ID << 32 | rating
+    static double mean(long[] ratings) {
+        if (ratings.length == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (long rating : ratings) {
+            sum += (int) rating;
+        }
+        return (double) sum / ratings.length;
+    }
+
+    /**
+     * The most similar games of one game, most similar first. Never changed once built:
+     * an update makes a new one, so a reader always sees a consistent pair of arrays.
+     */
+    public static final class Neighbours {
+        static final Neighbours EMPTY = new Neighbours(new int[0], new float[0]);
+
+        private final int[] gameIds;
+        private final float[] similarities;
+
+        Neighbours(int[] gameIds, float[] similarities) {
+            this.gameIds = gameIds;
+            this.similarities = similarities;
+        }
+
+        public int size() {
+            return gameIds.length;
+        }
+
+        public int gameId(int index) {
+            return gameIds[index];
+        }
+
+        public float similarity(int index) {
+            return similarities[index];
+        }
+
+        // Returns a copy with the game's similarity replaced, or this if nothing changes
+        Neighbours with(int gameId, float similarity, int limit) {
+            TopNeighbours top = new TopNeighbours(limit);
+            boolean present = false;
+            for (int k = 0; k < gameIds.length; k++) {
+                if (gameIds[k] == gameId) {
+                    present = true;
+                } else {
+                    top.offer(gameIds[k], similarities[k]);
+                }
+            }
+            if (!present && (similarity <= 0 || (gameIds.length == limit && similarity <= similarities[limit - 1]))) {
+                return this;
+            }
+            top.offer(gameId, similarity);
+            return top.toNeighbours();
+        }
+    }
+
+    // Keeps the highest positive similarities offered, up to a limit
+    private static final class TopNeighbours {
+        private final int[] gameIds;
+        private final float[] similarities;
+        private int size;
+
+        TopNeighbours(int limit) {
+            gameIds = new int[limit];
+            similarities = new float[limit];
+        }
+
+        void offer(int gameId, float similarity) {
+            if (!(similarity > 0)) {
+                return;
+            }
+            int position = size;
+            if (size == gameIds.length) {
+                if (similarity <= similarities[size - 1]) {
+                    return;
+                }
+                position--;
+            } else {
+                size++;
+            }
+            // Insertion into the sorted arrays; the limit is small
+            while (position > 0 && similarities[position - 1] < similarity) {
+                gameIds[position] = gameIds[position - 1];
+                similarities[position] = similarities[position - 1];
+                position--;
+            }
+            gameIds[position] = gameId;
+            similarities[position] = similarity;
+        }
+
+        Neighbours toNeighbours() {
+            return size == 0 ? Neighbours.EMPTY
+                    : new Neighbours(Arrays.copyOf(gameIds, size), Arrays.copyOf(similarities, size));
+        }
+    }
+
+    // Splits a range of indexes in half until it is small enough to run as one task
+    private static final class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final RangeAction action;
+
+        RangeTask(int from, int to, int threshold, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                action.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, threshold, action), new RangeTask(middle, to, threshold, action));
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Scores the games a user has not rated by the ratings they gave to similar games,
+     * predicting each as the user's mean plus the similarity-weighted average of their
+     * centred ratings of its neighbours.
+     *
+     * @param ratings the user's ratings, packed as game ID << 32 | rating and sorted by game ID
+     * @param n       the maximum number of games to return
+     * @return up to n {game ID, predicted rating, neighbours used} triples, best first
+     */
+    List<double[]> score(long[] ratings, int n) {
+        double mean = mean(ratings);
+        int[] ratedGameIds = new int[ratings.length];
+        for (int k = 0; k < ratings.length; k++) {
+            ratedGameIds[k] = (int) (ratings[k] >> 32);
+        }
+        // Candidate game ID -> {weighted sum of centred ratings, sum of similarities, neighbours used}
+        Map<Integer, double[]> candidates = new HashMap<>();
+        for (int k = 0; k < ratings.length; k++) {
+            double value = (int) ratings[k] - mean;
+            Neighbours neighbours = neighbours(ratedGameIds[k]);
+            for (int m = 0; m < neighbours.size(); m++) {
+                int gameId = neighbours.gameId(m);
+                // The ratings are sorted by game ID
+                if (Arrays.binarySearch(ratedGameIds, gameId) >= 0) {
+                    continue;
+                }
+                double[] candidate = candidates.computeIfAbsent(gameId, id -> new double[3]);
+                candidate[0] += neighbours.similarity(m) * value;
+                candidate[1] += neighbours.similarity(m);
+                candidate[2]++;
+            }
+        }
+        List<double[]> scored = new ArrayList<>(candidates.size());
+        for (Map.Entry<Integer, double[]> entry : candidates.entrySet()) {
+            double[] candidate = entry.getValue();
+            scored.add(new double[] {entry.getKey(), mean + candidate[0] / candidate[1], candidate[2]});
+        }
+        // Best prediction first; among equal predictions, the one backed by more neighbours
+        scored.sort((a, b) -> a[1] != b[1] ? Double.compare(b[1], a[1]) : Double.compare(b[2], a[2]));
+        return scored.size() > n ? scored.subList(0, n) : scored;
+    }
+}
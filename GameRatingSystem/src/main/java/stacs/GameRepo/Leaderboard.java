@@ -0,0 +1,182 @@
+package stacs.GameRepo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps rated games ordered by their Bayesian-weighted average rating, overall and per genre.
+ *
+ * <p>A game's score is its mean rating pulled towards a prior mean, as if it had also received
+ * {@code priorWeight} ratings of {@code priorMean}. Games with only a handful of ratings therefore
+ * cannot top the board on one perfect score. The prior is fixed rather than the live global mean,
+ * so a new rating only ever moves the one game it belongs to.
+ *
+ * <p>Entries live in concurrent skip lists: a top-N query walks the first N entries in
+ * O(log n + N), and repositioning a game is a remove and an insert. Each game is only
+ * repositioned while its GameRatingStats write lock is held, so two updates to the same
+ * game never interleave. The skip list iterators are weakly consistent, so a walk can
+ * meet a game twice when it is re-rated behind the walk and lands ahead of it; anything
+ * walking the rankings skips game IDs it has already seen.
+ */
+public class Leaderboard {
+    // A neutral prior for the 1 to 5 rating scale used by the clients
+    public static final double DEFAULT_PRIOR_MEAN = 3.0;
+    public static final int DEFAULT_PRIOR_WEIGHT = 5;
+
+    // Highest score first, then lowest game ID so the order is total
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingDouble((Entry entry) -> entry.score).reversed()
+            .thenComparingInt(entry -> entry.gameId);
+
+    private final double priorMean;
+    private final int priorWeight;
+    private final NavigableSet<Entry> overall = new ConcurrentSkipListSet<>(RANKING);
+    // Rankings keyed by case-folded genre name
+    private final Map<String, NavigableSet<Entry>> byGenre = new ConcurrentHashMap<>();
+
+    public Leaderboard() {
+        this(DEFAULT_PRIOR_MEAN, DEFAULT_PRIOR_WEIGHT);
+    }
+
+    /**
+     * Creates a leaderboard with the given prior.
+     *
+     * @param priorMean   the rating every game is pulled towards
+     * @param priorWeight how many ratings the prior counts as
+     */
+    public Leaderboard(double priorMean, int priorWeight) {
+        if (priorWeight < 0) {
+            throw new IllegalArgumentException("The prior weight cannot be negative");
+        }
+        this.priorMean = priorMean;
+        this.priorWeight = priorWeight;
+    }
+
+    /**
+     * Moves a game to the position matching its new rating totals.
+     * Must be called with the game's stats lock held.
+     *
+     * @param previous     the game's current entry, or null if it is not ranked yet
+     * @param gameId       the ID of the game
+     * @param genres       the case-folded genres of the game
+     * @param ratingCount  the number of ratings of the game
+     * @param ratingSum    the sum of the ratings of the game
+     * @return the game's new entry, or null if it has no ratings left
+     */
+    Entry reposition(Entry previous, int gameId, List<String> genres, long ratingCount, long ratingSum) {
+        Entry updated = null;
+        if (ratingCount > 0) {
+            double score = (priorWeight * priorMean + ratingSum) / (priorWeight + ratingCount);
+            updated = new Entry(gameId, score, ratingCount, (double) ratingSum / ratingCount);
+        }
+        // Remove before inserting, so the game is never ranked twice; a walk that has already..
+        // ..passed the old entry can still meet the new one, which is why walks skip repeats
+        if (previous != null) {
+            overall.remove(previous);
+        }
+        if (updated != null) {
+            overall.add(updated);
+        }
+        for (String genre : genres) {
+            NavigableSet<Entry> ranking = byGenre.computeIfAbsent(genre, key -> new ConcurrentSkipListSet<>(RANKING));
+            if (previous != null) {
+                ranking.remove(previous);
+            }
+            if (updated != null) {
+                ranking.add(updated);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Returns the highest ranked games.
+     *
+     * @param n          the maximum number of entries to return
+     * @param genre      only rank games in this genre, ignoring case; null for all games
+     * @param minRatings skip games with fewer ratings than this
+     * @return up to n entries, best first
+     */
+    public List<Entry> top(int n, String genre, long minRatings) {
+        return top(n, genre, minRatings, gameId -> true);
+    }
+
+    /**
+     * Returns the highest ranked games that pass a filter, skipping the others before
+     * counting n, so fewer than n are only returned when fewer qualify.
+     *
+     * @param n          the maximum number of entries to return
+     * @param genre      only rank games in this genre, ignoring case; null for all games
+     * @param minRatings skip games with fewer ratings than this
+     * @param include    whether to include a game, by ID
+     * @return up to n entries, best first
+     */
+    public List<Entry> top(int n, String genre, long minRatings, IntPredicate include) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        NavigableSet<Entry> ranking = genre == null ? overall : byGenre.get(GameRepo.foldCase(genre));
+        List<Entry> entries = new ArrayList<>(Math.min(n, 64));
+        if (ranking == null) {
+            return entries;
+        }
+        Set<Integer> listed = new HashSet<>();
+        for (Entry entry : ranking) {
+            if (entries.size() == n) {
+                break;
+            }
+            // Skip games below the rating threshold, and games re-rated ahead of the walk
+            if (entry.ratingCount >= minRatings && include.test(entry.gameId) && listed.add(entry.gameId)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    // Every ranked game, best first, overall or in one genre ignoring case; empty for a genre nobody rated
+    NavigableSet<Entry> ranking(String genre) {
+        NavigableSet<Entry> ranking = genre == null ? overall : byGenre.get(GameRepo.foldCase(genre));
+        return ranking == null ? new ConcurrentSkipListSet<>(RANKING) : ranking;
+    }
+
+    /**
+     * A game's position on the leaderboard. Entries are immutable; a rating replaces the entry.
+     */
+    public static final class Entry {
+        private final int gameId;
+        private final double score;
+        private final long ratingCount;
+        private final double meanRating;
+
+        Entry(int gameId, double score, long ratingCount, double meanRating) {
+            this.gameId = gameId;
+            this.score = score;
+            this.ratingCount = ratingCount;
+            this.meanRating = meanRating;
+        }
+
+        public int getGameId() {
+            return gameId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public long getRatingCount() {
+            return ratingCount;
+        }
+
+        public double getMeanRating() {
+            return meanRating;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package stacs.GameRepo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * The original rating layout: a map per user of game to boxed rating, keyed by the
+ * Users and Games objects themselves. It is the default, and the only store that keeps
+ * ratings for users and games that were never added to the repository.
+ */
+public class MapRatingStore implements RatingStore {
+    private final Map<Users, Map<Games, Integer>> userGameRatings = new ConcurrentHashMap<>();
+    // The Users object each user ID was first rated with, to find a user's ratings by ID
+    private final Map<Integer, Users> ratersById = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+
+    @Override
+    public int put(Users user, Games game, int rating) {
+        // Ensure that the user has an existing ratings map; if not, create one
+        Map<Games, Integer> userRatings = userGameRatings.computeIfAbsent(user, key -> {
+            ratersById.putIfAbsent(key.getUserId(), key);
+            return new ConcurrentHashMap<>();
+        });
+        // Store the rating for the game in the user's ratings map
+        Integer previousRating = userRatings.put(game, rating);
+        if (previousRating == null) {
+            size.incrementAndGet();
+            return NO_RATING;
+        }
+        return previousRating;
+    }
+
+    @Override
+    public Map<Games, Integer> getRatings(Users user) {
+        Map<Games, Integer> userRatings = userGameRatings.get(user);
+        return userRatings == null ? Collections.emptyMap() : userRatings;
+    }
+
+    @Override
+    public Map<Users, Map<Games, Integer>> asMap() {
+        return userGameRatings;
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public void forEachRating(RatingVisitor visitor) {
+        userGameRatings.forEach((user, userRatings) -> userRatings.forEach(
+                (game, rating) -> visitor.visit(user.getUserId(), game.getGameId(), rating)));
+    }
+
+    @Override
+    public int[] userIds() {
+        return ratersById.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public void forEachRatingOfUser(int userId, RatingVisitor visitor) {
+        Users user = ratersById.get(userId);
+        if (user != null) {
+            getRatings(user).forEach((game, rating) -> visitor.visit(userId, game.getGameId(), rating));
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package stacs.GameRepo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * A rating store that keeps the ratings off the Java heap, in a memory-mapped file.
+ * The only thing left on the heap is a directory of user ID -> file offset, so the
+ * garbage collector never has to trace the ratings themselves, and reopening the file
+ * after a restart only walks the block headers instead of loading every rating.
+ *
+ * <p>The file starts with a 64 byte header (magic, format version, end of the used
+ * space, clean shutdown marker, write-ahead log LSN), followed by one block per user. A block holds a 16 byte header (status,
+ * user ID, capacity, size), the user's rated game IDs in ascending order and then one
+ * byte per rating. When a block is full the user's ratings are copied to a block twice
+ * the size at the end of the file and the old block is marked dead. {@link #deadBytes}
+ * reports the space the dead blocks take; once it reaches half of the used space, the
+ * next open slides the live blocks down over it.
+ *
+ * <p>The file is mapped in fixed-size chunks and a block never straddles two chunks;
+ * the gap left at the end of a chunk is filled with a padding block. Each user's block
+ * is guarded by one of 64 striped read/write locks, so writes for different users run
+ * in parallel; only allocating a block takes the lock on the directory and the end of
+ * the file. Ratings must fit in a byte.
+ *
+ * <p>The chunks are only forced to disk on close, which then records the LSN the log had
+ * reached and sets the clean shutdown marker, so GameRepo only replays the ratings logged
+ * after it. A file opened without the marker, after a crash, may hold half-written
+ * blocks, so it is started afresh and GameRepo rebuilds it from the write-ahead log;
+ * this is why GameRepo only opens the store with {@code gamerepo.wal-enabled=true}.
+ */
+public class MappedRatingStore implements RatingStore {
+    // 64 MiB per mapping keeps the number of mappings small for large files
+    public static final long DEFAULT_CHUNK_BYTES = 64L << 20;
+
+    // "GRRS" in ASCII
+    private static final int MAGIC = 0x47525253;
+    private static final int VERSION = 2;
+    private static final int FILE_HEADER_BYTES = 64;
+    private static final int ARENA_END_OFFSET = 8;
+    // 1 once every chunk has been forced on close, 0 while the file is open
+    private static final int CLEAN_OFFSET = 16;
+    // The log LSN the blocks held every rating up to on close; a file written before it was..
+    // ..added holds 0 there, so the whole log is replayed as before
+    private static final int WAL_LSN_OFFSET = 24;
+    private static final int LOCK_STRIPES = 64;
+    private static final int BLOCK_HEADER_BYTES = 16;
+    private static final int ALIGNMENT = 16;
+    private static final int INITIAL_BLOCK_CAPACITY = 4;
+    private static final long NO_BLOCK = -1;
+
+    // Block statuses; 0 is never written, so a zeroed chunk holds no blocks
+    private static final int LIVE = 1;
+    private static final int DEAD = 2;
+    private static final int PADDING = 3;
+
+    private final IntFunction<Users> userResolver;
+    private final IntFunction<Games> gameResolver;
+    private final FileChannel channel;
+    private final long chunkBytes;
+    // Replaced with a longer copy when a chunk is mapped, so reads never lock to find a chunk
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    // User ID -> offset of the user's live block
+    private final IntLongHashMap blockByUser = new IntLongHashMap();
+    // Guards the contents of the blocks of the users in each stripe
+    private final ReentrantReadWriteLock[] userLocks = new ReentrantReadWriteLock[LOCK_STRIPES];
+    // Guards blockByUser, arenaEnd and the mapping of chunks; always taken after a user lock
+    private final ReentrantReadWriteLock directoryLock = new ReentrantReadWriteLock();
+    // Offset of the first unused byte of the file
+    private long arenaEnd;
+    private final LongAdder size = new LongAdder();
+    // Bytes taken by dead blocks and padding
+    private final LongAdder deadBytes = new LongAdder();
+    // Read from the header on open; 0 unless the file was closed cleanly
+    private final long walLsn;
+
+    /**
+     * Opens the rating file, creating it if it does not exist, with the default chunk size.
+     *
+     * @param file         the file to keep the ratings in
+     * @param userResolver finds a user by ID, returning null if there is none
+     * @param gameResolver finds a game by ID, returning null if there is none
+     */
+    public MappedRatingStore(Path file, IntFunction<Users> userResolver, IntFunction<Games> gameResolver) {
+        this(file, DEFAULT_CHUNK_BYTES, userResolver, gameResolver);
+    }
+
+    /**
+     * Opens the rating file, creating it if it does not exist.
+     *
+     * @param file         the file to keep the ratings in
+     * @param chunkBytes   the size of each mapping; a multiple of 16, and the same every time the file is opened
+     * @param userResolver finds a user by ID, returning null if there is none
+     * @param gameResolver finds a game by ID, returning null if there is none
+     */
+    public MappedRatingStore(Path file, long chunkBytes, IntFunction<Users> userResolver,
+                             IntFunction<Games> gameResolver) {
+        if (chunkBytes < FILE_HEADER_BYTES + BLOCK_HEADER_BYTES + ALIGNMENT
+                || chunkBytes > Integer.MAX_VALUE || chunkBytes % ALIGNMENT != 0) {
+            throw new IllegalArgumentException("The chunk size must be a multiple of 16 that fits in an int");
+        }
+        this.chunkBytes = chunkBytes;
+        this.userResolver = userResolver;
+        this.gameResolver = gameResolver;
+        for (int i = 0; i < userLocks.length; i++) {
+            userLocks[i] = new ReentrantReadWriteLock();
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // The header is read before anything is mapped, so a file left by a crash can be emptied
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(fileHeader, 0);
+            boolean isNew = channel.size() == 0;
+            if (!isNew) {
+                if (fileHeader.getInt(0) != MAGIC || fileHeader.getInt(4) != VERSION) {
+                    channel.close();
+                    throw new IllegalStateException(file + " is not a version " + VERSION + " rating file");
+                }
+                if (fileHeader.getInt(CLEAN_OFFSET) != 1) {
+                    // Not closed cleanly: the blocks cannot be trusted, and the log has every rating
+                    channel.truncate(0);
+                    isNew = true;
+                }
+            }
+            MappedByteBuffer header = chunk(0);
+            if (isNew) {
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                arenaEnd = FILE_HEADER_BYTES;
+                header.putLong(ARENA_END_OFFSET, arenaEnd);
+                walLsn = 0;
+            } else {
+                arenaEnd = header.getLong(ARENA_END_OFFSET);
+                walLsn = header.getLong(WAL_LSN_OFFSET);
+                loadDirectory();
+            }
+            // Cleared on disk before any block is changed, so a crash from here on is noticed
+            header.putInt(CLEAN_OFFSET, 0);
+            header.putLong(WAL_LSN_OFFSET, 0);
+            header.force(0, FILE_HEADER_BYTES);
+            long dead = deadBytes.sum();
+            if (dead > 0 && dead * 2 >= arenaEnd - FILE_HEADER_BYTES) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the rating file " + file, e);
+        }
+    }
+
+    @Override
+    public boolean accepts(int rating) {
+        return rating >= Byte.MIN_VALUE && rating <= Byte.MAX_VALUE;
+    }
+
+    @Override
+    public int put(Users user, Games game, int rating) {
+        if (!accepts(rating)) {
+            throw new IllegalArgumentException("A rating must fit in a byte to be stored compactly");
+        }
+        int gameId = game.getGameId();
+        ReentrantReadWriteLock userLock = userLockFor(user.getUserId());
+        userLock.writeLock().lock();
+        try {
+            long block = findBlock(user.getUserId());
+            if (block == NO_BLOCK) {
+                block = allocate(user.getUserId(), INITIAL_BLOCK_CAPACITY);
+            }
+            int capacity = getInt(block + 8);
+            int count = getInt(block + 12);
+            int position = search(block, count, gameId);
+            if (position >= 0) {
+                long ratingAt = ratingsStart(block, capacity) + position;
+                int previousRating = getByte(ratingAt);
+                putByte(ratingAt, (byte) rating);
+                return previousRating;
+            }
+            position = -position - 1;
+            if (count == capacity) {
+                block = grow(user.getUserId(), block, capacity, count);
+                capacity = getInt(block + 8);
+            }
+            // Shift the entries after the insertion point up by one, back to front
+            long ratings = ratingsStart(block, capacity);
+            for (int i = count; i > position; i--) {
+                putInt(block + BLOCK_HEADER_BYTES + 4L * i, getInt(block + BLOCK_HEADER_BYTES + 4L * (i - 1)));
+                putByte(ratings + i, getByte(ratings + i - 1));
+            }
+            putInt(block + BLOCK_HEADER_BYTES + 4L * position, gameId);
+            putByte(ratings + position, (byte) rating);
+            putInt(block + 12, count + 1);
+            size.increment();
+            return NO_RATING;
+        } finally {
+            userLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Games, Integer> getRatings(Users user) {
+        ReentrantReadWriteLock userLock = userLockFor(user.getUserId());
+        userLock.readLock().lock();
+        try {
+            long block = findBlock(user.getUserId());
+            if (block == NO_BLOCK) {
+                return new HashMap<>();
+            }
+            return resolveGames(block);
+        } finally {
+            userLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Users, Map<Games, Integer>> asMap() {
+        // Built by walking every user the repository knows about
+        Map<Users, Map<Games, Integer>> ratings = new LinkedHashMap<>();
+        for (int userId : userIds()) {
+            Users user = userResolver.apply(userId);
+            if (user != null) {
+                ratings.put(user, getRatings(user));
+            }
+        }
+        return ratings;
+    }
+
+    @Override
+    public long size() {
+        return size.sum();
+    }
+
+    @Override
+    public void forEachRating(RatingVisitor visitor) {
+        // One user at a time, each under their own lock; a user added since the IDs were read is left out
+        for (int userId : userIds()) {
+            forEachRatingOfUser(userId, visitor);
+        }
+    }
+
+    @Override
+    public int[] userIds() {
+        directoryLock.readLock().lock();
+        try {
+            int[] userIds = new int[blockByUser.size()];
+            int[] count = new int[1];
+            blockByUser.forEach((userId, block) -> userIds[count[0]++] = userId);
+            return userIds;
+        } finally {
+            directoryLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachRatingOfUser(int userId, RatingVisitor visitor) {
+        ReentrantReadWriteLock userLock = userLockFor(userId);
+        userLock.readLock().lock();
+        try {
+            long block = findBlock(userId);
+            if (block == NO_BLOCK) {
+                return;
+            }
+            int capacity = getInt(block + 8);
+            int count = getInt(block + 12);
+            long ratings = ratingsStart(block, capacity);
+            for (int i = 0; i < count; i++) {
+                visitor.visit(userId, getInt(block + BLOCK_HEADER_BYTES + 4L * i), getByte(ratings + i));
+            }
+        } finally {
+            userLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long walLsn() {
+        return walLsn;
+    }
+
+    /**
+     * Returns the bytes of the file taken by blocks left behind when users outgrew them,
+     * and by the padding at the ends of chunks, which is reclaimed when the file is reopened
+     * once it reaches half of the used space.
+     *
+     * @return the number of dead bytes
+     */
+    public long deadBytes() {
+        return deadBytes.sum();
+    }
+
+    /**
+     * Flushes the mapped chunks to disk, marks the file as closed cleanly and closes it,
+     * so the next open replays every rating in the write-ahead log.
+     */
+    @Override
+    public void close() {
+        close(0);
+    }
+
+    /**
+     * Flushes the mapped chunks to disk, records the LSN the write-ahead log was closed at,
+     * marks the file as closed cleanly and closes it.
+     *
+     * @param walLsn the LSN the log had appended up to, every rating before which is in the file
+     */
+    @Override
+    public void close(long walLsn) {
+        // Every user lock, in stripe order, then the directory, so no write is half done
+        for (ReentrantReadWriteLock userLock : userLocks) {
+            userLock.writeLock().lock();
+        }
+        directoryLock.writeLock().lock();
+        try {
+            if (!channel.isOpen()) {
+                return;
+            }
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+            // Set only once the blocks are on disk, so the marker never vouches for a lost write
+            chunks[0].putLong(WAL_LSN_OFFSET, walLsn);
+            chunks[0].putInt(CLEAN_OFFSET, 1);
+            chunks[0].force(0, FILE_HEADER_BYTES);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the rating file", e);
+        } finally {
+            directoryLock.writeLock().unlock();
+            for (ReentrantReadWriteLock userLock : userLocks) {
+                userLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Map<Games, Integer> resolveGames(long block) {
+        Map<Games, Integer> ratings = new LinkedHashMap<>();
+        int capacity = getInt(block + 8);
+        int count = getInt(block + 12);
+        long ratingsStart = ratingsStart(block, capacity);
+        for (int i = 0; i < count; i++) {
+            Games game = gameResolver.apply(getInt(block + BLOCK_HEADER_BYTES + 4L * i));
+            if (game != null) {
+                ratings.put(game, (int) getByte(ratingsStart + i));
+            }
+        }
+        return ratings;
+    }
+
+    // Binary search over a block's game IDs, with the same result as Arrays.binarySearch
+    private int search(long block, int count, int gameId) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = getInt(block + BLOCK_HEADER_BYTES + 4L * middle);
+            if (middleId < gameId) {
+                low = middle + 1;
+            } else if (middleId > gameId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Looks up the offset of a user's live block, or NO_BLOCK if they have none
+    private long findBlock(int userId) {
+        directoryLock.readLock().lock();
+        try {
+            return blockByUser.get(userId, NO_BLOCK);
+        } finally {
+            directoryLock.readLock().unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock userLockFor(int userId) {
+        return userLocks[(userId * 0x9E3779B9 >>> 16) & (LOCK_STRIPES - 1)];
+    }
+
+    // Copies a full block into one twice the size and retires the old one. The caller holds..
+    // ..the user's write lock, so nobody reads either block until the copy is done
+    private long grow(int userId, long block, int capacity, int count) {
+        long grown = allocate(userId, Math.min(capacity * 2L, maxCapacity()));
+        int grownCapacity = getInt(grown + 8);
+        if (grownCapacity == capacity) {
+            throw new IllegalStateException("User " + userId + " has more ratings than a chunk can hold");
+        }
+        long ratings = ratingsStart(block, capacity);
+        long grownRatings = ratingsStart(grown, grownCapacity);
+        for (int i = 0; i < count; i++) {
+            putInt(grown + BLOCK_HEADER_BYTES + 4L * i, getInt(block + BLOCK_HEADER_BYTES + 4L * i));
+            putByte(grownRatings + i, getByte(ratings + i));
+        }
+        putInt(grown + 12, count);
+        putInt(block, DEAD);
+        deadBytes.add(blockLength(capacity));
+        return grown;
+    }
+
+    // Appends an empty live block for the user, padding to the next chunk if it does not fit,..
+    // ..and makes it the user's block. The caller holds the user's write lock
+    private long allocate(int userId, long capacity) {
+        long length = blockLength(capacity);
+        directoryLock.writeLock().lock();
+        try {
+            long remaining = chunkBytes - arenaEnd % chunkBytes;
+            if (length > remaining) {
+                putInt(arenaEnd, PADDING);
+                arenaEnd += remaining;
+                deadBytes.add(remaining);
+            }
+            long block = arenaEnd;
+            // Maps the block's chunk, if it is new, before the block can be found through the directory
+            putInt(block + 4, userId);
+            putInt(block + 8, (int) capacity);
+            putInt(block + 12, 0);
+            // The status goes in last, so a block is never seen live before it is set up
+            putInt(block, LIVE);
+            arenaEnd += length;
+            chunk(0).putLong(ARENA_END_OFFSET, arenaEnd);
+            blockByUser.put(userId, block);
+            return block;
+        } finally {
+            directoryLock.writeLock().unlock();
+        }
+    }
+
+    // Walks the blocks of a reopened file, recording each user's live block
+    private void loadDirectory() {
+        long block = FILE_HEADER_BYTES;
+        long count = 0;
+        while (block < arenaEnd) {
+            int status = getInt(block);
+            if (status == PADDING) {
+                deadBytes.add(chunkBytes - block % chunkBytes);
+                block += chunkBytes - block % chunkBytes;
+                continue;
+            }
+            long length = blockLength(getInt(block + 8));
+            if (status == LIVE) {
+                blockByUser.put(getInt(block + 4), block);
+                count += getInt(block + 12);
+            } else {
+                deadBytes.add(length);
+            }
+            block += length;
+        }
+        size.add(count);
+    }
+
+    // Slides the live blocks of a reopened file down over the dead ones, in file order. Each..
+    // ..block moves to an offset at or before its own, so it is never overwritten before it..
+    // ..is copied; a crash part way leaves the clean marker unset, and the file is rebuilt
+    private void compact() {
+        long block = FILE_HEADER_BYTES;
+        long to = FILE_HEADER_BYTES;
+        deadBytes.reset();
+        while (block < arenaEnd) {
+            int status = getInt(block);
+            if (status == PADDING) {
+                block += chunkBytes - block % chunkBytes;
+                continue;
+            }
+            long length = blockLength(getInt(block + 8));
+            if (status == LIVE) {
+                long remaining = chunkBytes - to % chunkBytes;
+                if (length > remaining) {
+                    putInt(to, PADDING);
+                    to += remaining;
+                    deadBytes.add(remaining);
+                }
+                if (to != block) {
+                    // Blocks are 16 byte aligned and never straddle a chunk, so they copy a long at a time
+                    for (long i = 0; i < length; i += 8) {
+                        putLong(to + i, getLong(block + i));
+                    }
+                    blockByUser.put(getInt(to + 4), to);
+                }
+                to += length;
+            }
+            block += length;
+        }
+        arenaEnd = to;
+        chunk(0).putLong(ARENA_END_OFFSET, arenaEnd);
+    }
+
+    // The largest capacity whose block still fits in a chunk after the file header
+    private long maxCapacity() {
+        return (chunkBytes - FILE_HEADER_BYTES - BLOCK_HEADER_BYTES - ALIGNMENT) / 5;
+    }
+
+    private static long blockLength(long capacity) {
+        long length = BLOCK_HEADER_BYTES + capacity * 5;
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static long ratingsStart(long block, int capacity) {
+        return block + BLOCK_HEADER_BYTES + 4L * capacity;
+    }
+
+    private int getInt(long offset) {
+        return chunk(offset / chunkBytes).getInt((int) (offset % chunkBytes));
+    }
+
+    private void putInt(long offset, int value) {
+        chunk(offset / chunkBytes).putInt((int) (offset % chunkBytes), value);
+    }
+
+    private long getLong(long offset) {
+        return chunk(offset / chunkBytes).getLong((int) (offset % chunkBytes));
+    }
+
+    private void putLong(long offset, long value) {
+        chunk(offset / chunkBytes).putLong((int) (offset % chunkBytes), value);
+    }
+
+    private byte getByte(long offset) {
+        return chunk(offset / chunkBytes).get((int) (offset % chunkBytes));
+    }
+
+    private void putByte(long offset, byte value) {
+        chunk(offset / chunkBytes).put((int) (offset % chunkBytes), value);
+    }
+
+    // Returns a mapped chunk, mapping it (and growing the file) on first use. Only a new..
+    // ..block can be in an unmapped chunk, so mapping happens under the directory write lock
+    private MappedByteBuffer chunk(long index) {
+        MappedByteBuffer[] mapped = chunks;
+        if (index < mapped.length) {
+            return mapped[(int) index];
+        }
+        while (mapped.length <= index) {
+            try {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE,
+                        mapped.length * chunkBytes, chunkBytes);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+                mapped = Arrays.copyOf(mapped, mapped.length + 1);
+                mapped[mapped.length - 1] = chunk;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map the rating file", e);
+            }
+        }
+        chunks = mapped;
+        return mapped[(int) index];
+    }
+}
@@ -0,0 +1,28 @@
+package stacs.GameRepo;
+
+/**
+ * A rating to add, identifying the user and the game by ID, as sent in a batch.
+ */
+public class NewRating {
+    private final int userId;
+    private final int gameId;
+    private final int rating;
+
+    public NewRating(int userId, int gameId, int rating) {
+        this.userId = userId;
+        this.gameId = gameId;
+        this.rating = rating;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getGameId() {
+        return gameId;
+    }
+
+    public int getRating() {
+        return rating;
+    }
+}
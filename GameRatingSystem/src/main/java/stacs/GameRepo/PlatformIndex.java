@@ -0,0 +1,66 @@
+package stacs.GameRepo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import stacs.Games.Games;
+
+/**
+ * A hash index from platform to the IDs of the games released on it, in ascending order.
+ * Each game has at most one platform, so the posting lists never overlap and the size
+ * of a list is the exact number of games a platform filter matches.
+ *
+ * <p>Queries never lock and are safe while another thread adds games, but
+ * {@link #addGame} and {@link #addGames} must be serialized by the caller.
+ */
+public class PlatformIndex {
+    // Posting lists keyed by case-folded platform name
+    private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a game to the posting list of its platform.
+     *
+     * @param gameId   the ID of the game
+     * @param platform the platform of the game; may be null
+     */
+    public void addGame(int gameId, String platform) {
+        if (platform != null) {
+            postings.computeIfAbsent(GameRepo.foldCase(platform), key -> new PostingList()).add(gameId);
+        }
+    }
+
+    /**
+     * Adds a batch of games, publishing each platform's posting list once for the whole
+     * batch instead of once per game.
+     *
+     * @param games the games to add; their platforms may be null
+     */
+    public void addGames(List<Games> games) {
+        Map<String, PostingList.IdBuffer> idsByPlatform = new HashMap<>();
+        for (Games game : games) {
+            if (game.getPlatform() != null) {
+                idsByPlatform.computeIfAbsent(GameRepo.foldCase(game.getPlatform()), key -> new PostingList.IdBuffer())
+                        .add(game.getGameId());
+            }
+        }
+        idsByPlatform.forEach((platform, ids) -> postings.computeIfAbsent(platform, key -> new PostingList())
+                .addAll(ids.sorted()));
+    }
+
+    // The IDs of the games on one platform, ignoring case; empty if no game is on it
+    PostingList.Postings gameIds(String platform) {
+        PostingList postingList = postings.get(GameRepo.foldCase(platform));
+        return postingList == null ? PostingList.Postings.EMPTY : postingList.current();
+    }
+
+    /**
+     * Returns the number of distinct platforms in the index.
+     *
+     * @return the number of posting lists
+     */
+    public int size() {
+        return postings.size();
+    }
+}
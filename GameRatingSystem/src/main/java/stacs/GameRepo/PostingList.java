@@ -0,0 +1,119 @@
+package stacs.GameRepo;
+
+import java.util.Arrays;
+
+/**
+ * A sorted, growable array of game IDs, shared by the indexes that map a key to the
+ * games having it. Readers take the current Postings and never see it change: an append
+ * writes past the published size, and an out-of-order insert copies the array.
+ * Adds must be serialized by the caller.
+ */
+class PostingList {
+    private volatile Postings current = new Postings(new int[4], 0);
+
+    // The IDs as of now
+    Postings current() {
+        return current;
+    }
+
+    // Inserts an ID in order, ignoring duplicates.
+    // IDs usually arrive in ascending order, which is a plain append.
+    void add(int id) {
+        int[] ids = current.ids;
+        int size = current.size;
+        if (size == 0 || ids[size - 1] < id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size] = id;
+            current = new Postings(ids, size + 1);
+            return;
+        }
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        int[] inserted = new int[Math.max(ids.length, size + 1)];
+        System.arraycopy(ids, 0, inserted, 0, position);
+        inserted[position] = id;
+        System.arraycopy(ids, position, inserted, position + 1, size - position);
+        current = new Postings(inserted, size + 1);
+    }
+
+    // Merges sorted IDs into the list, ignoring duplicates, and publishes the result once
+    void addAll(int[] sortedIds) {
+        int[] ids = current.ids;
+        int size = current.size;
+        int[] merged = new int[Math.max(ids.length, size + sortedIds.length)];
+        int mergedSize = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < sortedIds.length) {
+            int next;
+            if (j == sortedIds.length || i < size && ids[i] <= sortedIds[j]) {
+                next = ids[i++];
+            } else {
+                next = sortedIds[j++];
+            }
+            if (mergedSize == 0 || merged[mergedSize - 1] != next) {
+                merged[mergedSize++] = next;
+            }
+        }
+        current = new Postings(merged, mergedSize);
+    }
+
+    // IDs collected for one key while a batch is being added
+    static class IdBuffer {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int[] sorted() {
+            int[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    // An immutable view of a posting list: the first size entries of ids
+    static class Postings {
+        static final Postings EMPTY = new Postings(new int[0], 0);
+
+        final int[] ids;
+        final int size;
+
+        Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        // Keeps only the candidates that are also in this list.
+        // Both arrays are sorted, so the candidates are compacted in place..
+        // ..with a binary search that only moves forward.
+        int retainAll(int[] candidates, int candidateCount) {
+            int kept = 0;
+            int from = 0;
+            for (int i = 0; i < candidateCount && from < size; i++) {
+                int position = Arrays.binarySearch(ids, from, size, candidates[i]);
+                if (position >= 0) {
+                    candidates[kept++] = candidates[i];
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package stacs.GameRepo;
+
+import stacs.Games.Games;
+
+/**
+ * A game with its leaderboard score, as returned by GET /api/games/top.
+ */
+public class RankedGame {
+    private final Games game;
+    private final double score;
+    private final long ratingCount;
+    private final double meanRating;
+
+    public RankedGame(Games game, Leaderboard.Entry entry) {
+        this.game = game;
+        this.score = entry.getScore();
+        this.ratingCount = entry.getRatingCount();
+        this.meanRating = entry.getMeanRating();
+    }
+
+    public Games getGame() {
+        return game;
+    }
+
+    // The Bayesian-weighted average the game is ranked by
+    public double getScore() {
+        return score;
+    }
+
+    public long getRatingCount() {
+        return ratingCount;
+    }
+
+    public double getMeanRating() {
+        return meanRating;
+    }
+}
@@ -0,0 +1,119 @@
+package stacs.GameRepo;
+
+import java.util.Map;
+
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * Where GameRepo keeps the user -> (game -> rating) side of the ratings.
+ *
+ * <p>GameRepo calls {@link #put} while holding the rating lock of the user, so an
+ * implementation only has to cope with concurrent writes for different users, and
+ * with reads running at the same time as writes.
+ */
+public interface RatingStore {
+    // Returned by put() when the user had not rated the game before
+    int NO_RATING = Integer.MIN_VALUE;
+
+    /**
+     * Stores a user's rating of a game, replacing their previous rating.
+     *
+     * @param user   the user who is rating the game
+     * @param game   the game being rated
+     * @param rating the rating value
+     * @return the previous rating, or {@link #NO_RATING} if the user had not rated the game
+     */
+    int put(Users user, Games game, int rating);
+
+    /**
+     * Returns whether {@link #put} can store a rating value. The default accepts any.
+     *
+     * @param rating the rating value
+     * @return false if put would throw IllegalArgumentException for the rating
+     */
+    default boolean accepts(int rating) {
+        return true;
+    }
+
+    /**
+     * Returns the ratings given by a user.
+     *
+     * @param user the user whose ratings to return
+     * @return a map of game to rating; empty if the user has not rated anything
+     */
+    Map<Games, Integer> getRatings(Users user);
+
+    /**
+     * Returns every rating as a map of user to (game to rating).
+     *
+     * @return the ratings of every user
+     */
+    Map<Users, Map<Games, Integer>> asMap();
+
+    /**
+     * Returns the total number of ratings stored.
+     *
+     * @return the number of (user, game) pairs with a rating
+     */
+    long size();
+
+    /**
+     * Calls the visitor for every rating stored, by ID.
+     * Ratings written while this runs may or may not be visited.
+     *
+     * @param visitor the visitor to call with each user ID, game ID and rating
+     */
+    void forEachRating(RatingVisitor visitor);
+
+    /**
+     * Returns the IDs of the users with at least one rating, in no particular order.
+     *
+     * @return the user IDs
+     */
+    int[] userIds();
+
+    /**
+     * Calls the visitor for every rating of one user. The caller holds the user's rating
+     * lock, so no rating of the user changes while this runs.
+     *
+     * @param userId  the ID of the user
+     * @param visitor the visitor to call with each user ID, game ID and rating
+     */
+    void forEachRatingOfUser(int userId, RatingVisitor visitor);
+
+    /**
+     * Releases any files or memory held by the store. The default does nothing.
+     */
+    default void close() {
+    }
+
+    /**
+     * Releases the store like {@link #close()}, recording that it holds every rating the
+     * write-ahead log had appended by the given LSN, so the next start can skip replaying
+     * them. The default only closes, as a store that is not kept on disk holds none of them.
+     *
+     * @param walLsn the LSN the log had appended up to when it was closed
+     */
+    default void close(long walLsn) {
+        close();
+    }
+
+    /**
+     * Returns the LSN of the write-ahead log the store held every rating up to when it was
+     * last closed cleanly, or 0 if it was not, so replay applies the ratings from there on.
+     *
+     * @return the LSN, or 0 to replay every rating
+     */
+    default long walLsn() {
+        return 0;
+    }
+
+    /**
+     * A callback taking one rating by ID.
+     */
+    @FunctionalInterface
+    interface RatingVisitor {
+        void visit(int userId, int gameId, int rating);
+    }
+}
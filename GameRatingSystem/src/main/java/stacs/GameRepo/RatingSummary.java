@@ -0,0 +1,68 @@
+package stacs.GameRepo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable summary of the ratings of a single game, as returned by
+ * GET /api/games/{gameId}/stats.
+ */
+public class RatingSummary {
+    private final int gameId;
+    private final long count;
+    private final double mean;
+    private final double variance;
+    private final Map<Integer, Long> distribution;
+
+    /**
+     * Builds a summary from the raw aggregates of a game.
+     *
+     * @param gameId       the ID of the game
+     * @param count        the number of ratings
+     * @param sum          the sum of the ratings
+     * @param sumOfSquares the sum of the squared ratings
+     * @param ratingValues the distinct rating values in ascending order
+     * @param ratingCounts how many times each of the rating values was given
+     */
+    public RatingSummary(int gameId, long count, long sum, long sumOfSquares,
+                         int[] ratingValues, long[] ratingCounts) {
+        this.gameId = gameId;
+        this.count = count;
+        if (count > 0) {
+            this.mean = (double) sum / count;
+            // Population variance, clamped at 0 against rounding error
+            this.variance = Math.max(0.0, (double) sumOfSquares / count - mean * mean);
+        } else {
+            this.mean = 0.0;
+            this.variance = 0.0;
+        }
+        this.distribution = new LinkedHashMap<>();
+        for (int i = 0; i < ratingValues.length; i++) {
+            // Values whose every rating was replaced are left out
+            if (ratingCounts[i] > 0) {
+                distribution.put(ratingValues[i], ratingCounts[i]);
+            }
+        }
+    }
+
+    public int getGameId() {
+        return gameId;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getVariance() {
+        return variance;
+    }
+
+    // Rating value -> number of ratings with that value, in ascending rating order
+    public Map<Integer, Long> getDistribution() {
+        return distribution;
+    }
+}
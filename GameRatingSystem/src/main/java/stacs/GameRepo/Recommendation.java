@@ -0,0 +1,32 @@
+package stacs.GameRepo;
+
+import stacs.Games.Games;
+
+/**
+ * A game recommended to a user, as returned by GET /api/users/{userId}/recommendations.
+ */
+public class Recommendation {
+    private final Games game;
+    private final double predictedRating;
+    private final int similarGamesRated;
+
+    public Recommendation(Games game, double predictedRating, int similarGamesRated) {
+        this.game = game;
+        this.predictedRating = predictedRating;
+        this.similarGamesRated = similarGamesRated;
+    }
+
+    public Games getGame() {
+        return game;
+    }
+
+    // The rating the user is expected to give, from their ratings of similar games
+    public double getPredictedRating() {
+        return predictedRating;
+    }
+
+    // How many of the games the user rated the prediction is based on
+    public int getSimilarGamesRated() {
+        return similarGamesRated;
+    }
+}
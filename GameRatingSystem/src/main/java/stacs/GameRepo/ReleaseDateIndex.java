@@ -0,0 +1,155 @@
+package stacs.GameRepo;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import stacs.Games.Games;
+
+/**
+ * A range index from release date to the IDs of the games released that day. The dates
+ * are kept in a skip list, so the games released in a range are walked in date order in
+ * O(log n) plus the games walked, oldest or newest first; games released the same day
+ * are walked in ascending ID order. Games without a release date are kept apart.
+ *
+ * <p>A histogram of the games released each year estimates how many games a range holds
+ * without walking it, prorating the years the range only partly covers.
+ *
+ * <p>Queries never lock and are safe while another thread adds games, but
+ * {@link #addGame} and {@link #addGames} must be serialized by the caller.
+ */
+public class ReleaseDateIndex {
+    private final ConcurrentSkipListMap<LocalDate, PostingList> gamesByDate = new ConcurrentSkipListMap<>();
+    private final PostingList undated = new PostingList();
+    // Year -> number of games released that year
+    private final ConcurrentSkipListMap<Integer, AtomicInteger> gamesByYear = new ConcurrentSkipListMap<>();
+
+    /**
+     * Adds a game under its release date.
+     *
+     * @param gameId      the ID of the game
+     * @param releaseDate the release date of the game; null if it is not known
+     */
+    public void addGame(int gameId, LocalDate releaseDate) {
+        if (releaseDate == null) {
+            undated.add(gameId);
+            return;
+        }
+        gamesByDate.computeIfAbsent(releaseDate, key -> new PostingList()).add(gameId);
+        gamesByYear.computeIfAbsent(releaseDate.getYear(), key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * Adds a batch of games, publishing each date's posting list once for the whole
+     * batch instead of once per game.
+     *
+     * @param games the games to add; their release dates may be null
+     */
+    public void addGames(List<Games> games) {
+        Map<LocalDate, PostingList.IdBuffer> idsByDate = new HashMap<>();
+        PostingList.IdBuffer undatedIds = new PostingList.IdBuffer();
+        for (Games game : games) {
+            LocalDate releaseDate = game.getReleaseDate();
+            if (releaseDate == null) {
+                undatedIds.add(game.getGameId());
+            } else {
+                idsByDate.computeIfAbsent(releaseDate, key -> new PostingList.IdBuffer()).add(game.getGameId());
+                gamesByYear.computeIfAbsent(releaseDate.getYear(), key -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+        idsByDate.forEach((releaseDate, ids) -> gamesByDate.computeIfAbsent(releaseDate, key -> new PostingList())
+                .addAll(ids.sorted()));
+        undated.addAll(undatedIds.sorted());
+    }
+
+    /**
+     * Estimates the number of games released in a range from the yearly histogram,
+     * assuming the games of a year are spread evenly over it.
+     *
+     * @param from the first release date in the range; null for no lower bound
+     * @param to   the last release date in the range; null for no upper bound
+     * @return the estimated number of games, never negative
+     */
+    public long estimateGames(LocalDate from, LocalDate to) {
+        NavigableMap<Integer, AtomicInteger> years = gamesByYear;
+        if (from != null) {
+            years = years.tailMap(from.getYear(), true);
+        }
+        if (to != null) {
+            years = years.headMap(to.getYear(), true);
+        }
+        double estimate = 0;
+        for (Map.Entry<Integer, AtomicInteger> year : years.entrySet()) {
+            LocalDate first = LocalDate.of(year.getKey(), 1, 1);
+            LocalDate last = LocalDate.of(year.getKey(), 12, 31);
+            LocalDate start = from != null && from.isAfter(first) ? from : first;
+            LocalDate end = to != null && to.isBefore(last) ? to : last;
+            double covered = (end.toEpochDay() - start.toEpochDay() + 1.0) / first.lengthOfYear();
+            estimate += year.getValue().get() * Math.max(covered, 0);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Walks the IDs of the games released in a range, in date order and then ascending
+     * ID order, until the visitor returns false.
+     *
+     * @param from        the first release date in the range; null for no lower bound
+     * @param to          the last release date in the range; null for no upper bound
+     * @param newestFirst whether to walk from the latest date rather than the earliest
+     * @param visitor     called with each game ID; returns false to stop the walk
+     * @return false if the visitor stopped the walk; true if every game in the range was visited
+     */
+    public boolean forEachGameId(LocalDate from, LocalDate to, boolean newestFirst, IntPredicate visitor) {
+        NavigableMap<LocalDate, PostingList> dates = gamesByDate;
+        if (from != null) {
+            dates = dates.tailMap(from, true);
+        }
+        if (to != null) {
+            dates = dates.headMap(to, true);
+        }
+        if (newestFirst) {
+            dates = dates.descendingMap();
+        }
+        for (PostingList postingList : dates.values()) {
+            if (!forEach(postingList.current(), visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walks the IDs of the games without a release date in ascending order, until the
+     * visitor returns false.
+     *
+     * @param visitor called with each game ID; returns false to stop the walk
+     * @return false if the visitor stopped the walk; true if every undated game was visited
+     */
+    public boolean forEachUndatedGameId(IntPredicate visitor) {
+        return forEach(undated.current(), visitor);
+    }
+
+    private static boolean forEach(PostingList.Postings postings, IntPredicate visitor) {
+        for (int i = 0; i < postings.size; i++) {
+            if (!visitor.test(postings.ids[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of distinct release dates in the index.
+     *
+     * @return the number of posting lists, not counting the undated games
+     */
+    public int size() {
+        return gamesByDate.size();
+    }
+}
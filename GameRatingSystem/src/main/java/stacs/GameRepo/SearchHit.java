@@ -0,0 +1,25 @@
+package stacs.GameRepo;
+
+import stacs.Games.Games;
+
+/**
+ * A game whose title matches a search, as returned by GET /api/games/search.
+ */
+public class SearchHit {
+    private final Games game;
+    private final double score;
+
+    public SearchHit(Games game, double score) {
+        this.game = game;
+        this.score = score;
+    }
+
+    public Games getGame() {
+        return game;
+    }
+
+    // The BM25 score the hits are ranked by
+    public double getScore() {
+        return score;
+    }
+}
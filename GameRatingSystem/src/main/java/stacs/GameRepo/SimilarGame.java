@@ -0,0 +1,39 @@
+package stacs.GameRepo;
+
+import stacs.Games.Games;
+
+/**
+ * A game similar to another, as returned by GET /api/games/{gameId}/similar.
+ */
+public class SimilarGame {
+    private final Games game;
+    private final double score;
+    private final double genreSimilarity;
+    private final double raterSimilarity;
+
+    public SimilarGame(Games game, double score, double genreSimilarity, double raterSimilarity) {
+        this.game = game;
+        this.score = score;
+        this.genreSimilarity = genreSimilarity;
+        this.raterSimilarity = raterSimilarity;
+    }
+
+    public Games getGame() {
+        return game;
+    }
+
+    // The weighted sum of the two similarities the games are ranked by
+    public double getScore() {
+        return score;
+    }
+
+    // The Jaccard similarity of the two games' genres
+    public double getGenreSimilarity() {
+        return genreSimilarity;
+    }
+
+    // The Jaccard similarity of the users who rated each game, estimated from their signatures
+    public double getRaterSimilarity() {
+        return raterSimilarity;
+    }
+}
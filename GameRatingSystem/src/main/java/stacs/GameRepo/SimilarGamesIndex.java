@@ -0,0 +1,440 @@
+package stacs.GameRepo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import stacs.Games.Games;
+
+/**
+ * Finds games similar to a game without comparing it to the whole catalogue. Two games
+ * are scored by the Jaccard similarity of their genres and of the sets of users who rated
+ * them, weighted equally.
+ *
+ * <p>Each game keeps a MinHash signature of its genres and one of its raters: the minimum
+ * of each of a fixed set of hash functions over the set, so two signatures agree in a
+ * position with probability equal to the Jaccard similarity of the sets. The signatures
+ * are cut into bands, and each band is a key in a locality-sensitive hash table, so games
+ * that agree on a whole band share a bucket. A lookup scores only the games sharing a
+ * bucket with the game, using the exact genre similarity and the rater similarity
+ * estimated from the signatures. Each bucket keeps its games in ID order, and only the
+ * lowest IDs of a bucket larger than {@link #MAX_BUCKET_SCAN} are read, so a genre shared
+ * by much of the catalogue gives the same candidates on every lookup.
+ *
+ * <p>A rater is added by taking the minimum of each hash, so a rating costs one hash per
+ * signature position and moves the game only between the buckets of the bands that
+ * changed. Signature updates are guarded by locks picked by game ID and swap in a new
+ * array; lookups never lock, and may score a game one rating behind.
+ */
+public class SimilarGamesIndex {
+    // The default shape of the signatures: bands x rows positions each
+    static final int RATER_BANDS = 16;
+    static final int RATER_ROWS = 4;
+    static final int GENRE_BANDS = 8;
+    static final int GENRE_ROWS = 2;
+    // How much of the score comes from the genres; the rest comes from the raters
+    static final double GENRE_WEIGHT = 0.5;
+    // Most games read from one bucket, lowest IDs first, so a genre shared by much of the catalogue stays cheap
+    static final int MAX_BUCKET_SCAN = 512;
+    // Number of signature locks; a power of two so a lock can be picked with a mask
+    private static final int LOCK_STRIPES = 64;
+    private static final int EMPTY = Integer.MAX_VALUE;
+    // Raters of a game are paged through this many at a time while building
+    private static final int RATER_PAGE_SIZE = 1024;
+
+    private final GameRepo gameRepo;
+    private final int raterBands;
+    private final int raterRows;
+    private final int genreBands;
+    private final int genreRows;
+    // One seed per hash function of each signature
+    private final long[] raterSeeds;
+    private final long[] genreSeeds;
+    // Game ID -> its signatures; written only under GameRepo's catalogue lock
+    private final IntObjectHashMap<Sketch> sketches = new IntObjectHashMap<>();
+    // Band number << 32 | band hash -> the IDs of the games in that bucket, in ascending order
+    private final Map<Long, NavigableSet<Integer>> buckets = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // Raters are only added one at a time once the signatures have been built
+    private volatile boolean tracking;
+
+    // Creates an index with the default signature shape
+    public SimilarGamesIndex(GameRepo gameRepo) {
+        this(gameRepo, RATER_BANDS, RATER_ROWS, GENRE_BANDS, GENRE_ROWS);
+    }
+
+    /**
+     * Creates an empty index. More rows per band make a bucket more selective; more
+     * bands give a similar game more chances to share a bucket.
+     *
+     * @param gameRepo   the repository to read the raters from
+     * @param raterBands the number of bands of the rater signature
+     * @param raterRows  the number of positions in each rater band
+     * @param genreBands the number of bands of the genre signature
+     * @param genreRows  the number of positions in each genre band
+     */
+    public SimilarGamesIndex(GameRepo gameRepo, int raterBands, int raterRows, int genreBands, int genreRows) {
+        if (raterBands <= 0 || raterRows <= 0 || genreBands <= 0 || genreRows <= 0) {
+            throw new IllegalArgumentException("The bands and rows must be positive");
+        }
+        this.gameRepo = gameRepo;
+        this.raterBands = raterBands;
+        this.raterRows = raterRows;
+        this.genreBands = genreBands;
+        this.genreRows = genreRows;
+        // Fixed seeds, so the same catalogue always lands in the same buckets
+        SplittableRandom random = new SplittableRandom(0x5EED);
+        raterSeeds = random.longs(raterBands * raterRows).toArray();
+        genreSeeds = random.longs(genreBands * genreRows).toArray();
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Adds a game with the signature of its genres, and of any raters it already has once
+     * the signatures have been built. Called under GameRepo's catalogue lock.
+     *
+     * @param game the game to add
+     */
+    public void addGame(Games game) {
+        Sketch sketch = new Sketch(game, raterSeeds.length, genreSeeds.length);
+        for (String genre : sketch.genres) {
+            addToSignature(sketch.genreSignature, genreSeeds, genre.hashCode());
+        }
+        // The genre signature never changes, so it is bucketed once
+        if (!sketch.genres.isEmpty()) {
+            for (int band = 0; band < genreBands; band++) {
+                addToBucket(genreBandKey(sketch, band), game.getGameId());
+            }
+        }
+        sketches.put(game.getGameId(), sketch);
+        if (tracking) {
+            // A game can be rated before it is added
+            ReentrantLock lock = lockFor(game.getGameId());
+            lock.lock();
+            try {
+                addCurrentRaters(sketch);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Builds the rater signatures of every game from its current raters, spread over the
+     * cores, then starts tracking raters one at a time. Called once the repository has loaded.
+     */
+    public void buildRaters() {
+        List<Sketch> all = new ArrayList<>(sketches.size());
+        sketches.forEach((gameId, sketch) -> all.add(sketch));
+        all.parallelStream().forEach(sketch -> {
+            ReentrantLock lock = lockFor(sketch.game.getGameId());
+            lock.lock();
+            try {
+                addCurrentRaters(sketch);
+            } finally {
+                lock.unlock();
+            }
+        });
+        tracking = true;
+    }
+
+    /**
+     * Adds a rater to a game's signature, moving the game between buckets if it changes.
+     * Ignored before {@link #buildRaters}, which reads every rater anyway.
+     *
+     * @param gameId the ID of the rated game
+     * @param userId the ID of the user who rated it
+     */
+    public void addRater(int gameId, int userId) {
+        if (!tracking) {
+            return;
+        }
+        Sketch sketch = sketches.get(gameId);
+        if (sketch == null) {
+            // Games rated without being added have nothing to show
+            return;
+        }
+        ReentrantLock lock = lockFor(gameId);
+        lock.lock();
+        try {
+            int[] signature = sketch.raterSignature.clone();
+            if (addToSignature(signature, raterSeeds, userId)) {
+                replaceRaterSignature(sketch, signature);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the games most similar to a game, from the games sharing a bucket with it.
+     *
+     * @param gameId the ID of the game
+     * @param n      the maximum number of games to return
+     * @return up to n similar games, most similar first; null if the game is not indexed
+     */
+    public List<SimilarGame> similarGames(int gameId, int n) {
+        Sketch sketch = sketches.get(gameId);
+        if (sketch == null) {
+            return null;
+        }
+        Set<Integer> candidates = new HashSet<>();
+        if (sketch.hasRaters) {
+            for (int band = 0; band < raterBands; band++) {
+                collect(raterBandKey(sketch, band), candidates);
+            }
+        }
+        if (!sketch.genres.isEmpty()) {
+            for (int band = 0; band < genreBands; band++) {
+                collect(genreBandKey(sketch, band), candidates);
+            }
+        }
+        candidates.remove(gameId);
+        TopGames top = new TopGames(n);
+        for (int candidateId : candidates) {
+            Sketch candidate = sketches.get(candidateId);
+            if (candidate != null) {
+                top.offer(score(sketch, candidate));
+            }
+        }
+        return top.toList();
+    }
+
+    /**
+     * Scores a game against every other game instead of only those sharing a bucket.
+     * Far slower; the reference the recall of {@link #similarGames} is measured against.
+     *
+     * @param gameId the ID of the game
+     * @param n      the maximum number of games to return
+     * @return up to n similar games, most similar first; null if the game is not indexed
+     */
+    public List<SimilarGame> scanSimilarGames(int gameId, int n) {
+        Sketch sketch = sketches.get(gameId);
+        if (sketch == null) {
+            return null;
+        }
+        TopGames top = new TopGames(n);
+        sketches.forEach((candidateId, candidate) -> {
+            if (candidateId != gameId) {
+                top.offer(score(sketch, candidate));
+            }
+        });
+        return top.toList();
+    }
+
+    private SimilarGame score(Sketch sketch, Sketch candidate) {
+        double genreSimilarity = 0;
+        if (!sketch.genres.isEmpty() || !candidate.genres.isEmpty()) {
+            int common = 0;
+            for (String genre : sketch.genres) {
+                if (candidate.genres.contains(genre)) {
+                    common++;
+                }
+            }
+            genreSimilarity = (double) common / (sketch.genres.size() + candidate.genres.size() - common);
+        }
+        double raterSimilarity = 0;
+        if (sketch.hasRaters && candidate.hasRaters) {
+            int[] signature = sketch.raterSignature;
+            int[] other = candidate.raterSignature;
+            int agreeing = 0;
+            for (int i = 0; i < signature.length; i++) {
+                if (signature[i] == other[i]) {
+                    agreeing++;
+                }
+            }
+            raterSimilarity = (double) agreeing / signature.length;
+        }
+        double score = GENRE_WEIGHT * genreSimilarity + (1 - GENRE_WEIGHT) * raterSimilarity;
+        return new SimilarGame(candidate.game, score, genreSimilarity, raterSimilarity);
+    }
+
+    // Adds the games of a bucket to the candidates, up to the MAX_BUCKET_SCAN lowest IDs
+    private void collect(long key, Set<Integer> candidates) {
+        NavigableSet<Integer> bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+        int scanned = 0;
+        for (Integer gameId : bucket) {
+            if (++scanned > MAX_BUCKET_SCAN) {
+                break;
+            }
+            candidates.add(gameId);
+        }
+    }
+
+    // Adds every current rater of a game to its signature; the caller holds the game's lock
+    private void addCurrentRaters(Sketch sketch) {
+        GameRaters raters = gameRepo.ratersOf(sketch.game.getGameId());
+        if (raters == null) {
+            return;
+        }
+        int[] signature = sketch.raterSignature.clone();
+        boolean changed = false;
+        int after = 0;
+        List<UserRating> page;
+        do {
+            page = raters.page(after, RATER_PAGE_SIZE);
+            for (UserRating rater : page) {
+                changed |= addToSignature(signature, raterSeeds, rater.getUserId());
+                after = rater.getUserId();
+            }
+        } while (page.size() == RATER_PAGE_SIZE);
+        if (changed) {
+            replaceRaterSignature(sketch, signature);
+        }
+    }
+
+    // Swaps in a new rater signature, moving the game out of the buckets of the bands that changed.
+    // The caller holds the game's lock
+    private void replaceRaterSignature(Sketch sketch, int[] signature) {
+        int gameId = sketch.game.getGameId();
+        long[] oldKeys = new long[raterBands];
+        for (int band = 0; band < raterBands; band++) {
+            oldKeys[band] = raterBandKey(sketch, band);
+        }
+        boolean hadRaters = sketch.hasRaters;
+        // Readers see either the old or the new array, never a mix of bands
+        sketch.raterSignature = signature;
+        sketch.hasRaters = true;
+        for (int band = 0; band < raterBands; band++) {
+            long newKey = raterBandKey(sketch, band);
+            if (hadRaters && newKey == oldKeys[band]) {
+                continue;
+            }
+            if (hadRaters) {
+                removeFromBucket(oldKeys[band], gameId);
+            }
+            addToBucket(newKey, gameId);
+        }
+    }
+
+    private void addToBucket(long key, int gameId) {
+        buckets.compute(key, (k, bucket) -> {
+            if (bucket == null) {
+                bucket = new ConcurrentSkipListSet<>();
+            }
+            bucket.add(gameId);
+            return bucket;
+        });
+    }
+
+    private void removeFromBucket(long key, int gameId) {
+        // An emptied bucket is dropped in the same step, so it cannot lose a concurrent add
+        buckets.computeIfPresent(key, (k, bucket) -> {
+            bucket.remove(gameId);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    private long raterBandKey(Sketch sketch, int band) {
+        return (long) band << 32 | (bandHash(sketch.raterSignature, band, raterRows) & 0xFFFFFFFFL);
+    }
+
+    private long genreBandKey(Sketch sketch, int band) {
+        // Genre bands are numbered after the rater bands, so the two never share a bucket
+        return (long) (raterBands + band) << 32 | (bandHash(sketch.genreSignature, band, genreRows) & 0xFFFFFFFFL);
+    }
+
+    private static int bandHash(int[] signature, int band, int rows) {
+        int hash = 1;
+        for (int row = band * rows; row < (band + 1) * rows; row++) {
+            hash = 31 * hash + signature[row];
+        }
+        return hash;
+    }
+
+    // Lowers each position of a signature to the element's hash if that is smaller;..
+    // ..returns whether any position changed
+    private static boolean addToSignature(int[] signature, long[] seeds, int element) {
+        boolean changed = false;
+        for (int i = 0; i < seeds.length; i++) {
+            int hash = hash(element, seeds[i]);
+            if (hash < signature[i]) {
+                signature[i] = hash;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // A non-negative 31-bit hash of an element, one function per seed
+    private static int hash(int element, long seed) {
+        // The finalizer of MurmurHash3
+        long h = element ^ seed;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) (h >>> 33);
+    }
+
+    private static int[] emptySignature(int length) {
+        int[] signature = new int[length];
+        Arrays.fill(signature, EMPTY);
+        return signature;
+    }
+
+    private ReentrantLock lockFor(int gameId) {
+        return locks[gameId & (LOCK_STRIPES - 1)];
+    }
+
+    // The signatures of one game
+    private static final class Sketch {
+        final Games game;
+        final Set<String> genres;
+        final int[] genreSignature;
+        volatile int[] raterSignature;
+        volatile boolean hasRaters;
+
+        Sketch(Games game, int raterLength, int genreLength) {
+            this.game = game;
+            this.genres = new HashSet<>(GameRepo.foldCase(game.getGenres()));
+            this.genreSignature = emptySignature(genreLength);
+            this.raterSignature = emptySignature(raterLength);
+        }
+    }
+
+    // Keeps the n highest scores offered
+    private static final class TopGames {
+        // Lowest score first, so it is the one dropped; on a tie the higher game ID goes first
+        private static final Comparator<SimilarGame> WORST_FIRST = Comparator
+                .comparingDouble(SimilarGame::getScore)
+                .thenComparingInt(game -> -game.getGame().getGameId());
+
+        private final int n;
+        private final PriorityQueue<SimilarGame> queue = new PriorityQueue<>(WORST_FIRST);
+
+        TopGames(int n) {
+            this.n = n;
+        }
+
+        void offer(SimilarGame game) {
+            if (game.getScore() <= 0) {
+                return;
+            }
+            queue.add(game);
+            if (queue.size() > n) {
+                queue.poll();
+            }
+        }
+
+        List<SimilarGame> toList() {
+            List<SimilarGame> games = new ArrayList<>(queue);
+            games.sort(WORST_FIRST.reversed());
+            return games;
+        }
+    }
+}
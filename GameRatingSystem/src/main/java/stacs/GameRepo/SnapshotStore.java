@@ -0,0 +1,530 @@
+package stacs.GameRepo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * Writes point-in-time snapshots of a GameRepo to a directory and loads the latest one.
+ *
+ * <p>A snapshot is laid out in columns, so each column can be read with one bulk copy
+ * out of the mapped file instead of object by object:
+ * <ul>
+ *   <li>a header holding the magic number, the format version and the LSN of the
+ *       write-ahead log the snapshot is up to;</li>
+ *   <li>the ratings, in blocks of up to {@value #RATING_BLOCK_ROWS} rows, each holding a
+ *       column of user IDs, a column of game IDs and a column of ratings (one byte each
+ *       when they all fit);</li>
+ *   <li>the users: a column of IDs and a column of names;</li>
+ *   <li>the games: columns of IDs, titles, genre counts, genres, release dates and platforms;</li>
+ *   <li>a trailer with the offsets of the sections and blocks, a CRC32C of everything
+ *       before it and, in the last eight bytes, the offset of the trailer.</li>
+ * </ul>
+ * Strings are a column of UTF-8 lengths (-1 for null) followed by the bytes.
+ *
+ * <p>Snapshots are written to a temporary file and renamed into place, so a crash never
+ * leaves a half-written snapshot behind, and the two newest are kept in case one is
+ * damaged. Rating blocks are decoded in parallel when a snapshot is loaded.
+ */
+public class SnapshotStore {
+    // "GRSN" in ASCII
+    private static final int MAGIC = 0x4752534E;
+    public static final int VERSION = 1;
+    static final int RATING_BLOCK_ROWS = 64 * 1024;
+    private static final int SNAPSHOTS_KEPT = 2;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    // Largest region mapped at once; sections bigger than this are mapped piece by piece
+    private static final int MAX_MAPPING_BYTES = 1 << 30;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final Path directory;
+
+    /**
+     * Creates a store keeping its snapshots in the given directory.
+     *
+     * @param directory the directory to write snapshots to; created if it does not exist
+     */
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Writes a snapshot. The ratings are read from the store while it is being written
+     * to, so a snapshot may hold some changes made after walLsn; replaying the log from
+     * walLsn applies them again, which leaves the same state.
+     *
+     * <p>The games and users are only fetched once the ratings are written, so every game
+     * and user a written rating refers to is in the snapshot too.
+     *
+     * @param walLsn  the LSN of the write-ahead log that every change in the snapshot is logged before
+     * @param ratings the ratings to write
+     * @param users   supplies the users to write
+     * @param games   supplies the games to write
+     * @return the path of the snapshot written
+     */
+    public Path write(long walLsn, RatingStore ratings, Supplier<List<Users>> users, Supplier<List<Games>> games) {
+        try {
+            Files.createDirectories(directory);
+            Path target = directory.resolve(String.format("snapshot-%020d.bin", walLsn));
+            Path temporary = directory.resolve(target.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                SnapshotWriter writer = new SnapshotWriter(channel);
+                writer.putInt(MAGIC);
+                writer.putInt(VERSION);
+                writer.putLong(walLsn);
+                // Ratings first: any game or user they refer to was added before they were read
+                RatingBlockWriter blocks = new RatingBlockWriter(writer);
+                ratings.forEachRating(blocks::add);
+                blocks.finish();
+                long usersOffset = writer.position();
+                writeUsers(writer, users.get());
+                long gamesOffset = writer.position();
+                writeGames(writer, games.get());
+                long trailerOffset = writer.position();
+                writer.putLong(usersOffset);
+                writer.putLong(gamesOffset);
+                writer.putLong(blocks.ratingCount);
+                writer.putInt(blocks.offsets.size());
+                for (long offset : blocks.offsets) {
+                    writer.putLong(offset);
+                }
+                writer.flush();
+                writer.putIntUnchecked((int) writer.checksum.getValue());
+                writer.putLong(trailerOffset);
+                writer.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            deleteOldSnapshots();
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write a snapshot to " + directory, e);
+        }
+    }
+
+    /**
+     * Maps the newest snapshot that passes its checksum.
+     *
+     * @return the snapshot, or null if there is no usable snapshot
+     */
+    public Snapshot loadLatest() {
+        List<Path> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                return new Snapshot(snapshots.get(i));
+            } catch (IllegalStateException | IOException e) {
+                // Damaged; fall back to the one before it
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the LSN the oldest snapshot kept is up to. Loading falls back to it if the
+     * newer ones are damaged, so the write-ahead log is needed from there on.
+     *
+     * @return the LSN, or 0 if there are no snapshots
+     */
+    public long oldestWalLsn() {
+        List<Path> snapshots = listSnapshots();
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        String name = snapshots.get(0).getFileName().toString();
+        return Long.parseLong(name.substring("snapshot-".length(), name.length() - ".bin".length()));
+    }
+
+    private List<Path> listSnapshots() {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            // The zero-padded LSN in the name makes name order the same as LSN order
+            return files.filter(file -> file.getFileName().toString().matches("snapshot-\\d{20}\\.bin"))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list the snapshots in " + directory, e);
+        }
+    }
+
+    private void deleteOldSnapshots() throws IOException {
+        List<Path> snapshots = listSnapshots();
+        for (int i = 0; i < snapshots.size() - SNAPSHOTS_KEPT; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    private static void writeUsers(SnapshotWriter writer, List<Users> users) throws IOException {
+        writer.putInt(users.size());
+        for (Users user : users) {
+            writer.putInt(user.getUserId());
+        }
+        List<String> names = new ArrayList<>(users.size());
+        for (Users user : users) {
+            names.add(user.getName());
+        }
+        writer.putStrings(names);
+    }
+
+    private static void writeGames(SnapshotWriter writer, List<Games> games) throws IOException {
+        writer.putInt(games.size());
+        List<String> titles = new ArrayList<>(games.size());
+        List<String> platforms = new ArrayList<>(games.size());
+        List<String> genres = new ArrayList<>();
+        for (Games game : games) {
+            writer.putInt(game.getGameId());
+            titles.add(game.getTitle());
+            platforms.add(game.getPlatform());
+            if (game.getGenres() != null) {
+                genres.addAll(game.getGenres());
+            }
+        }
+        writer.putStrings(titles);
+        for (Games game : games) {
+            writer.putInt(game.getGenres() == null ? -1 : game.getGenres().size());
+        }
+        writer.putStrings(genres);
+        for (Games game : games) {
+            writer.putLong(game.getReleaseDate() == null ? NO_DATE : game.getReleaseDate().toEpochDay());
+        }
+        writer.putStrings(platforms);
+    }
+
+    /**
+     * A snapshot mapped from disk. Its columns are decoded when they are asked for.
+     */
+    public static class Snapshot {
+        private final Path file;
+        private final FileChannel channel;
+        private final long walLsn;
+        private final long usersOffset;
+        private final long gamesOffset;
+        private final long ratingCount;
+        private final long trailerOffset;
+        private final long[] blockOffsets;
+
+        private Snapshot(Path file) throws IOException {
+            this.file = file;
+            try (FileChannel opened = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = opened.size();
+                if (size < 16 + 12) {
+                    throw new IllegalStateException(file + " is too short to be a snapshot");
+                }
+                ByteBuffer header = map(opened, 0, 16);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IllegalStateException(file + " is not a version " + VERSION + " snapshot");
+                }
+                walLsn = header.getLong(8);
+                ByteBuffer end = map(opened, size - 12, 12);
+                int expectedChecksum = end.getInt(0);
+                trailerOffset = end.getLong(4);
+                if (checksum(opened, size - 12) != expectedChecksum || trailerOffset < 16 || trailerOffset > size - 12) {
+                    throw new IllegalStateException(file + " does not match its checksum");
+                }
+                ByteBuffer trailer = map(opened, trailerOffset, size - 12 - trailerOffset);
+                usersOffset = trailer.getLong();
+                gamesOffset = trailer.getLong();
+                ratingCount = trailer.getLong();
+                blockOffsets = new long[trailer.getInt()];
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    blockOffsets[i] = trailer.getLong();
+                }
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        /**
+         * Returns the LSN of the write-ahead log to replay from after loading this snapshot.
+         *
+         * @return the LSN the snapshot is up to
+         */
+        public long getWalLsn() {
+            return walLsn;
+        }
+
+        /**
+         * Returns the number of ratings in the snapshot.
+         *
+         * @return the rating count
+         */
+        public long getRatingCount() {
+            return ratingCount;
+        }
+
+        /**
+         * Decodes the users, in the order they were added.
+         *
+         * @return the users in the snapshot
+         */
+        public List<Users> getUsers() {
+            ByteBuffer section = mapSection(usersOffset, gamesOffset - usersOffset);
+            int count = section.getInt();
+            int[] ids = getInts(section, count);
+            String[] names = getStrings(section, count);
+            return IntStream.range(0, count).parallel()
+                    .mapToObj(i -> new Users(ids[i], names[i]))
+                    .toList();
+        }
+
+        /**
+         * Decodes the games, in the order they were added.
+         *
+         * @return the games in the snapshot
+         */
+        public List<Games> getGames() {
+            ByteBuffer section = mapSection(gamesOffset, trailerOffset - gamesOffset);
+            int count = section.getInt();
+            int[] ids = getInts(section, count);
+            String[] titles = getStrings(section, count);
+            int[] genreCounts = getInts(section, count);
+            // Where each game's genres start in the flattened genre column
+            int[] genreStarts = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                genreStarts[i + 1] = genreStarts[i] + Math.max(genreCounts[i], 0);
+            }
+            String[] genres = getStrings(section, genreStarts[count]);
+            long[] epochDays = new long[count];
+            section.asLongBuffer().get(epochDays);
+            section.position(section.position() + 8 * count);
+            String[] platforms = getStrings(section, count);
+            return IntStream.range(0, count).parallel()
+                    .mapToObj(i -> new Games(ids[i], titles[i],
+                            genreCounts[i] < 0 ? null
+                                    : new ArrayList<>(Arrays.asList(genres).subList(genreStarts[i], genreStarts[i + 1])),
+                            epochDays[i] == NO_DATE ? null : LocalDate.ofEpochDay(epochDays[i]), platforms[i]))
+                    .toList();
+        }
+
+        /**
+         * Calls the visitor for every rating, decoding the rating blocks in parallel.
+         * The visitor is called from several threads at once, but the ratings of a user
+         * within one block are visited in order by a single thread.
+         *
+         * @param visitor the visitor to call with each user ID, game ID and rating
+         */
+        public void forEachRating(RatingStore.RatingVisitor visitor) {
+            IntStream.range(0, blockOffsets.length).parallel().forEach(block -> {
+                long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : usersOffset;
+                ByteBuffer section = mapSection(blockOffsets[block], end - blockOffsets[block]);
+                int rows = section.getInt();
+                int width = section.get();
+                int[] userIds = getInts(section, rows);
+                int[] gameIds = getInts(section, rows);
+                for (int i = 0; i < rows; i++) {
+                    int rating = width == 1 ? section.get() : section.getInt();
+                    visitor.visit(userIds[i], gameIds[i], rating);
+                }
+            });
+        }
+
+        /**
+         * Unmaps the snapshot.
+         */
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close the snapshot " + file, e);
+            }
+        }
+
+        private ByteBuffer mapSection(long offset, long length) {
+            try {
+                return map(channel, offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map the snapshot " + file, e);
+            }
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("A snapshot section is larger than 2 GiB");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    // CRC32C of the first length bytes of the file, mapped a piece at a time
+    private static int checksum(FileChannel channel, long length) throws IOException {
+        CRC32C checksum = new CRC32C();
+        for (long offset = 0; offset < length; offset += MAX_MAPPING_BYTES) {
+            checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(MAX_MAPPING_BYTES, length - offset)));
+        }
+        return (int) checksum.getValue();
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static String[] getStrings(ByteBuffer buffer, int count) {
+        int[] lengths = getInts(buffer, count);
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (lengths[i] >= 0) {
+                byte[] encoded = new byte[lengths[i]];
+                buffer.get(encoded);
+                values[i] = new String(encoded, StandardCharsets.UTF_8);
+            }
+        }
+        return values;
+    }
+
+    // Collects ratings into column blocks and writes each block once it is full
+    private static final class RatingBlockWriter {
+        private final SnapshotWriter writer;
+        private final List<Long> offsets = new ArrayList<>();
+        private final int[] userIds = new int[RATING_BLOCK_ROWS];
+        private final int[] gameIds = new int[RATING_BLOCK_ROWS];
+        private final int[] ratings = new int[RATING_BLOCK_ROWS];
+        private int rows;
+        private long ratingCount;
+
+        RatingBlockWriter(SnapshotWriter writer) {
+            this.writer = writer;
+        }
+
+        void add(int userId, int gameId, int rating) {
+            userIds[rows] = userId;
+            gameIds[rows] = gameId;
+            ratings[rows] = rating;
+            rows++;
+            ratingCount++;
+            if (rows == RATING_BLOCK_ROWS) {
+                writeBlock();
+            }
+        }
+
+        void finish() {
+            if (rows > 0) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() {
+            try {
+                boolean fitsInBytes = true;
+                for (int i = 0; i < rows && fitsInBytes; i++) {
+                    fitsInBytes = ratings[i] >= Byte.MIN_VALUE && ratings[i] <= Byte.MAX_VALUE;
+                }
+                offsets.add(writer.position());
+                writer.putInt(rows);
+                writer.putByte((byte) (fitsInBytes ? 1 : 4));
+                for (int i = 0; i < rows; i++) {
+                    writer.putInt(userIds[i]);
+                }
+                for (int i = 0; i < rows; i++) {
+                    writer.putInt(gameIds[i]);
+                }
+                for (int i = 0; i < rows; i++) {
+                    if (fitsInBytes) {
+                        writer.putByte((byte) ratings[i]);
+                    } else {
+                        writer.putInt(ratings[i]);
+                    }
+                }
+                rows = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // A buffered writer that tracks the file position and checksums what it writes
+    private static final class SnapshotWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+        private final CRC32C checksum = new CRC32C();
+        private long written;
+        // Set while writing the checksum itself, which is not part of what it covers
+        private boolean unchecked;
+
+        SnapshotWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return written + buffer.position();
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putIntUnchecked(int value) throws IOException {
+            unchecked = true;
+            putInt(value);
+        }
+
+        void putStrings(List<String> values) throws IOException {
+            List<byte[]> encoded = new ArrayList<>(values.size());
+            for (String value : values) {
+                byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                putInt(bytes == null ? -1 : bytes.length);
+            }
+            for (byte[] bytes : encoded) {
+                if (bytes == null) {
+                    continue;
+                }
+                for (int offset = 0; offset < bytes.length; ) {
+                    ensure(1);
+                    int length = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, length);
+                    offset += length;
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            if (!unchecked) {
+                checksum.update(buffer.duplicate());
+            }
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package stacs.GameRepo;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A full-text index of game titles, ranked with BM25. A title is split into terms at
+ * anything that is not a letter or digit, with case and accents folded away, and each
+ * term keeps a posting list of the titles it appears in.
+ *
+ * <p>A query term matches the same term, and the last query term also matches the terms
+ * it is a prefix of, so results appear while the title is still being typed. A query term
+ * of {@value #MIN_TYPO_LENGTH} or more characters that matches no term exactly matches the
+ * terms one insertion, deletion, substitution or swap of neighbouring characters away
+ * instead, found through an index of every term with one character deleted. Prefix and
+ * typo matches count for less than exact ones.
+ *
+ * <p>The work per query is bounded: at most {@value #MAX_POSTINGS_READ} postings are read,
+ * rarest terms first, so a term found in a large part of the catalogue is left out like a
+ * stop word once rarer terms have found titles.
+ *
+ * <p>Queries never lock and are safe while another thread adds titles, but
+ * {@link #addTitle} must be serialized by the caller.
+ */
+public class TitleSearchIndex {
+    // BM25 term frequency saturation and title length normalisation
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+    // How much a prefix or typo match counts compared with an exact match
+    static final double PREFIX_WEIGHT = 0.8;
+    static final double TYPO_WEIGHT = 0.6;
+    // Shorter query terms are too ambiguous to correct
+    static final int MIN_TYPO_LENGTH = 4;
+    // The most frequent of the first PREFIX_SCAN terms with a prefix are matched
+    static final int MAX_PREFIX_TERMS = 16;
+    static final int PREFIX_SCAN = 256;
+    static final int MAX_POSTINGS_READ = 4096;
+    // Term frequencies and title lengths are packed into 16 bits each
+    private static final int MAX_COUNT = 0xFFFF;
+
+    // Term -> the titles it appears in, sorted so the terms with a prefix are a range
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    // A term with one character deleted -> the terms it came from; replaced, never changed
+    private final Map<String, String[]> termsByDeletion = new ConcurrentHashMap<>();
+    private volatile int titleCount;
+    private volatile long termCount;
+
+    /**
+     * Adds a title to the index. Callers must not call this from two threads at once.
+     *
+     * @param gameId the ID of the game
+     * @param title  the title of the game; may be null
+     */
+    public void addTitle(int gameId, String title) {
+        List<String> titleTerms = tokenize(title);
+        if (titleTerms.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : titleTerms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        int length = Math.min(titleTerms.size(), MAX_COUNT);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            Postings postings = terms.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(entry.getKey(), postings);
+                addDeletions(entry.getKey());
+            }
+            postings.add((long) gameId << 32 | (long) Math.min(entry.getValue(), MAX_COUNT) << 16 | length);
+        }
+        termCount = termCount + titleTerms.size();
+        titleCount = titleCount + 1;
+    }
+
+    /**
+     * Finds the titles best matching a query.
+     *
+     * @param query the words to search for
+     * @param n     the maximum number of titles to return
+     * @return up to n matches, best first
+     */
+    public List<Match> search(String query, int n) {
+        List<String> queryTerms = tokenize(query);
+        int titles = titleCount;
+        if (queryTerms.isEmpty() || titles == 0) {
+            return new ArrayList<>();
+        }
+        double averageLength = (double) termCount / titles;
+
+        // Every term each query term matches, with how much the match counts
+        List<Expansion> expansions = new ArrayList<>();
+        for (int q = 0; q < queryTerms.size(); q++) {
+            String queryTerm = queryTerms.get(q);
+            Map<String, Double> weights = new HashMap<>();
+            if (terms.containsKey(queryTerm)) {
+                weights.put(queryTerm, 1.0);
+            }
+            if (q == queryTerms.size() - 1) {
+                for (String term : prefixTerms(queryTerm)) {
+                    weights.merge(term, PREFIX_WEIGHT, Math::max);
+                }
+            }
+            if (!weights.containsKey(queryTerm) && queryTerm.length() >= MIN_TYPO_LENGTH) {
+                for (String term : typoTerms(queryTerm)) {
+                    weights.merge(term, TYPO_WEIGHT, Math::max);
+                }
+            }
+            for (Map.Entry<String, Double> weight : weights.entrySet()) {
+                Postings postings = terms.get(weight.getKey());
+                if (postings != null) {
+                    // Read the size first, so the array holds at least that many postings
+                    int size = postings.size();
+                    expansions.add(new Expansion(q, weight.getValue(), postings.entries(), size));
+                }
+            }
+        }
+        expansions.sort(Comparator.comparingInt(expansion -> expansion.size));
+
+        int total = 0;
+        for (Expansion expansion : expansions) {
+            total += expansion.size;
+        }
+        Scores scores = new Scores(Math.min(total, MAX_POSTINGS_READ), queryTerms.size());
+        int read = 0;
+        for (Expansion expansion : expansions) {
+            long[] postings = expansion.postings;
+            int count = expansion.size;
+            if (read + count > MAX_POSTINGS_READ) {
+                if (read > 0) {
+                    break;
+                }
+                count = MAX_POSTINGS_READ;
+            }
+            read += count;
+            double idf = Math.log(1 + (titles - expansion.size + 0.5) / (expansion.size + 0.5));
+            for (int p = 0; p < count; p++) {
+                long posting = postings[p];
+                int frequency = (int) (posting >>> 16) & MAX_COUNT;
+                int length = (int) posting & MAX_COUNT;
+                double score = expansion.weight * idf * frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * length / averageLength));
+                scores.keepBest((int) (posting >>> 32), expansion.queryTerm, score);
+            }
+        }
+
+        // Lowest score first, so it is the one dropped; on a tie the higher ID goes first
+        Comparator<Match> worstFirst = Comparator.comparingDouble(Match::getScore)
+                .thenComparingInt(match -> -match.getGameId());
+        PriorityQueue<Match> top = new PriorityQueue<>(worstFirst);
+        for (int slot = 0; slot < scores.ids.length; slot++) {
+            if (!scores.used[slot]) {
+                continue;
+            }
+            double score = scores.total(slot);
+            // Only build a match that would make the top n
+            if (top.size() == n && (score < top.peek().getScore()
+                    || (score == top.peek().getScore() && scores.ids[slot] > top.peek().getGameId()))) {
+                continue;
+            }
+            top.add(new Match(scores.ids[slot], score));
+            if (top.size() > n) {
+                top.poll();
+            }
+        }
+        List<Match> matches = new ArrayList<>(top);
+        matches.sort(worstFirst.reversed());
+        return matches;
+    }
+
+    /**
+     * Returns the number of distinct terms in the index.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    // The most frequent terms starting with a prefix, other than the prefix itself
+    private List<String> prefixTerms(String prefix) {
+        List<Map.Entry<String, Postings>> found = new ArrayList<>();
+        for (Map.Entry<String, Postings> entry : terms.tailMap(prefix, false).entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || found.size() == PREFIX_SCAN) {
+                break;
+            }
+            found.add(entry);
+        }
+        found.sort(Comparator.comparingInt((Map.Entry<String, Postings> entry) -> entry.getValue().size()).reversed());
+        List<String> prefixTerms = new ArrayList<>();
+        for (int i = 0; i < found.size() && i < MAX_PREFIX_TERMS; i++) {
+            prefixTerms.add(found.get(i).getKey());
+        }
+        return prefixTerms;
+    }
+
+    // The terms one edit away from a term
+    private Set<String> typoTerms(String term) {
+        Set<String> candidates = new HashSet<>();
+        // A term with one more character than the query
+        addAll(candidates, termsByDeletion.get(term));
+        for (String deletion : deletions(term)) {
+            // A term with one less character than the query
+            if (terms.containsKey(deletion)) {
+                candidates.add(deletion);
+            }
+            // A term of the same length with one character changed or two swapped
+            addAll(candidates, termsByDeletion.get(deletion));
+        }
+        candidates.removeIf(candidate -> !withinOneEdit(term, candidate));
+        return candidates;
+    }
+
+    private static void addAll(Set<String> set, String[] values) {
+        if (values != null) {
+            set.addAll(Arrays.asList(values));
+        }
+    }
+
+    private void addDeletions(String term) {
+        // A term shorter than this can only be reached from a query too short to correct
+        if (term.length() < MIN_TYPO_LENGTH - 1) {
+            return;
+        }
+        for (String deletion : deletions(term)) {
+            String[] existing = termsByDeletion.get(deletion);
+            if (existing == null) {
+                termsByDeletion.put(deletion, new String[] {term});
+            } else {
+                String[] grown = Arrays.copyOf(existing, existing.length + 1);
+                grown[existing.length] = term;
+                termsByDeletion.put(deletion, grown);
+            }
+        }
+    }
+
+    // Every distinct string made by deleting one character
+    private static Set<String> deletions(String term) {
+        Set<String> deletions = new HashSet<>();
+        for (int i = 0; i < term.length(); i++) {
+            deletions.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return deletions;
+    }
+
+    // Whether two different strings are one insertion, deletion, substitution or swap of neighbours apart
+    static boolean withinOneEdit(String a, String b) {
+        if (a.length() > b.length()) {
+            return withinOneEdit(b, a);
+        }
+        if (b.length() - a.length() > 1) {
+            return false;
+        }
+        int first = 0;
+        while (first < a.length() && a.charAt(first) == b.charAt(first)) {
+            first++;
+        }
+        if (a.length() != b.length()) {
+            // b has one extra character at first
+            return a.regionMatches(first, b, first + 1, a.length() - first);
+        }
+        if (first == a.length()) {
+            return false;
+        }
+        if (a.regionMatches(first + 1, b, first + 1, a.length() - first - 1)) {
+            return true;
+        }
+        return first + 1 < a.length()
+                && a.charAt(first) == b.charAt(first + 1) && a.charAt(first + 1) == b.charAt(first)
+                && a.regionMatches(first + 2, b, first + 2, a.length() - first - 2);
+    }
+
+    /**
+     * Splits text into terms at anything that is not a letter or digit, folding case and
+     * removing accents, so "Pokémon: Red" gives "pokemon" and "red".
+     *
+     * @param text the text to split; may be null
+     * @return the terms, in order
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String folded = GameRepo.foldCase(text);
+        if (!isAscii(folded)) {
+            // Split each accented letter into the letter and its accent, then drop the accents
+            folded = Normalizer.normalize(folded, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        }
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean inTerm = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A title matching a query, with its BM25 score.
+     */
+    public static final class Match {
+        private final int gameId;
+        private final double score;
+
+        Match(int gameId, double score) {
+            this.gameId = gameId;
+            this.score = score;
+        }
+
+        public int getGameId() {
+            return gameId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * The best score of each query term in each title read, in an open-addressing table of
+     * primitive arrays sized for every posting a query may read, so scoring does not box.
+     * A query term counts once per title, through the best of the terms it matched there.
+     */
+    private static final class Scores {
+        final int[] ids;
+        final boolean[] used;
+        // The score of query term q in the title at slot s is at s * queryTerms + q
+        final double[] termScores;
+        private final int queryTerms;
+        private final int mask;
+
+        Scores(int postings, int queryTerms) {
+            // At most half full, so probes stay short
+            int capacity = Integer.highestOneBit(Math.max(postings, 1) * 2 - 1) << 1;
+            ids = new int[capacity];
+            used = new boolean[capacity];
+            termScores = new double[capacity * queryTerms];
+            this.queryTerms = queryTerms;
+            mask = capacity - 1;
+        }
+
+        void keepBest(int gameId, int queryTerm, double score) {
+            int slot = (gameId * 0x9E3779B9) >>> 1 & mask;
+            while (used[slot] && ids[slot] != gameId) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = gameId;
+            used[slot] = true;
+            int index = slot * queryTerms + queryTerm;
+            termScores[index] = Math.max(termScores[index], score);
+        }
+
+        double total(int slot) {
+            double total = 0;
+            for (int q = 0; q < queryTerms; q++) {
+                total += termScores[slot * queryTerms + q];
+            }
+            return total;
+        }
+    }
+
+    // The postings of one term a query term matches
+    private static final class Expansion {
+        final int queryTerm;
+        final double weight;
+        final long[] postings;
+        final int size;
+
+        Expansion(int queryTerm, double weight, long[] postings, int size) {
+            this.queryTerm = queryTerm;
+            this.weight = weight;
+            this.postings = postings;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The titles one term appears in, each packed as game ID << 32 | frequency << 16 | length,
+     * in the order they were added. Appended to by one writer and read without locking, in
+     * the same way as AppendOnlyArray.
+     */
+    private static final class Postings {
+        private volatile long[] entries = new long[2];
+        private volatile int size;
+
+        void add(long posting) {
+            long[] current = entries;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                entries = current;
+            }
+            current[size] = posting;
+            size = size + 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long[] entries() {
+            return entries;
+        }
+    }
+}
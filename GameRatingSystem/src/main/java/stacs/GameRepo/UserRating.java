@@ -0,0 +1,22 @@
+package stacs.GameRepo;
+
+/**
+ * One user's rating of a game, as listed by GET /api/games/{gameId}/ratings.
+ */
+public class UserRating {
+    private final int userId;
+    private final int rating;
+
+    public UserRating(int userId, int rating) {
+        this.userId = userId;
+        this.rating = rating;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getRating() {
+        return rating;
+    }
+}
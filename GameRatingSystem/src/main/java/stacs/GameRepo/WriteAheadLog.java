@@ -0,0 +1,673 @@
+package stacs.GameRepo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * An append-only log of every change made to a GameRepo, replayed when it starts.
+ *
+ * <p>Writers append a record to an in-memory buffer and get back its log sequence
+ * number (LSN), the offset of the end of the record in the file. A background thread
+ * writes the buffer out in one go, and fsyncs it at the FSYNCED level, once it holds
+ * {@code groupCommitBytes} or the oldest record has waited {@code flushInterval}, so
+ * one write and one fsync cover every record appended in between (group commit).
+ * {@link #awaitDurable} blocks until a record has reached the configured durability.
+ *
+ * <p>The log is kept in segments. It starts in the given file, and each {@link #rotate}
+ * starts a new segment named after the file and the LSN of its first record, so once a
+ * snapshot covers the older segments {@link #deleteSegmentsBefore} can drop them whole.
+ *
+ * <p>Each segment starts with a magic number and a format version. Each record is framed
+ * as its length, a CRC32C checksum and then a type byte and the fields. A record cut
+ * short or corrupted by a crash fails its checksum on replay, and the log is truncated
+ * at the last good record.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    // "GRWL" in ASCII
+    private static final int MAGIC = 0x4752574C;
+    public static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    // Record types; the numbers are part of the file format
+    private static final byte ADD_GAME = 1;
+    private static final byte ADD_USER = 2;
+    private static final byte UPDATE_USER_NAME = 3;
+    private static final byte ADD_RATING = 4;
+
+    // Stored in place of the epoch day of a missing release date
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    /**
+     * How far a change has to get before GameRepo returns to the caller.
+     */
+    public enum Durability {
+        // Return straight away; the last flush interval of changes can be lost in a crash
+        BUFFERED,
+        // Return once the change is written to the operating system; survives the process dying
+        WRITTEN,
+        // Return once the change is fsynced; survives the machine losing power
+        FSYNCED
+    }
+
+    // The first segment; later ones are named after it
+    private final Path file;
+    // The segment being appended to, and the LSN of its first record; only changed by..
+    // ..replay and the flusher
+    private FileChannel channel;
+    private long segmentFirstLsn;
+    private final Durability durability;
+    private final long flushIntervalNanos;
+    private final int groupCommitBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when there is something for the flusher to do
+    private final Condition flushNeeded = lock.newCondition();
+    // Signalled when durableLsn moves on
+    private final Condition flushed = lock.newCondition();
+    // Records appended but not yet handed to the flusher
+    private ByteBuffer pending = newBuffer(INITIAL_BUFFER_BYTES);
+    // The buffer the flusher writes from, swapped with pending
+    private ByteBuffer flushing = newBuffer(INITIAL_BUFFER_BYTES);
+    // End of the last record appended, and of the last record that reached the durability level
+    private long appendedLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+    // Set by rotate() and cleared by the flusher once the new segment is started
+    private boolean rotateRequested;
+    private Thread flusher;
+
+    /**
+     * Opens the log, creating it if it does not exist. Call {@link #replay} and then
+     * {@link #start} before appending to it.
+     *
+     * @param file             the file to keep the first segment of the log in
+     * @param durability       how far a change has to get before awaitDurable returns
+     * @param flushInterval    the longest a record waits before it is written
+     * @param groupCommitBytes how many bytes of records trigger a write before the interval is up
+     */
+    public WriteAheadLog(Path file, Durability durability, Duration flushInterval, int groupCommitBytes) {
+        if (flushInterval.isNegative() || groupCommitBytes <= 0) {
+            throw new IllegalArgumentException("The flush interval and group commit size must be positive");
+        }
+        this.file = file;
+        this.durability = durability;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.groupCommitBytes = groupCommitBytes;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            // Appending carries on in the newest segment
+            Map.Entry<Long, Path> newest = listSegments().lastEntry();
+            segmentFirstLsn = newest == null ? FILE_HEADER_BYTES : newest.getKey();
+            channel = openSegment(newest == null ? file : newest.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the write-ahead log " + file, e);
+        }
+    }
+
+    // Opens a segment, writing the header of a new one and checking that of an existing one
+    private static FileChannel openSegment(Path segment) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = newBuffer(FILE_HEADER_BYTES);
+        if (segmentChannel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            segmentChannel.write(header, 0);
+            segmentChannel.force(true);
+        } else {
+            segmentChannel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                segmentChannel.close();
+                throw new IllegalStateException(segment + " is not a version " + VERSION + " write-ahead log");
+            }
+        }
+        return segmentChannel;
+    }
+
+    // First LSN -> segment, oldest first: the file itself, then one per rotation
+    private NavigableMap<Long, Path> listSegments() throws IOException {
+        NavigableMap<Long, Path> segments = new TreeMap<>();
+        if (Files.exists(file)) {
+            segments.put((long) FILE_HEADER_BYTES, file);
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(segment -> {
+                String name = segment.getFileName().toString();
+                if (name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d{20}")) {
+                    segments.put(Long.parseLong(name.substring(prefix.length())), segment);
+                }
+            });
+        }
+        return segments;
+    }
+
+    // The zero-padded LSN in the name makes name order the same as LSN order
+    private Path segmentPath(long firstLsn) {
+        return file.resolveSibling(String.format("%s.%020d", file.getFileName(), firstLsn));
+    }
+
+    // Ends the current segment and starts appending to a new one from the given LSN
+    private void startSegment(long firstLsn) throws IOException {
+        FileChannel next = openSegment(segmentPath(firstLsn));
+        channel.force(true);
+        channel.close();
+        channel = next;
+        segmentFirstLsn = firstLsn;
+    }
+
+    /**
+     * Feeds the records from the given LSN on to the handler, in the order they were
+     * appended, and drops any torn record at the end so new records follow the last good one.
+     *
+     * @param handler the handler to apply each record with
+     * @param fromLsn the LSN to start from, such as the one a snapshot is up to; 0 for the whole log
+     */
+    public void replay(RecordHandler handler, long fromLsn) {
+        replay(handler, fromLsn, 0);
+    }
+
+    /**
+     * Feeds the records from the given LSN on to the handler, like {@link #replay(RecordHandler, long)},
+     * but skips the ratings appended before a later LSN, such as the one a rating store that was
+     * closed cleanly already holds every rating before.
+     *
+     * @param handler        the handler to apply each record with
+     * @param fromLsn        the LSN to start from; 0 for the whole log
+     * @param ratingsFromLsn the LSN to start applying ratings from; 0 to apply them all
+     */
+    public void replay(RecordHandler handler, long fromLsn, long ratingsFromLsn) {
+        try {
+            List<Map.Entry<Long, Path>> segments = new ArrayList<>(listSegments().entrySet());
+            long end = segmentFirstLsn;
+            for (int i = 0; i < segments.size(); i++) {
+                long firstLsn = segments.get(i).getKey();
+                boolean current = i == segments.size() - 1;
+                // A segment that ends before fromLsn holds nothing to replay
+                if (!current && segments.get(i + 1).getKey() <= fromLsn) {
+                    continue;
+                }
+                FileChannel segment = current ? channel : openSegment(segments.get(i).getValue());
+                long position = replaySegment(segment, firstLsn, fromLsn, ratingsFromLsn, handler);
+                end = firstLsn + position - FILE_HEADER_BYTES;
+                if (current) {
+                    // Anything after the last good record was cut short by a crash
+                    channel.truncate(position);
+                } else if (end != segments.get(i + 1).getKey()) {
+                    // Damaged before its end, so the records after it cannot be applied in order;..
+                    // ..the log is cut at the last good record, as it is for a torn record at the end
+                    segment.truncate(position);
+                    channel.close();
+                    for (int j = i + 1; j < segments.size(); j++) {
+                        Files.delete(segments.get(j).getValue());
+                    }
+                    channel = segment;
+                    segmentFirstLsn = firstLsn;
+                    break;
+                } else {
+                    segment.close();
+                }
+            }
+            if (end < fromLsn) {
+                // The snapshot is ahead of a log that lost its unwritten tail in a crash; the..
+                // ..new records have to come after the snapshot's LSN to be replayed on top of it
+                startSegment(fromLsn);
+                end = fromLsn;
+            }
+            appendedLsn = end;
+            durableLsn = end;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay the write-ahead log " + file, e);
+        }
+    }
+
+    // Applies the good records of one segment from fromLsn on, except the ratings that end by..
+    // ..ratingsFromLsn; returns the position after the last one
+    private long replaySegment(FileChannel segment, long firstLsn, long fromLsn, long ratingsFromLsn,
+                               RecordHandler handler) throws IOException {
+        long end = segment.size();
+        // An LSN is the offset of a record boundary from the segment's first record, so replay..
+        // ..can seek straight to it
+        long position = Math.min(Math.max(fromLsn - firstLsn, 0) + FILE_HEADER_BYTES, end);
+        ByteBuffer frame = newBuffer(FRAME_HEADER_BYTES);
+        CRC32C checksum = new CRC32C();
+        while (position + FRAME_HEADER_BYTES <= end) {
+            frame.clear();
+            segment.read(frame, position);
+            int length = frame.getInt(0);
+            int expectedChecksum = frame.getInt(4);
+            if (length <= 0 || position + FRAME_HEADER_BYTES + length > end) {
+                break;
+            }
+            ByteBuffer record = newBuffer(length);
+            segment.read(record, position + FRAME_HEADER_BYTES);
+            record.flip();
+            checksum.reset();
+            checksum.update(record.duplicate());
+            if ((int) checksum.getValue() != expectedChecksum) {
+                break;
+            }
+            position += FRAME_HEADER_BYTES + length;
+            // A record's LSN is where it ends, as returned when it was appended
+            if (record.get(0) != ADD_RATING || firstLsn + position - FILE_HEADER_BYTES > ratingsFromLsn) {
+                apply(record, handler);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Starts the background thread that writes appended records to the file.
+     */
+    public void start() {
+        flusher = new Thread(this::runFlusher, "gamerepo-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends the addition of a game.
+     *
+     * @param game the game added
+     * @return the LSN of the record
+     */
+    public long appendAddGame(Games game) {
+        List<String> genres = game.getGenres();
+        List<byte[]> encodedGenres = new ArrayList<>();
+        int length = 1 + 4 + stringBytes(game.getTitle()) + 4 + 8 + stringBytes(game.getPlatform());
+        if (genres != null) {
+            for (String genre : genres) {
+                byte[] encoded = encode(genre);
+                encodedGenres.add(encoded);
+                length += 4 + (encoded == null ? 0 : encoded.length);
+            }
+        }
+        LocalDate releaseDate = game.getReleaseDate();
+        lock.lock();
+        try {
+            ByteBuffer buffer = reserve(length);
+            buffer.put(ADD_GAME).putInt(game.getGameId());
+            putString(buffer, encode(game.getTitle()));
+            buffer.putInt(genres == null ? -1 : encodedGenres.size());
+            for (byte[] genre : encodedGenres) {
+                putString(buffer, genre);
+            }
+            buffer.putLong(releaseDate == null ? NO_DATE : releaseDate.toEpochDay());
+            putString(buffer, encode(game.getPlatform()));
+            return finishRecord(buffer, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the addition of a user.
+     *
+     * @param user the user added
+     * @return the LSN of the record
+     */
+    public long appendAddUser(Users user) {
+        return appendUserRecord(ADD_USER, user.getUserId(), user.getName());
+    }
+
+    /**
+     * Appends the renaming of a user.
+     *
+     * @param userId  the ID of the user renamed
+     * @param newName the new name of the user
+     * @return the LSN of the record
+     */
+    public long appendUpdateUserName(int userId, String newName) {
+        return appendUserRecord(UPDATE_USER_NAME, userId, newName);
+    }
+
+    /**
+     * Appends a rating.
+     *
+     * @param userId the ID of the user who rated the game
+     * @param gameId the ID of the game rated
+     * @param rating the rating value
+     * @return the LSN of the record
+     */
+    public long appendAddRating(int userId, int gameId, int rating) {
+        int length = 1 + 4 + 4 + 4;
+        lock.lock();
+        try {
+            ByteBuffer buffer = reserve(length);
+            buffer.put(ADD_RATING).putInt(userId).putInt(gameId).putInt(rating);
+            return finishRecord(buffer, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the LSN of the last record appended.
+     *
+     * @return the offset in the log just past the last record
+     */
+    public long appendedLsn() {
+        lock.lock();
+        try {
+            return appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record with the given LSN, and every record before it, has
+     * reached the configured durability. Returns straight away at the BUFFERED level.
+     *
+     * @param lsn the LSN returned when the record was appended
+     */
+    public void awaitDurable(long lsn) {
+        if (durability == Durability.BUFFERED) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Could not write the write-ahead log " + file, failure);
+                }
+                if (closed) {
+                    throw new IllegalStateException("The write-ahead log is closed");
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new segment once every record appended so far is written, so the segments
+     * before it can be deleted once a snapshot covers them. Does nothing if the current
+     * segment has no records yet.
+     */
+    public void rotate() {
+        lock.lock();
+        try {
+            rotateRequested = true;
+            flushNeeded.signal();
+            while (rotateRequested) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Could not write the write-ahead log " + file, failure);
+                }
+                if (closed) {
+                    throw new IllegalStateException("The write-ahead log is closed");
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments that only hold records before an LSN, such as the one the oldest
+     * snapshot kept is up to. The segment being appended to is never deleted.
+     *
+     * @param lsn the earliest LSN the log may be replayed from
+     * @return the number of segments deleted
+     */
+    public int deleteSegmentsBefore(long lsn) {
+        try {
+            // Every segment starting at or before lsn except the last of them ends by lsn
+            List<Path> covered = new ArrayList<>(listSegments().headMap(lsn, true).values());
+            for (int i = 0; i < covered.size() - 1; i++) {
+                Files.deleteIfExists(covered.get(i));
+            }
+            return Math.max(covered.size() - 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete the old segments of the write-ahead log " + file, e);
+        }
+    }
+
+    /**
+     * Writes out and fsyncs every appended record, then closes the file.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushNeeded.signal();
+            // Wakes a rotate() that the flusher will not get to
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (flusher != null) {
+                flusher.join();
+            }
+            channel.force(true);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the write-ahead log " + file, e);
+        }
+    }
+
+    /**
+     * Applies the records of a log being replayed.
+     */
+    public interface RecordHandler {
+        void addGame(Games game);
+
+        void addUser(Users user);
+
+        void updateUserName(int userId, String newName);
+
+        void addRating(int userId, int gameId, int rating);
+    }
+
+    private long appendUserRecord(byte type, int userId, String name) {
+        byte[] encodedName = encode(name);
+        int length = 1 + 4 + 4 + (encodedName == null ? 0 : encodedName.length);
+        lock.lock();
+        try {
+            ByteBuffer buffer = reserve(length);
+            buffer.put(type).putInt(userId);
+            putString(buffer, encodedName);
+            return finishRecord(buffer, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Makes room for a record in the pending buffer and writes its frame header,
+    // leaving the checksum to be filled in by finishRecord
+    private ByteBuffer reserve(int length) {
+        if (closed) {
+            throw new IllegalStateException("The write-ahead log is closed");
+        }
+        int needed = FRAME_HEADER_BYTES + length;
+        if (pending.remaining() < needed) {
+            ByteBuffer grown = newBuffer(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.putInt(length).putInt(0);
+        return pending;
+    }
+
+    // Fills in the checksum of the record just written and wakes the flusher if it is due
+    private long finishRecord(ByteBuffer buffer, int length) {
+        int start = buffer.position() - length;
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.slice(start, length));
+        buffer.putInt(start - 4, (int) checksum.getValue());
+        appendedLsn += FRAME_HEADER_BYTES + length;
+        // The first record starts the flush interval; a full buffer cuts it short
+        if (buffer.position() == FRAME_HEADER_BYTES + length || buffer.position() >= groupCommitBytes) {
+            flushNeeded.signal();
+        }
+        return appendedLsn;
+    }
+
+    private void runFlusher() {
+        while (true) {
+            long flushedLsn;
+            boolean rotating;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed && !rotateRequested) {
+                    flushNeeded.awaitUninterruptibly();
+                }
+                // Let more records join the group until it is big enough or the interval is up
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (pending.position() < groupCommitBytes && !closed && !rotateRequested) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        flushNeeded.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                if (pending.position() == 0 && closed) {
+                    return;
+                }
+                ByteBuffer swap = flushing;
+                flushing = pending;
+                pending = swap;
+                pending.clear();
+                flushedLsn = appendedLsn;
+                rotating = rotateRequested;
+            } finally {
+                lock.unlock();
+            }
+            IOException error = null;
+            try {
+                flushing.flip();
+                while (flushing.hasRemaining()) {
+                    channel.write(flushing, channel.size());
+                }
+                if (durability == Durability.FSYNCED) {
+                    channel.force(false);
+                }
+                // Everything up to flushedLsn is in the current segment, so the next one starts there
+                if (rotating && flushedLsn != segmentFirstLsn) {
+                    startSegment(flushedLsn);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            flushing.clear();
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableLsn = flushedLsn;
+                    if (rotating) {
+                        rotateRequested = false;
+                    }
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    private void apply(ByteBuffer record, RecordHandler handler) {
+        byte type = record.get();
+        switch (type) {
+            case ADD_GAME -> {
+                int gameId = record.getInt();
+                String title = getString(record);
+                int genreCount = record.getInt();
+                ArrayList<String> genres = null;
+                if (genreCount >= 0) {
+                    genres = new ArrayList<>(genreCount);
+                    for (int i = 0; i < genreCount; i++) {
+                        genres.add(getString(record));
+                    }
+                }
+                long epochDay = record.getLong();
+                LocalDate releaseDate = epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+                handler.addGame(new Games(gameId, title, genres, releaseDate, getString(record)));
+            }
+            case ADD_USER -> {
+                int userId = record.getInt();
+                handler.addUser(new Users(userId, getString(record)));
+            }
+            case UPDATE_USER_NAME -> {
+                int userId = record.getInt();
+                handler.updateUserName(userId, getString(record));
+            }
+            case ADD_RATING -> handler.addRating(record.getInt(), record.getInt(), record.getInt());
+            default -> throw new IllegalStateException("Unknown record type " + type + " in " + file);
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Strings are stored as their UTF-8 length (-1 for null) followed by the bytes
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringBytes(String value) {
+        return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] encoded) {
+        if (encoded == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(encoded.length).put(encoded);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+}
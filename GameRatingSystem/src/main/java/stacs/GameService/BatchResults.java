@@ -0,0 +1,98 @@
+package stacs.GameService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import stacs.GameRepo.BatchOutcome;
+
+/**
+ * The per-item results of a batch request, written back as NDJSON: one line
+ * {@code {"index":0,"id":7,"status":"ADDED"}} per item, in the order they were sent,
+ * and a final {@code {"index":n,"error":"..."}} line if the body could not be read to the end.
+ *
+ * <p>Only an ID and an outcome byte are kept per item, so a batch of millions of items
+ * never holds the items themselves, and the results are streamed out rather than
+ * built up as one response string.
+ */
+public class BatchResults implements BodyWriter {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final BatchOutcome[] OUTCOMES = BatchOutcome.values();
+
+    private int[] ids = new int[64];
+    private byte[] outcomes = new byte[64];
+    private int size;
+    private String error;
+
+    /**
+     * Records the outcomes of a batch of items.
+     *
+     * @param batchIds      the ID of each item, 0 if it had none
+     * @param batchOutcomes the outcome of each item, in the same order
+     */
+    public void addAll(int[] batchIds, List<BatchOutcome> batchOutcomes) {
+        if (size + batchIds.length > ids.length) {
+            int capacity = Math.max(ids.length * 2, size + batchIds.length);
+            ids = Arrays.copyOf(ids, capacity);
+            outcomes = Arrays.copyOf(outcomes, capacity);
+        }
+        for (int i = 0; i < batchIds.length; i++) {
+            ids[size] = batchIds[i];
+            outcomes[size] = (byte) batchOutcomes.get(i).ordinal();
+            size++;
+        }
+    }
+
+    /**
+     * Records that the body stopped being readable after the items recorded so far.
+     *
+     * @param message what went wrong
+     */
+    public void fail(String message) {
+        error = message;
+    }
+
+    public boolean hasError() {
+        return error != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the outcome of one item.
+     *
+     * @param index the position of the item in the request
+     * @return the item's outcome
+     */
+    public BatchOutcome getOutcome(int index) {
+        return OUTCOMES[outcomes[index]];
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+            // One JSON object per line
+            generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            for (int i = 0; i < size; i++) {
+                generator.writeStartObject();
+                generator.writeNumberField("index", i);
+                generator.writeNumberField("id", ids[i]);
+                generator.writeStringField("status", OUTCOMES[outcomes[i]].name());
+                generator.writeEndObject();
+            }
+            if (error != null) {
+                generator.writeStartObject();
+                generator.writeNumberField("index", size);
+                generator.writeStringField("error", error);
+                generator.writeEndObject();
+            }
+            generator.writeRaw('\n');
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package stacs.GameService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body that writes itself to an output stream as the client reads it.
+ * GameService hands it to Spring MVC as a StreamingResponseBody and ReactiveGameService
+ * as a stream of data buffers, so the bodies themselves depend on neither web stack.
+ */
+@FunctionalInterface
+public interface BodyWriter {
+
+    /**
+     * Writes the body.
+     *
+     * @param outputStream the stream to write the body to
+     * @throws IOException if the stream cannot be written to
+     */
+    void writeTo(OutputStream outputStream) throws IOException;
+}
@@ -1,36 +1,246 @@
 package stacs.GameService;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.http.ResponseEntity;
+import stacs.GameRepo.BatchOutcome;
+import stacs.GameRepo.GameQuery;
 import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.NewRating;
+import stacs.GameRepo.RankedGame;
+import stacs.GameRepo.RatingSummary;
+import stacs.GameRepo.Recommendation;
+import stacs.GameRepo.SearchHit;
+import stacs.GameRepo.SimilarGame;
+import stacs.GameRepo.UserRating;
 import stacs.Games.Games;
 import stacs.Users.Users;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * GameService is a REST controller that handles operations for games, users, and ratings.
  * It delegates the data storage and retrieval to the GameRepo.
+ * It serves the servlet stack; {@link ReactiveGameService} serves the same routes on the reactive one.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api")
 public class GameService {
 
+    // Largest leaderboard a single request may ask for
+    static final int MAX_TOP_GAMES = 1000;
+    // Largest page a single paginated request may ask for
+    static final int MAX_PAGE_SIZE = 1000;
+    // Most recommendations a single request may ask for
+    static final int MAX_RECOMMENDATIONS = 100;
+    // Most similar games a single request may ask for
+    static final int MAX_SIMILAR_GAMES = 100;
+    // Most search hits a single request may ask for
+    static final int MAX_SEARCH_RESULTS = 100;
+    // Response header carrying the cursor of the next page, absent on the last page
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    // Response header carrying the ID of the point a ratings export is read as of
+    public static final String EXPORT_POINT_HEADER = "X-Export-Point";
+    // Number of items of a batch request handed to GameRepo at a time
+    static final int INGEST_BATCH_SIZE = 1000;
+    // The body of a ratings response for a user that does not exist or has no ratings
+    private static final byte[] NO_RATINGS = "{}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RATINGS_DROPPED =
+            "{\"error\":\"Queued ratings could not be added\"}".getBytes(StandardCharsets.UTF_8);
+    // Identifies this process in ETags, as GameRepo counts its versions from 0 again after a..
+    // ..restart and would otherwise hand out an ETag a client kept for different data
+    private static final String ETAG_EPOCH = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
     // GameRepo instance to manage games, users, and ratings
     private final GameRepo gameRepo;
+    // Spring's JSON mapper, so batch items and cached bodies follow spring.jackson.* like every other body
+    private final ObjectMapper objectMapper;
+    // Requests answered 404 because the user, or the user or game, does not exist
+    private final Counter updateUserNotFound;
+    private final Counter rateGameNotFound;
+    // The serialized ratings of recently read users; null if turned off
+    private final RatingsResponseCache ratingsCache;
+    // Queues ratings for a single writer thread; null unless write-behind is turned on
+    private final RatingWriteBehind ratingWriteBehind;
+    // How long a read of a user's ratings waits for their queued ratings
+    private final Duration readYourWritesTimeout;
 
     /**
      * Constructor with dependency injection for GameRepo.
      *
      * @param gameRepo The repository to manage games, users, and ratings.
      */
-    @Autowired
     public GameService(GameRepo gameRepo) {
+        // A composite registry with nothing added to it hands out meters that do nothing
+        this(gameRepo, new CompositeMeterRegistry());
+    }
+
+    /**
+     * Constructor with dependency injection for GameRepo and the registry the
+     * not-found counters are reported to.
+     *
+     * @param gameRepo      The repository to manage games, users, and ratings.
+     * @param meterRegistry The registry to register the counters in.
+     */
+    public GameService(GameRepo gameRepo, MeterRegistry meterRegistry) {
+        this(gameRepo, meterRegistry, new GameServiceProperties());
+    }
+
+    /**
+     * Constructor with dependency injection for GameRepo, the registry the
+     * counters are reported to, and the service settings.
+     *
+     * @param gameRepo      The repository to manage games, users, and ratings.
+     * @param meterRegistry The registry to register the counters in.
+     * @param properties    The settings of the service.
+     */
+    public GameService(GameRepo gameRepo, MeterRegistry meterRegistry, GameServiceProperties properties) {
+        this(gameRepo, meterRegistry, properties, defaultObjectMapper());
+    }
+
+    /**
+     * Constructor with dependency injection for GameRepo, the registry the
+     * counters are reported to, the service settings and Spring's JSON mapper.
+     *
+     * @param gameRepo      The repository to manage games, users, and ratings.
+     * @param meterRegistry The registry to register the counters in.
+     * @param properties    The settings of the service.
+     * @param objectMapper  The mapper that reads batch requests and writes cached ratings.
+     */
+    @Autowired
+    public GameService(GameRepo gameRepo, MeterRegistry meterRegistry, GameServiceProperties properties,
+                       ObjectMapper objectMapper) {
         this.gameRepo = gameRepo;
+        this.objectMapper = objectMapper;
         // ratingRepo is not used since ratings are stored within gameRepo
+        updateUserNotFound = notFoundCounter(meterRegistry, "updateUser");
+        rateGameNotFound = notFoundCounter(meterRegistry, "rateGame");
+        ratingsCache = ratingsCache(meterRegistry, properties);
+        ratingWriteBehind = ratingWriteBehind(gameRepo, meterRegistry, properties);
+        readYourWritesTimeout = properties.getRatingsReadYourWritesTimeout();
+    }
+
+    /**
+     * Adds the ratings still queued for the writer thread before the repository closes.
+     * Called by Spring on shutdown.
+     */
+    @PreDestroy
+    public void close() {
+        if (ratingWriteBehind != null) {
+            ratingWriteBehind.close();
+        }
+    }
+
+    // A mapper with the defaults Spring Boot gives its own, for callers outside Spring;..
+    // ..shared with ReactiveGameService
+    static ObjectMapper defaultObjectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    // Counts the requests of one endpoint answered 404; shared with ReactiveGameService
+    static Counter notFoundCounter(MeterRegistry meterRegistry, String endpoint) {
+        return Counter.builder("gameservice.not.found")
+                .description("Requests answered 404 Not Found")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+    }
+
+    // Starts the write-behind queue, or returns null if it is turned off; shared with ReactiveGameService
+    static RatingWriteBehind ratingWriteBehind(GameRepo gameRepo, MeterRegistry meterRegistry,
+                                               GameServiceProperties properties) {
+        if (!properties.isRatingsWriteBehind()) {
+            return null;
+        }
+        return new RatingWriteBehind(gameRepo, properties.getRatingsQueueCapacity(), INGEST_BATCH_SIZE, meterRegistry);
+    }
+
+    // Answers a rating the repository cannot store with 400; shared with ReactiveGameService
+    static ResponseEntity<Map<String, Serializable>> invalidRating(int rating) {
+        return ResponseEntity.badRequest().body(Map.of("error", "Rating out of range", "rating", rating));
+    }
+
+    // Queues a rating of an existing user and game, answering 202, or 429 if the queue is full;..
+    // ..shared with ReactiveGameService
+    static ResponseEntity<Map<String, Serializable>> queueRating(RatingWriteBehind ratingWriteBehind,
+                                                                 int userId, int gameId, int rating) {
+        if (ratingWriteBehind.offer(userId, gameId, rating)) {
+            return ResponseEntity.accepted().build();
+        }
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", "Too many ratings waiting to be added", "userId", userId, "gameId", gameId));
+    }
+
+    // Waits for the ratings a user has queued, so they read their own writes. Returns what to..
+    // ..answer instead of their ratings: 503 if the timeout ran out first, or 500 if a queued..
+    // ..rating was not added; null to answer with them. Shared with ReactiveGameService
+    static ResponseEntity<byte[]> awaitQueuedRatings(RatingWriteBehind ratingWriteBehind, Duration timeout, int userId) {
+        if (ratingWriteBehind == null) {
+            return null;
+        }
+        RatingWriteBehind.QueuedRatings queued = ratingWriteBehind.awaitApplied(userId, timeout);
+        if (queued == RatingWriteBehind.QueuedRatings.DROPPED) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .contentType(MediaType.APPLICATION_JSON).body(RATINGS_DROPPED);
+        }
+        // A timeout of 0 does not wait, and answers with the ratings added so far
+        if (queued == RatingWriteBehind.QueuedRatings.PENDING && !timeout.isZero()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        return null;
+    }
+
+    // A strong ETag for a version read from GameRepo; shared with ReactiveGameService
+    static String etag(long version) {
+        return "\"" + ETAG_EPOCH + "-" + Long.toHexString(version) + "\"";
+    }
+
+    // Whether an If-None-Match header lists the ETag, comparing weakly as RFC 9110 asks..
+    // ..for If-None-Match. "*" is not matched, so the full response is sent instead
+    static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Creates the ratings response cache, or returns null if it is turned off; shared with ReactiveGameService
+    static RatingsResponseCache ratingsCache(MeterRegistry meterRegistry, GameServiceProperties properties) {
+        long maxBytes = properties.getRatingsCacheSize().toBytes();
+        return maxBytes > 0 ? new RatingsResponseCache(maxBytes, meterRegistry) : null;
     }
 
     /**
@@ -76,18 +286,22 @@ public class GameService {
             return ResponseEntity.ok().build();
         } else {
             // If user is not found, return 404 with an error message
+            updateUserNotFound.increment();
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("error", "User not found", "userId", intUserId));
         }
     }
 
     /**
-     * Adds a rating for a game by a user.
+     * Adds a rating for a game by a user. With write-behind turned on, the rating is
+     * queued and added by a writer thread shortly after the response.
      *
      * @param userId The ID of the user as a String from request parameters.
      * @param gameId The ID of the game as a String from request parameters.
      * @param rating The rating value.
-     * @return HTTP 200 OK if successful; otherwise, HTTP 404 Not Found with an error message.
+     * @return HTTP 200 OK if successful, or HTTP 202 Accepted once queued; HTTP 400 Bad Request
+     *         if the rating cannot be stored; HTTP 429 Too Many Requests if the queue is full;
+     *         otherwise, HTTP 404 Not Found with an error message.
      */
     @PostMapping("/ratings")
     public ResponseEntity<Map<String, Serializable>> rateGame(@RequestParam String userId, @RequestParam String gameId, @RequestParam int rating) {
@@ -100,67 +314,498 @@ public class GameService {
         Games game = gameRepo.findGameById(intGameId);
 
         if (user != null && game != null) {
+            // Checked before queueing too, so a rating answered 202 is never dropped by the writer
+            if (!gameRepo.acceptsRating(rating)) {
+                return invalidRating(rating);
+            }
+            if (ratingWriteBehind != null) {
+                return queueRating(ratingWriteBehind, intUserId, intGameId, rating);
+            }
             // If both user and game exist, add the rating
             gameRepo.addRating(user, game, rating);
             return ResponseEntity.ok().build();
         } else {
             // Return 404 if either the user or game is not found, with appropriate error details
+            rateGameNotFound.increment();
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of("error", "Game or user not found", "userId", intUserId, "gameId", intGameId));
         }
     }
 
     /**
-     * Retrieves a list of games that match the specified genre.
+     * Adds many games in one request. The body is either a JSON array of games or
+     * newline-delimited JSON (one game per line); it is read one game at a time and
+     * passed to the repository in batches, so it is never held in memory whole.
+     *
+     * @param body The request body.
+     * @return HTTP 200 OK with one NDJSON result line per game; HTTP 400 Bad Request,
+     *         still with the results so far, if the body stops being valid JSON.
+     */
+    @PostMapping(value = "/games/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> addGames(InputStream body) {
+        return ingest(body, Games.class, gameRepo::addGames, Games::getGameId);
+    }
+
+    /**
+     * Adds many users in one request, as a JSON array or newline-delimited JSON.
+     *
+     * @param body The request body.
+     * @return HTTP 200 OK with one NDJSON result line per user; HTTP 400 Bad Request if
+     *         the body stops being valid JSON.
+     */
+    @PostMapping(value = "/users/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> addUsers(InputStream body) {
+        return ingest(body, Users.class, gameRepo::addUsers, Users::getUserId);
+    }
+
+    /**
+     * Adds many ratings in one request, as a JSON array or newline-delimited JSON of
+     * {@code {"userId":1,"gameId":2,"rating":5}} objects. A rating of a user or game that
+     * does not exist is reported as NOT_FOUND.
+     *
+     * @param body The request body.
+     * @return HTTP 200 OK with one NDJSON result line per rating, where the id is the game ID;
+     *         HTTP 400 Bad Request if the body stops being valid JSON.
+     */
+    @PostMapping(value = "/ratings/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> addRatings(InputStream body) {
+        return ingest(body, NewRating.class, gameRepo::addRatings, NewRating::getGameId);
+    }
+
+    // Streams the items out of a batch body and hands them to the repository in batches
+    private <T> ResponseEntity<StreamingResponseBody> ingest(InputStream body, Class<T> type,
+                                                             Function<List<T>, List<BatchOutcome>> addBatch,
+                                                             ToIntFunction<T> idOf) {
+        BatchResults results = new BatchResults();
+        List<T> batch = new ArrayList<>(INGEST_BATCH_SIZE);
+        // A top-level array is read element by element, just like a sequence of lines
+        try (MappingIterator<T> items = objectMapper.readerFor(type).readValues(body)) {
+            while (items.hasNextValue()) {
+                batch.add(items.nextValue());
+                if (batch.size() == INGEST_BATCH_SIZE) {
+                    flushBatch(batch, addBatch, idOf, results);
+                    batch = new ArrayList<>(INGEST_BATCH_SIZE);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            results.fail(e.getOriginalMessage());
+        } catch (IOException e) {
+            results.fail("Could not read the request body");
+        }
+        flushBatch(batch, addBatch, idOf, results);
+        return ResponseEntity.status(results.hasError() ? HttpStatus.BAD_REQUEST : HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results::writeTo);
+    }
+
+    static <T> void flushBatch(List<T> batch, Function<List<T>, List<BatchOutcome>> addBatch,
+                               ToIntFunction<T> idOf, BatchResults results) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int[] ids = new int[batch.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = batch.get(i) == null ? 0 : idOf.applyAsInt(batch.get(i));
+        }
+        results.addAll(ids, addBatch.apply(batch));
+    }
+
+    /**
+     * Retrieves one page of games in ascending ID order, optionally only those that match
+     * every one of the specified genres. The genre parameter can be repeated, e.g.
+     * {@code ?genre=RPG&genre=Action}. When more games follow, the game ID to pass as
+     * {@code after} for the next page is returned in the X-Next-Cursor header.
+     * The ETag changes whenever a game with the genres is added; a request whose
+     * If-None-Match names it is answered 304 without reading the games.
      *
-     * @param genre The genre to filter games.
-     * @return A list of games matching the genre with HTTP 200 OK.
+     * @param genre       The genres to filter games; absent for every game.
+     * @param after       Only return games with a greater ID.
+     * @param limit       The maximum number of games to return, between 1 and 1000.
+     * @param ifNoneMatch The ETags of the pages the client holds; absent if none.
+     * @return The page of games with HTTP 200 OK; HTTP 304 Not Modified if the client's page is
+     *         current, or HTTP 400 Bad Request if the limit is out of range.
      */
     @GetMapping("/games")
-    public ResponseEntity<List<Games>> listGamesByGenre(@RequestParam String genre) {
-        // Create a list of genres (only one in this case) to pass to the repository method
-        ArrayList<String> genresList = new ArrayList<>();
-        genresList.add(genre);
-        return ResponseEntity.ok(gameRepo.listGamesByGenre(genresList));
+    public ResponseEntity<List<Games>> listGamesByGenre(@RequestParam(required = false) List<String> genre,
+                                                       @RequestParam(defaultValue = "0") int after,
+                                                       @RequestParam(defaultValue = "100") int limit,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Read before the games, so a page that includes a newer game is sent under the older ETag
+        String etag = etag(gameRepo.getGamesVersion(genre));
+        if (notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        // Ask for one extra game to find out whether there is a next page
+        return page(ResponseEntity.ok().eTag(etag), gameRepo.listGames(genre, after, limit + 1), limit, Games::getGameId);
     }
 
     /**
-     * Retrieves a list of all users.
+     * Retrieves the games matching every given filter, sorted by ID, release date or rating.
+     * The repository answers from the index expected to read the fewest games: the genre
+     * or platform index, or the release date range, so no filter means scanning every game.
      *
-     * @return A list of users with HTTP 200 OK.
+     * @param genre        The genres a game must all have; absent for any.
+     * @param platform     The platform a game must be on; absent for any.
+     * @param releasedFrom The earliest release date, as yyyy-MM-dd; absent for no lower bound.
+     * @param releasedTo   The latest release date, as yyyy-MM-dd; absent for no upper bound.
+     * @param sort         "id", "newest", "oldest" or "rating" (best first).
+     * @param limit        The maximum number of games to return, between 1 and 1000.
+     * @return The matching games with HTTP 200 OK; HTTP 400 Bad Request if the sort is unknown,
+     *         the date range is empty or the limit is out of range.
+     */
+    @GetMapping("/games/query")
+    public ResponseEntity<List<Games>> queryGames(@RequestParam(required = false) List<String> genre,
+                                                  @RequestParam(required = false) String platform,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedFrom,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedTo,
+                                                  @RequestParam(defaultValue = "id") String sort,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        GameQuery query = gameQuery(genre, platform, releasedFrom, releasedTo, sort, limit);
+        if (query == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(gameRepo.queryGames(query));
+    }
+
+    // Builds the query of GET /api/games/query; null if a parameter is invalid
+    static GameQuery gameQuery(List<String> genres, String platform, LocalDate releasedFrom, LocalDate releasedTo,
+                               String sort, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE
+                || releasedFrom != null && releasedTo != null && releasedFrom.isAfter(releasedTo)) {
+            return null;
+        }
+        GameQuery query = new GameQuery();
+        try {
+            query.setSort(GameQuery.Sort.valueOf(sort.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            // Not one of the sort orders
+            return null;
+        }
+        query.setGenres(genres);
+        query.setPlatform(platform);
+        query.setReleasedFrom(releasedFrom);
+        query.setReleasedTo(releasedTo);
+        query.setLimit(limit);
+        return query;
+    }
+
+    /**
+     * Searches the game titles for words, ranked by BM25. The last word also matches as
+     * the start of a word, and words of four or more letters tolerate one typo.
+     *
+     * @param q The words to search for.
+     * @param n The number of games to return, between 1 and 100.
+     * @return The matching games, best first, with HTTP 200 OK; HTTP 400 Bad Request if the
+     *         query has no words or n is out of range.
+     */
+    @GetMapping("/games/search")
+    public ResponseEntity<List<SearchHit>> searchGames(@RequestParam String q, @RequestParam(defaultValue = "10") int n) {
+        if (q.isBlank() || n < 1 || n > MAX_SEARCH_RESULTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(gameRepo.searchGames(q, n));
+    }
+
+    /**
+     * Retrieves a game by its title, ignoring case.
+     *
+     * @param title The title to look up.
+     * @return The matching game with HTTP 200 OK; otherwise, HTTP 404 Not Found.
+     */
+    @GetMapping("/games/by-title")
+    public ResponseEntity<Games> findGameByTitle(@RequestParam String title) {
+        Games game = gameRepo.findGameByTitle(title);
+        if (game != null) {
+            return ResponseEntity.ok(game);
+        } else {
+            // Return 404 if no game has that title
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Retrieves the rating statistics of a game: count, mean, variance and distribution.
+     *
+     * @param gameId The ID of the game as a String from the path variable.
+     * @return The rating summary with HTTP 200 OK if the game exists; otherwise, HTTP 404 Not Found.
+     */
+    @GetMapping("/games/{gameId}/stats")
+    public ResponseEntity<RatingSummary> getGameStats(@PathVariable String gameId) {
+        int intGameId = Integer.parseInt(gameId);
+        if (gameRepo.findGameById(intGameId) == null) {
+            // Return 404 if the game does not exist
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(gameRepo.getRatingSummary(intGameId));
+    }
+
+    /**
+     * Retrieves one page of the ratings of a game, ordered by user ID.
+     * When more ratings follow, the user ID to pass as {@code after} for the next page
+     * is returned in the X-Next-Cursor header.
+     *
+     * @param gameId The ID of the game as a String from the path variable.
+     * @param after  Only return ratings by users with a greater ID.
+     * @param limit  The maximum number of ratings to return, between 1 and 1000.
+     * @return The page of ratings with HTTP 200 OK; HTTP 404 Not Found if the game does not exist,
+     *         or HTTP 400 Bad Request if the limit is out of range.
+     */
+    @GetMapping("/games/{gameId}/ratings")
+    public ResponseEntity<List<UserRating>> listRatingsByGame(@PathVariable String gameId,
+                                                              @RequestParam(defaultValue = "0") int after,
+                                                              @RequestParam(defaultValue = "100") int limit) {
+        int intGameId = Integer.parseInt(gameId);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (gameRepo.findGameById(intGameId) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        // Ask for one extra rating to find out whether there is a next page
+        return page(ResponseEntity.ok(), gameRepo.listRatingsByGame(intGameId, after, limit + 1), limit, UserRating::getUserId);
+    }
+
+    /**
+     * Retrieves the games most similar to a game, by their genres and by the users who rated them.
+     *
+     * @param gameId The ID of the game as a String from the path variable.
+     * @param n      The number of games to return, between 1 and 100.
+     * @return The similar games, most similar first, with HTTP 200 OK; HTTP 404 Not Found if the
+     *         game does not exist, HTTP 400 Bad Request if n is out of range, or HTTP 503 Service
+     *         Unavailable if similar games are disabled.
+     */
+    @GetMapping("/games/{gameId}/similar")
+    public ResponseEntity<List<SimilarGame>> findSimilarGames(@PathVariable String gameId,
+                                                              @RequestParam(defaultValue = "10") int n) {
+        int intGameId = Integer.parseInt(gameId);
+        if (n < 1 || n > MAX_SIMILAR_GAMES) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<SimilarGame> similarGames;
+        try {
+            similarGames = gameRepo.findSimilarGames(intGameId, n);
+        } catch (IllegalStateException e) {
+            // Similar games are not enabled
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (similarGames == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(similarGames);
+    }
+
+    /**
+     * Retrieves the highest rated games, ranked by Bayesian-weighted average rating.
+     *
+     * @param n          The number of games to return, between 1 and 1000.
+     * @param genre      Optional genre to rank within.
+     * @param minRatings Only include games with at least this many ratings.
+     * @return The ranked games, best first, with HTTP 200 OK; HTTP 400 Bad Request if n is out of range.
+     */
+    @GetMapping("/games/top")
+    public ResponseEntity<List<RankedGame>> listTopGames(@RequestParam(defaultValue = "10") int n,
+                                                         @RequestParam(required = false) String genre,
+                                                         @RequestParam(defaultValue = "1") long minRatings) {
+        if (n < 1 || n > MAX_TOP_GAMES) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(gameRepo.listTopGames(n, genre, minRatings));
+    }
+
+    /**
+     * Streams every rating out as CSV or newline-delimited JSON, in ascending user ID and
+     * then game ID order. The export is written as it is read, so it never holds more than
+     * one chunk of user IDs and one user's ratings in memory, and no lock is held for longer
+     * than it takes to copy one user's ratings. Every rating is exported as it was when the
+     * export started, however long it runs: a rating added or changed since is not seen.
+     * The ID of that point is returned in the X-Export-Point header; passing it as
+     * {@code point} continues the same export, so pages fetched with {@code after} are
+     * all as of the same moment. A point is kept until its last page is read, or until no
+     * page has been read from it for {@code gamerepo.export-point-keep-alive}.
+     * When a limit is given and more users follow, the user ID to pass as {@code after}
+     * to continue is returned in the X-Next-Cursor header.
+     *
+     * @param format "csv" or "ndjson".
+     * @param after  Only export ratings by users with a greater ID.
+     * @param limit  The maximum number of users to export; 0 for all of them.
+     * @param point  The export point to continue from; absent to start a new export.
+     * @return The streamed ratings with HTTP 200 OK; HTTP 400 Bad Request if the format
+     *         is unknown or the limit is negative, or HTTP 410 Gone if the point has expired
+     *         or its export has already been continued past {@code after}.
+     */
+    @GetMapping("/export/ratings")
+    public ResponseEntity<StreamingResponseBody> exportRatings(@RequestParam(defaultValue = "csv") String format,
+                                                               @RequestParam(defaultValue = "0") int after,
+                                                               @RequestParam(defaultValue = "0") int limit,
+                                                               @RequestParam(required = false) Long point) {
+        RatingExport.Format exportFormat;
+        try {
+            exportFormat = RatingExport.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (limit < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        RatingExport export = RatingExport.open(gameRepo, point, after, limit, exportFormat);
+        if (export == null) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        return exportResponse(export).body(export::writeTo);
+    }
+
+    // The status and headers of an export; shared with ReactiveGameService
+    static ResponseEntity.BodyBuilder exportResponse(RatingExport export) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(export.getFormat().getMediaType())
+                .header(EXPORT_POINT_HEADER, String.valueOf(export.getPointId()));
+        export.getNextCursor().ifPresent(cursor -> response.header(NEXT_CURSOR_HEADER, String.valueOf(cursor)));
+        return response;
+    }
+
+    /**
+     * Retrieves one page of users in ascending ID order. When more users follow, the user ID
+     * to pass as {@code after} for the next page is returned in the X-Next-Cursor header.
+     * The ETag changes whenever a user is added or renamed; a request whose If-None-Match
+     * names it is answered 304 without reading the users.
+     *
+     * @param after       Only return users with a greater ID.
+     * @param limit       The maximum number of users to return, between 1 and 1000.
+     * @param ifNoneMatch The ETags of the pages the client holds; absent if none.
+     * @return The page of users with HTTP 200 OK; HTTP 304 Not Modified if the client's page is
+     *         current, or HTTP 400 Bad Request if the limit is out of range.
      */
     @GetMapping("/users")
-    public ResponseEntity<List<Users>> listUsers() {
-        return ResponseEntity.ok(gameRepo.getUsers());
+    public ResponseEntity<List<Users>> listUsers(@RequestParam(defaultValue = "0") int after,
+                                                 @RequestParam(defaultValue = "100") int limit,
+                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        String etag = etag(gameRepo.getUsersVersion());
+        if (notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return page(ResponseEntity.ok().eTag(etag), gameRepo.listUsers(after, limit + 1), limit, Users::getUserId);
     }
 
     /**
-     * Retrieves the ratings for a specific user.
+     * Recommends games a user has not rated yet, predicted from their ratings of similar games.
      *
      * @param userId The ID of the user as a String from the path variable.
-     * @return A map of game titles to ratings if the user exists and has ratings;
-     *         otherwise, returns HTTP 404 Not Found with an empty map.
+     * @param n      The number of games to return, between 1 and 100.
+     * @return The recommendations, best first, with HTTP 200 OK; HTTP 404 Not Found if the user
+     *         does not exist, HTTP 400 Bad Request if n is out of range, or HTTP 503 Service
+     *         Unavailable if recommendations are disabled or still being built.
      */
-    @GetMapping("/ratings/{userId}")
-    public ResponseEntity<Map<String, Integer>> listRatingsByUser(@PathVariable String userId) {
+    @GetMapping("/users/{userId}/recommendations")
+    public ResponseEntity<List<Recommendation>> recommendGames(@PathVariable String userId,
+                                                               @RequestParam(defaultValue = "10") int n) {
+        int intUserId = Integer.parseInt(userId);
+        if (n < 1 || n > MAX_RECOMMENDATIONS) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (gameRepo.findUserById(intUserId) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        List<Recommendation> recommendations;
+        try {
+            recommendations = gameRepo.recommendGames(intUserId, n);
+        } catch (IllegalStateException e) {
+            // Recommendations are not enabled
+            recommendations = null;
+        }
+        if (recommendations == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(recommendations);
+    }
+
+    // Trims a list fetched with one extra item to the page size, adding the next cursor if it was there
+    private static <T> ResponseEntity<List<T>> page(ResponseEntity.BodyBuilder response, List<T> items,
+                                                    int limit, ToIntFunction<T> idOf) {
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(idOf.applyAsInt(items.get(limit - 1))));
+        }
+        return response.body(items);
+    }
+
+    /**
+     * Retrieves the ratings for a specific user. The serialized body is kept until the
+     * user's ratings change, so repeated requests are answered without rebuilding it.
+     * The ETag changes with the ratings; a request whose If-None-Match names it is
+     * answered 304 without reading them. With write-behind turned on, the user's queued
+     * ratings are added first.
+     *
+     * @param userId      The ID of the user as a String from the path variable.
+     * @param ifNoneMatch The ETags of the ratings the client holds; absent if none.
+     * @return A JSON object of game titles to ratings if the user exists and has ratings;
+     *         HTTP 304 Not Modified if the client's copy is current; HTTP 503 Service
+     *         Unavailable if the user's queued ratings are not added in time; HTTP 500
+     *         Internal Server Error, once, if one of them could not be added; otherwise,
+     *         returns HTTP 404 Not Found with an empty object.
+     */
+    @GetMapping(value = "/ratings/{userId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> listRatingsByUser(@PathVariable String userId,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         // Convert userId to int
         int intUserId = Integer.parseInt(userId);
+        ResponseEntity<byte[]> notApplied = awaitQueuedRatings(ratingWriteBehind, readYourWritesTimeout, intUserId);
+        if (notApplied != null) {
+            return notApplied;
+        }
+        return ratingsResponse(gameRepo, objectMapper, ratingsCache, intUserId, ifNoneMatch);
+    }
+
+    // Answers GET /api/ratings/{userId} from the cache if it holds the user's current ratings;..
+    // ..shared with ReactiveGameService
+    static ResponseEntity<byte[]> ratingsResponse(GameRepo gameRepo, ObjectMapper objectMapper,
+                                                  RatingsResponseCache ratingsCache, int userId, String ifNoneMatch) {
+        // Read before the ratings, so a body built while the user rates is stored under the older version
+        long version = gameRepo.getRatingsVersion(userId);
+        String etag = etag(version);
+        // Only a user who exists and has ratings is sent an ETag, and users are never removed
+        if (notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        byte[] body = ratingsCache == null
+                ? ratingsBody(gameRepo, objectMapper, userId)
+                : ratingsCache.get(userId, version, () -> ratingsBody(gameRepo, objectMapper, userId));
+        if (body == null) {
+            // Return 404 Not Found with an empty object if the user does not exist or has no ratings
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).contentType(MediaType.APPLICATION_JSON).body(NO_RATINGS);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(etag).body(body);
+    }
+
+    // Serializes a user's ratings as game title -> rating, or returns null if there are none
+    private static byte[] ratingsBody(GameRepo gameRepo, ObjectMapper objectMapper, int userId) {
         // Find the user by ID
-        Users user = gameRepo.findUserById(intUserId);
-        // Retrieve the user-game ratings map from the repository
-        Map<Users, Map<Games, Integer>> userGameRatings = gameRepo.getUserGameRatings();
-        if (user != null && gameRepo.getUserGameRatings().containsKey(user)) {
-            // Create a new map to store game title -> rating
-            Map<String, Integer> ratings = new HashMap<>();
-            // Iterate over the entry set for the specified user
-            for (Map.Entry<Games, Integer> entry : userGameRatings.get(user).entrySet()) {
-                // Map each game's title to its rating
-                ratings.put(entry.getKey().getTitle(), entry.getValue());
-            }
-            return ResponseEntity.ok(ratings);
-        } else {
-            // Return 404 Not Found with an empty map if the user does not exist or has no ratings
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.emptyMap());
+        Users user = gameRepo.findUserById(userId);
+        // Retrieve only this user's ratings from the repository
+        Map<Games, Integer> userRatings = user == null ? Collections.emptyMap() : gameRepo.getRatingsOfUser(user);
+        if (userRatings.isEmpty()) {
+            return null;
+        }
+        // Create a new map to store game title -> rating
+        Map<String, Integer> ratings = new HashMap<>();
+        // Iterate over the entry set for the specified user
+        for (Map.Entry<Games, Integer> entry : userRatings.entrySet()) {
+            // Map each game's title to its rating
+            ratings.put(entry.getKey().getTitle(), entry.getValue());
+        }
+        try {
+            return objectMapper.writeValueAsBytes(ratings);
+        } catch (JsonProcessingException e) {
+            // A map of strings to integers always serializes
+            throw new IllegalStateException(e);
         }
     }
 }
@@ -0,0 +1,54 @@
+package stacs.GameService;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings for GameService and ReactiveGameService, bound from the {@code gameservice.*}
+ * entries of application.properties.
+ */
+@ConfigurationProperties(prefix = "gameservice")
+public class GameServiceProperties {
+    // How much memory the serialized bodies of GET /api/ratings/{userId} may take; 0 turns the cache off
+    private DataSize ratingsCacheSize = DataSize.ofMegabytes(64);
+    // Queue POST /api/ratings and add the ratings in batches from one thread, answering 202
+    private boolean ratingsWriteBehind = false;
+    // How many ratings may wait in the queue before POST /api/ratings is answered 429
+    private int ratingsQueueCapacity = 65536;
+    // How long GET /api/ratings/{userId} waits for the user's queued ratings; 0 does not wait
+    private Duration ratingsReadYourWritesTimeout = Duration.ofSeconds(1);
+
+    public DataSize getRatingsCacheSize() {
+        return ratingsCacheSize;
+    }
+
+    public void setRatingsCacheSize(DataSize ratingsCacheSize) {
+        this.ratingsCacheSize = ratingsCacheSize;
+    }
+
+    public boolean isRatingsWriteBehind() {
+        return ratingsWriteBehind;
+    }
+
+    public void setRatingsWriteBehind(boolean ratingsWriteBehind) {
+        this.ratingsWriteBehind = ratingsWriteBehind;
+    }
+
+    public int getRatingsQueueCapacity() {
+        return ratingsQueueCapacity;
+    }
+
+    public void setRatingsQueueCapacity(int ratingsQueueCapacity) {
+        this.ratingsQueueCapacity = ratingsQueueCapacity;
+    }
+
+    public Duration getRatingsReadYourWritesTimeout() {
+        return ratingsReadYourWritesTimeout;
+    }
+
+    public void setRatingsReadYourWritesTimeout(Duration ratingsReadYourWritesTimeout) {
+        this.ratingsReadYourWritesTimeout = ratingsReadYourWritesTimeout;
+    }
+}
@@ -0,0 +1,176 @@
+package stacs.GameService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.OptionalInt;
+
+import org.springframework.http.MediaType;
+import stacs.GameRepo.ExportPoint;
+import stacs.GameRepo.GameRepo;
+
+/**
+ * An export of every rating of the users in a range of IDs, as of an {@link ExportPoint},
+ * streamed out as CSV ({@code userId,gameId,rating} with a header line) or NDJSON
+ * ({@code {"userId":1,"gameId":2,"rating":5}} per line).
+ *
+ * <p>Rows come out in ascending user ID and then game ID order, one user at a time. The
+ * user IDs are read a chunk at a time as the export goes, so only one chunk of IDs, one
+ * user's ratings and a small output buffer are held while it runs. A client whose
+ * connection drops can resume from the same point with {@code after} set to the last user
+ * ID it has seen a later user after, i.e. the last user it is sure it has every row of.
+ */
+public class RatingExport implements BodyWriter {
+    // Write the buffered rows out once they reach this many characters
+    private static final int FLUSH_CHARS = 64 * 1024;
+    // Number of user IDs read from GameRepo at a time
+    static final int USER_CHUNK_SIZE = 1024;
+
+    /**
+     * The formats an export can be written in.
+     */
+    public enum Format {
+        CSV(new MediaType("text", "csv")),
+        NDJSON(MediaType.APPLICATION_NDJSON);
+
+        private final MediaType mediaType;
+
+        Format(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+    }
+
+    private final GameRepo gameRepo;
+    private final ExportPoint point;
+    private final int afterUserId;
+    private final OptionalInt nextCursor;
+    private final Format format;
+
+    /**
+     * Creates an export of the ratings of the users after the given ID, as of the given point.
+     *
+     * @param gameRepo    the repository to read the ratings from
+     * @param point       the point to export the ratings as of
+     * @param afterUserId only export users with a greater ID
+     * @param nextCursor  the ID of the last user to export, if more users follow; empty to export to the end
+     * @param format      the format to write the rows in
+     */
+    public RatingExport(GameRepo gameRepo, ExportPoint point, int afterUserId, OptionalInt nextCursor, Format format) {
+        this.gameRepo = gameRepo;
+        this.point = point;
+        this.afterUserId = afterUserId;
+        this.nextCursor = nextCursor;
+        this.format = format;
+    }
+
+    /**
+     * Opens a new export point, or resumes the given one, and creates the export of up to
+     * a limit of the users after the given ID from it.
+     *
+     * @param gameRepo    the repository to read the ratings from
+     * @param pointId     the ID of the point to resume; null to open a new one
+     * @param afterUserId only export users with a greater ID
+     * @param limit       the maximum number of users to export; 0 for all of them
+     * @param format      the format to write the rows in
+     * @return the export, or null if the point has expired or was exported past afterUserId
+     */
+    public static RatingExport open(GameRepo gameRepo, Long pointId, int afterUserId, int limit, Format format) {
+        ExportPoint point = pointId == null
+                ? gameRepo.openExportPoint(afterUserId)
+                : gameRepo.resumeExportPoint(pointId, afterUserId);
+        if (point == null) {
+            return null;
+        }
+        OptionalInt nextCursor = limit == 0 ? OptionalInt.empty() : gameRepo.findNextRatedUsersCursor(afterUserId, limit);
+        return new RatingExport(gameRepo, point, afterUserId, nextCursor, format);
+    }
+
+    /**
+     * Returns the ID of the point the ratings are exported as of.
+     *
+     * @return the point ID to pass to continue the export
+     */
+    public long getPointId() {
+        return point.getId();
+    }
+
+    /**
+     * Returns the format the rows are written in.
+     *
+     * @return the format
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the ID of the last user exported, if more users follow.
+     *
+     * @return the ID to continue the export after, or empty if this export runs to the end
+     */
+    public OptionalInt getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (!gameRepo.beginExport(point)) {
+            throw new IOException("The export point " + point.getId() + " expired");
+        }
+        boolean finished = false;
+        try {
+            writeRows(outputStream);
+            finished = nextCursor.isEmpty();
+        } finally {
+            gameRepo.endExport(point, finished);
+        }
+    }
+
+    private void writeRows(OutputStream outputStream) throws IOException {
+        int lastUserId = nextCursor.orElse(Integer.MAX_VALUE);
+        StringBuilder rows = new StringBuilder(FLUSH_CHARS + 1024);
+        if (format == Format.CSV) {
+            rows.append("userId,gameId,rating\n");
+        }
+        int after = afterUserId;
+        boolean more = true;
+        while (more) {
+            int[] userIds = gameRepo.listRatedUserIds(after, USER_CHUNK_SIZE);
+            // A short chunk means the rated users have run out
+            more = userIds.length == USER_CHUNK_SIZE;
+            for (int userId : userIds) {
+                if (userId > lastUserId) {
+                    more = false;
+                    break;
+                }
+                gameRepo.exportRatingsOfUser(point, userId, (ratedBy, gameId, rating) -> appendRow(rows, ratedBy, gameId, rating));
+                if (rows.length() >= FLUSH_CHARS) {
+                    write(rows, outputStream);
+                }
+                after = userId;
+            }
+        }
+        write(rows, outputStream);
+        outputStream.flush();
+    }
+
+    private void appendRow(StringBuilder rows, int userId, int gameId, int rating) {
+        if (format == Format.CSV) {
+            rows.append(userId).append(',').append(gameId).append(',').append(rating).append('\n');
+        } else {
+            rows.append("{\"userId\":").append(userId)
+                    .append(",\"gameId\":").append(gameId)
+                    .append(",\"rating\":").append(rating).append("}\n");
+        }
+    }
+
+    private static void write(StringBuilder rows, OutputStream outputStream) throws IOException {
+        // Rows are only digits and punctuation, so every character is one byte
+        outputStream.write(rows.toString().getBytes(StandardCharsets.US_ASCII));
+        rows.setLength(0);
+    }
+}
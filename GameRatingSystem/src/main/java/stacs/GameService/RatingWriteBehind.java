@@ -0,0 +1,306 @@
+package stacs.GameService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stacs.GameRepo.BatchOutcome;
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.NewRating;
+
+/**
+ * Accepts ratings into a bounded queue and adds them to GameRepo in batches from a single
+ * writer thread, so a burst of POST /api/ratings requests returns as soon as each rating
+ * is queued, and GameRepo takes each rating lock and waits for durability once per batch
+ * rather than once per rating.
+ *
+ * <p>The queue is a ring of slots that submitting threads claim with a compare-and-set on
+ * its tail and publish through a per-slot sequence number, so they never take a lock and
+ * only contend on the tail. A full ring rejects the rating rather than waiting.
+ *
+ * <p>Each queued rating gets a ticket, and the writer publishes the ticket of the last
+ * rating it has added. The latest ticket of each user with ratings still queued is kept, so
+ * a read of that user's ratings can wait until they are in GameRepo. A rating GameRepo does
+ * not add is recorded against its user, so their next read is told rather than answered as
+ * if it had been.
+ *
+ * <p>Closing marks the tail, so no ticket can be claimed after it, and the writer adds
+ * every ticket claimed before it, including ones still being published.
+ */
+public class RatingWriteBehind implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RatingWriteBehind.class);
+    // Set on the tail once closed, so a claim racing with close() fails its compare-and-set
+    private static final long CLOSED = 1L << 62;
+
+    /**
+     * What a read of a user's ratings found when waiting for their queued ratings.
+     */
+    public enum QueuedRatings {
+        // Every rating the user queued is in GameRepo
+        APPLIED,
+        // A rating the user queued was not added, which this read is the first to be told
+        DROPPED,
+        // Some of the user's ratings are still queued
+        PENDING
+    }
+
+    private final GameRepo gameRepo;
+    private final int batchSize;
+    private final NewRating[] slots;
+    // The ticket of the rating a slot holds once it is published, and the ticket..
+    // ..that may claim it next once the writer has taken it out
+    private final AtomicLongArray sequences;
+    private final int mask;
+    // The ticket the next submitted rating claims, with CLOSED set once closed
+    private final AtomicLong tail = new AtomicLong(1);
+    // The ticket the writer takes out next; only written by the writer
+    private volatile long head = 1;
+    // The ticket of the last rating added to GameRepo
+    private volatile long applied;
+    // User ID -> the ticket of their latest queued rating, removed once it is added
+    private final Map<Integer, Long> pendingByUser = new ConcurrentHashMap<>();
+    // User ID -> the ticket of their latest rating GameRepo did not add, until a read is told
+    private final Map<Integer, Long> droppedByUser = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when a rating is queued while the writer is waiting for one
+    private final Condition ratingsQueued = lock.newCondition();
+    // Signalled when applied moves on
+    private final Condition ratingsApplied = lock.newCondition();
+    private volatile boolean writerWaiting;
+    // The first ticket never claimed, once closed; the writer stops when it reaches it
+    private volatile long closedAt = Long.MAX_VALUE;
+    private final Thread writer;
+
+    private final Counter rejected;
+    private final Counter dropped;
+
+    /**
+     * Creates the queue and starts its writer thread.
+     *
+     * @param gameRepo      the repository the ratings are added to
+     * @param capacity      the most ratings that can be queued, rounded up to a power of two
+     * @param batchSize     the most ratings added to the repository at a time
+     * @param meterRegistry the registry to report the queue size and the rejected ratings to
+     */
+    public RatingWriteBehind(GameRepo gameRepo, int capacity, int batchSize, MeterRegistry meterRegistry) {
+        if (capacity <= 0 || capacity > 1 << 30 || batchSize <= 0) {
+            throw new IllegalArgumentException("The capacity and batch size must be positive");
+        }
+        this.gameRepo = gameRepo;
+        this.batchSize = batchSize;
+        int slotCount = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new NewRating[slotCount];
+        sequences = new AtomicLongArray(slotCount);
+        mask = slotCount - 1;
+        // Slot i is first claimed by ticket i + 1
+        for (int i = 0; i < slotCount; i++) {
+            sequences.set(i, i);
+        }
+        rejected = Counter.builder("gameservice.ratings.queue.rejected")
+                .description("Ratings answered 429 because the write-behind queue was full")
+                .register(meterRegistry);
+        dropped = Counter.builder("gameservice.ratings.queue.dropped")
+                .description("Queued ratings the repository did not add")
+                .register(meterRegistry);
+        Gauge.builder("gameservice.ratings.queue.size", this, RatingWriteBehind::size)
+                .description("Ratings waiting in the write-behind queue")
+                .register(meterRegistry);
+        writer = new Thread(this::runWriter, "gameservice-rating-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a rating of an existing user and game.
+     *
+     * @param userId the ID of the user
+     * @param gameId the ID of the game
+     * @param rating the rating
+     * @return false if the queue is full or closed, in which case the rating is not queued
+     */
+    public boolean offer(int userId, int gameId, int rating) {
+        long ticket;
+        int slot;
+        while (true) {
+            ticket = tail.get();
+            if ((ticket & CLOSED) != 0) {
+                return false;
+            }
+            slot = (int) (ticket - 1) & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == ticket - 1) {
+                if (tail.compareAndSet(ticket, ticket + 1)) {
+                    break;
+                }
+            } else if (sequence < ticket - 1) {
+                // The writer has not taken out the rating one lap behind yet
+                rejected.increment();
+                return false;
+            }
+            // Otherwise another thread claimed this ticket first
+        }
+        slots[slot] = new NewRating(userId, gameId, rating);
+        // Before publishing, so the writer cannot add the rating and clear the entry first
+        pendingByUser.merge(userId, ticket, Math::max);
+        sequences.set(slot, ticket);
+        if (writerWaiting) {
+            lock.lock();
+            try {
+                ratingsQueued.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits until every rating queued by a user so far has been taken by the writer, then
+     * reports whether GameRepo added them all. A dropped rating is reported once.
+     *
+     * @param userId  the ID of the user
+     * @param timeout the longest to wait
+     * @return APPLIED or DROPPED once the user has no queued ratings left; PENDING if the
+     *         timeout ran out first
+     */
+    public QueuedRatings awaitApplied(int userId, Duration timeout) {
+        Long ticket = pendingByUser.get(userId);
+        if (ticket != null && applied < ticket) {
+            long remaining = timeout.toNanos();
+            lock.lock();
+            try {
+                while (applied < ticket) {
+                    if (remaining <= 0) {
+                        return QueuedRatings.PENDING;
+                    }
+                    remaining = ratingsApplied.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return QueuedRatings.PENDING;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return droppedByUser.remove(userId) == null ? QueuedRatings.APPLIED : QueuedRatings.DROPPED;
+    }
+
+    /**
+     * Returns the number of queued ratings not yet added to GameRepo.
+     *
+     * @return the number of ratings
+     */
+    public long size() {
+        return (tail.get() & ~CLOSED) - 1 - applied;
+    }
+
+    /**
+     * Stops accepting ratings and waits for the writer to add the queued ones, including
+     * any claimed by an offer that has not published its rating yet.
+     */
+    @Override
+    public void close() {
+        long end = tail.getAndUpdate(ticket -> ticket | CLOSED) & ~CLOSED;
+        lock.lock();
+        try {
+            closedAt = end;
+            ratingsQueued.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        List<NewRating> batch = new ArrayList<>(batchSize);
+        while (true) {
+            long first = head;
+            takeBatch(batch);
+            if (batch.isEmpty()) {
+                if (!awaitRatings()) {
+                    return;
+                }
+                continue;
+            }
+            List<BatchOutcome> outcomes;
+            try {
+                outcomes = gameRepo.addRatings(batch);
+            } catch (RuntimeException e) {
+                // Keep the writer running for the ratings behind this batch
+                LOGGER.warn("Could not add a batch of {} queued ratings", batch.size(), e);
+                outcomes = null;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                int userId = batch.get(i).getUserId();
+                // Recorded before the pending entry goes, so a read that stops waiting sees it
+                if (outcomes == null || outcomes.get(i) != BatchOutcome.ADDED) {
+                    dropped.increment();
+                    droppedByUser.merge(userId, first + i, Math::max);
+                }
+                pendingByUser.remove(userId, first + i);
+            }
+            lock.lock();
+            try {
+                applied = first + batch.size() - 1;
+                ratingsApplied.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            batch.clear();
+        }
+    }
+
+    // Takes the published ratings at the head of the ring out, up to a batch
+    private void takeBatch(List<NewRating> batch) {
+        long ticket = head;
+        while (batch.size() < batchSize) {
+            int slot = (int) (ticket - 1) & mask;
+            if (sequences.get(slot) != ticket) {
+                break;
+            }
+            batch.add(slots[slot]);
+            slots[slot] = null;
+            // Free the slot for the ticket one lap ahead
+            sequences.set(slot, ticket - 1 + slots.length);
+            ticket++;
+        }
+        head = ticket;
+    }
+
+    // Waits for a rating to be published at the head; returns false once closed with every..
+    // ..claimed rating taken out
+    private boolean awaitRatings() {
+        lock.lock();
+        try {
+            writerWaiting = true;
+            // Checked after announcing the wait, so a rating published before it is not missed
+            while (sequences.get((int) (head - 1) & mask) != head) {
+                if (head >= closedAt) {
+                    return false;
+                }
+                ratingsQueued.awaitUninterruptibly();
+            }
+            return true;
+        } finally {
+            writerWaiting = false;
+            lock.unlock();
+        }
+    }
+}
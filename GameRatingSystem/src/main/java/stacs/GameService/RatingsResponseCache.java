@@ -0,0 +1,172 @@
+package stacs.GameService;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The serialized JSON bodies of GET /api/ratings/{userId}, so a user whose ratings have
+ * not changed is answered without reading or serializing them again.
+ *
+ * <p>Each body is stored with the GameRepo ratings version of the user it was built at,
+ * and is only served while the user's version is the same. A rating, or the addition of
+ * a game the user rated before it existed, therefore invalidates exactly the users it
+ * touches, and the repository needs no knowledge of the cache.
+ *
+ * <p>The bodies are bounded by their total size. The users are spread over segments,
+ * each an access-ordered map under its own lock, and a segment that grows past its share
+ * evicts its least recently used bodies.
+ */
+public class RatingsResponseCache {
+    // A power of two so a segment can be picked with a mask
+    private static final int SEGMENTS = 16;
+    // Bytes counted for each body on top of its length: the map entry, key and Entry objects
+    static final int ENTRY_OVERHEAD = 96;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxSegmentBytes;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxBytes      the most memory the bodies may take; 0 caches nothing
+     * @param meterRegistry the registry to report hits, misses, evictions and size to
+     */
+    public RatingsResponseCache(long maxBytes, MeterRegistry meterRegistry) {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+        maxSegmentBytes = maxBytes / SEGMENTS;
+        hits = requests(meterRegistry, "hit");
+        misses = requests(meterRegistry, "miss");
+        evictions = Counter.builder("gameservice.ratings.cache.evictions")
+                .description("Bodies evicted from the ratings response cache to make room")
+                .register(meterRegistry);
+        Gauge.builder("gameservice.ratings.cache.size", this, RatingsResponseCache::sizeInBytes)
+                .description("Memory taken by the ratings response cache")
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gameservice.ratings.cache.requests")
+                .description("Lookups in the ratings response cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the body of a user's ratings as of a version, building and storing it if the
+     * cache holds none for that version. The version must be read before the body is
+     * built, so a body is never stored under a version newer than its ratings.
+     *
+     * @param userId  the ID of the user
+     * @param version the user's current ratings version
+     * @param build   serializes the user's current ratings; may return null, which is not stored
+     * @return the body, or null if build returned null
+     */
+    public byte[] get(int userId, long version, Supplier<byte[]> build) {
+        Segment segment = segments[userId & (SEGMENTS - 1)];
+        byte[] body = segment.get(userId, version);
+        if (body != null) {
+            hits.increment();
+            return body;
+        }
+        misses.increment();
+        body = build.get();
+        if (body != null) {
+            segment.put(userId, version, body);
+        }
+        return body;
+    }
+
+    /**
+     * Returns the memory taken by the stored bodies, counting a fixed overhead for each.
+     *
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes;
+        }
+        return bytes;
+    }
+
+    // A body and the ratings version it was built at
+    private static final class Entry {
+        private final long version;
+        private final byte[] body;
+
+        Entry(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+
+        long weight() {
+            return body.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    private final class Segment {
+        // A ReentrantLock rather than a monitor, so a virtual thread waiting on it is not pinned
+        private final ReentrantLock lock = new ReentrantLock();
+        // In access order, so the eldest entry is the least recently used
+        private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        // Written under the lock, read by the size gauge without it
+        private volatile long bytes;
+
+        byte[] get(int userId, long version) {
+            lock.lock();
+            try {
+                Entry entry = entries.get(userId);
+                if (entry == null || entry.version > version) {
+                    // Nothing stored, or built by a request that read a newer version than this one
+                    return null;
+                }
+                if (entry.version < version) {
+                    // The ratings have changed since the body was built
+                    entries.remove(userId);
+                    bytes -= entry.weight();
+                    return null;
+                }
+                return entry.body;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(int userId, long version, byte[] body) {
+            Entry added = new Entry(version, body);
+            if (added.weight() > maxSegmentBytes) {
+                return;
+            }
+            lock.lock();
+            try {
+                Entry existing = entries.get(userId);
+                if (existing != null && existing.version >= version) {
+                    // A request that read a newer version finished first
+                    return;
+                }
+                entries.put(userId, added);
+                bytes += added.weight() - (existing == null ? 0 : existing.weight());
+                Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+                while (bytes > maxSegmentBytes) {
+                    Entry evicted = leastRecentlyUsed.next();
+                    leastRecentlyUsed.remove();
+                    bytes -= evicted.weight();
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
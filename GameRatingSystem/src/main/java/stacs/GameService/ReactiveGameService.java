@@ -0,0 +1,681 @@
+package stacs.GameService;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import stacs.GameRepo.BatchOutcome;
+import stacs.GameRepo.GameQuery;
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.NewRating;
+import stacs.GameRepo.RankedGame;
+import stacs.GameRepo.RatingSummary;
+import stacs.GameRepo.Recommendation;
+import stacs.GameRepo.SearchHit;
+import stacs.GameRepo.SimilarGame;
+import stacs.GameRepo.UserRating;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * ReactiveGameService serves the same /api routes as {@link GameService} on the reactive stack,
+ * sharing the same GameRepo. It is used instead of GameService when the application starts
+ * with {@code spring.main.web-application-type=reactive}.
+ *
+ * <p>List endpoints read the repository a chunk at a time as the client takes the response,
+ * rather than building the whole page first. The headers go out before the page is read, so
+ * the X-Next-Cursor header of the games and users lists is found from the ID index alone, and
+ * the page then runs up to and including that ID: a game or user added meanwhile inside the
+ * page makes it longer rather than pushing an item past the cursor. The raters of a game have
+ * no such index and carry no cursor; a client continues from the last user ID it received.
+ * Calls that may wait on the write-ahead log run on the bounded elastic scheduler, so they
+ * never hold up the event loop.
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveGameService {
+
+    // Number of items a list endpoint reads from GameRepo at a time
+    static final int STREAM_CHUNK_SIZE = 64;
+    // Runs the body writers, which write to an OutputStream, off the event loop
+    private static final Executor BLOCKING_EXECUTOR = task -> Schedulers.boundedElastic().schedule(task);
+
+    // GameRepo instance to manage games, users, and ratings
+    private final GameRepo gameRepo;
+    // Spring's JSON mapper, which writes the bodies kept by the ratings response cache
+    private final ObjectMapper objectMapper;
+    // Requests answered 404 because the user, or the user or game, does not exist
+    private final Counter updateUserNotFound;
+    private final Counter rateGameNotFound;
+    // The serialized ratings of recently read users; null if turned off
+    private final RatingsResponseCache ratingsCache;
+    // Queues ratings for a single writer thread; null unless write-behind is turned on
+    private final RatingWriteBehind ratingWriteBehind;
+    // How long a read of a user's ratings waits for their queued ratings
+    private final Duration readYourWritesTimeout;
+
+    /**
+     * Constructor with dependency injection for GameRepo.
+     *
+     * @param gameRepo The repository to manage games, users, and ratings.
+     */
+    public ReactiveGameService(GameRepo gameRepo) {
+        this(gameRepo, new CompositeMeterRegistry());
+    }
+
+    /**
+     * Constructor with dependency injection for GameRepo and the registry the
+     * not-found counters are reported to.
+     *
+     * @param gameRepo      The repository to manage games, users, and ratings.
+     * @param meterRegistry The registry to register the counters in.
+     */
+    public ReactiveGameService(GameRepo gameRepo, MeterRegistry meterRegistry) {
+        this(gameRepo, meterRegistry, new GameServiceProperties());
+    }
+
+    /**
+     * Constructor with dependency injection for GameRepo, the registry the
+     * counters are reported to, and the service settings.
+     *
+     * @param gameRepo      The repository to manage games, users, and ratings.
+     * @param meterRegistry The registry to register the counters in.
+     * @param properties    The settings of the service.
+     */
+    public ReactiveGameService(GameRepo gameRepo, MeterRegistry meterRegistry, GameServiceProperties properties) {
+        this(gameRepo, meterRegistry, properties, GameService.defaultObjectMapper());
+    }
+
+    /**
+     * Constructor with dependency injection for GameRepo, the registry the
+     * counters are reported to, the service settings and Spring's JSON mapper.
+     *
+     * @param gameRepo      The repository to manage games, users, and ratings.
+     * @param meterRegistry The registry to register the counters in.
+     * @param properties    The settings of the service.
+     * @param objectMapper  The mapper that writes cached ratings.
+     */
+    @Autowired
+    public ReactiveGameService(GameRepo gameRepo, MeterRegistry meterRegistry, GameServiceProperties properties,
+                               ObjectMapper objectMapper) {
+        this.gameRepo = gameRepo;
+        this.objectMapper = objectMapper;
+        updateUserNotFound = GameService.notFoundCounter(meterRegistry, "updateUser");
+        rateGameNotFound = GameService.notFoundCounter(meterRegistry, "rateGame");
+        ratingsCache = GameService.ratingsCache(meterRegistry, properties);
+        ratingWriteBehind = GameService.ratingWriteBehind(gameRepo, meterRegistry, properties);
+        readYourWritesTimeout = properties.getRatingsReadYourWritesTimeout();
+    }
+
+    /**
+     * Adds the ratings still queued for the writer thread before the repository closes.
+     * Called by Spring on shutdown.
+     */
+    @PreDestroy
+    public void close() {
+        if (ratingWriteBehind != null) {
+            ratingWriteBehind.close();
+        }
+    }
+
+    /**
+     * Adds a new game.
+     *
+     * @param game The game object from the request body.
+     * @return HTTP 200 OK if successful.
+     */
+    @PostMapping("/games")
+    public Mono<ResponseEntity<Void>> addGame(@RequestBody Games game) {
+        return blocking(() -> {
+            gameRepo.addGame(game);
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    /**
+     * Adds a new user.
+     *
+     * @param user The user object from the request body.
+     * @return HTTP 200 OK if successful.
+     */
+    @PostMapping("/users")
+    public Mono<ResponseEntity<Void>> addUser(@RequestBody Users user) {
+        return blocking(() -> {
+            gameRepo.addUser(user);
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    /**
+     * Updates an existing user's name.
+     *
+     * @param userId  The ID of the user as a String from the path variable.
+     * @param newName The new name from the request body.
+     * @return HTTP 200 OK if update is successful; otherwise, HTTP 404 Not Found with an error message.
+     */
+    @PutMapping("/users/{userId}")
+    public Mono<ResponseEntity<Map<String, Serializable>>> updateUser(@PathVariable String userId,
+                                                                      @RequestBody String newName) {
+        int intUserId = Integer.parseInt(userId);
+        return blocking(() -> {
+            if (gameRepo.findUserById(intUserId) != null) {
+                gameRepo.updateUserName(intUserId, newName);
+                return ResponseEntity.ok().build();
+            }
+            updateUserNotFound.increment();
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "User not found", "userId", intUserId));
+        });
+    }
+
+    /**
+     * Adds a rating for a game by a user. With write-behind turned on, the rating is
+     * queued and added by a writer thread shortly after the response.
+     *
+     * @param userId The ID of the user as a String from request parameters.
+     * @param gameId The ID of the game as a String from request parameters.
+     * @param rating The rating value.
+     * @return HTTP 200 OK if successful, or HTTP 202 Accepted once queued; HTTP 400 Bad Request
+     *         if the rating cannot be stored; HTTP 429 Too Many Requests if the queue is full;
+     *         otherwise, HTTP 404 Not Found with an error message.
+     */
+    @PostMapping("/ratings")
+    public Mono<ResponseEntity<Map<String, Serializable>>> rateGame(@RequestParam String userId,
+                                                                    @RequestParam String gameId,
+                                                                    @RequestParam int rating) {
+        int intUserId = Integer.parseInt(userId);
+        int intGameId = Integer.parseInt(gameId);
+        return blocking(() -> {
+            Users user = gameRepo.findUserById(intUserId);
+            Games game = gameRepo.findGameById(intGameId);
+            if (user != null && game != null) {
+                if (!gameRepo.acceptsRating(rating)) {
+                    return GameService.invalidRating(rating);
+                }
+                if (ratingWriteBehind != null) {
+                    return GameService.queueRating(ratingWriteBehind, intUserId, intGameId, rating);
+                }
+                gameRepo.addRating(user, game, rating);
+                return ResponseEntity.ok().build();
+            }
+            rateGameNotFound.increment();
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Game or user not found", "userId", intUserId, "gameId", intGameId));
+        });
+    }
+
+    /**
+     * Adds many games in one request, as a JSON array or newline-delimited JSON. The body
+     * is decoded one game at a time and passed to the repository in batches.
+     *
+     * @param body The games from the request body.
+     * @return HTTP 200 OK with one NDJSON result line per game; HTTP 400 Bad Request,
+     *         still with the results so far, if the body stops being valid JSON.
+     */
+    @PostMapping(value = "/games/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<DataBuffer>>> addGames(@RequestBody Flux<Games> body) {
+        return ingest(body, gameRepo::addGames, Games::getGameId);
+    }
+
+    /**
+     * Adds many users in one request, as a JSON array or newline-delimited JSON.
+     *
+     * @param body The users from the request body.
+     * @return HTTP 200 OK with one NDJSON result line per user; HTTP 400 Bad Request if
+     *         the body stops being valid JSON.
+     */
+    @PostMapping(value = "/users/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<DataBuffer>>> addUsers(@RequestBody Flux<Users> body) {
+        return ingest(body, gameRepo::addUsers, Users::getUserId);
+    }
+
+    /**
+     * Adds many ratings in one request, as a JSON array or newline-delimited JSON of
+     * {@code {"userId":1,"gameId":2,"rating":5}} objects.
+     *
+     * @param body The ratings from the request body.
+     * @return HTTP 200 OK with one NDJSON result line per rating, where the id is the game ID;
+     *         HTTP 400 Bad Request if the body stops being valid JSON.
+     */
+    @PostMapping(value = "/ratings/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<DataBuffer>>> addRatings(@RequestBody Flux<NewRating> body) {
+        return ingest(body, gameRepo::addRatings, NewRating::getGameId);
+    }
+
+    // Hands the decoded items to the repository a batch at a time, as they arrive
+    private <T> Mono<ResponseEntity<Flux<DataBuffer>>> ingest(Flux<T> body,
+                                                              Function<List<T>, List<BatchOutcome>> addBatch,
+                                                              ToIntFunction<T> idOf) {
+        BatchResults results = new BatchResults();
+        return body
+                // Ending the items at the error keeps the batch read so far, as the servlet stack does
+                .onErrorResume(ReactiveGameService::isUnreadableBody, e -> {
+                    results.fail(unreadableBodyMessage(e));
+                    return Flux.empty();
+                })
+                .buffer(GameService.INGEST_BATCH_SIZE)
+                // One batch at a time, so the results stay in request order
+                .concatMap(batch -> blocking(() -> {
+                    GameService.flushBatch(batch, addBatch, idOf, results);
+                    return batch;
+                }))
+                .then(Mono.fromSupplier(() -> ResponseEntity
+                        .status(results.hasError() ? HttpStatus.BAD_REQUEST : HttpStatus.OK)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .body(write(results))));
+    }
+
+    private static boolean isUnreadableBody(Throwable e) {
+        return e instanceof ServerWebInputException || e instanceof DecodingException;
+    }
+
+    private static String unreadableBodyMessage(Throwable e) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+        return cause instanceof JsonProcessingException json ? json.getOriginalMessage() : "Could not read the request body";
+    }
+
+    /**
+     * Streams one page of games in ascending ID order, optionally only those that match
+     * every one of the specified genres. The ETag changes whenever a game with the genres
+     * is added; a request whose If-None-Match names it is answered 304 without reading the games.
+     *
+     * @param genre       The genres to filter games; absent for every game.
+     * @param after       Only return games with a greater ID.
+     * @param limit       The maximum number of games to return, between 1 and 1000.
+     * @param ifNoneMatch The ETags of the pages the client holds; absent if none.
+     * @return The page of games with HTTP 200 OK; HTTP 304 Not Modified if the client's page is
+     *         current, or HTTP 400 Bad Request if the limit is out of range.
+     */
+    @GetMapping("/games")
+    public ResponseEntity<Flux<Games>> listGamesByGenre(@RequestParam(required = false) List<String> genre,
+                                                        @RequestParam(defaultValue = "0") int after,
+                                                        @RequestParam(defaultValue = "100") int limit,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (limit < 1 || limit > GameService.MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Read now, before the stream reads any game
+        String etag = GameService.etag(gameRepo.getGamesVersion(genre));
+        if (GameService.notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return page(ResponseEntity.ok().eTag(etag), gameRepo.findNextGamesCursor(genre, after, limit),
+                (chunkAfter, chunkSize) -> gameRepo.listGames(genre, chunkAfter, chunkSize), Games::getGameId, after, limit);
+    }
+
+    /**
+     * Retrieves the games matching every given filter, sorted by ID, release date or rating.
+     * The repository answers from the index expected to read the fewest games: the genre
+     * or platform index, or the release date range, so no filter means scanning every game.
+     *
+     * @param genre        The genres a game must all have; absent for any.
+     * @param platform     The platform a game must be on; absent for any.
+     * @param releasedFrom The earliest release date, as yyyy-MM-dd; absent for no lower bound.
+     * @param releasedTo   The latest release date, as yyyy-MM-dd; absent for no upper bound.
+     * @param sort         "id", "newest", "oldest" or "rating" (best first).
+     * @param limit        The maximum number of games to return, between 1 and 1000.
+     * @return The matching games with HTTP 200 OK; HTTP 400 Bad Request if the sort is unknown,
+     *         the date range is empty or the limit is out of range.
+     */
+    @GetMapping("/games/query")
+    public ResponseEntity<Flux<Games>> queryGames(@RequestParam(required = false) List<String> genre,
+                                                  @RequestParam(required = false) String platform,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedFrom,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedTo,
+                                                  @RequestParam(defaultValue = "id") String sort,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        GameQuery query = GameService.gameQuery(genre, platform, releasedFrom, releasedTo, sort, limit);
+        if (query == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        // The games are sorted as a whole, so they are found when the client subscribes
+        return ResponseEntity.ok(Flux.defer(() -> Flux.fromIterable(gameRepo.queryGames(query))));
+    }
+
+    /**
+     * Searches the game titles for words, ranked by BM25. The last word also matches as
+     * the start of a word, and words of four or more letters tolerate one typo.
+     *
+     * @param q The words to search for.
+     * @param n The number of games to return, between 1 and 100.
+     * @return The matching games, best first, with HTTP 200 OK; HTTP 400 Bad Request if the
+     *         query has no words or n is out of range.
+     */
+    @GetMapping("/games/search")
+    public ResponseEntity<Flux<SearchHit>> searchGames(@RequestParam String q, @RequestParam(defaultValue = "10") int n) {
+        if (q.isBlank() || n < 1 || n > GameService.MAX_SEARCH_RESULTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        // The hits are ranked as a whole, so they are found when the client subscribes
+        return ResponseEntity.ok(Flux.defer(() -> Flux.fromIterable(gameRepo.searchGames(q, n))));
+    }
+
+    /**
+     * Retrieves a game by its title, ignoring case.
+     *
+     * @param title The title to look up.
+     * @return The matching game with HTTP 200 OK; otherwise, HTTP 404 Not Found.
+     */
+    @GetMapping("/games/by-title")
+    public Mono<ResponseEntity<Games>> findGameByTitle(@RequestParam String title) {
+        return Mono.justOrEmpty(gameRepo.findGameByTitle(title))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    /**
+     * Retrieves the rating statistics of a game: count, mean, variance and distribution.
+     *
+     * @param gameId The ID of the game as a String from the path variable.
+     * @return The rating summary with HTTP 200 OK if the game exists; otherwise, HTTP 404 Not Found.
+     */
+    @GetMapping("/games/{gameId}/stats")
+    public Mono<ResponseEntity<RatingSummary>> getGameStats(@PathVariable String gameId) {
+        int intGameId = Integer.parseInt(gameId);
+        return Mono.fromSupplier(() -> gameRepo.findGameById(intGameId) == null
+                ? ResponseEntity.status(HttpStatus.NOT_FOUND).build()
+                : ResponseEntity.ok(gameRepo.getRatingSummary(intGameId)));
+    }
+
+    /**
+     * Streams one page of the ratings of a game, ordered by user ID.
+     *
+     * @param gameId The ID of the game as a String from the path variable.
+     * @param after  Only return ratings by users with a greater ID.
+     * @param limit  The maximum number of ratings to return, between 1 and 1000.
+     * @return The page of ratings with HTTP 200 OK; HTTP 404 Not Found if the game does not exist,
+     *         or HTTP 400 Bad Request if the limit is out of range.
+     */
+    @GetMapping("/games/{gameId}/ratings")
+    public ResponseEntity<Flux<UserRating>> listRatingsByGame(@PathVariable String gameId,
+                                                              @RequestParam(defaultValue = "0") int after,
+                                                              @RequestParam(defaultValue = "100") int limit) {
+        int intGameId = Integer.parseInt(gameId);
+        if (limit < 1 || limit > GameService.MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (gameRepo.findGameById(intGameId) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(stream((chunkAfter, chunkSize) -> gameRepo.listRatingsByGame(intGameId, chunkAfter, chunkSize),
+                UserRating::getUserId, after, limit, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Retrieves the games most similar to a game, by their genres and by the users who rated them.
+     *
+     * @param gameId The ID of the game as a String from the path variable.
+     * @param n      The number of games to return, between 1 and 100.
+     * @return The similar games, most similar first, with HTTP 200 OK; HTTP 404 Not Found if the
+     *         game does not exist, HTTP 400 Bad Request if n is out of range, or HTTP 503 Service
+     *         Unavailable if similar games are disabled.
+     */
+    @GetMapping("/games/{gameId}/similar")
+    public ResponseEntity<Flux<SimilarGame>> findSimilarGames(@PathVariable String gameId,
+                                                              @RequestParam(defaultValue = "10") int n) {
+        int intGameId = Integer.parseInt(gameId);
+        if (n < 1 || n > GameService.MAX_SIMILAR_GAMES) {
+            return ResponseEntity.badRequest().build();
+        }
+        // A lookup reads the buckets without locking, so it runs on the calling thread
+        List<SimilarGame> similarGames;
+        try {
+            similarGames = gameRepo.findSimilarGames(intGameId, n);
+        } catch (IllegalStateException e) {
+            // Similar games are not enabled
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (similarGames == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(Flux.fromIterable(similarGames));
+    }
+
+    /**
+     * Retrieves the highest rated games, ranked by Bayesian-weighted average rating.
+     *
+     * @param n          The number of games to return, between 1 and 1000.
+     * @param genre      Optional genre to rank within.
+     * @param minRatings Only include games with at least this many ratings.
+     * @return The ranked games, best first, with HTTP 200 OK; HTTP 400 Bad Request if n is out of range.
+     */
+    @GetMapping("/games/top")
+    public ResponseEntity<Flux<RankedGame>> listTopGames(@RequestParam(defaultValue = "10") int n,
+                                                         @RequestParam(required = false) String genre,
+                                                         @RequestParam(defaultValue = "1") long minRatings) {
+        if (n < 1 || n > GameService.MAX_TOP_GAMES) {
+            return ResponseEntity.badRequest().build();
+        }
+        // The leaderboard is ranked as a whole, so it is read when the client subscribes
+        return ResponseEntity.ok(Flux.defer(() -> Flux.fromIterable(gameRepo.listTopGames(n, genre, minRatings))));
+    }
+
+    /**
+     * Recommends games a user has not rated yet, predicted from their ratings of similar games.
+     *
+     * @param userId The ID of the user as a String from the path variable.
+     * @param n      The number of games to return, between 1 and 100.
+     * @return The recommendations, best first, with HTTP 200 OK; HTTP 404 Not Found if the user
+     *         does not exist, HTTP 400 Bad Request if n is out of range, or HTTP 503 Service
+     *         Unavailable if recommendations are disabled or still being built.
+     */
+    @GetMapping("/users/{userId}/recommendations")
+    public Mono<ResponseEntity<List<Recommendation>>> recommendGames(@PathVariable String userId,
+                                                                     @RequestParam(defaultValue = "10") int n) {
+        int intUserId = Integer.parseInt(userId);
+        if (n < 1 || n > GameService.MAX_RECOMMENDATIONS) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        // Copying the user's ratings takes their rating lock, so it runs off the event loop
+        return blocking(() -> {
+            if (gameRepo.findUserById(intUserId) == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+            List<Recommendation> recommendations;
+            try {
+                recommendations = gameRepo.recommendGames(intUserId, n);
+            } catch (IllegalStateException e) {
+                // Recommendations are not enabled
+                recommendations = null;
+            }
+            if (recommendations == null) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+            return ResponseEntity.ok(recommendations);
+        });
+    }
+
+    /**
+     * Streams every rating out as CSV or newline-delimited JSON, in ascending user ID and
+     * then game ID order, exactly as the servlet stack does, and like it as of the moment
+     * the export started; the X-Export-Point header names that point, and passing it as
+     * {@code point} continues the same export. The rows are written as the client reads them.
+     *
+     * @param format "csv" or "ndjson".
+     * @param after  Only export ratings by users with a greater ID.
+     * @param limit  The maximum number of users to export; 0 for all of them.
+     * @param point  The export point to continue from; absent to start a new export.
+     * @return The streamed ratings with HTTP 200 OK; HTTP 400 Bad Request if the format
+     *         is unknown or the limit is negative, or HTTP 410 Gone if the point has expired
+     *         or its export has already been continued past {@code after}.
+     */
+    @GetMapping("/export/ratings")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> exportRatings(@RequestParam(defaultValue = "csv") String format,
+                                                                @RequestParam(defaultValue = "0") int after,
+                                                                @RequestParam(defaultValue = "0") int limit,
+                                                                @RequestParam(required = false) Long point) {
+        RatingExport.Format exportFormat;
+        try {
+            exportFormat = RatingExport.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        if (limit < 0) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        // Finding the cursor walks as many user IDs as the limit, so it is kept off the event loop
+        return blocking(() -> {
+            RatingExport export = RatingExport.open(gameRepo, point, after, limit, exportFormat);
+            if (export == null) {
+                return ResponseEntity.status(HttpStatus.GONE).build();
+            }
+            return GameService.exportResponse(export).body(write(export));
+        });
+    }
+
+    /**
+     * Streams one page of users in ascending ID order. The ETag changes whenever a user is
+     * added or renamed; a request whose If-None-Match names it is answered 304 without reading the users.
+     *
+     * @param after       Only return users with a greater ID.
+     * @param limit       The maximum number of users to return, between 1 and 1000.
+     * @param ifNoneMatch The ETags of the pages the client holds; absent if none.
+     * @return The page of users with HTTP 200 OK; HTTP 304 Not Modified if the client's page is
+     *         current, or HTTP 400 Bad Request if the limit is out of range.
+     */
+    @GetMapping("/users")
+    public ResponseEntity<Flux<Users>> listUsers(@RequestParam(defaultValue = "0") int after,
+                                                 @RequestParam(defaultValue = "100") int limit,
+                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (limit < 1 || limit > GameService.MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        String etag = GameService.etag(gameRepo.getUsersVersion());
+        if (GameService.notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return page(ResponseEntity.ok().eTag(etag), gameRepo.findNextUsersCursor(after, limit),
+                gameRepo::listUsers, Users::getUserId, after, limit);
+    }
+
+    /**
+     * Retrieves the ratings for a specific user. The serialized body is kept until the
+     * user's ratings change, so repeated requests are answered without rebuilding it.
+     * The ETag changes with the ratings; a request whose If-None-Match names it is
+     * answered 304 without reading them. With write-behind turned on, the user's queued
+     * ratings are added first.
+     *
+     * @param userId      The ID of the user as a String from the path variable.
+     * @param ifNoneMatch The ETags of the ratings the client holds; absent if none.
+     * @return A JSON object of game titles to ratings if the user exists and has ratings;
+     *         HTTP 304 Not Modified if the client's copy is current; HTTP 503 Service
+     *         Unavailable if the user's queued ratings are not added in time; HTTP 500
+     *         Internal Server Error, once, if one of them could not be added; otherwise,
+     *         returns HTTP 404 Not Found with an empty object.
+     */
+    @GetMapping(value = "/ratings/{userId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<byte[]>> listRatingsByUser(@PathVariable String userId,
+                                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        int intUserId = Integer.parseInt(userId);
+        // Waiting for the writer and copying the ratings on a cache miss both block on..
+        // ..locks, so they are kept off the event loop
+        return blocking(() -> {
+            ResponseEntity<byte[]> notApplied =
+                    GameService.awaitQueuedRatings(ratingWriteBehind, readYourWritesTimeout, intUserId);
+            if (notApplied != null) {
+                return notApplied;
+            }
+            return GameService.ratingsResponse(gameRepo, objectMapper, ratingsCache, intUserId, ifNoneMatch);
+        });
+    }
+
+    /**
+     * Reads one chunk of a list in ascending ID order.
+     *
+     * @param <T> the type of the listed items
+     */
+    @FunctionalInterface
+    interface ChunkSource<T> {
+        List<T> read(int afterId, int limit);
+    }
+
+    // Streams one page with the cursor of the next one, if there is a next one
+    private static <T> ResponseEntity<Flux<T>> page(ResponseEntity.BodyBuilder response, OptionalInt nextCursor,
+                                                    ChunkSource<T> source, ToIntFunction<T> idOf,
+                                                    int after, int limit) {
+        if (nextCursor.isEmpty()) {
+            return response.body(stream(source, idOf, after, limit, Integer.MAX_VALUE));
+        }
+        response.header(GameService.NEXT_CURSOR_HEADER, String.valueOf(nextCursor.getAsInt()));
+        return response.body(stream(source, idOf, after, limit, nextCursor.getAsInt()));
+    }
+
+    // Emits the items after the cursor up to and including lastId, or up to limit items if..
+    // ..lastId is Integer.MAX_VALUE, reading the next chunk only once the subscriber has asked..
+    // ..for more than the previous one held
+    static <T> Flux<T> stream(ChunkSource<T> source, ToIntFunction<T> idOf, int after, int limit, int lastId) {
+        boolean toLastId = lastId != Integer.MAX_VALUE;
+        // The state is the cursor and the number of items expected before the end of the page
+        return Flux.<List<T>, int[]>generate(() -> new int[]{after, limit}, (state, sink) -> {
+            // Items added since the end of the page was found can leave more to read up to it
+            int chunkSize = state[1] > 0 ? Math.min(STREAM_CHUNK_SIZE, state[1]) : STREAM_CHUNK_SIZE;
+            List<T> chunk = source.read(state[0], chunkSize);
+            int size = chunk.size();
+            while (size > 0 && idOf.applyAsInt(chunk.get(size - 1)) > lastId) {
+                size--;
+            }
+            if (size > 0) {
+                sink.next(chunk.subList(0, size));
+                state[0] = idOf.applyAsInt(chunk.get(size - 1));
+                state[1] -= size;
+            }
+            // A short chunk means the list has run out
+            if (chunk.size() < chunkSize || size < chunk.size() || state[0] == lastId
+                    || (!toLastId && state[1] == 0)) {
+                sink.complete();
+            }
+            return state;
+        }).flatMapIterable(Function.identity(), 1);
+    }
+
+    // Runs a repository call that may wait on the write-ahead log off the event loop
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Adapts a body that writes to an OutputStream to the reactive stack; it only writes..
+    // ..ahead of the client by a buffer at a time
+    private static Flux<DataBuffer> write(BodyWriter body) {
+        return Flux.from(DataBufferUtils.outputStreamPublisher(outputStream -> {
+            try {
+                body.writeTo(outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, DefaultDataBufferFactory.sharedInstance, BLOCKING_EXECUTOR));
+    }
+}
@@ -29,5 +29,13 @@ public class Games {
     public String getTitle() {
         return title;
     }
-    
+
+    public LocalDate getReleaseDate() {
+        return releaseDate;
+    }
+
+    public String getPlatform() {
+        return platform;
+    }
+
 }
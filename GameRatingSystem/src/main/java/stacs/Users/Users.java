@@ -2,7 +2,8 @@ package stacs.Users;
 
 public class Users {
     private int identifier;
-    private String name;
+    // Volatile so a rename is seen by request threads reading the user
+    private volatile String name;
 
     public Users(int identifier, String name) {
         this.identifier = identifier;
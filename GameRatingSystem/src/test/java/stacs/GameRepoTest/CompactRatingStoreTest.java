@@ -0,0 +1,108 @@
+package stacs.GameRepoTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.RatingSummary;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the rating operations of GameRepo against the compact rating store
+public class CompactRatingStoreTest {
+    private GameRepo gameRepo;
+    private Games game1, game2, game3;
+    private Users user1, user2;
+
+    @BeforeEach
+    public void initialSetUpForTests() {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setRatingStore(GameRepoProperties.RatingStoreType.COMPACT);
+        gameRepo = new GameRepo(properties);
+        game1 = new Games(1, "Candy Crush", new ArrayList<>(List.of("Relaxing")), LocalDate.of(2012, 4, 12), "Mobile Phone");
+        game2 = new Games(2, "Subway Surfers", new ArrayList<>(List.of("Thrilling")), LocalDate.of(2012, 5, 24), "Mobile Phone");
+        game3 = new Games(3, "Wordscapes", new ArrayList<>(List.of("Wordy")), LocalDate.of(2017, 6, 14), "Mobile Phone");
+        user1 = new Users(1, "John Doe");
+        user2 = new Users(2, "Jane Doe");
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        gameRepo.addGame(game3);
+        gameRepo.addUser(user1);
+        gameRepo.addUser(user2);
+    }
+
+    // A test to check that a user's ratings can be read back..
+    // ..whatever order the games were rated in
+    @Test
+    public void shouldReturnRatingsOfUser() {
+        gameRepo.addRating(user1, game3, 2);
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user1, game2, 4);
+        Map<Games, Integer> ratings = gameRepo.getRatingsOfUser(user1);
+        assertEquals(3, ratings.size());
+        assertEquals(5, ratings.get(game1));
+        assertEquals(4, ratings.get(game2));
+        assertEquals(2, ratings.get(game3));
+        assertTrue(gameRepo.getRatingsOfUser(user2).isEmpty());
+    }
+
+    // A test to check that re-rating replaces the stored rating..
+    // ..and the aggregates of the game
+    @Test
+    public void shouldReplaceRatingWhenReRating() {
+        gameRepo.addRating(user1, game1, 1);
+        gameRepo.addRating(user1, game1, 3);
+        assertEquals(3, gameRepo.getRatingsOfUser(user1).get(game1));
+        RatingSummary summary = gameRepo.getRatingSummary(1);
+        assertEquals(1, summary.getCount());
+        assertEquals(3.0, summary.getMean(), 1e-9);
+    }
+
+    // A test to check that the map view resolves users and games
+    @Test
+    public void shouldBuildUserGameRatingsMap() {
+        gameRepo.addRating(user1, game1, 4);
+        gameRepo.addRating(user2, game1, 3);
+        Map<Users, Map<Games, Integer>> ratings = gameRepo.getUserGameRatings();
+        assertEquals(2, ratings.size());
+        assertEquals(4, ratings.get(user1).get(game1));
+        assertEquals(3, ratings.get(user2).get(game1));
+    }
+
+    // A test to check that ratings that do not fit in a byte are rejected
+    @Test
+    public void shouldRejectRatingOutsideByteRange() {
+        assertFalse(gameRepo.acceptsRating(1000));
+        assertTrue(gameRepo.acceptsRating(-128));
+        Exception anException = assertThrows(IllegalArgumentException.class, () -> {
+            gameRepo.addRating(user1, game1, 1000);
+        });
+        assertEquals("A rating must fit in a byte to be stored compactly", anException.getMessage());
+        assertTrue(gameRepo.getRatingsOfUser(user1).isEmpty());
+        assertEquals(0, gameRepo.getRatingSummary(1).getCount());
+    }
+
+    // A test to check that many ratings per user survive the arrays growing
+    @Test
+    public void shouldStoreManyRatingsPerUser() {
+        for (int i = 4; i <= 1000; i++) {
+            gameRepo.addGame(new Games(i, "Game " + i, new ArrayList<>(), null, "PC"));
+        }
+        for (int i = 1000; i >= 1; i--) {
+            gameRepo.addRating(user1, gameRepo.findGameById(i), i % 5 + 1);
+        }
+        Map<Games, Integer> ratings = gameRepo.getRatingsOfUser(user1);
+        assertEquals(1000, ratings.size());
+        for (Map.Entry<Games, Integer> entry : ratings.entrySet()) {
+            assertEquals(entry.getKey().getGameId() % 5 + 1, entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package stacs.GameRepoTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.GameQuery;
+import stacs.GameRepo.GameQueryPlanner;
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.RankedGame;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameQueryPlannerTest {
+    private GameRepo gameRepo;
+    private List<Games> games;
+
+    // Setting up 100 games: even IDs are RPGs and odd ones puzzles, every tenth is also indie,..
+    // ..the first five are on Switch and the rest on PC, every 25th has no release date,..
+    // ..and a few of them are rated
+    @BeforeEach
+    public void initialSetUpForTests() {
+        gameRepo = new GameRepo();
+        games = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            ArrayList<String> genres = new ArrayList<>(List.of(id % 2 == 0 ? "RPG" : "Puzzle"));
+            if (id % 10 == 0) {
+                genres.add("Indie");
+            }
+            LocalDate releaseDate = id % 25 == 0 ? null : LocalDate.of(2000 + id % 20, 1 + id % 12, 1 + id % 28);
+            games.add(new Games(id, "Game " + id, genres, releaseDate, id <= 5 ? "Switch" : "PC"));
+        }
+        // Half of them one at a time, the rest as a batch
+        games.subList(0, 50).forEach(gameRepo::addGame);
+        gameRepo.addGames(games.subList(50, 100));
+        Users user1 = new Users(1, "User 1");
+        Users user2 = new Users(2, "User 2");
+        gameRepo.addUser(user1);
+        gameRepo.addUser(user2);
+        for (int id : new int[] {4, 10, 20, 33, 60, 88}) {
+            gameRepo.addRating(user1, games.get(id - 1), 1 + id % 5);
+            gameRepo.addRating(user2, games.get(id - 1), 5);
+        }
+    }
+
+    private static GameQuery query(List<String> genres, String platform, LocalDate from, LocalDate to,
+                                   GameQuery.Sort sort, int limit) {
+        GameQuery query = new GameQuery();
+        query.setGenres(genres);
+        query.setPlatform(platform);
+        query.setReleasedFrom(from);
+        query.setReleasedTo(to);
+        query.setSort(sort);
+        query.setLimit(limit);
+        return query;
+    }
+
+    private static List<Integer> ids(List<Games> games) {
+        return games.stream().map(Games::getGameId).toList();
+    }
+
+    // The answer found by checking every game, sorted as the query asks
+    private List<Integer> scan(GameQuery query) {
+        Map<Integer, Double> scores = new HashMap<>();
+        for (RankedGame rankedGame : gameRepo.listTopGames(1000, null, 1)) {
+            scores.put(rankedGame.getGame().getGameId(), rankedGame.getScore());
+        }
+        Comparator<Games> byId = Comparator.comparingInt(Games::getGameId);
+        Comparator<Games> order = switch (query.getSort()) {
+            case NEWEST -> Comparator.comparing(Games::getReleaseDate,
+                    Comparator.nullsLast(Comparator.<LocalDate>reverseOrder())).thenComparing(byId);
+            case OLDEST -> Comparator.comparing(Games::getReleaseDate,
+                    Comparator.nullsLast(Comparator.<LocalDate>naturalOrder())).thenComparing(byId);
+            case RATING -> Comparator.comparing((Games game) -> scores.getOrDefault(game.getGameId(), -1.0))
+                    .reversed().thenComparing(byId);
+            default -> byId;
+        };
+        return games.stream()
+                .filter(game -> query.getGenres() == null || query.getGenres().stream()
+                        .allMatch(genre -> game.getGenres().stream().anyMatch(genre::equalsIgnoreCase)))
+                .filter(game -> query.getPlatform() == null || query.getPlatform().equalsIgnoreCase(game.getPlatform()))
+                .filter(game -> query.getReleasedFrom() == null && query.getReleasedTo() == null
+                        || game.getReleaseDate() != null
+                        && (query.getReleasedFrom() == null || !game.getReleaseDate().isBefore(query.getReleasedFrom()))
+                        && (query.getReleasedTo() == null || !game.getReleaseDate().isAfter(query.getReleasedTo())))
+                .sorted(order)
+                .limit(query.getLimit())
+                .map(Games::getGameId)
+                .toList();
+    }
+
+    // A test to check that the index with the fewest games is walked
+    @Test
+    public void shouldPickTheMostSelectiveIndex() {
+        assertEquals(GameQueryPlanner.AccessPath.PLATFORM, gameRepo.explainQuery(
+                query(List.of("RPG"), "switch", null, null, GameQuery.Sort.ID, 100)).getAccessPath());
+        GameQueryPlanner.Plan plan = gameRepo.explainQuery(
+                query(List.of("RPG", "Indie"), "PC", null, null, GameQuery.Sort.ID, 100));
+        assertEquals(GameQueryPlanner.AccessPath.GENRE, plan.getAccessPath());
+        assertEquals("Indie", plan.getGenre());
+        assertEquals(10, plan.getRows());
+        assertEquals(GameQueryPlanner.AccessPath.RELEASE_DATE, gameRepo.explainQuery(query(List.of("RPG"), null,
+                LocalDate.of(2005, 1, 1), LocalDate.of(2005, 12, 31), GameQuery.Sort.ID, 100)).getAccessPath());
+        assertEquals(GameQueryPlanner.AccessPath.ID_ORDER, gameRepo.explainQuery(
+                query(null, null, null, null, GameQuery.Sort.ID, 100)).getAccessPath());
+    }
+
+    // A test to check that a path yielding games in the requested order is preferred,..
+    // ..as it stops once the page is full
+    @Test
+    public void shouldPreferAPathInTheRequestedOrder() {
+        GameQueryPlanner.Plan plan = gameRepo.explainQuery(query(null, null, null, null, GameQuery.Sort.NEWEST, 10));
+        assertEquals(GameQueryPlanner.AccessPath.RELEASE_DATE, plan.getAccessPath());
+        assertTrue(plan.isOrdered());
+        assertEquals(10, plan.getCost());
+        plan = gameRepo.explainQuery(query(List.of("RPG"), null, null, null, GameQuery.Sort.RATING, 5));
+        assertEquals(GameQueryPlanner.AccessPath.RATING, plan.getAccessPath());
+        assertEquals("RPG", plan.getGenre());
+    }
+
+    // A test to check that every combination of filters and orders..
+    // ..finds the same games as checking every game
+    @Test
+    public void shouldFindTheSameGamesAsAScan() {
+        List<List<String>> genreFilters = Arrays.asList(null, List.of("rpg"), List.of("Indie", "RPG"), List.of("Racing"));
+        List<String> platforms = Arrays.asList(null, "PC", "Switch", "Xbox");
+        LocalDate[][] ranges = {
+                {null, null},
+                {LocalDate.of(2005, 1, 1), null},
+                {null, LocalDate.of(2010, 6, 30)},
+                {LocalDate.of(2003, 3, 1), LocalDate.of(2012, 12, 31)}
+        };
+        for (List<String> genres : genreFilters) {
+            for (String platform : platforms) {
+                for (LocalDate[] range : ranges) {
+                    for (GameQuery.Sort sort : GameQuery.Sort.values()) {
+                        for (int limit : new int[] {3, 1000}) {
+                            GameQuery query = query(genres, platform, range[0], range[1], sort, limit);
+                            assertEquals(scan(query), ids(gameRepo.queryGames(query)),
+                                    genres + " " + platform + " " + Arrays.toString(range) + " " + sort + " " + limit);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // A test to check that the best rated games come first,..
+    // ..then the unrated ones by ID, and the undated games last by date
+    @Test
+    public void shouldPutUnratedAndUndatedGamesLast() {
+        List<Integer> byRating = ids(gameRepo.queryGames(query(List.of("RPG"), null, null, null, GameQuery.Sort.RATING, 8)));
+        assertEquals(List.of(4, 88, 10, 20, 60, 2, 6, 8), byRating);
+        List<Integer> newest = ids(gameRepo.queryGames(query(null, null, null, null, GameQuery.Sort.NEWEST, 100)));
+        assertEquals(List.of(25, 50, 75, 100), newest.subList(96, 100));
+    }
+
+    // A test to check that invalid queries are rejected
+    @Test
+    public void shouldRejectInvalidQueries() {
+        assertThrows(IllegalArgumentException.class, () -> gameRepo.queryGames(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> gameRepo.queryGames(query(null, null, null, null, GameQuery.Sort.ID, 0)));
+        assertThrows(IllegalArgumentException.class, () -> gameRepo.queryGames(
+                query(null, null, LocalDate.of(2010, 1, 1), LocalDate.of(2009, 1, 1), GameQuery.Sort.ID, 10)));
+    }
+}
@@ -0,0 +1,66 @@
+package stacs.GameRepoTest;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.GameRaters;
+import stacs.GameRepo.UserRating;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameRatersTest {
+    private GameRaters gameRaters;
+
+    @BeforeEach
+    public void initialSetUpForTests() {
+        gameRaters = new GameRaters();
+    }
+
+    // A test to check that put() reports the rating it replaced
+    @Test
+    public void shouldReturnPreviousRating() {
+        assertEquals(GameRaters.NO_RATING, gameRaters.put(5, 3));
+        assertEquals(3, gameRaters.put(5, 4));
+        assertEquals(1, gameRaters.size());
+        assertEquals(4, gameRaters.page(0, 10).get(0).getRating());
+    }
+
+    // A test to check that raters added in any order are paged..
+    // ..in ascending user ID order, across many chunk splits
+    @Test
+    public void shouldPageThroughRatersInUserIdOrder() {
+        // Insert 0..9999 in a scrambled order (7919 is prime, so every ID appears once)
+        for (int i = 0; i < 10_000; i++) {
+            int userId = (int) ((i * 7919L) % 10_000) + 1;
+            gameRaters.put(userId, userId % 5 + 1);
+        }
+        assertEquals(10_000, gameRaters.size());
+
+        int after = 0;
+        int expectedUserId = 1;
+        List<UserRating> page;
+        while (!(page = gameRaters.page(after, 333)).isEmpty()) {
+            for (UserRating userRating : page) {
+                assertEquals(expectedUserId, userRating.getUserId());
+                assertEquals(expectedUserId % 5 + 1, userRating.getRating());
+                expectedUserId++;
+            }
+            after = page.get(page.size() - 1).getUserId();
+        }
+        assertEquals(10_001, expectedUserId);
+    }
+
+    // A test to check that a cursor between two user IDs starts at the next one
+    @Test
+    public void shouldStartPageAfterCursor() {
+        gameRaters.put(10, 1);
+        gameRaters.put(20, 2);
+        gameRaters.put(30, 3);
+        List<UserRating> page = gameRaters.page(15, 10);
+        assertEquals(2, page.size());
+        assertEquals(20, page.get(0).getUserId());
+        assertTrue(gameRaters.page(30, 10).isEmpty());
+    }
+}
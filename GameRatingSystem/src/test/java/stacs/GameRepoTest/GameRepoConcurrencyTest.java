@@ -0,0 +1,266 @@
+package stacs.GameRepoTest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import stacs.GameRepo.ExportPoint;
+import stacs.GameRepo.GameQuery;
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.RankedGame;
+import stacs.GameRepo.WriteAheadLog;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Stress tests that hammer a single GameRepo from many threads at once
+public class GameRepoConcurrencyTest {
+    private static final int THREADS = 8;
+
+    private GameRepo gameRepo;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void initialSetUpForTests() {
+        gameRepo = new GameRepo();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Runs the same task on every thread, released together by a latch
+    private void runConcurrently(Callable<Void> task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    // A test to check that games and users added by several threads..
+    // ..with overlapping IDs are only stored once
+    @Test
+    public void shouldNotStoreDuplicateIdsWhenAddingConcurrently() throws Exception {
+        runConcurrently(() -> {
+            for (int i = 1; i <= 2000; i++) {
+                gameRepo.addGame(new Games(i, "Game " + i, new ArrayList<>(List.of("Arcade")), null, "PC"));
+                gameRepo.addUser(new Users(i, "User " + i));
+            }
+            return null;
+        });
+
+        List<Games> games = gameRepo.getGames();
+        List<Users> users = gameRepo.getUsers();
+        assertEquals(2000, games.size());
+        assertEquals(2000, users.size());
+        Set<Integer> gameIds = new HashSet<>();
+        for (Games game : games) {
+            assertTrue(gameIds.add(game.getGameId()), "Duplicate game ID " + game.getGameId());
+            assertSame(game, gameRepo.findGameById(game.getGameId()));
+        }
+        Set<Integer> userIds = new HashSet<>();
+        for (Users user : users) {
+            assertTrue(userIds.add(user.getUserId()), "Duplicate user ID " + user.getUserId());
+        }
+        assertEquals(2000, gameRepo.listGamesByGenre(new ArrayList<>(List.of("arcade"))).size());
+    }
+
+    // A test to check that no rating is lost when several threads..
+    // ..rate games for the same users at the same time
+    @Test
+    public void shouldNotLoseRatingsWhenRatingConcurrently() throws Exception {
+        int userCount = 50;
+        int gamesPerThread = 100;
+        List<Users> users = new ArrayList<>();
+        for (int u = 1; u <= userCount; u++) {
+            Users user = new Users(u, "User " + u);
+            users.add(user);
+            gameRepo.addUser(user);
+        }
+        for (int g = 1; g <= THREADS * gamesPerThread; g++) {
+            gameRepo.addGame(new Games(g, "Game " + g, new ArrayList<>(), null, "PC"));
+        }
+
+        // Each thread rates its own block of games, for every user
+        AtomicInteger nextThread = new AtomicInteger();
+        runConcurrently(() -> {
+            int thread = nextThread.getAndIncrement();
+            for (int g = 1; g <= gamesPerThread; g++) {
+                Games game = gameRepo.findGameById(thread * gamesPerThread + g);
+                for (Users user : users) {
+                    gameRepo.addRating(user, game, (user.getUserId() + game.getGameId()) % 5 + 1);
+                }
+            }
+            return null;
+        });
+
+        Map<Users, Map<Games, Integer>> ratings = gameRepo.getUserGameRatings();
+        assertEquals(userCount, ratings.size());
+        for (Users user : users) {
+            Map<Games, Integer> userRatings = ratings.get(user);
+            assertEquals(THREADS * gamesPerThread, userRatings.size());
+            for (Map.Entry<Games, Integer> entry : userRatings.entrySet()) {
+                assertEquals((user.getUserId() + entry.getKey().getGameId()) % 5 + 1, entry.getValue());
+            }
+        }
+    }
+
+    // A test to check that readers always see a consistent repository..
+    // ..while another thread is adding games
+    @Test
+    public void shouldFindGamesWhileTheyAreBeingAdded() throws Exception {
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 1; i <= 20_000; i++) {
+                gameRepo.addGame(new Games(i, "Game " + i, new ArrayList<>(List.of("Arcade")), null, "PC"));
+            }
+        });
+        while (!writer.isDone()) {
+            List<Games> games = gameRepo.getGames();
+            for (Games game : games) {
+                assertNotNull(game);
+                assertSame(game, gameRepo.findGameById(game.getGameId()));
+            }
+            for (Games game : gameRepo.listGamesByGenre(new ArrayList<>(List.of("Arcade")))) {
+                assertNotNull(game);
+            }
+        }
+        writer.get();
+        assertEquals(20_000, gameRepo.getGames().size());
+    }
+
+    // A test to check that the top games and rating-sorted queries never list a game twice..
+    // ..while its rating keeps moving it above and below the readers walking the ranking
+    @Test
+    public void shouldNotListGamesTwiceWhileTheyAreReRated() throws Exception {
+        int gameCount = 5000;
+        Users user = new Users(1, "User 1");
+        gameRepo.addUser(user);
+        List<Games> games = new ArrayList<>();
+        for (int i = 1; i <= gameCount; i++) {
+            Games game = new Games(i, "Game " + i, new ArrayList<>(List.of("Arcade")), null, "PC");
+            gameRepo.addGame(game);
+            gameRepo.addRating(user, game, 3);
+            games.add(game);
+        }
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                gameRepo.addRating(user, games.get(i % gameCount), i % 2 == 0 ? 5 : 1);
+            }
+        });
+        GameQuery byRating = new GameQuery();
+        byRating.setSort(GameQuery.Sort.RATING);
+        byRating.setLimit(gameCount);
+        while (!writer.isDone()) {
+            Set<Integer> listed = new HashSet<>();
+            for (RankedGame rankedGame : gameRepo.listTopGames(gameCount, null, 0)) {
+                assertTrue(listed.add(rankedGame.getGame().getGameId()));
+            }
+            listed.clear();
+            for (Games game : gameRepo.queryGames(byRating)) {
+                assertTrue(listed.add(game.getGameId()));
+            }
+        }
+        writer.get();
+    }
+
+    // A test to check that an export from a point reads every user's ratings as they were..
+    // ..when it was opened, while users are re-rating and rating for the first time
+    @Test
+    public void shouldExportRatingsAsOfThePointWhileTheyChange() throws Exception {
+        int userCount = 5000;
+        Games oldGame = new Games(1, "Candy Crush", new ArrayList<>(List.of("Relaxing")), null, "Mobile Phone");
+        Games newGame = new Games(2, "Subway Surfers", new ArrayList<>(List.of("Relaxing")), null, "Mobile Phone");
+        gameRepo.addGame(oldGame);
+        gameRepo.addGame(newGame);
+        List<Users> users = new ArrayList<>();
+        for (int userId = 1; userId <= 2 * userCount; userId++) {
+            Users user = new Users(userId, "User " + userId);
+            gameRepo.addUser(user);
+            users.add(user);
+            // Only the first half has rated when the export starts
+            if (userId <= userCount) {
+                gameRepo.addRating(user, oldGame, 1);
+            }
+        }
+        ExportPoint point = gameRepo.openExportPoint(0);
+        Future<?> writer = executor.submit(() -> {
+            for (int i = users.size() - 1; i >= 0; i--) {
+                gameRepo.addRating(users.get(i), oldGame, 5);
+                gameRepo.addRating(users.get(i), newGame, 5);
+            }
+        });
+        assertTrue(gameRepo.beginExport(point));
+        AtomicInteger rows = new AtomicInteger();
+        int after = 0;
+        int[] userIds;
+        while ((userIds = gameRepo.listRatedUserIds(after, 64)).length > 0) {
+            for (int userId : userIds) {
+                gameRepo.exportRatingsOfUser(point, userId, (ratedBy, gameId, rating) -> {
+                    assertEquals(oldGame.getGameId(), gameId);
+                    assertEquals(1, rating);
+                    rows.incrementAndGet();
+                });
+                after = userId;
+            }
+        }
+        gameRepo.endExport(point, true);
+        writer.get();
+        assertEquals(userCount, rows.get());
+    }
+
+    // A test to check that a thousand virtual threads, each waiting on the write-ahead log..
+    // ..while another holds a rating lock, all finish with every rating counted
+    @Test
+    public void shouldAddRatingsFromVirtualThreads(@TempDir Path dataDirectory) throws Exception {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setDataDirectory(dataDirectory.toString());
+        properties.setWalEnabled(true);
+        properties.setWalDurability(WriteAheadLog.Durability.WRITTEN);
+        GameRepo loggedRepo = new GameRepo(properties);
+        Games game = new Games(1, "Candy Crush", new ArrayList<>(List.of("Relaxing")), null, "Mobile Phone");
+        loggedRepo.addGame(game);
+        try (ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int userId = 1; userId <= 1000; userId++) {
+                Users user = new Users(userId, "User " + userId);
+                futures.add(virtualThreads.submit(() -> {
+                    loggedRepo.addUser(user);
+                    loggedRepo.addRating(user, game, user.getUserId() % 5 + 1);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals(1000, loggedRepo.getUsers().size());
+        assertEquals(1000, loggedRepo.getRatingSummary(1).getCount());
+        loggedRepo.close();
+    }
+}
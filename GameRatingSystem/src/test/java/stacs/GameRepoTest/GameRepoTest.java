@@ -1,14 +1,25 @@
 package stacs.GameRepoTest;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalInt;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import stacs.GameRepo.BatchOutcome;
+import stacs.GameRepo.ExportPoint;
 import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.NewRating;
+import stacs.GameRepo.RankedGame;
+import stacs.GameRepo.RatingSummary;
+import stacs.GameRepo.UserRating;
 import stacs.Games.Games;
 import stacs.Users.Users;
 
@@ -38,11 +49,23 @@ public class GameRepoTest {
     @Test
     public void shouldAddGameToGamesList() {
         gameRepo.addGame(game1);
-        ArrayList<Games> listOfGames = gameRepo.getGames();
+        List<Games> listOfGames = gameRepo.getGames();
         assertEquals(1, listOfGames.size());
         assertTrue(listOfGames.contains(game1));
     }
 
+    // A test to check that the list of games is live, showing games added after it..
+    // ..was fetched, and read-only, so a game cannot skip the indexes
+    @Test
+    public void shouldReturnLiveReadOnlyGamesList() {
+        List<Games> listOfGames = gameRepo.getGames();
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        assertEquals(List.of(game1, game2), listOfGames);
+        assertThrows(UnsupportedOperationException.class, () -> listOfGames.add(game3));
+        assertSame(listOfGames, gameRepo.getGames());
+    }
+
     // A test to check that Game ID is not 0
     // This test is to make sure that a Game with gameID of 0..
     // ..should not be added to the listOfGames
@@ -52,7 +75,7 @@ public class GameRepoTest {
         ArrayList<String> testGameGenreList = new ArrayList<>(List.of( "Thrilling", "Relaxing"));
         Games testGame = new Games(0, "Temple Run", testGameGenreList, LocalDate.of(2011, 8, 04), "Mobile Phone");
         gameRepo.addGame(testGame); // Adding game with ID of 0
-        ArrayList<Games> listOfGames = gameRepo.getGames(); // get list of games
+        List<Games> listOfGames = gameRepo.getGames(); // get list of games
         assertEquals(1, listOfGames.size());
         assertTrue(listOfGames.contains(game1));
         assertFalse(listOfGames.contains(testGame));
@@ -66,7 +89,7 @@ public class GameRepoTest {
         ArrayList<String> testGameGenreList = new ArrayList<>(List.of( "Feel-good", "Relaxing"));
         Games testGame = new Games(-8, "Fruit Ninja", testGameGenreList, LocalDate.of(2010, 5, 21), "Mobile Phone");
         gameRepo.addGame(testGame);
-        ArrayList<Games> listOfGames = gameRepo.getGames(); // Get list of games
+        List<Games> listOfGames = gameRepo.getGames(); // Get list of games
         assertEquals(0, listOfGames.size());
         assertFalse(listOfGames.contains(testGame));
     }
@@ -90,7 +113,7 @@ public class GameRepoTest {
     // ..initiallty be empty
     @Test
     public void gameListShouldBeInitiallyEmpty() {
-        ArrayList<Games> listOfGames = gameRepo.getGames();
+        List<Games> listOfGames = gameRepo.getGames();
         assertEquals(0, listOfGames.size());
     }
 
@@ -109,7 +132,7 @@ public class GameRepoTest {
         gameRepo.addGame(game1);
         gameRepo.addGame(game2);
         gameRepo.addGame(game2);
-        ArrayList<Games> listOfGames = gameRepo.getGames();
+        List<Games> listOfGames = gameRepo.getGames();
         assertEquals(2, listOfGames.size());
     }
 
@@ -148,7 +171,7 @@ public class GameRepoTest {
             gameRepo.addGame(null);
         });
 
-        ArrayList<Games> listOfGames = gameRepo.getGames();
+        List<Games> listOfGames = gameRepo.getGames();
         assertEquals(0, listOfGames.size());
         assertEquals("A Game object is required", anException.getMessage());
     }
@@ -157,7 +180,7 @@ public class GameRepoTest {
     // ..is initially empty
     @Test
     public void userListShouldBeInitiallyEmpty() {
-        ArrayList<Users> listOfUsers = gameRepo.getUsers();
+        List<Users> listOfUsers = gameRepo.getUsers();
         assertEquals(0, listOfUsers.size());
     }
 
@@ -166,7 +189,7 @@ public class GameRepoTest {
     public void shouldAddUserToUsersList() {
         gameRepo.addUser(user1);
         gameRepo.addUser(user2);
-        ArrayList<Users> listOfUsers = gameRepo.getUsers();
+        List<Users> listOfUsers = gameRepo.getUsers();
         assertEquals(2, listOfUsers.size());
         assertTrue(listOfUsers.contains(user1));
         assertTrue(listOfUsers.contains(user2));
@@ -179,7 +202,7 @@ public class GameRepoTest {
         Users testUser = new Users(0, "The Star");
         gameRepo.addUser(user1);
         gameRepo.addUser(testUser);
-        ArrayList<Users> listOfUsers = gameRepo.getUsers();
+        List<Users> listOfUsers = gameRepo.getUsers();
         assertEquals(1, listOfUsers.size());
         assertTrue(listOfUsers.contains(user1));
         assertFalse(listOfUsers.contains(testUser));
@@ -192,7 +215,7 @@ public class GameRepoTest {
     public void testUserIdShouldNotBeNegative() {
         Users testUser = new Users(-15, "The Star");
         gameRepo.addUser(testUser);
-        ArrayList<Users> listOfUsers = gameRepo.getUsers();
+        List<Users> listOfUsers = gameRepo.getUsers();
         assertEquals(0, listOfUsers.size());
         assertFalse(listOfUsers.contains(testUser));
     }
@@ -204,7 +227,7 @@ public class GameRepoTest {
         gameRepo.addUser(user1);
         gameRepo.addUser(user2);
         gameRepo.addUser(user2);
-        ArrayList<Users> listOfUsers = gameRepo.getUsers();
+        List<Users> listOfUsers = gameRepo.getUsers();
         assertEquals(2, listOfUsers.size());
     }
 
@@ -217,7 +240,7 @@ public class GameRepoTest {
             gameRepo.addUser(null);
         });
 
-        ArrayList<Users> listOfUsers = gameRepo.getUsers();
+        List<Users> listOfUsers = gameRepo.getUsers();
         assertEquals(0, listOfUsers.size());
         assertEquals("A User object is required", exception.getMessage());
     }
@@ -312,4 +335,416 @@ public class GameRepoTest {
         assertNull(foundUser, "Should return null for negative user ID");
     }
 
+    // A test to check that a game with an existing ID but a..
+    // ..different title is not added to the listOfGames
+    @Test
+    public void shouldNotAddGameWithDuplicateId() {
+        gameRepo.addGame(game1);
+        ArrayList<String> testGameGenreList = new ArrayList<>(List.of("Puzzle"));
+        Games testGame = new Games(1, "Tetris", testGameGenreList, LocalDate.of(1984, 6, 6), "PC");
+        gameRepo.addGame(testGame);
+        assertEquals(1, gameRepo.getGames().size());
+        assertSame(game1, gameRepo.findGameById(1));
+    }
+
+    // A test to check that games and users can still be found..
+    // ..once many of them have been added
+    @Test
+    public void shouldFindGamesAndUsersInLargeLists() {
+        for (int i = 1; i <= 5000; i++) {
+            gameRepo.addGame(new Games(i, "Game " + i, new ArrayList<>(List.of("Arcade")), null, "PC"));
+            gameRepo.addUser(new Users(i, "User " + i));
+        }
+        assertEquals(5000, gameRepo.getGames().size());
+        assertEquals(5000, gameRepo.getUsers().size());
+        assertEquals("Game 4321", gameRepo.findGameById(4321).getTitle());
+        assertEquals("User 1234", gameRepo.findUserById(1234).getName());
+        assertNull(gameRepo.findGameById(5001));
+    }
+
+    // A test to check that a game whose title differs only in case..
+    // ..is not added to the listOfGames
+    @Test
+    public void shouldNotAddGameWithSameTitleInDifferentCase() {
+        gameRepo.addGame(game1);
+        ArrayList<String> testGameGenreList = new ArrayList<>(List.of("Relaxing"));
+        Games testGame = new Games(10, "CANDY crush", testGameGenreList, LocalDate.of(2014, 1, 1), "PC");
+        gameRepo.addGame(testGame);
+        assertEquals(1, gameRepo.getGames().size());
+        assertNull(gameRepo.findGameById(10));
+    }
+
+    // A test to check that a game can be found by its title, ignoring case
+    @Test
+    public void testFindGameByTitle() {
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        assertSame(game2, gameRepo.findGameByTitle("subway SURFERS"));
+        assertNull(gameRepo.findGameByTitle("Temple Run"));
+    }
+
+    // A test to check that findGameByTitle() rejects a null title
+    @Test
+    public void shouldThrowExceptionIfNullArgumentInFindGameByTitle() {
+        Exception anException = assertThrows(IllegalArgumentException.class, () -> {
+            gameRepo.findGameByTitle(null);
+        });
+        assertEquals("A title is required", anException.getMessage());
+    }
+
+    // A test to check that listGamesByGenre() only returns games..
+    // ..that have every genre in the list, whatever order they were added in
+    @Test
+    public void testListGamesByGenreIntersectsGenres() {
+        gameRepo.addGame(game3);
+        gameRepo.addGame(game2);
+        gameRepo.addGame(game1);
+        ArrayList<String> testGenreList = new ArrayList<>(List.of("thrilling", "RELAXING"));
+        ArrayList<Games> gamesListByGenre = gameRepo.listGamesByGenre(testGenreList);
+        assertEquals(List.of(game2), gamesListByGenre);
+        gamesListByGenre = gameRepo.listGamesByGenre(new ArrayList<>(List.of("Relaxing")));
+        assertEquals(List.of(game1, game2), gamesListByGenre);
+    }
+
+    // A test to check that every game is returned for an empty genre list
+    @Test
+    public void shouldReturnAllGamesForEmptyGenreList() {
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game3);
+        ArrayList<Games> gamesListByGenre = gameRepo.listGamesByGenre(new ArrayList<>());
+        assertEquals(2, gamesListByGenre.size());
+    }
+
+    // A test to check that the rating summary of a game..
+    // ..reflects every rating it was given
+    @Test
+    public void testRatingSummary() {
+        gameRepo.addGame(game1);
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user2, game1, 3);
+        RatingSummary summary = gameRepo.getRatingSummary(1);
+        assertEquals(2, summary.getCount());
+        assertEquals(4.0, summary.getMean(), 1e-9);
+        assertEquals(1.0, summary.getVariance(), 1e-9);
+        assertEquals(Map.of(3, 1L, 5, 1L), summary.getDistribution());
+    }
+
+    // A test to check that re-rating a game replaces the..
+    // ..old rating in the summary instead of adding to it
+    @Test
+    public void testRatingSummaryAfterReRating() {
+        gameRepo.addGame(game1);
+        gameRepo.addRating(user1, game1, 2);
+        gameRepo.addRating(user1, game1, 4);
+        RatingSummary summary = gameRepo.getRatingSummary(1);
+        assertEquals(1, summary.getCount());
+        assertEquals(4.0, summary.getMean(), 1e-9);
+        assertEquals(0.0, summary.getVariance(), 1e-9);
+        assertEquals(Map.of(4, 1L), summary.getDistribution());
+    }
+
+    // A test to check that a game without ratings has an empty summary
+    @Test
+    public void testRatingSummaryWithoutRatings() {
+        gameRepo.addGame(game2);
+        RatingSummary summary = gameRepo.getRatingSummary(2);
+        assertEquals(0, summary.getCount());
+        assertEquals(0.0, summary.getMean(), 1e-9);
+        assertTrue(summary.getDistribution().isEmpty());
+    }
+
+    // A test to check that the top games are ordered by..
+    // ..their weighted average rating
+    @Test
+    public void testListTopGames() {
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        gameRepo.addGame(game3);
+        gameRepo.addRating(user1, game1, 2);
+        gameRepo.addRating(user2, game1, 2);
+        gameRepo.addRating(user1, game2, 5);
+        gameRepo.addRating(user2, game2, 4);
+        gameRepo.addRating(user1, game3, 3);
+        List<RankedGame> topGames = gameRepo.listTopGames(10, null, 1);
+        assertEquals(3, topGames.size());
+        assertSame(game2, topGames.get(0).getGame());
+        assertSame(game3, topGames.get(1).getGame());
+        assertSame(game1, topGames.get(2).getGame());
+        assertEquals(4.5, topGames.get(0).getMeanRating(), 1e-9);
+        assertEquals((5 * 3.0 + 9) / 7, topGames.get(0).getScore(), 1e-9);
+    }
+
+    // A test to check that re-rating a game moves it on the leaderboard
+    @Test
+    public void testListTopGamesAfterReRating() {
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user1, game2, 4);
+        assertSame(game1, gameRepo.listTopGames(1, null, 1).get(0).getGame());
+        gameRepo.addRating(user1, game1, 1);
+        List<RankedGame> topGames = gameRepo.listTopGames(10, null, 1);
+        assertEquals(2, topGames.size());
+        assertSame(game2, topGames.get(0).getGame());
+    }
+
+    // A test to check that the leaderboard can be limited to a genre..
+    // ..and to games with enough ratings
+    @Test
+    public void testListTopGamesByGenreAndMinRatings() {
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        gameRepo.addGame(game3);
+        gameRepo.addRating(user1, game1, 3);
+        gameRepo.addRating(user2, game1, 3);
+        gameRepo.addRating(user1, game2, 5);
+        gameRepo.addRating(user1, game3, 5);
+        List<RankedGame> relaxing = gameRepo.listTopGames(10, "RELAXING", 1);
+        assertEquals(2, relaxing.size());
+        assertSame(game2, relaxing.get(0).getGame());
+        List<RankedGame> wellRated = gameRepo.listTopGames(10, "Relaxing", 2);
+        assertEquals(1, wellRated.size());
+        assertSame(game1, wellRated.get(0).getGame());
+        assertTrue(gameRepo.listTopGames(10, "Horror", 1).isEmpty());
+    }
+
+    // A test to check that games rated without being added are skipped..
+    // ..before the leaderboard is cut to size
+    @Test
+    public void testListTopGamesSkipsUnknownGames() {
+        gameRepo.addGame(game1);
+        gameRepo.addRating(user1, game1, 3);
+        gameRepo.addRating(user1, game2, 5);
+        gameRepo.addRating(user1, game3, 4);
+        List<RankedGame> topGames = gameRepo.listTopGames(1, null, 1);
+        assertEquals(1, topGames.size());
+        assertSame(game1, topGames.get(0).getGame());
+    }
+
+    // A test to check that the users who rated a game can be listed..
+    // ..from the reverse index, one page at a time
+    @Test
+    public void testListRatingsByGame() {
+        gameRepo.addGame(game1);
+        gameRepo.addRating(user2, game1, 3);
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user1, game2, 1);
+        gameRepo.addRating(user1, game1, 4);
+        List<UserRating> ratings = gameRepo.listRatingsByGame(1, 0, 10);
+        assertEquals(2, ratings.size());
+        assertEquals(1, ratings.get(0).getUserId());
+        assertEquals(4, ratings.get(0).getRating());
+        assertEquals(2, ratings.get(1).getUserId());
+        List<UserRating> secondPage = gameRepo.listRatingsByGame(1, 1, 10);
+        assertEquals(1, secondPage.size());
+        assertEquals(2, secondPage.get(0).getUserId());
+        assertTrue(gameRepo.listRatingsByGame(3, 0, 10).isEmpty());
+    }
+
+    // A test to check that a batch of games reports an outcome per game,..
+    // ..including duplicates within the batch, and indexes the added games by genre
+    @Test
+    public void shouldAddGamesInBatch() {
+        Games rpg = new Games(10, "Elden Ring", new ArrayList<>(List.of("RPG")), LocalDate.of(2022, 2, 25), "PC");
+        Games sameTitle = new Games(11, "ELDEN RING", new ArrayList<>(List.of("RPG")), LocalDate.of(2022, 2, 25), "PC");
+        Games anotherRpg = new Games(12, "Skyrim", new ArrayList<>(List.of("rpg", "Open World")), LocalDate.of(2011, 11, 11), "PC");
+        List<BatchOutcome> outcomes = gameRepo.addGames(Arrays.asList(rpg, sameTitle, null, anotherRpg, rpg));
+        assertEquals(List.of(BatchOutcome.ADDED, BatchOutcome.DUPLICATE, BatchOutcome.INVALID,
+                BatchOutcome.ADDED, BatchOutcome.DUPLICATE), outcomes);
+        assertEquals(List.of(rpg, anotherRpg), gameRepo.listGamesByGenre(new ArrayList<>(List.of("RPG"))));
+    }
+
+    // A test to check that a batch of ratings skips unknown users and games..
+    // ..and keeps the last of several ratings by the same user
+    @Test
+    public void shouldAddRatingsInBatch() {
+        gameRepo.addGame(game1);
+        gameRepo.addUser(user1);
+        gameRepo.addUser(user2);
+        List<BatchOutcome> outcomes = gameRepo.addRatings(List.of(
+                new NewRating(user1.getUserId(), game1.getGameId(), 2),
+                new NewRating(999, game1.getGameId(), 5),
+                new NewRating(user2.getUserId(), game1.getGameId(), 4),
+                new NewRating(user1.getUserId(), game1.getGameId(), 5)));
+        assertEquals(List.of(BatchOutcome.ADDED, BatchOutcome.NOT_FOUND, BatchOutcome.ADDED, BatchOutcome.ADDED), outcomes);
+        assertEquals(5, gameRepo.getRatingsOfUser(user1).get(game1));
+        assertEquals(2, gameRepo.getRatingSummary(game1.getGameId()).getCount());
+    }
+
+    // A test to check that a user's ratings version grows when they rate a game..
+    // ..and when a game they rated before it was added is added, and only then
+    @Test
+    public void shouldBumpRatingsVersionWhenRatingsChange() {
+        gameRepo.addGame(game2);
+        assertEquals(0, gameRepo.getRatingsVersion(user1.getUserId()));
+        gameRepo.addRating(user1, game1, 3);
+        long beforeGameAdded = gameRepo.getRatingsVersion(user1.getUserId());
+        assertTrue(beforeGameAdded > 0);
+        gameRepo.addGame(game1);
+        long afterGameAdded = gameRepo.getRatingsVersion(user1.getUserId());
+        assertTrue(afterGameAdded > beforeGameAdded);
+        gameRepo.addRating(user2, game2, 4);
+        gameRepo.addGame(game3);
+        assertEquals(afterGameAdded, gameRepo.getRatingsVersion(user1.getUserId()));
+        gameRepo.addUser(user1);
+        gameRepo.addRatings(List.of(new NewRating(user1.getUserId(), game2.getGameId(), 5)));
+        assertTrue(gameRepo.getRatingsVersion(user1.getUserId()) > afterGameAdded);
+    }
+
+    // A test to check that the users version grows when a user is added or renamed,..
+    // ..and a genre's version only when a game with that genre is added
+    @Test
+    public void shouldBumpUsersAndGamesVersions() {
+        long users = gameRepo.getUsersVersion();
+        gameRepo.addUser(user1);
+        assertTrue(gameRepo.getUsersVersion() > users);
+        users = gameRepo.getUsersVersion();
+        gameRepo.addUser(user1);
+        assertEquals(users, gameRepo.getUsersVersion());
+        gameRepo.updateUserName(user1.getUserId(), "John Smith");
+        assertTrue(gameRepo.getUsersVersion() > users);
+
+        gameRepo.addGame(game1);
+        long all = gameRepo.getGamesVersion(null);
+        long relaxing = gameRepo.getGamesVersion(List.of("RELAXING"));
+        long relaxingAndThrilling = gameRepo.getGamesVersion(List.of("Relaxing", "Thrilling"));
+        assertTrue(relaxing > 0);
+        gameRepo.addGames(List.of(game3));
+        assertTrue(gameRepo.getGamesVersion(List.of()) > all);
+        assertEquals(relaxing, gameRepo.getGamesVersion(List.of("relaxing")));
+        gameRepo.addGame(game2);
+        assertTrue(gameRepo.getGamesVersion(List.of("relaxing")) > relaxing);
+        assertTrue(gameRepo.getGamesVersion(List.of("Thrilling", "Relaxing")) > relaxingAndThrilling);
+    }
+
+    // A test to check that ratings are exported user by user in ID order,..
+    // ..each user's ratings in game ID order, starting after the cursor
+    @Test
+    public void shouldExportRatingsInUserAndGameOrder() {
+        gameRepo.addRating(user2, game3, 1);
+        gameRepo.addRating(user2, game1, 4);
+        gameRepo.addRating(user1, game2, 5);
+        assertArrayEquals(new int[] {1, 2}, gameRepo.listRatedUserIds(0));
+        assertArrayEquals(new int[] {2}, gameRepo.listRatedUserIds(1));
+        assertArrayEquals(new int[] {1}, gameRepo.listRatedUserIds(0, 1));
+        assertArrayEquals(new int[0], gameRepo.listRatedUserIds(2, 1));
+        List<String> rows = new ArrayList<>();
+        for (int userId : gameRepo.listRatedUserIds(0)) {
+            gameRepo.exportRatingsOfUser(userId, (ratedBy, gameId, rating) -> rows.add(ratedBy + "," + gameId + "," + rating));
+        }
+        assertEquals(List.of("1,2,5", "2,1,4", "2,3,1"), rows);
+    }
+
+    // A test to check that an export point reads the ratings as they were when..
+    // ..it was opened, whatever was added or changed since
+    @Test
+    public void shouldExportRatingsAsOfTheExportPoint() {
+        Users user3 = new Users(3, "Jim Doe");
+        gameRepo.addRating(user1, game2, 5);
+        gameRepo.addRating(user2, game1, 4);
+        ExportPoint point = gameRepo.openExportPoint(0);
+        gameRepo.addRating(user1, game2, 1);
+        gameRepo.addRating(user1, game3, 2);
+        gameRepo.addRating(user3, game1, 3);
+        assertEquals(OptionalInt.of(2), gameRepo.findNextRatedUsersCursor(0, 2));
+        assertTrue(gameRepo.beginExport(point));
+        List<String> rows = new ArrayList<>();
+        for (int userId : gameRepo.listRatedUserIds(0, 10)) {
+            gameRepo.exportRatingsOfUser(point, userId, (ratedBy, gameId, rating) -> rows.add(ratedBy + "," + gameId + "," + rating));
+        }
+        gameRepo.endExport(point, false);
+        assertEquals(List.of("1,2,5", "2,1,4"), rows);
+    }
+
+    // A test to check that an export point can only be continued forwards,..
+    // ..and not once its export has been read to the end
+    @Test
+    public void shouldOnlyResumeExportPointsForwards() {
+        ExportPoint point = gameRepo.openExportPoint(0);
+        assertSame(point, gameRepo.resumeExportPoint(point.getId(), 2));
+        assertNull(gameRepo.resumeExportPoint(point.getId(), 1));
+        assertTrue(gameRepo.beginExport(point));
+        gameRepo.endExport(point, true);
+        assertNull(gameRepo.resumeExportPoint(point.getId(), 2));
+        assertFalse(gameRepo.beginExport(point));
+    }
+
+    // A test to check that an export point no export reads from..
+    // ..expires after the keep-alive
+    @Test
+    public void shouldExpireIdleExportPoints() {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setExportPointKeepAlive(Duration.ZERO);
+        GameRepo expiringRepo = new GameRepo(properties);
+        ExportPoint point = expiringRepo.openExportPoint(0);
+        assertNull(expiringRepo.resumeExportPoint(point.getId(), 0));
+        assertFalse(expiringRepo.beginExport(point));
+    }
+
+    // A test to check that users are paged in ID order..
+    // ..whatever order they were added in
+    @Test
+    public void shouldListUsersInPages() {
+        gameRepo.addUser(user2);
+        gameRepo.addUser(new Users(5, "Jim Doe"));
+        gameRepo.addUser(user1);
+        assertEquals(List.of(user1, user2), gameRepo.listUsers(0, 2));
+        assertEquals(5, gameRepo.listUsers(2, 2).get(0).getUserId());
+        assertEquals(1, gameRepo.listUsers(2, 2).size());
+        assertTrue(gameRepo.listUsers(5, 2).isEmpty());
+    }
+
+    // A test to check that games are paged in ID order,..
+    // ..both with and without a genre filter
+    @Test
+    public void shouldListGamesInPages() {
+        gameRepo.addGame(game3);
+        gameRepo.addGame(game2);
+        gameRepo.addGame(game1);
+        assertEquals(List.of(game1, game2), gameRepo.listGames(null, 0, 2));
+        assertEquals(List.of(game3), gameRepo.listGames(List.of(), 2, 2));
+        assertEquals(List.of(game1), gameRepo.listGames(List.of("relaxing"), 0, 1));
+        assertEquals(List.of(game2), gameRepo.listGames(List.of("Relaxing"), 1, 5));
+        assertEquals(List.of(game2), gameRepo.listGames(List.of("Thrilling", "Relaxing"), 0, 5));
+        assertTrue(gameRepo.listGames(List.of("Relaxing"), 2, 5).isEmpty());
+    }
+
+    // A test to check that the cursor of the next page is the ID of..
+    // ..the page's last item, and only when another item follows it
+    @Test
+    public void shouldFindTheNextPageCursor() {
+        gameRepo.addUser(user1);
+        gameRepo.addUser(user2);
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        gameRepo.addGame(game3);
+        assertEquals(OptionalInt.of(1), gameRepo.findNextUsersCursor(0, 1));
+        assertEquals(OptionalInt.empty(), gameRepo.findNextUsersCursor(0, 2));
+        assertEquals(OptionalInt.of(2), gameRepo.findNextGamesCursor(null, 0, 2));
+        assertEquals(OptionalInt.empty(), gameRepo.findNextGamesCursor(null, 1, 2));
+        assertEquals(OptionalInt.of(1), gameRepo.findNextGamesCursor(List.of("Relaxing"), 0, 1));
+        assertEquals(OptionalInt.empty(), gameRepo.findNextGamesCursor(List.of("Relaxing"), 1, 1));
+    }
+
+    // A test to check that operations are timed and the sizes are..
+    // ..reported, and that lookups made inside the repository are not timed
+    @Test
+    public void shouldReportOperationTimesAndSizes() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GameRepo meteredRepo = new GameRepo(new GameRepoProperties(), registry);
+        meteredRepo.addGame(game1);
+        meteredRepo.addGame(game2);
+        meteredRepo.addUser(user1);
+        meteredRepo.addRating(user1, game1, 4);
+        meteredRepo.findGameById(1);
+        assertEquals(2, registry.get("gamerepo.operation").tag("operation", "addGame").timer().count());
+        assertEquals(1, registry.get("gamerepo.operation").tag("operation", "addRating").timer().count());
+        assertEquals(1, registry.get("gamerepo.operation").tag("operation", "findGameById").timer().count());
+        // addGame checks for duplicates without going through isGameInList
+        assertEquals(0, registry.get("gamerepo.operation").tag("operation", "isGameInList").timer().count());
+        assertEquals(2.0, registry.get("gamerepo.games").gauge().value());
+        assertEquals(1.0, registry.get("gamerepo.ratings").gauge().value());
+        assertEquals(2.0, registry.get("gamerepo.index.size").tag("index", "genres").gauge().value());
+        assertEquals(0.0, registry.get("gamerepo.lock.waiting").tag("lock", "catalogue").gauge().value());
+    }
 }
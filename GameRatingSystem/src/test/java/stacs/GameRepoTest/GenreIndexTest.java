@@ -0,0 +1,71 @@
+package stacs.GameRepoTest;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.GenreIndex;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GenreIndexTest {
+    private GenreIndex genreIndex;
+
+    @BeforeEach
+    public void initialSetUpForTests() {
+        genreIndex = new GenreIndex();
+    }
+
+    // A test to check that IDs added out of order come back sorted
+    @Test
+    public void shouldReturnIdsInAscendingOrder() {
+        genreIndex.addGame(30, List.of("Puzzle"));
+        genreIndex.addGame(10, List.of("Puzzle"));
+        genreIndex.addGame(20, List.of("Puzzle"));
+        assertArrayEquals(new int[] {10, 20, 30}, genreIndex.findGameIds(List.of("puzzle")));
+    }
+
+    // A test to check that a genre repeated on a game is only indexed once
+    @Test
+    public void shouldIgnoreRepeatedGenres() {
+        genreIndex.addGame(1, List.of("Puzzle", "PUZZLE"));
+        assertArrayEquals(new int[] {1}, genreIndex.findGameIds(List.of("Puzzle")));
+        assertEquals(1, genreIndex.size());
+    }
+
+    // A test to check that a query for several genres..
+    // ..returns only the games in all of them
+    @Test
+    public void shouldIntersectPostingLists() {
+        for (int id = 1; id <= 100; id++) {
+            genreIndex.addGame(id, id % 3 == 0 ? List.of("Action", "Indie") : List.of("Action"));
+        }
+        genreIndex.addGame(200, List.of("Indie"));
+        int[] ids = genreIndex.findGameIds(List.of("Indie", "Action"));
+        assertEquals(33, ids.length);
+        for (int id : ids) {
+            assertEquals(0, id % 3);
+        }
+    }
+
+    // A test to check that an unknown genre matches nothing
+    @Test
+    public void shouldReturnNothingForUnknownGenre() {
+        genreIndex.addGame(1, List.of("Action"));
+        assertEquals(0, genreIndex.findGameIds(List.of("Action", "Horror")).length);
+    }
+
+    // A test to check that an intersection can be read page by page..
+    // ..from a cursor, and that the pages add up to the whole result
+    @Test
+    public void shouldPageIntersection() {
+        for (int id = 1; id <= 100; id++) {
+            genreIndex.addGame(id, id % 3 == 0 ? List.of("Action", "Indie") : List.of("Action"));
+        }
+        assertArrayEquals(new int[] {3, 6, 9}, genreIndex.findGameIds(List.of("Indie", "Action"), 0, 3));
+        assertArrayEquals(new int[] {12, 15}, genreIndex.findGameIds(List.of("Action", "Indie"), 10, 2));
+        assertArrayEquals(new int[] {99}, genreIndex.findGameIds(List.of("Indie", "Action"), 96, 5));
+        assertEquals(0, genreIndex.findGameIds(List.of("Indie", "Action"), 99, 5).length);
+    }
+}
@@ -0,0 +1,66 @@
+package stacs.GameRepoTest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.IntObjectHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntObjectHashMapTest {
+    private IntObjectHashMap<String> map;
+
+    @BeforeEach
+    public void initialSetUpForTests() {
+        map = new IntObjectHashMap<>();
+    }
+
+    // A test to check that a stored value can be read back
+    @Test
+    public void shouldReturnStoredValue() {
+        map.put(7, "seven");
+        assertEquals("seven", map.get(7));
+        assertTrue(map.containsKey(7));
+        assertEquals(1, map.size());
+    }
+
+    // A test to check that missing keys return null
+    @Test
+    public void shouldReturnNullForMissingKey() {
+        map.put(7, "seven");
+        assertNull(map.get(8));
+        assertFalse(map.containsKey(8));
+    }
+
+    // A test to check that putting an existing key replaces its value
+    @Test
+    public void shouldReplaceExistingValue() {
+        assertNull(map.put(3, "old"));
+        assertEquals("old", map.put(3, "new"));
+        assertEquals("new", map.get(3));
+        assertEquals(1, map.size());
+    }
+
+    // A test to check that zero and negative keys are supported
+    @Test
+    public void shouldSupportZeroAndNegativeKeys() {
+        map.put(0, "zero");
+        map.put(-5, "minus five");
+        assertEquals("zero", map.get(0));
+        assertEquals("minus five", map.get(-5));
+        assertEquals(2, map.size());
+    }
+
+    // A test to check that every entry survives the table growing
+    @Test
+    public void shouldKeepEntriesWhenGrowing() {
+        for (int i = 1; i <= 10_000; i++) {
+            map.put(i, "value" + i);
+        }
+        assertEquals(10_000, map.size());
+        for (int i = 1; i <= 10_000; i++) {
+            assertEquals("value" + i, map.get(i));
+        }
+        assertNull(map.get(10_001));
+    }
+}
@@ -0,0 +1,172 @@
+package stacs.GameRepoTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.ItemSimilarityIndex;
+import stacs.GameRepo.Recommendation;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ItemSimilarityIndexTest {
+    private GameRepo gameRepo;
+    private ItemSimilarityIndex index;
+    private ForkJoinPool pool;
+
+    // Five users rating four games; games 1 and 2 are liked by the same users and game 3 by the others
+    @BeforeEach
+    public void initialSetUpForTests() {
+        gameRepo = new GameRepo();
+        for (int gameId = 1; gameId <= 4; gameId++) {
+            gameRepo.addGame(new Games(gameId, "Game " + gameId, new ArrayList<>(), null, "PC"));
+        }
+        addRatings(gameRepo, new int[][] {
+                {1, 1, 5}, {1, 2, 5}, {1, 3, 1},
+                {2, 1, 4}, {2, 2, 5}, {2, 3, 2}, {2, 4, 5},
+                {3, 1, 1}, {3, 2, 2}, {3, 3, 5},
+                {4, 2, 4}, {4, 3, 1}, {4, 4, 4},
+                {5, 1, 5}, {5, 3, 2}, {5, 4, 5}});
+        index = new ItemSimilarityIndex(gameRepo, 20);
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    // Adds {userId, gameId, rating} triples, adding any user not seen before
+    private static void addRatings(GameRepo repo, int[][] ratings) {
+        for (int[] rating : ratings) {
+            if (repo.findUserById(rating[0]) == null) {
+                repo.addUser(new Users(rating[0], "User " + rating[0]));
+            }
+            repo.addRating(repo.findUserById(rating[0]), repo.findGameById(rating[1]), rating[2]);
+        }
+    }
+
+    // A test to check that neighbours are ordered by adjusted cosine..
+    // ..similarity and that dissimilar games are left out
+    @Test
+    public void shouldKeepPositivelySimilarGamesInOrder() {
+        assertFalse(index.isBuilt());
+        index.rebuild(pool);
+        assertTrue(index.isBuilt());
+        ItemSimilarityIndex.Neighbours neighbours = index.neighbours(1);
+        assertEquals(2, neighbours.size());
+        assertEquals(2, neighbours.gameId(0));
+        assertEquals(0.5965, neighbours.similarity(0), 1e-4);
+        assertEquals(4, neighbours.gameId(1));
+        assertEquals(0.2449, neighbours.similarity(1), 1e-4);
+        // Everyone rates game 3 the opposite way to the other games
+        assertEquals(0, index.neighbours(3).size());
+    }
+
+    // A test to check that only the configured number of neighbours is kept
+    @Test
+    public void shouldKeepOnlyTheMostSimilarNeighbours() {
+        ItemSimilarityIndex smallIndex = new ItemSimilarityIndex(gameRepo, 1);
+        smallIndex.rebuild(pool);
+        assertEquals(1, smallIndex.neighbours(1).size());
+        assertEquals(2, smallIndex.neighbours(1).gameId(0));
+        assertEquals(2, smallIndex.neighbours(4).gameId(0));
+    }
+
+    // A test to check that refreshing the games a new user rated..
+    // ..gives the same neighbours as a full rebuild
+    @Test
+    public void shouldRefreshChangedGamesLikeARebuild() {
+        index.rebuild(pool);
+        addRatings(gameRepo, new int[][] {{6, 1, 5}, {6, 2, 1}});
+        index.markChanged(1);
+        index.markChanged(2);
+        assertEquals(2, index.refresh());
+        assertEquals(0, index.refresh());
+
+        ItemSimilarityIndex rebuilt = new ItemSimilarityIndex(gameRepo, 20);
+        rebuilt.rebuild(pool);
+        for (int gameId = 1; gameId <= 4; gameId++) {
+            ItemSimilarityIndex.Neighbours expected = rebuilt.neighbours(gameId);
+            ItemSimilarityIndex.Neighbours actual = index.neighbours(gameId);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.gameId(i), actual.gameId(i));
+                assertEquals(expected.similarity(i), actual.similarity(i), 1e-4);
+            }
+        }
+    }
+
+    // A test to check that a refresh leaves games with too many raters..
+    // ..to the next rebuild, and still refreshes the others
+    @Test
+    public void shouldLeaveWidelyRatedGamesToTheNextRebuild() {
+        ItemSimilarityIndex boundedIndex = new ItemSimilarityIndex(gameRepo, 20, 4);
+        boundedIndex.rebuild(pool);
+        ItemSimilarityIndex.Neighbours before = boundedIndex.neighbours(1);
+        // Game 1 now has five raters and game 4 has four
+        addRatings(gameRepo, new int[][] {{6, 1, 5}, {6, 4, 1}});
+        boundedIndex.markChanged(1);
+        assertEquals(0, boundedIndex.refresh());
+        assertSame(before, boundedIndex.neighbours(1));
+        boundedIndex.markChanged(4);
+        assertEquals(1, boundedIndex.refresh());
+        boundedIndex.rebuild(pool);
+        assertNotSame(before, boundedIndex.neighbours(1));
+    }
+
+    // A test to check that changes made before the first rebuild are not tracked,..
+    // ..as the rebuild reads them anyway
+    @Test
+    public void shouldIgnoreChangesBeforeTheFirstRebuild() {
+        index.markChanged(1);
+        assertEquals(0, index.refresh());
+        index.rebuild(pool);
+        assertEquals(0, index.refresh());
+    }
+
+    // A test to check that a user is recommended the games they have not rated,..
+    // ..predicted from their centred ratings of the similar games they did rate
+    @Test
+    public void shouldRecommendUnratedGames() {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setRecommendationsEnabled(true);
+        properties.setRecommendationRebuildInterval(Duration.ofHours(1));
+        properties.setRecommendationRefreshInterval(Duration.ofHours(1));
+        GameRepo recommendingRepo = new GameRepo(properties);
+        try {
+            for (Games game : gameRepo.getGames()) {
+                recommendingRepo.addGame(game);
+            }
+            addRatings(recommendingRepo, new int[][] {{3, 1, 1}, {3, 2, 2}, {3, 3, 5},
+                    {2, 1, 4}, {2, 2, 5}, {2, 3, 2}, {2, 4, 5}, {4, 2, 4}, {4, 3, 1}, {4, 4, 4},
+                    {5, 1, 5}, {5, 3, 2}, {5, 4, 5}, {1, 1, 5}, {1, 2, 5}, {1, 3, 1}});
+            recommendingRepo.rebuildSimilarities();
+            List<Recommendation> recommendations = recommendingRepo.recommendGames(3, 10);
+            assertEquals(1, recommendations.size());
+            assertEquals(4, recommendations.get(0).getGame().getGameId());
+            assertEquals(1.696, recommendations.get(0).getPredictedRating(), 1e-3);
+            assertEquals(2, recommendations.get(0).getSimilarGamesRated());
+            // User 2 has rated every game
+            assertTrue(recommendingRepo.recommendGames(2, 10).isEmpty());
+        } finally {
+            recommendingRepo.close();
+        }
+    }
+
+    // A test to check that recommendations have to be enabled
+    @Test
+    public void shouldNotRecommendWhenDisabled() {
+        assertThrows(IllegalStateException.class, () -> gameRepo.recommendGames(1, 10));
+        assertThrows(IllegalStateException.class, () -> gameRepo.rebuildSimilarities());
+    }
+}
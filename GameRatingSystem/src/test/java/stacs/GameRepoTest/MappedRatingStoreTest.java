@@ -0,0 +1,340 @@
+package stacs.GameRepoTest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.MappedRatingStore;
+import stacs.GameRepo.RatingSummary;
+import stacs.GameRepo.UserRating;
+import stacs.GameRepo.WriteAheadLog;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the rating operations of GameRepo against the memory-mapped rating store
+public class MappedRatingStoreTest {
+    @TempDir
+    Path dataDirectory;
+
+    private GameRepo gameRepo;
+    private Games game1, game2, game3;
+    private Users user1, user2;
+
+    @BeforeEach
+    public void initialSetUpForTests() {
+        gameRepo = openRepo();
+        game1 = new Games(1, "Candy Crush", new ArrayList<>(List.of("Relaxing")), LocalDate.of(2012, 4, 12), "Mobile Phone");
+        game2 = new Games(2, "Subway Surfers", new ArrayList<>(List.of("Thrilling")), LocalDate.of(2012, 5, 24), "Mobile Phone");
+        game3 = new Games(3, "Wordscapes", new ArrayList<>(List.of("Wordy")), LocalDate.of(2017, 6, 14), "Mobile Phone");
+        user1 = new Users(1, "John Doe");
+        user2 = new Users(2, "Jane Doe");
+        addCatalogue(gameRepo);
+    }
+
+    @AfterEach
+    public void closeRepo() {
+        gameRepo.close();
+    }
+
+    private GameRepo openRepo() {
+        return new GameRepo(mappedProperties(true));
+    }
+
+    private GameRepoProperties mappedProperties(boolean walEnabled) {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setRatingStore(GameRepoProperties.RatingStoreType.MAPPED);
+        properties.setDataDirectory(dataDirectory.toString());
+        properties.setWalEnabled(walEnabled);
+        // Durability is covered by WriteAheadLogTest; closing the repository flushes the log
+        properties.setWalDurability(WriteAheadLog.Durability.BUFFERED);
+        return properties;
+    }
+
+    // Clears the clean shutdown marker, as if the process had died with the file open
+    private static void markNotClosedCleanly(Path file) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer marker = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 0);
+            channel.write(marker, 16);
+        }
+    }
+
+    private void addCatalogue(GameRepo repo) {
+        repo.addGame(game1);
+        repo.addGame(game2);
+        repo.addGame(game3);
+        repo.addUser(user1);
+        repo.addUser(user2);
+    }
+
+    // A test to check that a user's ratings can be read back..
+    // ..whatever order the games were rated in, and re-rating replaces them
+    @Test
+    public void shouldReturnRatingsOfUser() {
+        gameRepo.addRating(user1, game3, 2);
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user1, game2, 4);
+        gameRepo.addRating(user1, game2, 1);
+        Map<Games, Integer> ratings = gameRepo.getRatingsOfUser(user1);
+        assertEquals(3, ratings.size());
+        assertEquals(5, ratings.get(game1));
+        assertEquals(1, ratings.get(game2));
+        assertEquals(2, ratings.get(game3));
+        assertTrue(gameRepo.getRatingsOfUser(user2).isEmpty());
+        assertEquals(1, gameRepo.getRatingSummary(2).getCount());
+    }
+
+    // A test to check that the ratings, the reverse index and the aggregates..
+    // ..come back after the repository is closed and reopened
+    @Test
+    public void shouldKeepRatingsAcrossRestart() {
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user2, game1, 3);
+        gameRepo.addRating(user2, game2, 4);
+        gameRepo.close();
+
+        gameRepo = openRepo();
+        addCatalogue(gameRepo);
+        // The catalogue comes back from the log, as objects of its own
+        assertEquals(2, gameRepo.getRatingsOfUser(user2).size());
+        assertEquals(4, gameRepo.getRatingsOfUser(user2).get(gameRepo.findGameById(2)));
+        RatingSummary summary = gameRepo.getRatingSummary(1);
+        assertEquals(2, summary.getCount());
+        assertEquals(4.0, summary.getMean(), 1e-9);
+        List<UserRating> raters = gameRepo.listRatingsByGame(1, 0, 10);
+        assertEquals(2, raters.size());
+        assertEquals(1, raters.get(0).getUserId());
+        // The reopened game keeps its genre on the leaderboard
+        assertEquals(1, gameRepo.listTopGames(10, "Relaxing", 1).size());
+    }
+
+    // A test to check that a user with more ratings than fit in one block,..
+    // ..across several small chunks, keeps every rating through growth and reopening
+    @Test
+    public void shouldGrowBlocksAcrossChunks() throws Exception {
+        Path file = dataDirectory.resolve("grow.bin");
+        List<Games> games = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            games.add(new Games(id, "Game " + id, new ArrayList<>(), LocalDate.of(2020, 1, 1), "PC"));
+        }
+        MappedRatingStore store = new MappedRatingStore(file, 2048, id -> null, id -> games.get(id - 1));
+        // Rate in descending order so every insert shifts the earlier entries
+        for (int id = 200; id >= 1; id--) {
+            store.put(user1, games.get(id - 1), id % 100);
+            store.put(user2, games.get(id - 1), 1);
+        }
+        assertEquals(400, store.size());
+        store.close();
+        assertTrue(Files.size(file) > 2048);
+
+        store = new MappedRatingStore(file, 2048, id -> null, id -> games.get(id - 1));
+        assertEquals(400, store.size());
+        Map<Games, Integer> ratings = store.getRatings(user1);
+        assertEquals(200, ratings.size());
+        assertEquals(99, ratings.get(games.get(98)));
+        assertEquals(3, store.put(user1, games.get(2), 7));
+        store.close();
+    }
+
+    // A test to check that a clean close records the log LSN it was given,..
+    // ..and a file not closed cleanly reports none
+    @Test
+    public void shouldRecordLogLsnOnCleanClose() throws Exception {
+        Path file = dataDirectory.resolve("lsn.bin");
+        MappedRatingStore store = new MappedRatingStore(file, id -> null, id -> null);
+        assertEquals(0, store.walLsn());
+        store.put(user1, game1, 5);
+        store.close(1234);
+
+        store = new MappedRatingStore(file, id -> null, id -> null);
+        assertEquals(1234, store.walLsn());
+        assertEquals(1, store.size());
+        store.close();
+        store = new MappedRatingStore(file, id -> null, id -> null);
+        assertEquals(0, store.walLsn());
+        store.close(99);
+        markNotClosedCleanly(file);
+
+        store = new MappedRatingStore(file, id -> null, id -> null);
+        assertEquals(0, store.walLsn());
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    // A test to check that the blocks users outgrow are counted as dead bytes,..
+    // ..and reclaimed when the file is reopened with half of it dead
+    @Test
+    public void shouldReportAndReclaimDeadBytes() throws Exception {
+        Path file = dataDirectory.resolve("dead.bin");
+        List<Games> games = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            games.add(new Games(id, "Game " + id, new ArrayList<>(), LocalDate.of(2020, 1, 1), "PC"));
+        }
+        MappedRatingStore store = new MappedRatingStore(file, 4096, id -> null, id -> games.get(id - 1));
+        for (int id = 1; id <= 4; id++) {
+            store.put(user1, games.get(id - 1), id);
+        }
+        assertEquals(0, store.deadBytes());
+        // The fifth rating moves the user to a block of 8, leaving the 48 byte block of 4 behind
+        store.put(user1, games.get(4), 5);
+        assertEquals(48, store.deadBytes());
+        for (int id = 6; id <= 100; id++) {
+            store.put(user1, games.get(id - 1), id % 100);
+        }
+        store.put(user2, games.get(0), 7);
+        // Blocks of 4, 8, 16, 32 and 64 against live blocks of 128 and 4
+        assertEquals(48 + 64 + 96 + 176 + 336, store.deadBytes());
+        store.close(42);
+
+        store = new MappedRatingStore(file, 4096, id -> null, id -> games.get(id - 1));
+        assertEquals(0, store.deadBytes());
+        assertEquals(42, store.walLsn());
+        assertEquals(101, store.size());
+        // A block allocated after compacting goes after the moved blocks, not over them
+        Users user3 = new Users(3, "Jim Doe");
+        store.put(user3, games.get(9), 3);
+        Map<Games, Integer> ratings = store.getRatings(user1);
+        assertEquals(100, ratings.size());
+        assertEquals(42, ratings.get(games.get(41)));
+        assertEquals(7, store.getRatings(user2).get(games.get(0)));
+        store.close();
+
+        store = new MappedRatingStore(file, 4096, id -> null, id -> games.get(id - 1));
+        assertEquals(102, store.size());
+        assertEquals(3, store.getRatings(user3).get(games.get(9)));
+        store.close();
+    }
+
+    // A test to check that a restart after a clean close leaves the ratings to the file..
+    // ..and only replays the ones logged after it, while the catalogue still comes from the log
+    @Test
+    public void shouldOnlyReplayRatingsLoggedAfterCleanClose() throws Exception {
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.close();
+        // Change the rating in the file alone; replaying the log would put the 5 back
+        Path file = dataDirectory.resolve("ratings.bin");
+        MappedRatingStore store = new MappedRatingStore(file, id -> null, id -> null);
+        long walLsn = store.walLsn();
+        assertTrue(walLsn > 0);
+        store.put(user1, game1, 2);
+        store.close(walLsn);
+
+        gameRepo = openRepo();
+        assertEquals(3, gameRepo.getGames().size());
+        assertEquals(2, gameRepo.getUsers().size());
+        Users replayedUser = gameRepo.findUserById(1);
+        assertEquals(2, gameRepo.getRatingsOfUser(replayedUser).get(gameRepo.findGameById(1)));
+        assertEquals(2.0, gameRepo.getRatingSummary(1).getMean(), 1e-9);
+        gameRepo.addRating(gameRepo.findUserById(2), gameRepo.findGameById(2), 4);
+        gameRepo.close();
+
+        gameRepo = openRepo();
+        assertEquals(2, gameRepo.getRatingsOfUser(gameRepo.findUserById(1)).get(gameRepo.findGameById(1)));
+        assertEquals(4, gameRepo.getRatingsOfUser(gameRepo.findUserById(2)).get(gameRepo.findGameById(2)));
+    }
+
+    // A test to check that ratings outside a byte are rejected
+    @Test
+    public void shouldRejectRatingThatDoesNotFitInAByte() {
+        assertThrows(IllegalArgumentException.class, () -> gameRepo.addRating(user1, game1, 1000));
+    }
+
+    // A test to check that a user's ratings are exported from the mapped blocks in game ID order
+    @Test
+    public void shouldExportRatingsOfUser() {
+        gameRepo.addRating(user1, game3, 2);
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user2, game2, 3);
+        assertArrayEquals(new int[] {1, 2}, gameRepo.listRatedUserIds(0));
+        List<String> rows = new ArrayList<>();
+        gameRepo.exportRatingsOfUser(1, (ratedBy, gameId, rating) -> rows.add(gameId + "=" + rating));
+        assertEquals(List.of("1=5", "3=2"), rows);
+    }
+
+    // A test to check that the mapped store cannot be chosen without the write-ahead log
+    @Test
+    public void shouldRequireWriteAheadLog() {
+        assertThrows(IllegalStateException.class, () -> new GameRepo(mappedProperties(false)));
+    }
+
+    // A test to check that a file not closed cleanly is started afresh..
+    // ..and the repository gets every rating back from the write-ahead log
+    @Test
+    public void shouldRebuildFileNotClosedCleanlyFromLog() throws Exception {
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.addRating(user2, game1, 3);
+        gameRepo.addRating(user2, game2, 4);
+        gameRepo.close();
+        Path file = dataDirectory.resolve("ratings.bin");
+        markNotClosedCleanly(file);
+
+        MappedRatingStore store = new MappedRatingStore(file, id -> null, id -> null);
+        assertEquals(0, store.size());
+        store.close();
+        markNotClosedCleanly(file);
+
+        gameRepo = openRepo();
+        assertEquals(2, gameRepo.getRatingsOfUser(user2).size());
+        assertEquals(4, gameRepo.getRatingsOfUser(user2).get(gameRepo.findGameById(2)));
+        assertEquals(2, gameRepo.getRatingSummary(1).getCount());
+        assertEquals(4.0, gameRepo.getRatingSummary(1).getMean(), 1e-9);
+    }
+
+    // A test to check that users rating at the same time, on their own lock stripes,..
+    // ..keep every rating while their blocks grow into new chunks
+    @Test
+    public void shouldKeepRatingsOfConcurrentWriters() throws Exception {
+        Path file = dataDirectory.resolve("concurrent.bin");
+        List<Games> games = new ArrayList<>();
+        for (int id = 1; id <= 300; id++) {
+            games.add(new Games(id, "Game " + id, new ArrayList<>(), LocalDate.of(2020, 1, 1), "PC"));
+        }
+        MappedRatingStore store = new MappedRatingStore(file, 4096, id -> null, id -> games.get(id - 1));
+        AtomicInteger wrongReads = new AtomicInteger();
+        List<Thread> writers = new ArrayList<>();
+        for (int userId = 1; userId <= 8; userId++) {
+            Users user = new Users(userId, "User " + userId);
+            writers.add(new Thread(() -> {
+                for (int id = 300; id >= 1; id--) {
+                    store.put(user, games.get(id - 1), id % 100);
+                    // Reads of the user's own block run alongside the other writers
+                    if (store.getRatings(user).size() != 301 - id) {
+                        wrongReads.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(0, wrongReads.get());
+        assertEquals(8 * 300, store.size());
+        store.close();
+
+        MappedRatingStore reopened = new MappedRatingStore(file, 4096, id -> null, id -> games.get(id - 1));
+        assertEquals(8 * 300, reopened.size());
+        for (int userId = 1; userId <= 8; userId++) {
+            Map<Games, Integer> ratings = reopened.getRatings(new Users(userId, "User " + userId));
+            assertEquals(300, ratings.size());
+            assertEquals(42, ratings.get(games.get(141)));
+        }
+        reopened.close();
+    }
+}
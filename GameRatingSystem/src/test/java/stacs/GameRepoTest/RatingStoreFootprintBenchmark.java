@@ -0,0 +1,72 @@
+package stacs.GameRepoTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import stacs.GameRepo.CompactRatingStore;
+import stacs.GameRepo.MapRatingStore;
+import stacs.GameRepo.RatingStore;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+/**
+ * Compares the heap used by the rating stores for the same ratings.
+ * Not a unit test: run it by hand, with a heap large enough for the map store, e.g.
+ * {@code java -Xmx4g -cp target/classes:target/test-classes stacs.GameRepoTest.RatingStoreFootprintBenchmark [users] [ratingsPerUser]}
+ */
+public class RatingStoreFootprintBenchmark {
+
+    public static void main(String[] args) {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int ratingsPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int gameCount = 20_000;
+
+        // The Users and Games objects are shared by both runs, so they are not counted
+        List<Users> users = new ArrayList<>(userCount);
+        for (int u = 1; u <= userCount; u++) {
+            users.add(new Users(u, "User " + u));
+        }
+        List<Games> games = new ArrayList<>(gameCount);
+        for (int g = 1; g <= gameCount; g++) {
+            games.add(new Games(g, "Game " + g, new ArrayList<>(), null, "PC"));
+        }
+
+        long ratingCount = (long) userCount * ratingsPerUser;
+        System.out.printf("%,d users x %,d ratings = %,d ratings%n", userCount, ratingsPerUser, ratingCount);
+        measure("map", MapRatingStore::new, users, games, ratingsPerUser, ratingCount);
+        measure("compact", () -> new CompactRatingStore(id -> users.get(id - 1), id -> games.get(id - 1)),
+                users, games, ratingsPerUser, ratingCount);
+    }
+
+    private static void measure(String name, Supplier<RatingStore> factory, List<Users> users, List<Games> games,
+                                int ratingsPerUser, long ratingCount) {
+        long before = usedHeap();
+        RatingStore store = factory.get();
+        // The same seed gives both stores the same ratings
+        Random random = new Random(42);
+        for (Users user : users) {
+            for (int r = 0; r < ratingsPerUser; r++) {
+                store.put(user, games.get(random.nextInt(games.size())), random.nextInt(5) + 1);
+            }
+        }
+        long used = usedHeap() - before;
+        // Reading the size after measuring keeps the store reachable until then
+        System.out.printf("%-8s %,15d bytes  %6.1f bytes/rating  (%,d distinct ratings)%n",
+                name, used, (double) used / ratingCount, store.size());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,116 @@
+package stacs.GameRepoTest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends rating requests to a running GameService from many connections at once and reports
+ * the latency percentiles and the most requests the server had in flight together.
+ * Not a unit test: start the service twice, once with {@code spring.threads.virtual.enabled=false}
+ * and once with {@code true} (with {@code gamerepo.wal-enabled=true} so each rating waits on the log),
+ * and run it by hand against each, e.g.
+ * {@code java -cp target/test-classes stacs.GameRepoTest.RequestThreadLoadBenchmark [baseUrl] [connections] [requestsPerConnection]}
+ *
+ * <p>With the defaults (1,000 connections x 20 ratings, fsynced log), JDK 21.0.1 on a single
+ * CPU shared by the client and the service, two fresh runs of each gave:
+ * <pre>
+ *   platform threads  469 and 526 requests/s   p50 2033 and 1826 ms   p99 5373 and 4790 ms
+ *   virtual threads   559 and 627 requests/s   p50 1534 and 1283 ms   p99 4078 and 6642 ms
+ * </pre>
+ * Every run had all 1,000 requests in flight together and no failures. With one core
+ * the fsync and the CPU bound the throughput more than the 200 Tomcat threads do, so
+ * repeat it on a larger machine before drawing conclusions from the p99.
+ */
+public class RequestThreadLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080/api";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int requestsPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+
+        // One game, and one user per connection so no two connections share a rating lock
+        send(client, post(baseUrl + "/games",
+                "{\"identifier\":1,\"title\":\"Benchmark\",\"genres\":[],\"platform\":\"PC\"}"));
+        for (int u = 1; u <= connections; u++) {
+            send(client, post(baseUrl + "/users", "{\"identifier\":" + u + ",\"name\":\"User " + u + "\"}"));
+        }
+
+        long[] latencies = new long[connections * requestsPerConnection];
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        // Each connection is its own virtual thread, so the client never limits the concurrency
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(connections);
+            for (int c = 0; c < connections; c++) {
+                int userId = c + 1;
+                int offset = c * requestsPerConnection;
+                futures.add(callers.submit(() -> {
+                    for (int r = 0; r < requestsPerConnection; r++) {
+                        HttpRequest request = post(baseUrl + "/ratings?userId=" + userId
+                                + "&gameId=1&rating=" + (r % 5 + 1), "");
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        long sent = System.nanoTime();
+                        try {
+                            if (send(client, request) != 200) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        } finally {
+                            latencies[offset + r] = System.nanoTime() - sent;
+                            inFlight.decrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.printf("%,d connections x %,d requests in %.2f s (%,.0f requests/s, %,d failed)%n",
+                connections, requestsPerConnection, elapsed / 1e9, latencies.length / (elapsed / 1e9), failures.get());
+        System.out.printf("latency ms  p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90),
+                percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        System.out.printf("most requests in flight together: %,d%n", maxInFlight.get());
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static int send(HttpClient client, HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    // Latency at the given fraction of the sorted nanosecond latencies, in milliseconds
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
@@ -0,0 +1,128 @@
+package stacs.GameRepoTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.SimilarGame;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimilarGamesIndexTest {
+    private GameRepo gameRepo;
+
+    // A repository finding similar games, with 20 users and no games yet
+    @BeforeEach
+    public void initialSetUpForTests() {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setSimilarGamesEnabled(true);
+        gameRepo = new GameRepo(properties);
+        for (int userId = 1; userId <= 20; userId++) {
+            gameRepo.addUser(new Users(userId, "User " + userId));
+        }
+    }
+
+    private Games addGame(int gameId, String... genres) {
+        Games game = new Games(gameId, "Game " + gameId, new ArrayList<>(List.of(genres)), null, "PC");
+        gameRepo.addGame(game);
+        return game;
+    }
+
+    // Rates a game by each user from first to last
+    private void rate(Games game, int firstUserId, int lastUserId) {
+        for (int userId = firstUserId; userId <= lastUserId; userId++) {
+            gameRepo.addRating(gameRepo.findUserById(userId), game, 4);
+        }
+    }
+
+    // A test to check that games sharing every genre are similar,..
+    // ..and that games sharing none are left out
+    @Test
+    public void shouldFindGamesWithTheSameGenres() {
+        addGame(1, "RPG", "Open World");
+        addGame(2, "rpg", "open world");
+        addGame(3, "Puzzle");
+        List<SimilarGame> similarGames = gameRepo.findSimilarGames(1, 10);
+        assertEquals(1, similarGames.size());
+        assertEquals(2, similarGames.get(0).getGame().getGameId());
+        assertEquals(1.0, similarGames.get(0).getGenreSimilarity());
+        assertEquals(0.5, similarGames.get(0).getScore());
+    }
+
+    // A test to check that ratings added one at a time move a game..
+    // ..into the buckets of the games rated by the same users
+    @Test
+    public void shouldFindGamesRatedByTheSameUsers() {
+        Games game1 = addGame(1, "RPG");
+        Games game2 = addGame(2, "Puzzle");
+        Games game3 = addGame(3, "Racing");
+        assertTrue(gameRepo.findSimilarGames(1, 10).isEmpty());
+        rate(game1, 1, 10);
+        rate(game2, 1, 10);
+        rate(game3, 11, 20);
+        List<SimilarGame> similarGames = gameRepo.findSimilarGames(1, 10);
+        assertEquals(1, similarGames.size());
+        assertEquals(2, similarGames.get(0).getGame().getGameId());
+        assertEquals(1.0, similarGames.get(0).getRaterSimilarity());
+        assertEquals(0.0, similarGames.get(0).getGenreSimilarity());
+    }
+
+    // A test to check that the games are ranked by the combined score
+    @Test
+    public void shouldRankByGenresAndRaters() {
+        Games game1 = addGame(1, "RPG", "Action");
+        Games game2 = addGame(2, "RPG", "Action");
+        Games game3 = addGame(3, "RPG", "Action");
+        rate(game1, 1, 10);
+        rate(game2, 1, 10);
+        rate(game3, 11, 20);
+        List<SimilarGame> similarGames = gameRepo.findSimilarGames(1, 10);
+        assertEquals(List.of(2, 3), similarGames.stream().map(similar -> similar.getGame().getGameId()).toList());
+        assertEquals(1.0, similarGames.get(0).getScore());
+        assertEquals(0.5, similarGames.get(1).getScore());
+        assertEquals(1, gameRepo.findSimilarGames(1, 1).size());
+    }
+
+    // A test to check that the raters a game had before it was added are..
+    // ..in its signature, whether they are read at startup or when it is added
+    @Test
+    public void shouldIncludeRatingsFromBeforeTheGameWasAdded() {
+        Games game1 = addGame(1, "RPG");
+        rate(game1, 1, 10);
+        Games game2 = new Games(2, "Game 2", new ArrayList<>(List.of("Puzzle")), null, "PC");
+        rate(game2, 1, 10);
+        gameRepo.addGame(game2);
+        assertEquals(1.0, gameRepo.findSimilarGames(1, 10).get(0).getRaterSimilarity());
+    }
+
+    // A test to check that a genre shared by more games than a bucket is read for..
+    // ..gives the games with the lowest IDs, whatever order the bucket is stored in
+    @Test
+    public void shouldReadTheLowestIdsOfADominantGenre() {
+        // IDs whose low bits fall as the IDs rise, so hash order is not ID order
+        List<Integer> gameIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            gameIds.add(i * 4096 + 1023 - i);
+            addGame(gameIds.get(i), "RPG");
+        }
+        List<SimilarGame> similarGames = gameRepo.findSimilarGames(gameIds.get(999), 5);
+        assertEquals(5, similarGames.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(gameIds.get(i), similarGames.get(i).getGame().getGameId());
+        }
+    }
+
+    // A test to check that unknown games are not found,..
+    // ..and that similar games have to be enabled
+    @Test
+    public void shouldNotFindUnknownGamesOrWhenDisabled() {
+        assertNull(gameRepo.findSimilarGames(99, 10));
+        assertThrows(IllegalStateException.class, () -> new GameRepo().findSimilarGames(1, 10));
+    }
+}
@@ -0,0 +1,137 @@
+package stacs.GameRepoTest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.WriteAheadLog;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Checks that a GameRepo restarts from its latest snapshot plus the log written after it
+public class SnapshotStoreTest {
+    @TempDir
+    Path dataDirectory;
+
+    private GameRepo openRepo(GameRepoProperties.RatingStoreType ratingStore) {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setRatingStore(ratingStore);
+        properties.setDataDirectory(dataDirectory.toString());
+        properties.setWalEnabled(true);
+        // Durability is covered by WriteAheadLogTest; closing the repository flushes the log
+        properties.setWalDurability(WriteAheadLog.Durability.BUFFERED);
+        properties.setSnapshotEnabled(true);
+        return new GameRepo(properties);
+    }
+
+    // A test to check that changes made before and after a snapshot..
+    // ..are all there after a restart
+    @Test
+    public void shouldRestoreSnapshotAndLaterChanges() {
+        GameRepo gameRepo = openRepo(GameRepoProperties.RatingStoreType.COMPACT);
+        Games game1 = new Games(1, "Candy Crush", new ArrayList<>(List.of("Relaxing")), LocalDate.of(2012, 4, 12), "Mobile Phone");
+        Games game2 = new Games(2, "Subway Surfers", null, null, null);
+        Users user1 = new Users(1, "John Doe");
+        gameRepo.addGame(game1);
+        gameRepo.addUser(user1);
+        gameRepo.addRating(user1, game1, 4);
+        gameRepo.takeSnapshot();
+        gameRepo.addGame(game2);
+        gameRepo.updateUserName(1, "Jane Doe");
+        gameRepo.addRating(user1, game1, 2);
+        gameRepo.addRating(user1, game2, 5);
+        gameRepo.close();
+
+        gameRepo = openRepo(GameRepoProperties.RatingStoreType.COMPACT);
+        assertEquals(2, gameRepo.getGames().size());
+        assertEquals(List.of("Relaxing"), gameRepo.findGameById(1).getGenres());
+        assertEquals(LocalDate.of(2012, 4, 12), gameRepo.findGameById(1).getReleaseDate());
+        assertNull(gameRepo.findGameById(2).getGenres());
+        assertEquals("Jane Doe", gameRepo.findUserById(1).getName());
+        assertEquals(2, gameRepo.getRatingsOfUser(gameRepo.findUserById(1)).get(gameRepo.findGameById(1)));
+        assertEquals(1, gameRepo.getRatingSummary(1).getCount());
+        assertEquals(1, gameRepo.getRatingSummary(2).getCount());
+        gameRepo.close();
+    }
+
+    // A test to check that a snapshot of more ratings than fit in one block,..
+    // ..some of them too big for a byte, is loaded back in full
+    @Test
+    public void shouldRestoreManyRatingBlocks() throws Exception {
+        GameRepo gameRepo = openRepo(GameRepoProperties.RatingStoreType.MAP);
+        List<Games> games = new ArrayList<>();
+        for (int gameId = 1; gameId <= 100; gameId++) {
+            Games game = new Games(gameId, "Game " + gameId, new ArrayList<>(), LocalDate.of(2020, 1, 1), "PC");
+            games.add(game);
+            gameRepo.addGame(game);
+        }
+        for (int userId = 1; userId <= 1000; userId++) {
+            Users user = new Users(userId, "User " + userId);
+            gameRepo.addUser(user);
+            for (Games game : games) {
+                gameRepo.addRating(user, game, userId == 1 ? 1000 : game.getGameId() % 5 + 1);
+            }
+        }
+        gameRepo.takeSnapshot();
+        gameRepo.close();
+        // The snapshot covers the whole log, so it has been dropped and everything has to come from the snapshot
+        assertFalse(Files.exists(dataDirectory.resolve("gamerepo.wal")));
+
+        gameRepo = openRepo(GameRepoProperties.RatingStoreType.MAP);
+        assertEquals(1000, gameRepo.getUsers().size());
+        assertEquals(1000, gameRepo.getRatingSummary(7).getCount());
+        assertEquals(100, gameRepo.getRatingsOfUser(gameRepo.findUserById(500)).size());
+        assertEquals(1000, gameRepo.getRatingsOfUser(gameRepo.findUserById(1)).get(gameRepo.findGameById(3)));
+        gameRepo.close();
+    }
+
+    // A test to check that each snapshot starts a new segment of the log and deletes..
+    // ..the segments older than the oldest snapshot kept, without losing any change
+    @Test
+    public void shouldDeleteLogSegmentsCoveredBySnapshots() throws Exception {
+        GameRepo gameRepo = openRepo(GameRepoProperties.RatingStoreType.COMPACT);
+        for (int userId = 1; userId <= 4; userId++) {
+            gameRepo.addUser(new Users(userId, "User " + userId));
+            gameRepo.takeSnapshot();
+        }
+        gameRepo.addUser(new Users(5, "User 5"));
+        gameRepo.close();
+        // The segments the two snapshots kept are up to, the second of them still being written
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            assertEquals(2, files.filter(file -> file.getFileName().toString().startsWith("gamerepo.wal")).count());
+        }
+
+        gameRepo = openRepo(GameRepoProperties.RatingStoreType.COMPACT);
+        assertEquals(5, gameRepo.getUsers().size());
+        gameRepo.close();
+    }
+
+    // A test to check that a damaged snapshot is skipped..
+    // ..in favour of the one before it
+    @Test
+    public void shouldFallBackWhenNewestSnapshotIsDamaged() throws Exception {
+        GameRepo gameRepo = openRepo(GameRepoProperties.RatingStoreType.COMPACT);
+        gameRepo.addUser(new Users(1, "John Doe"));
+        gameRepo.takeSnapshot();
+        gameRepo.addUser(new Users(2, "Jane Doe"));
+        Path newest = gameRepo.takeSnapshot();
+        gameRepo.close();
+        byte[] bytes = Files.readAllBytes(newest);
+        bytes[20] ^= 0x7F;
+        Files.write(newest, bytes);
+
+        gameRepo = openRepo(GameRepoProperties.RatingStoreType.COMPACT);
+        assertEquals(2, gameRepo.getUsers().size());
+        gameRepo.close();
+    }
+}
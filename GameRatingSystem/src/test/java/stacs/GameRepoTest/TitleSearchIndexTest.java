@@ -0,0 +1,84 @@
+package stacs.GameRepoTest;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stacs.GameRepo.TitleSearchIndex;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TitleSearchIndexTest {
+    private TitleSearchIndex index;
+
+    // Setting up an index of a few titles to be searched in each test
+    @BeforeEach
+    public void initialSetUpForTests() {
+        index = new TitleSearchIndex();
+        index.addTitle(1, "The Legend of Zelda");
+        index.addTitle(2, "The Legend of Zelda: Breath of the Wild");
+        index.addTitle(3, "Halo: Combat Evolved");
+        index.addTitle(4, "Halloween Party");
+        index.addTitle(5, "Pokémon Red");
+        index.addTitle(6, "Super Mario Bros.");
+    }
+
+    private static List<Integer> ids(List<TitleSearchIndex.Match> matches) {
+        return matches.stream().map(TitleSearchIndex.Match::getGameId).toList();
+    }
+
+    // A test to check that every word is matched,..
+    // ..and that the shorter title ranks first for the same words
+    @Test
+    public void shouldRankShorterTitlesFirst() {
+        assertEquals(List.of(1, 2), ids(index.search("legend zelda", 10)));
+        assertEquals(List.of(2), ids(index.search("wild", 10)));
+        assertEquals(List.of(1), ids(index.search("zelda", 1)));
+    }
+
+    // A test to check that a title matching more of the words ranks first
+    @Test
+    public void shouldRankTitlesMatchingMoreWordsFirst() {
+        List<TitleSearchIndex.Match> matches = index.search("zelda wild", 10);
+        assertEquals(List.of(2, 1), ids(matches));
+        assertTrue(matches.get(0).getScore() > matches.get(1).getScore());
+    }
+
+    // A test to check that case, accents and punctuation are ignored
+    @Test
+    public void shouldFoldCaseAndAccents() {
+        assertEquals(List.of(5), ids(index.search("POKEMON", 10)));
+        assertEquals(List.of(6), ids(index.search("bros", 10)));
+    }
+
+    // A test to check that the last word also matches..
+    // ..the start of longer words, and the other words do not
+    @Test
+    public void shouldMatchTheLastWordAsAPrefix() {
+        assertEquals(List.of(4, 3), ids(index.search("hal", 10)));
+        assertEquals(List.of(3), ids(index.search("halo", 10)));
+        assertEquals(List.of(6), ids(index.search("super ma", 10)));
+        // Only the last word is a prefix
+        assertTrue(index.search("sup mario", 10).stream().allMatch(match -> match.getGameId() == 6));
+    }
+
+    // A test to check that one typo is tolerated in longer words, but not in short ones
+    @Test
+    public void shouldTolerateOneTypo() {
+        assertEquals(List.of(1, 2), ids(index.search("zleda", 10)));
+        assertEquals(List.of(6), ids(index.search("marjo", 10)));
+        assertEquals(List.of(2), ids(index.search("breth", 10)));
+        assertEquals(List.of(3), ids(index.search("combbat", 10)));
+        assertTrue(index.search("rde", 10).isEmpty());
+        assertTrue(index.search("zzelddaa", 10).isEmpty());
+    }
+
+    // A test to check that queries without words find nothing
+    @Test
+    public void shouldFindNothingForEmptyQueries() {
+        assertTrue(index.search("", 10).isEmpty());
+        assertTrue(index.search(" :: ", 10).isEmpty());
+        assertTrue(new TitleSearchIndex().search("zelda", 10).isEmpty());
+    }
+}
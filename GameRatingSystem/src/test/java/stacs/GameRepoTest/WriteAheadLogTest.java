@@ -0,0 +1,130 @@
+package stacs.GameRepoTest;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.GameRepoProperties;
+import stacs.GameRepo.WriteAheadLog;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Checks that a GameRepo with a write-ahead log comes back the same after a restart
+public class WriteAheadLogTest {
+    @TempDir
+    Path dataDirectory;
+
+    private GameRepo openRepo(WriteAheadLog.Durability durability) {
+        GameRepoProperties properties = new GameRepoProperties();
+        properties.setDataDirectory(dataDirectory.toString());
+        properties.setWalEnabled(true);
+        properties.setWalDurability(durability);
+        return new GameRepo(properties);
+    }
+
+    // A test to check that games, users, renames and ratings..
+    // ..are all replayed when the repository is reopened
+    @Test
+    public void shouldReplayEveryChangeOnRestart() {
+        GameRepo gameRepo = openRepo(WriteAheadLog.Durability.FSYNCED);
+        Games game1 = new Games(1, "Candy Crush", new ArrayList<>(List.of("Relaxing", "Puzzle")), LocalDate.of(2012, 4, 12), "Mobile Phone");
+        Games game2 = new Games(2, "Subway Surfers", null, null, null);
+        Users user1 = new Users(1, "John Doe");
+        gameRepo.addGame(game1);
+        gameRepo.addGame(game2);
+        gameRepo.addUser(user1);
+        gameRepo.updateUserName(1, "Jöhn Döe");
+        gameRepo.addRating(user1, game1, 4);
+        gameRepo.addRating(user1, game1, 5);
+        gameRepo.close();
+
+        gameRepo = openRepo(WriteAheadLog.Durability.FSYNCED);
+        assertEquals(2, gameRepo.getGames().size());
+        Games replayed = gameRepo.findGameById(1);
+        assertEquals("Candy Crush", replayed.getTitle());
+        assertEquals(List.of("Relaxing", "Puzzle"), replayed.getGenres());
+        assertEquals(LocalDate.of(2012, 4, 12), replayed.getReleaseDate());
+        assertEquals("Mobile Phone", replayed.getPlatform());
+        assertNull(gameRepo.findGameById(2).getReleaseDate());
+        assertEquals("Jöhn Döe", gameRepo.findUserById(1).getName());
+        assertEquals(5, gameRepo.getRatingsOfUser(gameRepo.findUserById(1)).get(replayed));
+        assertEquals(1, gameRepo.getRatingSummary(1).getCount());
+        gameRepo.close();
+    }
+
+    // A test to check that a record cut short by a crash is dropped..
+    // ..and new records are appended after the last good one
+    @Test
+    public void shouldDropTornRecordAtTheEnd() throws Exception {
+        GameRepo gameRepo = openRepo(WriteAheadLog.Durability.WRITTEN);
+        gameRepo.addUser(new Users(1, "John Doe"));
+        gameRepo.addUser(new Users(2, "Jane Doe"));
+        gameRepo.close();
+        Path log = dataDirectory.resolve("gamerepo.wal");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(log) - 3);
+        }
+
+        gameRepo = openRepo(WriteAheadLog.Durability.WRITTEN);
+        assertEquals(1, gameRepo.getUsers().size());
+        gameRepo.addUser(new Users(3, "Jim Doe"));
+        gameRepo.close();
+
+        gameRepo = openRepo(WriteAheadLog.Durability.WRITTEN);
+        assertEquals(2, gameRepo.getUsers().size());
+        assertNotNull(gameRepo.findUserById(3));
+        gameRepo.close();
+    }
+
+    // A test to check that concurrent writers sharing group commits..
+    // ..all have their changes replayed
+    @Test
+    public void shouldKeepConcurrentRatings() throws Exception {
+        GameRepo gameRepo = openRepo(WriteAheadLog.Durability.FSYNCED);
+        Games game = new Games(1, "Candy Crush", new ArrayList<>(), LocalDate.of(2012, 4, 12), "Mobile Phone");
+        gameRepo.addGame(game);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int firstUser = thread * 50 + 1;
+            GameRepo repo = gameRepo;
+            futures.add(pool.submit(() -> {
+                for (int userId = firstUser; userId < firstUser + 50; userId++) {
+                    Users user = new Users(userId, "User " + userId);
+                    repo.addUser(user);
+                    repo.addRating(user, game, userId % 5 + 1);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        gameRepo.close();
+
+        gameRepo = openRepo(WriteAheadLog.Durability.FSYNCED);
+        assertEquals(400, gameRepo.getUsers().size());
+        assertEquals(400, gameRepo.getRatingSummary(1).getCount());
+        gameRepo.close();
+    }
+
+    // A test to check that a file from another format is not replayed
+    @Test
+    public void shouldRejectFileWithWrongHeader() throws Exception {
+        Files.write(dataDirectory.resolve("gamerepo.wal"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IllegalStateException.class, () -> openRepo(WriteAheadLog.Durability.FSYNCED));
+    }
+}
@@ -3,20 +3,43 @@ package stacs.GameServiceTest;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import stacs.GameService.GameService;
+import stacs.GameService.GameServiceProperties;
+import stacs.GameRepo.BatchOutcome;
+import stacs.GameRepo.ExportPoint;
+import stacs.GameRepo.GameQuery;
 import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.RankedGame;
+import stacs.GameRepo.RatingStore;
+import stacs.GameRepo.UserRating;
+import stacs.GameRepo.RatingSummary;
+import stacs.GameRepo.Recommendation;
+import stacs.GameRepo.SearchHit;
+import stacs.GameRepo.SimilarGame;
 import stacs.Games.Games;
 import stacs.Users.Users;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,6 +49,18 @@ public class GameServiceTest {
     @Mock
     private GameRepo gameRepo;
 
+    // A real registry, so the counters GameService registers can be read back
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // The default settings, handed to GameService's constructor
+    @Spy
+    private GameServiceProperties properties = new GameServiceProperties();
+
+    // A mapper built the way Spring Boot builds its own, handed to GameService's constructor
+    @Spy
+    private ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
     // Inject the mocks into the GameService instance
     @InjectMocks
     private GameService gameService;
@@ -98,6 +133,7 @@ public class GameServiceTest {
     public void testRateGameSuccess() {
         when(gameRepo.findUserById(1)).thenReturn(user); // Mock valid user
         when(gameRepo.findGameById(1)).thenReturn(game);   // Mock valid game
+        when(gameRepo.acceptsRating(5)).thenReturn(true);
         ResponseEntity<Map<String, Serializable>> response = gameService.rateGame("1", "1", 5);
         verify(gameRepo, times(1)).addRating(user, game, 5); // Verify addRating() is called with correct values
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -143,8 +179,8 @@ public class GameServiceTest {
     public void testListGamesByGenreSuccess() {
         List<Games> gamesList = Arrays.asList(game);
         // When any genre list is passed, return the predefined list containing the game
-        when(gameRepo.listGamesByGenre(any())).thenReturn(new ArrayList<>(gamesList));
-        ResponseEntity<List<Games>> response = gameService.listGamesByGenre("RPG");
+        when(gameRepo.listGames(any(), eq(0), eq(101))).thenReturn(new ArrayList<>(gamesList));
+        ResponseEntity<List<Games>> response = gameService.listGamesByGenre(List.of("RPG"), 0, 100, null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(1, response.getBody().size());
     }
@@ -155,8 +191,8 @@ public class GameServiceTest {
      */
     @Test
     public void testListGamesByGenreEmpty() {
-        when(gameRepo.listGamesByGenre(any())).thenReturn(new ArrayList<>()); // Return empty list
-        ResponseEntity<List<Games>> response = gameService.listGamesByGenre("Action");
+        when(gameRepo.listGames(any(), anyInt(), anyInt())).thenReturn(new ArrayList<>()); // Return empty list
+        ResponseEntity<List<Games>> response = gameService.listGamesByGenre(List.of("Action"), 0, 100, null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertTrue(response.getBody().isEmpty());
     }
@@ -168,8 +204,8 @@ public class GameServiceTest {
     @Test
     public void testListUsers() {
         List<Users> usersList = Arrays.asList(user);
-        when(gameRepo.getUsers()).thenReturn(new ArrayList<>(usersList)); // Return list of users
-        ResponseEntity<List<Users>> response = gameService.listUsers();
+        when(gameRepo.listUsers(0, 101)).thenReturn(new ArrayList<>(usersList)); // Return list of users
+        ResponseEntity<List<Users>> response = gameService.listUsers(0, 100, null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(1, response.getBody().size());
     }
@@ -179,18 +215,16 @@ public class GameServiceTest {
      * Expect HTTP 200 OK and a mapping of game titles to their ratings.
      */
     @Test
-    public void testListRatingsByUserSuccess() {
+    public void testListRatingsByUserSuccess() throws IOException {
         when(gameRepo.findUserById(1)).thenReturn(user); // Valid user
         // Create a ratings map for the user
         Map<Games, Integer> ratingsMap = new HashMap<>();
         ratingsMap.put(game, 5);
-        Map<Users, Map<Games, Integer>> userRatings = new HashMap<>();
-        userRatings.put(user, ratingsMap);
-        when(gameRepo.getUserGameRatings()).thenReturn(userRatings); // Return the ratings map
+        when(gameRepo.getRatingsOfUser(user)).thenReturn(ratingsMap); // Return the ratings map
 
-        ResponseEntity<Map<String, Integer>> response = gameService.listRatingsByUser("1");
+        ResponseEntity<byte[]> response = gameService.listRatingsByUser("1", null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        Map<String, Integer> body = response.getBody();
+        Map<String, Integer> body = ratings(response);
         assertNotNull(body);
         assertEquals(1, body.size());
         assertEquals(5, body.get("Elden Ring"));
@@ -201,10 +235,11 @@ public class GameServiceTest {
      * Expect HTTP 404 NOT_FOUND.
      */
     @Test
-    public void testListRatingsByUserFailureUserNotFound() {
+    public void testListRatingsByUserFailureUserNotFound() throws IOException {
         when(gameRepo.findUserById(2)).thenReturn(null); // Simulate user not found
-        ResponseEntity<Map<String, Integer>> response = gameService.listRatingsByUser("2");
+        ResponseEntity<byte[]> response = gameService.listRatingsByUser("2", null);
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertTrue(ratings(response).isEmpty());
     }
 
     /**
@@ -215,8 +250,8 @@ public class GameServiceTest {
     public void testListRatingsByUserEmptyRatings() {
         when(gameRepo.findUserById(1)).thenReturn(user); // Valid user returned
         // Simulate empty ratings map (no rating record for the user)
-        when(gameRepo.getUserGameRatings()).thenReturn(new HashMap<>());
-        ResponseEntity<Map<String, Integer>> response = gameService.listRatingsByUser("1");
+        when(gameRepo.getRatingsOfUser(user)).thenReturn(new HashMap<>());
+        ResponseEntity<byte[]> response = gameService.listRatingsByUser("1", null);
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
@@ -241,4 +276,498 @@ public class GameServiceTest {
             gameService.rateGame("abc", "1", 5);
         });
     }
+
+    /**
+     * Test 16: Retrieve a game by its title when it exists.
+     * Expect HTTP 200 OK and the game in the response body.
+     */
+    @Test
+    public void testFindGameByTitleSuccess() {
+        when(gameRepo.findGameByTitle("elden ring")).thenReturn(game);
+        ResponseEntity<Games> response = gameService.findGameByTitle("elden ring");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(game, response.getBody());
+    }
+
+    /**
+     * Test 17: Retrieve a game by a title that does not exist.
+     * Expect HTTP 404 NOT_FOUND.
+     */
+    @Test
+    public void testFindGameByTitleNotFound() {
+        when(gameRepo.findGameByTitle("Unknown")).thenReturn(null);
+        ResponseEntity<Games> response = gameService.findGameByTitle("Unknown");
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    /**
+     * Test 18: Retrieve games matching several genres.
+     * Expect every genre to be passed to the repository in one list.
+     */
+    @Test
+    public void testListGamesByMultipleGenres() {
+        when(gameRepo.listGames(any(), anyInt(), anyInt())).thenReturn(new ArrayList<>(List.of(game)));
+        ResponseEntity<List<Games>> response = gameService.listGamesByGenre(List.of("RPG", "Open World"), 0, 100, null);
+        verify(gameRepo, times(1)).listGames(List.of("RPG", "Open World"), 0, 101);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().size());
+    }
+
+    /**
+     * Test 19: Retrieve the rating statistics of an existing game.
+     * Expect HTTP 200 OK and the summary from the repository.
+     */
+    @Test
+    public void testGetGameStatsSuccess() {
+        RatingSummary summary = new RatingSummary(1, 2, 8, 34, new int[] {3, 5}, new long[] {1, 1});
+        when(gameRepo.findGameById(1)).thenReturn(game);
+        when(gameRepo.getRatingSummary(1)).thenReturn(summary);
+        ResponseEntity<RatingSummary> response = gameService.getGameStats("1");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(4.0, response.getBody().getMean(), 1e-9);
+    }
+
+    /**
+     * Test 20: Retrieve the rating statistics of a game that does not exist.
+     * Expect HTTP 404 NOT_FOUND.
+     */
+    @Test
+    public void testGetGameStatsNotFound() {
+        when(gameRepo.findGameById(1)).thenReturn(null);
+        ResponseEntity<RatingSummary> response = gameService.getGameStats("1");
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        verify(gameRepo, never()).getRatingSummary(anyInt());
+    }
+
+    /**
+     * Test 21: Retrieve the top games.
+     * Expect HTTP 200 OK and the parameters passed to the repository.
+     */
+    @Test
+    public void testListTopGames() {
+        when(gameRepo.listTopGames(5, "RPG", 3)).thenReturn(new ArrayList<>());
+        ResponseEntity<List<RankedGame>> response = gameService.listTopGames(5, "RPG", 3);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(gameRepo, times(1)).listTopGames(5, "RPG", 3);
+    }
+
+    /**
+     * Test 22: Ask for a leaderboard of invalid size.
+     * Expect HTTP 400 BAD_REQUEST without touching the repository.
+     */
+    @Test
+    public void testListTopGamesInvalidSize() {
+        assertEquals(HttpStatus.BAD_REQUEST, gameService.listTopGames(0, null, 1).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, gameService.listTopGames(1001, null, 1).getStatusCode());
+        verifyNoInteractions(gameRepo);
+    }
+
+    /**
+     * Test 23: Retrieve a page of a game's ratings when more pages follow.
+     * Expect HTTP 200 OK, a full page and the next cursor in the header.
+     */
+    @Test
+    public void testListRatingsByGameWithNextPage() {
+        when(gameRepo.findGameById(1)).thenReturn(game);
+        when(gameRepo.listRatingsByGame(1, 0, 3)).thenReturn(new ArrayList<>(List.of(
+                new UserRating(4, 5), new UserRating(7, 3), new UserRating(9, 1))));
+        ResponseEntity<List<UserRating>> response = gameService.listRatingsByGame("1", 0, 2);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(2, response.getBody().size());
+        assertEquals("7", response.getHeaders().getFirst(GameService.NEXT_CURSOR_HEADER));
+    }
+
+    /**
+     * Test 24: Retrieve the last page of a game's ratings.
+     * Expect HTTP 200 OK and no next cursor.
+     */
+    @Test
+    public void testListRatingsByGameLastPage() {
+        when(gameRepo.findGameById(1)).thenReturn(game);
+        when(gameRepo.listRatingsByGame(1, 7, 3)).thenReturn(new ArrayList<>(List.of(new UserRating(9, 1))));
+        ResponseEntity<List<UserRating>> response = gameService.listRatingsByGame("1", 7, 2);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().size());
+        assertNull(response.getHeaders().getFirst(GameService.NEXT_CURSOR_HEADER));
+    }
+
+    /**
+     * Test 25: Retrieve the ratings of a game that does not exist.
+     * Expect HTTP 404 NOT_FOUND.
+     */
+    @Test
+    public void testListRatingsByGameNotFound() {
+        when(gameRepo.findGameById(1)).thenReturn(null);
+        ResponseEntity<List<UserRating>> response = gameService.listRatingsByGame("1", 0, 10);
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    /**
+     * Test 26: Add games from a JSON array in one request.
+     * Expect HTTP 200 OK, one repository batch and one result line per game.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAddGamesBatch() throws IOException {
+        when(gameRepo.addGames(anyList())).thenReturn(List.of(BatchOutcome.ADDED, BatchOutcome.DUPLICATE));
+        String body = "[{\"identifier\":1,\"title\":\"Elden Ring\",\"genres\":[\"RPG\"],\"releaseDate\":\"2022-02-25\",\"platform\":\"PC\"},"
+                + "{\"identifier\":2,\"title\":\"Elden Ring\"}]";
+        ResponseEntity<StreamingResponseBody> response = gameService.addGames(stream(body));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        org.mockito.ArgumentCaptor<List<Games>> batch = org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(gameRepo, times(1)).addGames(batch.capture());
+        assertEquals(2, batch.getValue().size());
+        assertEquals("PC", batch.getValue().get(0).getPlatform());
+        String[] lines = write(response.getBody()).trim().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"index\":1,\"id\":2,\"status\":\"DUPLICATE\"}", lines[1]);
+    }
+
+    /**
+     * Test 27: Add ratings as newline-delimited JSON, more than fit in one repository batch.
+     * Expect HTTP 200 OK and the ratings handed over in two batches.
+     */
+    @Test
+    public void testAddRatingsBatchFromNdjson() throws IOException {
+        when(gameRepo.addRatings(anyList())).thenAnswer(invocation ->
+                Collections.nCopies(((List<?>) invocation.getArgument(0)).size(), BatchOutcome.ADDED));
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= 1500; i++) {
+            body.append("{\"userId\":").append(i).append(",\"gameId\":1,\"rating\":5}\n");
+        }
+        ResponseEntity<StreamingResponseBody> response = gameService.addRatings(stream(body.toString()));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(gameRepo, times(2)).addRatings(anyList());
+        assertEquals(1500, write(response.getBody()).trim().split("\n").length);
+    }
+
+    /**
+     * Test 28: Add users from a body that breaks off part way through.
+     * Expect HTTP 400 BAD_REQUEST, with the users before the error still added.
+     */
+    @Test
+    public void testAddUsersBatchWithMalformedBody() throws IOException {
+        when(gameRepo.addUsers(anyList())).thenReturn(List.of(BatchOutcome.ADDED));
+        ResponseEntity<StreamingResponseBody> response = gameService.addUsers(stream("[{\"identifier\":1,\"name\":\"JohnDoe\"}, {\"identifier\":"));
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        String[] lines = write(response.getBody()).trim().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"index\":0,\"id\":1,\"status\":\"ADDED\"}", lines[0]);
+        assertTrue(lines[1].contains("\"error\""));
+    }
+
+    /**
+     * Test 29: Export the ratings of the first user as CSV when more users follow.
+     * Expect HTTP 200 OK, the header line and the user's rows, and a cursor to continue from.
+     */
+    @Test
+    public void testExportRatingsAsCsvWithLimit() throws IOException {
+        ExportPoint point = mock(ExportPoint.class);
+        when(point.getId()).thenReturn(42L);
+        when(gameRepo.openExportPoint(0)).thenReturn(point);
+        when(gameRepo.findNextRatedUsersCursor(0, 1)).thenReturn(OptionalInt.of(3));
+        when(gameRepo.beginExport(point)).thenReturn(true);
+        when(gameRepo.listRatedUserIds(0, 1024)).thenReturn(new int[] {3, 7});
+        doAnswer(invocation -> {
+            RatingStore.RatingVisitor visitor = invocation.getArgument(2);
+            visitor.visit(3, 1, 5);
+            visitor.visit(3, 2, 4);
+            return null;
+        }).when(gameRepo).exportRatingsOfUser(eq(point), eq(3), any());
+        ResponseEntity<StreamingResponseBody> response = gameService.exportRatings("csv", 0, 1, null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("3", response.getHeaders().getFirst(GameService.NEXT_CURSOR_HEADER));
+        assertEquals("42", response.getHeaders().getFirst(GameService.EXPORT_POINT_HEADER));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertEquals("userId,gameId,rating\n3,1,5\n3,2,4\n", out.toString(StandardCharsets.UTF_8));
+        verify(gameRepo, never()).exportRatingsOfUser(eq(point), eq(7), any());
+        // More users follow, so the point is kept for the next page
+        verify(gameRepo).endExport(point, false);
+    }
+
+    /**
+     * Test 30: Export the ratings in a format that is not supported.
+     * Expect HTTP 400 BAD_REQUEST.
+     */
+    @Test
+    public void testExportRatingsWithUnknownFormat() {
+        ResponseEntity<StreamingResponseBody> response = gameService.exportRatings("xml", 0, 0, null);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(gameRepo, never()).openExportPoint(anyInt());
+    }
+
+    /**
+     * Test 31: Retrieve a page of users when more users follow.
+     * Expect HTTP 200 OK, the page trimmed to the limit and the last user's ID as the next cursor.
+     */
+    @Test
+    public void testListUsersWithNextPage() {
+        Users user2 = new Users(2, "JaneDoe");
+        Users user3 = new Users(3, "JimDoe");
+        when(gameRepo.listUsers(1, 3)).thenReturn(new ArrayList<>(List.of(user2, user3, new Users(4, "JoeDoe"))));
+        ResponseEntity<List<Users>> response = gameService.listUsers(1, 2, null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(user2, user3), response.getBody());
+        assertEquals("3", response.getHeaders().getFirst(GameService.NEXT_CURSOR_HEADER));
+    }
+
+    /**
+     * Test 32: Retrieve every game, without a genre, with a limit that is too large.
+     * Expect HTTP 400 BAD_REQUEST without asking the repository.
+     */
+    @Test
+    public void testListGamesWithLimitTooLarge() {
+        ResponseEntity<List<Games>> response = gameService.listGamesByGenre(null, 0, 1001, null);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(gameRepo, never()).listGames(any(), anyInt(), anyInt());
+    }
+
+    /**
+     * Test 33: Rate a game that does not exist, then rename a user that does not exist.
+     * Expect each 404 to be counted once under its own endpoint.
+     */
+    @Test
+    public void testNotFoundResponsesAreCounted() {
+        when(gameRepo.findUserById(1)).thenReturn(user);
+        when(gameRepo.findGameById(2)).thenReturn(null);
+        when(gameRepo.findUserById(3)).thenReturn(null);
+        gameService.rateGame("1", "2", 5);
+        gameService.updateUser("3", "NewName");
+        assertEquals(1.0, meterRegistry.get("gameservice.not.found").tag("endpoint", "rateGame").counter().count());
+        assertEquals(1.0, meterRegistry.get("gameservice.not.found").tag("endpoint", "updateUser").counter().count());
+    }
+
+    /**
+     * Test 34: Ask for recommendations for an existing user, before and after the similarities are built.
+     * Expect HTTP 503 SERVICE_UNAVAILABLE until they are built, then HTTP 200 OK with the recommendations.
+     */
+    @Test
+    public void testRecommendGames() {
+        Recommendation recommendation = new Recommendation(game, 4.5, 2);
+        when(gameRepo.findUserById(1)).thenReturn(user);
+        when(gameRepo.recommendGames(1, 5)).thenReturn(null).thenReturn(List.of(recommendation));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, gameService.recommendGames("1", 5).getStatusCode());
+        ResponseEntity<List<Recommendation>> response = gameService.recommendGames("1", 5);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(recommendation), response.getBody());
+    }
+
+    /**
+     * Test 35: Ask for recommendations for a user that doesn't exist, and for too many of them.
+     * Expect HTTP 404 NOT_FOUND and HTTP 400 BAD_REQUEST, without asking the repository to recommend.
+     */
+    @Test
+    public void testRecommendGamesFailure() {
+        when(gameRepo.findUserById(2)).thenReturn(null);
+        assertEquals(HttpStatus.NOT_FOUND, gameService.recommendGames("2", 5).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, gameService.recommendGames("2", 101).getStatusCode());
+        verify(gameRepo, never()).recommendGames(anyInt(), anyInt());
+    }
+
+    /**
+     * Test 36: Ask for the games similar to an existing game, and to one that doesn't exist.
+     * Expect HTTP 200 OK with the similar games, and HTTP 404 NOT_FOUND.
+     */
+    @Test
+    public void testFindSimilarGames() {
+        SimilarGame similarGame = new SimilarGame(game, 0.75, 1.0, 0.5);
+        when(gameRepo.findSimilarGames(2, 10)).thenReturn(List.of(similarGame));
+        when(gameRepo.findSimilarGames(3, 10)).thenReturn(null);
+        ResponseEntity<List<SimilarGame>> response = gameService.findSimilarGames("2", 10);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(similarGame), response.getBody());
+        assertEquals(HttpStatus.NOT_FOUND, gameService.findSimilarGames("3", 10).getStatusCode());
+    }
+
+    /**
+     * Test 37: Ask for similar games while they are disabled.
+     * Expect HTTP 503 SERVICE_UNAVAILABLE.
+     */
+    @Test
+    public void testFindSimilarGamesWhenDisabled() {
+        when(gameRepo.findSimilarGames(2, 10)).thenThrow(new IllegalStateException("Similar games are not enabled"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, gameService.findSimilarGames("2", 10).getStatusCode());
+    }
+
+    /**
+     * Test 38: Search the game titles, then search without any words.
+     * Expect HTTP 200 OK with the hits, then HTTP 400 BAD_REQUEST without asking the repository.
+     */
+    @Test
+    public void testSearchGames() {
+        SearchHit hit = new SearchHit(game, 2.5);
+        when(gameRepo.searchGames("elden", 10)).thenReturn(List.of(hit));
+        ResponseEntity<List<SearchHit>> response = gameService.searchGames("elden", 10);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(hit), response.getBody());
+        assertEquals(HttpStatus.BAD_REQUEST, gameService.searchGames("  ", 10).getStatusCode());
+        verify(gameRepo, times(1)).searchGames(anyString(), anyInt());
+    }
+
+    /**
+     * Test 39: Query the games on a platform released in a range, best rated first,
+     * then with an unknown sort and with an empty date range.
+     * Expect HTTP 200 OK with the games, then HTTP 400 BAD_REQUEST twice without asking the repository.
+     */
+    @Test
+    public void testQueryGames() {
+        when(gameRepo.queryGames(any(GameQuery.class))).thenReturn(List.of(game));
+        LocalDate from = LocalDate.of(2020, 1, 1);
+        LocalDate to = LocalDate.of(2022, 12, 31);
+        ResponseEntity<List<Games>> response = gameService.queryGames(List.of("RPG"), "PC", from, to, "rating", 20);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(game), response.getBody());
+        verify(gameRepo).queryGames(argThat(query -> query.getSort() == GameQuery.Sort.RATING
+                && query.getPlatform().equals("PC") && query.getReleasedFrom().equals(from)
+                && query.getReleasedTo().equals(to) && query.getLimit() == 20));
+        assertEquals(HttpStatus.BAD_REQUEST,
+                gameService.queryGames(null, null, null, null, "price", 20).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST,
+                gameService.queryGames(null, null, to, from, "id", 20).getStatusCode());
+        verify(gameRepo, times(1)).queryGames(any(GameQuery.class));
+    }
+
+    /**
+     * Test 40: Retrieve a user's ratings twice, then again after the user rates a game.
+     * Expect the second response to come from the cache and the third to be rebuilt.
+     */
+    @Test
+    public void testListRatingsByUserCached() throws IOException {
+        when(gameRepo.getRatingsVersion(1)).thenReturn(3L, 3L, 4L);
+        when(gameRepo.findUserById(1)).thenReturn(user);
+        when(gameRepo.getRatingsOfUser(user)).thenReturn(Map.of(game, 5), Map.of(game, 2));
+        assertEquals(Map.of("Elden Ring", 5), ratings(gameService.listRatingsByUser("1", null)));
+        assertEquals(Map.of("Elden Ring", 5), ratings(gameService.listRatingsByUser("1", null)));
+        verify(gameRepo, times(1)).getRatingsOfUser(user);
+        assertEquals(Map.of("Elden Ring", 2), ratings(gameService.listRatingsByUser("1", null)));
+        verify(gameRepo, times(2)).getRatingsOfUser(user);
+        assertEquals(1.0, meterRegistry.get("gameservice.ratings.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(2.0, meterRegistry.get("gameservice.ratings.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    /**
+     * Test 41: Retrieve the users, then again with the ETag of the response,..
+     * then again once a user has been added.
+     * Expect HTTP 200 OK with an ETag, then HTTP 304 NOT_MODIFIED without reading the users,..
+     * then HTTP 200 OK with a different ETag.
+     */
+    @Test
+    public void testListUsersNotModified() {
+        when(gameRepo.getUsersVersion()).thenReturn(7L, 7L, 8L);
+        when(gameRepo.listUsers(0, 101)).thenReturn(new ArrayList<>(List.of(user)));
+        String etag = gameService.listUsers(0, 100, null).getHeaders().getETag();
+        assertNotNull(etag);
+        ResponseEntity<List<Users>> response = gameService.listUsers(0, 100, "\"other\", W/" + etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(gameRepo, times(1)).listUsers(anyInt(), anyInt());
+        response = gameService.listUsers(0, 100, etag);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(etag, response.getHeaders().getETag());
+    }
+
+    /**
+     * Test 42: Retrieve the games of a genre and a user's ratings with the ETags of earlier responses.
+     * Expect HTTP 304 NOT_MODIFIED for both without reading the games or the ratings.
+     */
+    @Test
+    public void testListGamesAndRatingsNotModified() {
+        when(gameRepo.getGamesVersion(List.of("RPG"))).thenReturn(3L);
+        when(gameRepo.listGames(List.of("RPG"), 0, 101)).thenReturn(new ArrayList<>(List.of(game)));
+        String gamesETag = gameService.listGamesByGenre(List.of("RPG"), 0, 100, null).getHeaders().getETag();
+        assertEquals(HttpStatus.NOT_MODIFIED, gameService.listGamesByGenre(List.of("RPG"), 0, 100, gamesETag).getStatusCode());
+        verify(gameRepo, times(1)).listGames(any(), anyInt(), anyInt());
+        when(gameRepo.getRatingsVersion(1)).thenReturn(2L);
+        when(gameRepo.findUserById(1)).thenReturn(user);
+        when(gameRepo.getRatingsOfUser(user)).thenReturn(Map.of(game, 5));
+        String ratingsETag = gameService.listRatingsByUser("1", null).getHeaders().getETag();
+        assertEquals(HttpStatus.NOT_MODIFIED, gameService.listRatingsByUser("1", ratingsETag).getStatusCode());
+        verify(gameRepo, times(1)).getRatingsOfUser(user);
+    }
+
+    /**
+     * Test 43: Rate a game with write-behind turned on, then read the user's ratings.
+     * Expect HTTP 202 ACCEPTED, the rating added in a batch by the writer thread,..
+     * and the ratings read only once it has been.
+     */
+    @Test
+    public void testRateGameWriteBehind() throws IOException {
+        GameServiceProperties writeBehind = new GameServiceProperties();
+        writeBehind.setRatingsWriteBehind(true);
+        GameService writeBehindService = new GameService(gameRepo, meterRegistry, writeBehind);
+        try {
+            when(gameRepo.findUserById(1)).thenReturn(user);
+            when(gameRepo.findGameById(1)).thenReturn(game);
+            when(gameRepo.acceptsRating(4)).thenReturn(true);
+            // Matched when called, as the writer clears and reuses its batch list afterwards
+            when(gameRepo.addRatings(argThat(batch -> batch.size() == 1 && batch.get(0).getRating() == 4)))
+                    .thenReturn(List.of(BatchOutcome.ADDED));
+            when(gameRepo.getRatingsOfUser(user)).thenReturn(Map.of(game, 4));
+            ResponseEntity<Map<String, Serializable>> response = writeBehindService.rateGame("1", "1", 4);
+            assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+            assertEquals(Map.of("Elden Ring", 4), ratings(writeBehindService.listRatingsByUser("1", null)));
+            verify(gameRepo).addRatings(anyList());
+            verify(gameRepo, never()).addRating(any(), any(), anyInt());
+        } finally {
+            writeBehindService.close();
+        }
+    }
+
+    /**
+     * Test 44: Rate a game with a value the repository's rating store cannot hold.
+     * Expect HTTP 400 BAD_REQUEST with an error message, and no rating added.
+     */
+    @Test
+    public void testRateGameOutOfRange() {
+        when(gameRepo.findUserById(1)).thenReturn(user);
+        when(gameRepo.findGameById(1)).thenReturn(game);
+        when(gameRepo.acceptsRating(300)).thenReturn(false);
+        ResponseEntity<Map<String, Serializable>> response = gameService.rateGame("1", "1", 300);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        Map<String, Serializable> body = response.getBody();
+        assertNotNull(body);
+        assertEquals("Rating out of range", body.get("error"));
+        assertEquals(300, body.get("rating"));
+        verify(gameRepo, never()).addRating(any(), any(), anyInt());
+    }
+
+    /**
+     * Test 45: Add a rating batch whose item has a field the rating does not know.
+     * Expect HTTP 200 OK and the rating added, as Spring's mapper ignores unknown fields.
+     */
+    @Test
+    public void testAddRatingsBatchIgnoresUnknownFields() throws IOException {
+        when(gameRepo.addRatings(anyList())).thenReturn(List.of(BatchOutcome.ADDED));
+        String body = "{\"userId\":1,\"gameId\":1,\"rating\":5,\"source\":\"import\"}\n";
+        ResponseEntity<StreamingResponseBody> response = gameService.addRatings(stream(body));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("{\"index\":0,\"id\":1,\"status\":\"ADDED\"}\n", write(response.getBody()));
+    }
+
+    /**
+     * Test 46: Continue a ratings export from a point that has expired.
+     * Expect HTTP 410 GONE, so the client starts the export again.
+     */
+    @Test
+    public void testExportRatingsFromExpiredPoint() {
+        when(gameRepo.resumeExportPoint(42L, 3)).thenReturn(null);
+        ResponseEntity<StreamingResponseBody> response = gameService.exportRatings("csv", 3, 1, 42L);
+        assertEquals(HttpStatus.GONE, response.getStatusCode());
+        verify(gameRepo, never()).openExportPoint(anyInt());
+    }
+
+    private static Map<String, Integer> ratings(ResponseEntity<byte[]> response) throws IOException {
+        return new ObjectMapper().readValue(response.getBody(), new TypeReference<Map<String, Integer>>() { });
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String write(StreamingResponseBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,181 @@
+package stacs.GameServiceTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stacs.GameRepo.BatchOutcome;
+import stacs.GameRepo.GameRepo;
+import stacs.GameRepo.NewRating;
+import stacs.GameService.RatingWriteBehind;
+import stacs.GameService.RatingWriteBehind.QueuedRatings;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RatingWriteBehindTest {
+    private static final int USERS = 8;
+    private static final int GAMES = 500;
+
+    private CountDownLatch writerEntered;
+    private CountDownLatch writerReleased;
+    private AtomicInteger batches;
+    private GameRepo gameRepo;
+    private SimpleMeterRegistry registry;
+    private RatingWriteBehind writeBehind;
+
+    // Setting up a repository with a few users and games, which holds..
+    // ..the writer thread until a test lets it go
+    @BeforeEach
+    public void setUp() {
+        writerEntered = new CountDownLatch(1);
+        writerReleased = new CountDownLatch(1);
+        batches = new AtomicInteger();
+        gameRepo = new GameRepo() {
+            @Override
+            public List<BatchOutcome> addRatings(List<NewRating> newRatings) {
+                writerEntered.countDown();
+                try {
+                    writerReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                batches.incrementAndGet();
+                return super.addRatings(newRatings);
+            }
+        };
+        for (int userId = 1; userId <= USERS; userId++) {
+            gameRepo.addUser(new Users(userId, "User " + userId));
+        }
+        for (int gameId = 1; gameId <= GAMES; gameId++) {
+            gameRepo.addGame(new Games(gameId, "Game " + gameId, new ArrayList<>(List.of("RPG")),
+                    LocalDate.of(2020, 1, 1), "PC"));
+        }
+        registry = new SimpleMeterRegistry();
+        writeBehind = new RatingWriteBehind(gameRepo, 1000, 100, registry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        writerReleased.countDown();
+        writeBehind.close();
+    }
+
+    // A test to check that ratings queued from several threads at once..
+    // ..all reach the repository, in batches
+    @Test
+    public void shouldAddEveryQueuedRating() throws InterruptedException {
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> submitters = new ArrayList<>();
+        for (int userId = 1; userId <= USERS; userId++) {
+            int user = userId;
+            submitters.add(new Thread(() -> {
+                for (int gameId = 1; gameId <= GAMES / 4; gameId++) {
+                    if (writeBehind.offer(user, gameId, 1 + gameId % 5)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        // The 1000 ratings fit in the ring while the writer is held
+        assertEquals(USERS * GAMES / 4, accepted.get());
+        writerReleased.countDown();
+        for (int userId = 1; userId <= USERS; userId++) {
+            assertEquals(QueuedRatings.APPLIED, writeBehind.awaitApplied(userId, Duration.ofSeconds(10)));
+            assertEquals(GAMES / 4, gameRepo.getRatingsOfUser(gameRepo.findUserById(userId)).size());
+        }
+        assertEquals(0, writeBehind.size());
+        // The batch the writer was held in, then the rest 100 at a time
+        assertTrue(batches.get() <= 11);
+    }
+
+    // A test to check that a full queue rejects ratings rather than waiting,..
+    // ..and that a user's reads wait for their own queued ratings only
+    @Test
+    public void shouldRejectRatingsWhenFull() throws InterruptedException {
+        // One rating is taken out by the writer, which is held, and 1024 more fill the ring
+        assertTrue(writeBehind.offer(2, 1, 3));
+        writerEntered.await();
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(writeBehind.offer(1 + i % 2, 1 + i % GAMES, 3));
+        }
+        assertFalse(writeBehind.offer(1, 1, 3));
+        assertEquals(1.0, registry.get("gameservice.ratings.queue.rejected").counter().count());
+        assertEquals(QueuedRatings.PENDING, writeBehind.awaitApplied(1, Duration.ofMillis(10)));
+        assertEquals(QueuedRatings.APPLIED, writeBehind.awaitApplied(3, Duration.ZERO));
+        writerReleased.countDown();
+        assertEquals(QueuedRatings.APPLIED, writeBehind.awaitApplied(1, Duration.ofSeconds(10)));
+        assertEquals(QueuedRatings.APPLIED, writeBehind.awaitApplied(2, Duration.ofSeconds(10)));
+        assertTrue(writeBehind.offer(1, 1, 3));
+    }
+
+    // A test to check that a rating the repository does not add is reported..
+    // ..to the user's next read, and only to that one
+    @Test
+    public void shouldReportDroppedRatingsOnce() {
+        assertTrue(writeBehind.offer(1, GAMES + 1, 3));
+        assertTrue(writeBehind.offer(1, 1, 3));
+        writerReleased.countDown();
+        assertEquals(QueuedRatings.DROPPED, writeBehind.awaitApplied(1, Duration.ofSeconds(10)));
+        assertEquals(QueuedRatings.APPLIED, writeBehind.awaitApplied(1, Duration.ofSeconds(10)));
+        assertEquals(QueuedRatings.APPLIED, writeBehind.awaitApplied(2, Duration.ZERO));
+        assertEquals(1, gameRepo.getRatingsOfUser(gameRepo.findUserById(1)).size());
+        assertEquals(1.0, registry.get("gameservice.ratings.queue.dropped").counter().count());
+    }
+
+    // A test to check that every rating accepted while closing is added,..
+    // ..including ones claimed just before close() but published after it
+    @Test
+    public void shouldAddEveryRatingAcceptedWhileClosing() throws InterruptedException {
+        writerReleased.countDown();
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(USERS);
+        List<Thread> submitters = new ArrayList<>();
+        for (int userId = 1; userId <= USERS; userId++) {
+            int user = userId;
+            submitters.add(new Thread(() -> {
+                started.countDown();
+                for (int gameId = 1; gameId <= GAMES; gameId++) {
+                    if (writeBehind.offer(user, gameId, 1 + gameId % 5)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        started.await();
+        writeBehind.close();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        int added = 0;
+        for (int userId = 1; userId <= USERS; userId++) {
+            added += gameRepo.getRatingsOfUser(gameRepo.findUserById(userId)).size();
+        }
+        assertEquals(accepted.get(), added);
+        assertEquals(0, writeBehind.size());
+    }
+
+    // A test to check that closing adds the ratings still queued and stops taking more
+    @Test
+    public void shouldAddQueuedRatingsOnClose() {
+        assertTrue(writeBehind.offer(1, 1, 5));
+        assertTrue(writeBehind.offer(1, 2, 4));
+        writerReleased.countDown();
+        writeBehind.close();
+        assertEquals(2, gameRepo.getRatingsOfUser(gameRepo.findUserById(1)).size());
+        assertFalse(writeBehind.offer(1, 3, 4));
+    }
+}
@@ -0,0 +1,81 @@
+package stacs.GameServiceTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import stacs.GameService.RatingsResponseCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RatingsResponseCacheTest {
+    // Room for two 100-byte bodies in each of the 16 segments, with their overhead
+    private static final long MAX_BYTES = 16 * 2 * (100 + 96);
+
+    private SimpleMeterRegistry registry;
+    private RatingsResponseCache cache;
+    private AtomicInteger builds;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new RatingsResponseCache(MAX_BYTES, registry);
+        builds = new AtomicInteger();
+    }
+
+    // Builds a body of the given size, counting the builds
+    private byte[] body(int size) {
+        builds.incrementAndGet();
+        return new byte[size];
+    }
+
+    // A test to check that a body is served from the cache while the version stays the same
+    @Test
+    public void shouldServeTheSameVersionFromTheCache() {
+        byte[] first = cache.get(1, 5, () -> body(100));
+        assertSame(first, cache.get(1, 5, () -> body(100)));
+        assertEquals(1, builds.get());
+        assertEquals(1.0, registry.get("gameservice.ratings.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(1.0, registry.get("gameservice.ratings.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    // A test to check that a newer version rebuilds the body,..
+    // ..and that a request which read an older version does not replace it
+    @Test
+    public void shouldRebuildWhenTheVersionChanges() {
+        cache.get(1, 5, () -> body(100));
+        byte[] newer = cache.get(1, 6, () -> body(100));
+        assertEquals(2, builds.get());
+        cache.get(1, 5, () -> body(100));
+        assertSame(newer, cache.get(1, 6, () -> body(100)));
+        assertEquals(3, builds.get());
+    }
+
+    // A test to check that a segment past its size evicts its least recently read body
+    @Test
+    public void shouldEvictTheLeastRecentlyReadBody() {
+        // User IDs 16 apart share a segment
+        cache.get(16, 1, () -> body(100));
+        cache.get(32, 1, () -> body(100));
+        cache.get(16, 1, () -> body(100));
+        cache.get(48, 1, () -> body(100));
+        assertEquals(3, builds.get());
+        cache.get(16, 1, () -> body(100));
+        assertEquals(3, builds.get());
+        cache.get(32, 1, () -> body(100));
+        assertEquals(4, builds.get());
+        assertEquals(2.0, registry.get("gameservice.ratings.cache.evictions").counter().count());
+        assertEquals(2 * (100 + 96), cache.sizeInBytes());
+    }
+
+    // A test to check that missing bodies and bodies larger than a segment are not stored
+    @Test
+    public void shouldNotStoreMissingOrOversizedBodies() {
+        assertNull(cache.get(1, 1, () -> null));
+        cache.get(2, 1, () -> body(1000));
+        cache.get(2, 1, () -> body(1000));
+        assertEquals(2, builds.get());
+        assertEquals(0, cache.sizeInBytes());
+    }
+}
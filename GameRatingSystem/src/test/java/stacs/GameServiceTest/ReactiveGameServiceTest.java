@@ -0,0 +1,227 @@
+package stacs.GameServiceTest;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import stacs.GameRepo.BatchOutcome;
+import stacs.GameRepo.ExportPoint;
+import stacs.GameRepo.GameRepo;
+import stacs.GameService.GameService;
+import stacs.GameService.GameServiceProperties;
+import stacs.GameService.ReactiveGameService;
+import stacs.Games.Games;
+import stacs.Users.Users;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveGameServiceTest {
+
+    // Create a mock instance of GameRepo to simulate repository behavior
+    @Mock
+    private GameRepo gameRepo;
+
+    // A real registry, so the counters ReactiveGameService registers can be read back
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // The default settings, handed to ReactiveGameService's constructor
+    @Spy
+    private GameServiceProperties properties = new GameServiceProperties();
+
+    // A mapper built the way Spring Boot builds its own, handed to ReactiveGameService's constructor
+    @Spy
+    private ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    // Inject the mocks into the ReactiveGameService instance
+    @InjectMocks
+    private ReactiveGameService gameService;
+
+    private Games game;
+    private Users user;
+
+    @BeforeEach
+    public void setUp() {
+        game = new Games(1, "Elden Ring", new ArrayList<>(Arrays.asList("RPG")), null, "PC");
+        user = new Users(1, "JohnDoe");
+    }
+
+    /**
+     * Test 1: Verify that adding a game calls addGame() on the repository and returns HTTP 200 OK.
+     */
+    @Test
+    public void testAddGame() {
+        ResponseEntity<Void> response = gameService.addGame(game).block();
+        verify(gameRepo, times(1)).addGame(game);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    /**
+     * Test 2: Attempt to rate a game with a user that doesn't exist.
+     * Expect HTTP 404 NOT_FOUND and no rating added.
+     */
+    @Test
+    public void testRateGameFailure() {
+        when(gameRepo.findUserById(1)).thenReturn(null);
+        when(gameRepo.findGameById(1)).thenReturn(game);
+        ResponseEntity<Map<String, Serializable>> response = gameService.rateGame("1", "1", 5).block();
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals("Game or user not found", response.getBody().get("error"));
+        verify(gameRepo, never()).addRating(any(), any(), anyInt());
+        assertEquals(1.0, meterRegistry.get("gameservice.not.found").tag("endpoint", "rateGame").counter().count());
+    }
+
+    /**
+     * Test 3: Stream a page of users longer than one chunk.
+     * Expect the page trimmed to the limit, read from the repository one chunk after another.
+     */
+    @Test
+    public void testListUsersStreamsInChunks() {
+        when(gameRepo.listUsers(anyInt(), anyInt())).thenAnswer(invocation -> users(invocation.getArgument(0),
+                invocation.getArgument(1), 150));
+        ResponseEntity<Flux<Users>> response = gameService.listUsers(0, 100, null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<Users> page = response.getBody().collectList().block();
+        assertEquals(100, page.size());
+        assertEquals(100, page.get(99).getUserId());
+        verify(gameRepo).listUsers(0, 64);
+        verify(gameRepo).listUsers(64, 36);
+    }
+
+    /**
+     * Test 4: Take only the first few users of a page.
+     * Expect only the first chunk to be read from the repository.
+     */
+    @Test
+    public void testListUsersReadsOnlyWhatIsTaken() {
+        when(gameRepo.listUsers(anyInt(), anyInt())).thenAnswer(invocation -> users(invocation.getArgument(0),
+                invocation.getArgument(1), 1000));
+        List<Users> first = gameService.listUsers(0, 1000, null).getBody().take(10).collectList().block();
+        assertEquals(10, first.size());
+        verify(gameRepo, times(1)).listUsers(anyInt(), anyInt());
+    }
+
+    /**
+     * Test 5: Stream users with a limit that is out of range.
+     * Expect HTTP 400 BAD_REQUEST without touching the repository.
+     */
+    @Test
+    public void testListUsersWithInvalidLimit() {
+        ResponseEntity<Flux<Users>> response = gameService.listUsers(0, 0, null);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(gameRepo, never()).listUsers(anyInt(), anyInt());
+    }
+
+    /**
+     * Test 6: Add users from a body that breaks off part way through.
+     * Expect HTTP 400 BAD_REQUEST, with the users before the error still added.
+     */
+    @Test
+    public void testAddUsersBatchWithMalformedBody() {
+        when(gameRepo.addUsers(anyList())).thenReturn(List.of(BatchOutcome.ADDED));
+        Flux<Users> body = Flux.just(user).concatWith(Flux.error(new DecodingException("JSON decoding error")));
+        ResponseEntity<Flux<DataBuffer>> response = gameService.addUsers(body).block();
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(gameRepo, times(1)).addUsers(List.of(user));
+        String lines = DataBufferUtils.join(response.getBody())
+                .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                .block();
+        assertTrue(lines.startsWith("{\"index\":0,\"id\":1,\"status\":\"ADDED\"}\n"));
+        assertTrue(lines.contains("\"error\""));
+    }
+
+    /**
+     * Test 7: Stream a page of users when more users follow.
+     * Expect the page and the ID of its last user in the X-Next-Cursor header.
+     */
+    @Test
+    public void testListUsersWithNextCursor() {
+        when(gameRepo.findNextUsersCursor(0, 100)).thenReturn(OptionalInt.of(100));
+        when(gameRepo.listUsers(anyInt(), anyInt())).thenAnswer(invocation -> users(invocation.getArgument(0),
+                invocation.getArgument(1), 150));
+        ResponseEntity<Flux<Users>> response = gameService.listUsers(0, 100, null);
+        assertEquals("100", response.getHeaders().getFirst(GameService.NEXT_CURSOR_HEADER));
+        List<Users> page = response.getBody().collectList().block();
+        assertEquals(100, page.size());
+        assertEquals(100, page.get(99).getUserId());
+    }
+
+    /**
+     * Test 8: Stream a page of users after a user was added inside it, once its cursor was sent.
+     * Expect the page to run on to the cursor, so the next page skips no user.
+     */
+    @Test
+    public void testListUsersRunsToTheCursor() {
+        // The cursor was found while one user of the page was still missing
+        when(gameRepo.findNextUsersCursor(0, 100)).thenReturn(OptionalInt.of(101));
+        when(gameRepo.listUsers(anyInt(), anyInt())).thenAnswer(invocation -> users(invocation.getArgument(0),
+                invocation.getArgument(1), 150));
+        List<Users> page = gameService.listUsers(0, 100, null).getBody().collectList().block();
+        assertEquals(101, page.size());
+        assertEquals(101, page.get(100).getUserId());
+    }
+
+    /**
+     * Test 9: Stream the last page of games of a genre.
+     * Expect the games and no X-Next-Cursor header.
+     */
+    @Test
+    public void testListGamesByGenreLastPage() {
+        when(gameRepo.findNextGamesCursor(List.of("RPG"), 0, 100)).thenReturn(OptionalInt.empty());
+        when(gameRepo.listGames(List.of("RPG"), 0, 64)).thenReturn(List.of(game));
+        ResponseEntity<Flux<Games>> response = gameService.listGamesByGenre(List.of("RPG"), 0, 100, null);
+        assertNull(response.getHeaders().getFirst(GameService.NEXT_CURSOR_HEADER));
+        assertEquals(List.of(game), response.getBody().collectList().block());
+    }
+
+    /**
+     * Test 10: Export a page of ratings.
+     * Expect the cursor to be found off the calling thread, as it walks as many users as the limit.
+     */
+    @Test
+    public void testExportRatingsFindsCursorOffTheCallingThread() {
+        Thread caller = Thread.currentThread();
+        ExportPoint point = mock(ExportPoint.class);
+        when(gameRepo.openExportPoint(0)).thenReturn(point);
+        when(gameRepo.findNextRatedUsersCursor(0, 1000)).thenAnswer(invocation -> {
+            assertNotSame(caller, Thread.currentThread());
+            return OptionalInt.empty();
+        });
+        when(gameRepo.beginExport(point)).thenReturn(true);
+        when(gameRepo.listRatedUserIds(0, 1024)).thenReturn(new int[0]);
+        ResponseEntity<Flux<DataBuffer>> response = gameService.exportRatings("csv", 0, 1000, null).block();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String rows = DataBufferUtils.join(response.getBody())
+                .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                .block();
+        assertEquals("userId,gameId,rating\n", rows);
+    }
+
+    // The users after a cursor, at most limit of them, out of users 1 to count
+    private static List<Users> users(int after, int limit, int count) {
+        List<Users> users = new ArrayList<>();
+        for (int id = after + 1; id <= count && users.size() < limit; id++) {
+            users.add(new Users(id, "User " + id));
+        }
+        return users;
+    }
+}